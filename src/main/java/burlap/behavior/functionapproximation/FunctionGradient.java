@@ -1,5 +1,6 @@
 package burlap.behavior.functionapproximation;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -149,4 +150,140 @@ public interface FunctionGradient {
 
 	}
 
+	/**
+	 * A sparse {@link FunctionGradient} that stores the non-zero partial derivatives in primitive arrays, so that it can be
+	 * cleared and refilled without allocating. The stored partial derivatives can be read without allocating with
+	 * {@link #numNonZeroPDs()}, {@link #parameterId(int)} and {@link #partialDerivative(int)}. Lookups by parameter id
+	 * scan the stored partial derivatives, which is efficient for gradients with few non-zero partial derivatives, such as those of tile coding.
+	 */
+	public static class BufferedSparseGradient implements FunctionGradient{
+
+		/**
+		 * The parameter ids of the non-zero partial derivatives
+		 */
+		protected int [] parameterIds;
+
+		/**
+		 * The non-zero partial derivatives
+		 */
+		protected double [] values;
+
+		/**
+		 * The number of non-zero partial derivatives
+		 */
+		protected int size = 0;
+
+
+		/**
+		 * Initializes with space for 16 non-zero partial derivatives.
+		 */
+		public BufferedSparseGradient() {
+			this(16);
+		}
+
+
+		/**
+		 * Initializes with space for the given number of non-zero partial derivatives.
+		 * @param capacity the number of non-zero partial derivatives that can be stored before the buffers are grown
+		 */
+		public BufferedSparseGradient(int capacity) {
+			this.parameterIds = new int[Math.max(1, capacity)];
+			this.values = new double[this.parameterIds.length];
+		}
+
+
+		@Override
+		public void put(int parameterId, double partialDerivative){
+			int i = this.indexOf(parameterId);
+			if(partialDerivative == 0.){
+				if(i != -1){
+					this.size--;
+					this.parameterIds[i] = this.parameterIds[this.size];
+					this.values[i] = this.values[this.size];
+				}
+			}
+			else if(i != -1){
+				this.values[i] = partialDerivative;
+			}
+			else{
+				if(this.size == this.parameterIds.length){
+					this.parameterIds = Arrays.copyOf(this.parameterIds, this.size * 2);
+					this.values = Arrays.copyOf(this.values, this.size * 2);
+				}
+				this.parameterIds[this.size] = parameterId;
+				this.values[this.size] = partialDerivative;
+				this.size++;
+			}
+		}
+
+
+		@Override
+		public double getPartialDerivative(int parameterId){
+			int i = this.indexOf(parameterId);
+			if(i == -1){
+				return 0.;
+			}
+			return this.values[i];
+		}
+
+		@Override
+		public Set<PartialDerivative> getNonZeroPartialDerivatives(){
+			Set<PartialDerivative> nzPds = new HashSet<PartialDerivative>(this.size);
+			for(int i = 0; i < this.size; i++){
+				nzPds.add(new PartialDerivative(this.parameterIds[i], this.values[i]));
+			}
+			return nzPds;
+		}
+
+
+		@Override
+		public int numNonZeroPDs(){
+			return this.size;
+		}
+
+
+		/**
+		 * Returns the parameter id of the ith stored non-zero partial derivative.
+		 * @param i the index of the stored partial derivative, less than {@link #numNonZeroPDs()}
+		 * @return the parameter id of the partial derivative
+		 */
+		public int parameterId(int i){
+			return this.parameterIds[i];
+		}
+
+
+		/**
+		 * Returns the value of the ith stored non-zero partial derivative.
+		 * @param i the index of the stored partial derivative, less than {@link #numNonZeroPDs()}
+		 * @return the value of the partial derivative
+		 */
+		public double partialDerivative(int i){
+			return this.values[i];
+		}
+
+
+		/**
+		 * Removes all stored partial derivatives, keeping the buffers for reuse.
+		 */
+		public void clear(){
+			this.size = 0;
+		}
+
+
+		/**
+		 * Returns the index at which the partial derivative of a parameter is stored.
+		 * @param parameterId the parameter id
+		 * @return the index of the partial derivative, or -1 if it is not stored.
+		 */
+		protected int indexOf(int parameterId){
+			for(int i = 0; i < this.size; i++){
+				if(this.parameterIds[i] == parameterId){
+					return i;
+				}
+			}
+			return -1;
+		}
+
+	}
+
 }
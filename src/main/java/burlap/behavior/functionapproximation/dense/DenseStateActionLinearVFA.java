@@ -89,6 +89,34 @@ public class DenseStateActionLinearVFA implements DifferentiableStateActionValue
 		return this.currentValue;
 	}
 
+	/**
+	 * Returns the state-action feature function
+	 * @return the state-action feature function
+	 */
+	public DenseStateActionFeatures getFeatures() {
+		return features;
+	}
+
+
+	/**
+	 * Returns the weight array itself, not a copy, so that the weights can be updated in place.
+	 * @return the weights, or null if they have not been initialized by an evaluation
+	 */
+	public double[] getStateActionWeights() {
+		return stateActionWeights;
+	}
+
+
+	/**
+	 * Sets the weight array, which is used without copying.
+	 * @param stateActionWeights the weights
+	 */
+	public void setStateActionWeights(double[] stateActionWeights) {
+		this.stateActionWeights = stateActionWeights;
+		this.currentGradient = null;
+		this.lastState = null;
+	}
+
 	@Override
 	public int numParameters() {
 		if(this.stateActionWeights != null){
@@ -114,6 +142,6 @@ public class DenseStateActionLinearVFA implements DifferentiableStateActionValue
 
 	@Override
 	public DenseStateActionLinearVFA copy() {
-		return new DenseStateActionLinearVFA(features, this.stateActionWeights.clone(), this.defaultWeight);
+		return new DenseStateActionLinearVFA(features, this.stateActionWeights != null ? this.stateActionWeights.clone() : null, this.defaultWeight);
 	}
 }
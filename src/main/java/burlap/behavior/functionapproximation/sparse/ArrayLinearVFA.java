@@ -0,0 +1,334 @@
+package burlap.behavior.functionapproximation.sparse;
+
+import burlap.behavior.functionapproximation.DifferentiableStateActionValue;
+import burlap.behavior.functionapproximation.DifferentiableStateValue;
+import burlap.behavior.functionapproximation.FunctionGradient;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.state.State;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A linear VFA that computes the same function as {@link LinearVFA}, but stores its weights in a growable primitive <code>double[]</code>
+ * indexed by parameter id, rather than in a map of boxed values. As with {@link LinearVFA}, a weight is created with the default weight
+ * value for every feature returned by the feature database, and state-action features are the cross product of the state features and
+ * actions; the mapping from state feature ids and actions to state-action parameter ids is also stored in primitive arrays.
+ * You should only ever use this class for state-values or state-action values, not both.
+ * <p>
+ * The features of the current input are kept in reused buffers, so evaluating this function does not allocate beyond what the feature
+ * database allocates; if the feature database implements {@link BufferedSparseStateFeatures}, it does not allocate at all.
+ * The {@link #gradient(State)} and {@link #gradient(State, Action)} methods return a new {@link FunctionGradient.BufferedSparseGradient}, while
+ * {@link #gradient(State, FunctionGradient.BufferedSparseGradient)} and {@link #gradient(State, Action, FunctionGradient.BufferedSparseGradient)} write
+ * the gradient into a caller-provided buffer without allocating.
+ */
+public class ArrayLinearVFA implements DifferentiableStateValue, DifferentiableStateActionValue {
+
+	/**
+	 * The state features
+	 */
+	protected SparseStateFeatures sparseStateFeatures;
+
+	/**
+	 * The weights, indexed by parameter id
+	 */
+	protected double [] weights;
+
+	/**
+	 * One more than the largest parameter id used so far
+	 */
+	protected int numParameters = 0;
+
+	/**
+	 * A default weight for the functions
+	 */
+	protected double defaultWeight = 0.0;
+
+	/**
+	 * The state-action parameter ids of each action
+	 */
+	protected Map<Action, ActionFeatures> actionFeatures = new HashMap<Action, ActionFeatures>();
+
+	/**
+	 * The next unused state-action parameter id
+	 */
+	protected int nextActionFeatureId = 0;
+
+
+	/**
+	 * The parameter ids of the features of the current input
+	 */
+	protected int [] featureIds = new int[16];
+
+	/**
+	 * The values of the features of the current input
+	 */
+	protected double [] featureValues = new double[16];
+
+	/**
+	 * The number of features of the current input
+	 */
+	protected int numFeatures = 0;
+
+	protected State lastState = null;
+	protected Action lastAction = null;
+
+
+	/**
+	 * Initializes with a feature database; the default weight value will be zero
+	 * @param sparseStateFeatures the feature database to use
+	 */
+	public ArrayLinearVFA(SparseStateFeatures sparseStateFeatures) {
+		this(sparseStateFeatures, 0.);
+	}
+
+
+	/**
+	 * Initializes
+	 * @param sparseStateFeatures the feature database to use
+	 * @param defaultWeight the default feature weight to initialize feature weights to
+	 */
+	public ArrayLinearVFA(SparseStateFeatures sparseStateFeatures, double defaultWeight) {
+		this.sparseStateFeatures = sparseStateFeatures;
+		this.defaultWeight = defaultWeight;
+		this.weights = new double[Math.max(16, sparseStateFeatures.numFeatures())];
+		Arrays.fill(this.weights, defaultWeight);
+	}
+
+
+	@Override
+	public double evaluate(State s, Action a) {
+		this.setStateActionFeatures(s, a);
+		return this.currentValue();
+	}
+
+	@Override
+	public double evaluate(State s) {
+		this.setStateFeatures(s);
+		return this.currentValue();
+	}
+
+
+	@Override
+	public FunctionGradient gradient(State s) {
+		return this.gradient(s, new FunctionGradient.BufferedSparseGradient(this.numFeatures));
+	}
+
+	@Override
+	public FunctionGradient gradient(State s, Action a) {
+		return this.gradient(s, a, new FunctionGradient.BufferedSparseGradient(this.numFeatures));
+	}
+
+
+	/**
+	 * Writes the gradient of the state value function into the given buffer, which is cleared first.
+	 * @param s the input {@link State}
+	 * @param gradient the buffer into which the gradient is written
+	 * @return the gradient buffer
+	 */
+	public FunctionGradient.BufferedSparseGradient gradient(State s, FunctionGradient.BufferedSparseGradient gradient){
+		if(this.lastState != s || this.lastAction != null){
+			this.setStateFeatures(s);
+		}
+		return this.currentGradient(gradient);
+	}
+
+
+	/**
+	 * Writes the gradient of the state-action value function into the given buffer, which is cleared first.
+	 * @param s the input {@link State}
+	 * @param a the input {@link Action}
+	 * @param gradient the buffer into which the gradient is written
+	 * @return the gradient buffer
+	 */
+	public FunctionGradient.BufferedSparseGradient gradient(State s, Action a, FunctionGradient.BufferedSparseGradient gradient){
+		if(this.lastState != s || this.lastAction != a){
+			this.setStateActionFeatures(s, a);
+		}
+		return this.currentGradient(gradient);
+	}
+
+
+	@Override
+	public int numParameters() {
+		return this.numParameters;
+	}
+
+	@Override
+	public double getParameter(int i) {
+		this.ensureParameter(i);
+		return this.weights[i];
+	}
+
+	@Override
+	public void setParameter(int i, double p) {
+		this.ensureParameter(i);
+		this.weights[i] = p;
+	}
+
+
+	@Override
+	public void resetParameters() {
+		Arrays.fill(this.weights, this.defaultWeight);
+		this.numParameters = 0;
+	}
+
+	@Override
+	public ArrayLinearVFA copy() {
+		ArrayLinearVFA vfa = new ArrayLinearVFA(this.sparseStateFeatures.copy(), this.defaultWeight);
+		vfa.weights = this.weights.clone();
+		vfa.numParameters = this.numParameters;
+		vfa.nextActionFeatureId = this.nextActionFeatureId;
+		for(Map.Entry<Action, ActionFeatures> e : this.actionFeatures.entrySet()){
+			vfa.actionFeatures.put(e.getKey(), vfa.new ActionFeatures(e.getValue().parameterIds.clone()));
+		}
+		return vfa;
+	}
+
+
+	/**
+	 * Sets the current features to the state features of a state.
+	 * @param s the input state
+	 */
+	protected void setStateFeatures(State s){
+		if(this.sparseStateFeatures instanceof BufferedSparseStateFeatures){
+			BufferedSparseStateFeatures bf = (BufferedSparseStateFeatures)this.sparseStateFeatures;
+			this.ensureFeatureCapacity(bf.maxActiveFeatures());
+			this.numFeatures = bf.features(s, this.featureIds, this.featureValues);
+		}
+		else{
+			List<StateFeature> features = this.sparseStateFeatures.features(s);
+			this.ensureFeatureCapacity(features.size());
+			for(int i = 0; i < features.size(); i++){
+				StateFeature sf = features.get(i);
+				this.featureIds[i] = sf.id;
+				this.featureValues[i] = sf.value;
+			}
+			this.numFeatures = features.size();
+		}
+		this.lastState = s;
+		this.lastAction = null;
+	}
+
+
+	/**
+	 * Sets the current features to the state-action features of a state and action.
+	 * @param s the input state
+	 * @param a the input action
+	 */
+	protected void setStateActionFeatures(State s, Action a){
+		this.setStateFeatures(s);
+		ActionFeatures af = this.actionFeatures.get(a);
+		if(af == null){
+			af = new ActionFeatures();
+			this.actionFeatures.put(a, af);
+		}
+		for(int i = 0; i < this.numFeatures; i++){
+			this.featureIds[i] = af.parameterId(this.featureIds[i]);
+		}
+		this.lastAction = a;
+	}
+
+
+	/**
+	 * Returns the value of the function for the current features.
+	 * @return the value of the function for the current features
+	 */
+	protected double currentValue(){
+		double val = 0.;
+		for(int i = 0; i < this.numFeatures; i++){
+			int id = this.featureIds[i];
+			this.ensureParameter(id);
+			val += this.featureValues[i] * this.weights[id];
+		}
+		return val;
+	}
+
+
+	/**
+	 * Writes the gradient for the current features into a buffer.
+	 * @param gradient the buffer into which the gradient is written
+	 * @return the gradient buffer
+	 */
+	protected FunctionGradient.BufferedSparseGradient currentGradient(FunctionGradient.BufferedSparseGradient gradient){
+		gradient.clear();
+		for(int i = 0; i < this.numFeatures; i++){
+			gradient.put(this.featureIds[i], this.featureValues[i]);
+		}
+		return gradient;
+	}
+
+
+	/**
+	 * Grows the weights, if needed, so that the given parameter id has a weight.
+	 * @param id the parameter id
+	 */
+	protected void ensureParameter(int id){
+		if(id >= this.weights.length){
+			int oldLength = this.weights.length;
+			this.weights = Arrays.copyOf(this.weights, Math.max(id + 1, oldLength * 2));
+			Arrays.fill(this.weights, oldLength, this.weights.length, this.defaultWeight);
+		}
+		if(id >= this.numParameters){
+			this.numParameters = id + 1;
+		}
+	}
+
+
+	/**
+	 * Grows the feature buffers, if needed, so that they can store the given number of features.
+	 * @param n the number of features
+	 */
+	protected void ensureFeatureCapacity(int n){
+		if(n > this.featureIds.length){
+			int capacity = Math.max(n, this.featureIds.length * 2);
+			this.featureIds = new int[capacity];
+			this.featureValues = new double[capacity];
+		}
+	}
+
+
+	/**
+	 * The mapping from state feature ids to the state-action parameter ids of an action.
+	 */
+	protected class ActionFeatures {
+
+		/**
+		 * The parameter id of each state feature id; -1 for state features without a parameter yet
+		 */
+		protected int [] parameterIds;
+
+		public ActionFeatures() {
+			this.parameterIds = new int[16];
+			Arrays.fill(this.parameterIds, -1);
+		}
+
+		protected ActionFeatures(int [] parameterIds) {
+			this.parameterIds = parameterIds;
+		}
+
+		/**
+		 * Returns the parameter id for a state feature id, creating it if needed.
+		 * @param stateFeatureId the state feature id
+		 * @return the parameter id
+		 */
+		public int parameterId(int stateFeatureId){
+			if(stateFeatureId >= this.parameterIds.length){
+				int oldLength = this.parameterIds.length;
+				this.parameterIds = Arrays.copyOf(this.parameterIds, Math.max(stateFeatureId + 1, oldLength * 2));
+				Arrays.fill(this.parameterIds, oldLength, this.parameterIds.length, -1);
+			}
+			int id = this.parameterIds[stateFeatureId];
+			if(id == -1){
+				id = nextActionFeatureId++;
+				this.parameterIds[stateFeatureId] = id;
+			}
+			return id;
+		}
+
+	}
+
+}
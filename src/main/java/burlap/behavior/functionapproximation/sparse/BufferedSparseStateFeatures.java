@@ -0,0 +1,28 @@
+package burlap.behavior.functionapproximation.sparse;
+
+import burlap.mdp.core.state.State;
+
+/**
+ * An extension of {@link SparseStateFeatures} that can also write the non-zero features of a state into caller-provided
+ * primitive arrays, which lets learning algorithms evaluate features without allocating {@link StateFeature} objects
+ * on every step. {@link ArrayLinearVFA} uses this method when its features implement this interface.
+ */
+public interface BufferedSparseStateFeatures extends SparseStateFeatures {
+
+	/**
+	 * Writes the non-zero features of a state into the given arrays, which must have a length of at least {@link #maxActiveFeatures()}.
+	 * @param s the state for which features should be returned
+	 * @param ids the array to which the feature identifiers are written
+	 * @param values the array to which the feature values are written
+	 * @return the number of features written
+	 */
+	int features(State s, int [] ids, double [] values);
+
+
+	/**
+	 * Returns the maximum number of non-zero features of any state.
+	 * @return the maximum number of non-zero features of any state
+	 */
+	int maxActiveFeatures();
+
+}
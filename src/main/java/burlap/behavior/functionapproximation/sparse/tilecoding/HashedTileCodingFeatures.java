@@ -0,0 +1,407 @@
+package burlap.behavior.functionapproximation.sparse.tilecoding;
+
+import burlap.behavior.functionapproximation.dense.DenseStateFeatures;
+import burlap.behavior.functionapproximation.sparse.ArrayLinearVFA;
+import burlap.behavior.functionapproximation.sparse.BufferedSparseStateFeatures;
+import burlap.behavior.functionapproximation.sparse.LinearVFA;
+import burlap.behavior.functionapproximation.sparse.StateFeature;
+import burlap.datastructures.HashMixing;
+import burlap.debugtools.RandomFactory;
+import burlap.mdp.core.state.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * A tile coding feature database, like {@link TileCodingFeatures}, that uses a fixed memory budget. Rather than storing a map from
+ * tiles to feature ids for every tiling, the tile of each tiling is computed arithmetically and hashed to a 64-bit tile key,
+ * which is then mapped to one of a fixed number of feature ids (the memory size). Two mappings are supported:
+ * <p>
+ * <ul>
+ *     <li>{@link TileMapping#ASSIGN_THEN_HASH} (the default): like the index hash table (IHT) of Sutton's tile coding software, tiles are
+ *     assigned consecutive, collision-free feature ids in the order in which they are first seen, until all feature ids have been
+ *     assigned; after that, the feature id of a new tile is its key modulo the memory size, which shares it with an earlier tile.
+ *     The assigned ids are stored in a primitive open-addressing table that is allocated once.</li>
+ *     <li>{@link TileMapping#HASH_ONLY}: the feature id of every tile is its key modulo the memory size (UNH hashing), which stores nothing
+ *     per tile, but may share feature ids between tiles before the memory is full.</li>
+ * </ul>
+ * <p>
+ * Tile lookups do not allocate, so when this class is used through its {@link BufferedSparseStateFeatures} interface
+ * (for example by an {@link ArrayLinearVFA}) the only allocation per state is the feature vector returned by the
+ * {@link DenseStateFeatures} that converts states into feature vectors. This class also works with {@link LinearVFA} (see
+ * {@link #generateVFA(double)}). Because the number of features never exceeds the memory size, the weights of a value
+ * function using these features are bounded too.
+ * <p>
+ * To monitor whether the memory size is large enough, this class counts tile lookups and collisions, where a collision is a lookup
+ * of a tile whose feature id was first used by a different tile. See {@link #numLookups()}, {@link #numCollisions()},
+ * {@link #collisionRate()} and {@link #numUsedFeatures()}.
+ * <p>
+ * Tilings are specified in the same way as for {@link TileCodingFeatures}, with the
+ * {@link #addTilingsForAllDimensionsWithWidths(double[], int, TilingArrangement)} and
+ * {@link #addTilingsForDimensionsAndWidths(boolean[], double[], int, TilingArrangement)} methods.
+ */
+public class HashedTileCodingFeatures implements BufferedSparseStateFeatures {
+
+	/**
+	 * The generator that turns states into state feature vectors.
+	 */
+	protected DenseStateFeatures featureVectorGenerator;
+
+	/**
+	 * A random object for jittering the tile alignments.
+	 */
+	protected Random rand = RandomFactory.getMapped(0);
+
+	/**
+	 * A list of all the tilings used.
+	 */
+	protected List<Tiling> tilings = new ArrayList<Tiling>();
+
+	/**
+	 * The number of feature ids to which tiles are mapped
+	 */
+	protected int memorySize;
+
+	/**
+	 * How tiles are mapped to feature ids; either {@link TileMapping#ASSIGN_THEN_HASH} or {@link TileMapping#HASH_ONLY}
+	 */
+	protected TileMapping mapping;
+
+
+	/**
+	 * The tile keys of the open-addressing table of assigned feature ids; 0 marks an empty entry. Only used with {@link TileMapping#ASSIGN_THEN_HASH}.
+	 */
+	protected long [] assignedKeys;
+
+	/**
+	 * The feature ids of the open-addressing table of assigned feature ids. Only used with {@link TileMapping#ASSIGN_THEN_HASH}.
+	 */
+	protected int [] assignedFeatures;
+
+	/**
+	 * The number of assigned feature ids
+	 */
+	protected int numAssigned = 0;
+
+	/**
+	 * The key of the first tile that used each feature id; 0 if the feature id has not been used.
+	 */
+	protected long [] owners;
+
+
+	/**
+	 * The number of feature ids that have been used
+	 */
+	protected int numUsedFeatures = 0;
+
+	/**
+	 * The number of tile lookups
+	 */
+	protected long numLookups = 0;
+
+	/**
+	 * The number of tile lookups that returned a feature id first used by a different tile
+	 */
+	protected long numCollisions = 0;
+
+
+	/**
+	 * Initializes using the {@link TileMapping#ASSIGN_THEN_HASH} mapping.
+	 * @param featureVectorGenerator the state to feature vector generator to use
+	 * @param memorySize the number of feature ids to which tiles are mapped
+	 */
+	public HashedTileCodingFeatures(DenseStateFeatures featureVectorGenerator, int memorySize){
+		this(featureVectorGenerator, memorySize, TileMapping.ASSIGN_THEN_HASH);
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param featureVectorGenerator the state to feature vector generator to use
+	 * @param memorySize the number of feature ids to which tiles are mapped
+	 * @param mapping how tiles are mapped to feature ids; either {@link TileMapping#ASSIGN_THEN_HASH} or {@link TileMapping#HASH_ONLY}
+	 */
+	public HashedTileCodingFeatures(DenseStateFeatures featureVectorGenerator, int memorySize, TileMapping mapping){
+		if(memorySize <= 0){
+			throw new RuntimeException("HashedTileCodingFeatures memory size must be positive, but was " + memorySize);
+		}
+		if(mapping == null){
+			throw new RuntimeException("HashedTileCodingFeatures requires a tile mapping");
+		}
+		this.featureVectorGenerator = featureVectorGenerator;
+		this.memorySize = memorySize;
+		this.mapping = mapping;
+		this.owners = new long[memorySize];
+		if(mapping == TileMapping.ASSIGN_THEN_HASH){
+			int capacity = 16;
+			while(capacity < 2 * memorySize){
+				capacity <<= 1;
+			}
+			this.assignedKeys = new long[capacity];
+			this.assignedFeatures = new int[capacity];
+		}
+	}
+
+
+	/**
+	 * Adds a number of tilings where each tile is dependent on the dimensions that are labeled as "true" in the dimensionMask parameter. The widths parameter
+	 * specifies the width of each tile along that given dimension. If tileArrangement is set to {@link TilingArrangement#UNIFORM} then each of the nTilings
+	 * created with will be uniformly spaced across the width of each dimension. If it is set to {@link TilingArrangement#RANDOM_JITTER} then each tiling
+	 * will be offset by a random amount.
+	 * @param dimensionMask each true entry in this boolean array is a dimension over which the tiling will be defined.
+	 * @param widths the width of tiles along each dimension. This value should be non-zero for each dimension unless the tiling doesn't depend on that dimension.
+	 * @param nTilings the number of tilings over the specified dimensions to create
+	 * @param tileArrangement whether the created tiles are uniformly spaced or randomly spaced.
+	 */
+	public void addTilingsForDimensionsAndWidths(boolean [] dimensionMask, double [] widths, int nTilings, TilingArrangement tileArrangement){
+
+		for(int i = 0; i < nTilings; i++){
+			double [] offset = new double[dimensionMask.length];
+			for(int j = 0; j < offset.length; j++){
+				if(!dimensionMask[j]){
+					continue;
+				}
+				if(tileArrangement == TilingArrangement.RANDOM_JITTER){
+					offset[j] = this.rand.nextDouble()*widths[j];
+				}
+				else{
+					offset[j] = ((double)i / (double)nTilings)*widths[j];
+				}
+			}
+			this.tilings.add(new Tiling(widths, offset, dimensionMask));
+		}
+
+	}
+
+
+	/**
+	 * Adds a number of tilings where each tile is dependent on *all* the dimensions of a state feature vector. The widths parameter
+	 * specifies the width of each tile along that given dimension. If tileArrangement is set to {@link TilingArrangement#UNIFORM} then each of the nTilings
+	 * created with will be uniformly spaced across the width of each dimension. If it is set to {@link TilingArrangement#RANDOM_JITTER} then each tiling
+	 * will be offset by a random amount.
+	 * @param widths the width of tiles along each dimension. This value should be non-zero for each dimension .
+	 * @param nTilings the number of tilings over the specified dimensions to create.
+	 * @param tileArrangement whether the created tiles are uniformly spaced or randomly spaced.
+	 */
+	public void addTilingsForAllDimensionsWithWidths(double [] widths, int nTilings, TilingArrangement tileArrangement){
+		boolean [] dimensionMask = new boolean[widths.length];
+		Arrays.fill(dimensionMask, true);
+		this.addTilingsForDimensionsAndWidths(dimensionMask, widths, nTilings, tileArrangement);
+	}
+
+
+	@Override
+	public List<StateFeature> features(State s) {
+		int [] ids = new int[this.tilings.size()];
+		double [] values = new double[this.tilings.size()];
+		int n = this.features(s, ids, values);
+		List<StateFeature> features = new ArrayList<StateFeature>(n);
+		for(int i = 0; i < n; i++){
+			features.add(new StateFeature(ids[i], values[i]));
+		}
+		return features;
+	}
+
+
+	@Override
+	public int features(State s, int [] ids, double [] values) {
+		double [] input = this.featureVectorGenerator.features(s);
+		for(int i = 0; i < this.tilings.size(); i++){
+			ids[i] = this.featureId(this.tileKey(i, input));
+			values[i] = 1.;
+		}
+		return this.tilings.size();
+	}
+
+
+	@Override
+	public int maxActiveFeatures() {
+		return this.tilings.size();
+	}
+
+
+	/**
+	 * Returns the memory size, since feature ids are always less than it.
+	 * @return the memory size
+	 */
+	@Override
+	public int numFeatures() {
+		return this.memorySize;
+	}
+
+
+	@Override
+	public HashedTileCodingFeatures copy() {
+		HashedTileCodingFeatures tilecoding = new HashedTileCodingFeatures(this.featureVectorGenerator, this.memorySize, this.mapping);
+		tilecoding.rand = this.rand;
+		tilecoding.tilings = new ArrayList<Tiling>(this.tilings);
+		if(this.assignedKeys != null){
+			tilecoding.assignedKeys = this.assignedKeys.clone();
+			tilecoding.assignedFeatures = this.assignedFeatures.clone();
+		}
+		tilecoding.numAssigned = this.numAssigned;
+		tilecoding.owners = this.owners.clone();
+		tilecoding.numUsedFeatures = this.numUsedFeatures;
+		tilecoding.numLookups = this.numLookups;
+		tilecoding.numCollisions = this.numCollisions;
+		return tilecoding;
+	}
+
+
+	/**
+	 * After all the tiling specifications have been set, this method can be called to produce a linear
+	 * VFA object.
+	 * @param defaultWeightValue the default value weights for the tile coding features will use.
+	 * @return a linear ValueFunctionApproximation object that uses this feature database
+	 */
+	public LinearVFA generateVFA(double defaultWeightValue){
+		return new LinearVFA(this, defaultWeightValue);
+	}
+
+
+	/**
+	 * Returns the number of feature ids to which tiles are mapped.
+	 * @return the number of feature ids to which tiles are mapped
+	 */
+	public int getMemorySize() {
+		return memorySize;
+	}
+
+
+	/**
+	 * Returns how tiles are mapped to feature ids; either {@link TileMapping#ASSIGN_THEN_HASH} or {@link TileMapping#HASH_ONLY}
+	 * @return how tiles are mapped to feature ids
+	 */
+	public TileMapping getMapping() {
+		return mapping;
+	}
+
+
+	/**
+	 * Returns the number of feature ids that have been used by at least one tile.
+	 * @return the number of feature ids that have been used
+	 */
+	public int numUsedFeatures(){
+		return this.numUsedFeatures;
+	}
+
+
+	/**
+	 * Returns the number of tile lookups since construction or the last call to {@link #resetStatistics()}.
+	 * @return the number of tile lookups
+	 */
+	public long numLookups(){
+		return this.numLookups;
+	}
+
+
+	/**
+	 * Returns the number of tile lookups, since construction or the last call to {@link #resetStatistics()}, that returned a feature id
+	 * that was first used by a different tile.
+	 * @return the number of tile lookups that collided with a different tile
+	 */
+	public long numCollisions(){
+		return this.numCollisions;
+	}
+
+
+	/**
+	 * Returns the fraction of tile lookups that collided with a different tile.
+	 * @return the fraction of tile lookups that collided with a different tile; 0 if there have been no lookups.
+	 */
+	public double collisionRate(){
+		return this.numLookups == 0 ? 0. : (double)this.numCollisions / (double)this.numLookups;
+	}
+
+
+	/**
+	 * Resets the lookup and collision counts. The feature ids used by tiles are unchanged.
+	 */
+	public void resetStatistics(){
+		this.numLookups = 0;
+		this.numCollisions = 0;
+	}
+
+
+	/**
+	 * Returns the feature id of a tile key, assigning a new one if needed, and updates the lookup and collision counts.
+	 * @param key the tile key
+	 * @return the feature id of the tile
+	 */
+	protected int featureId(long key){
+		int f;
+		if(this.mapping == TileMapping.ASSIGN_THEN_HASH){
+			int mask = this.assignedKeys.length - 1;
+			int i = (int)key & mask;
+			long k;
+			while((k = this.assignedKeys[i]) != 0 && k != key){
+				i = (i + 1) & mask;
+			}
+			if(k == key){
+				f = this.assignedFeatures[i];
+			}
+			else if(this.numAssigned < this.memorySize){
+				f = this.numAssigned++;
+				this.assignedKeys[i] = key;
+				this.assignedFeatures[i] = f;
+			}
+			else{
+				f = this.hashedFeatureId(key);
+			}
+		}
+		else{
+			f = this.hashedFeatureId(key);
+		}
+
+		this.numLookups++;
+		long owner = this.owners[f];
+		if(owner == 0){
+			this.owners[f] = key;
+			this.numUsedFeatures++;
+		}
+		else if(owner != key){
+			this.numCollisions++;
+		}
+
+		return f;
+	}
+
+
+	/**
+	 * Returns the feature id of a tile key modulo the memory size.
+	 * @param key the tile key
+	 * @return the hashed feature id
+	 */
+	protected int hashedFeatureId(long key){
+		return (int)((key >>> 1) % this.memorySize);
+	}
+
+
+	/**
+	 * Computes the key of the tile of a tiling containing a feature vector, by hashing the tiling index and the tile coordinate of each dimension
+	 * of the tiling. The key is never 0.
+	 * @param tilingIndex the index of the tiling
+	 * @param input the feature vector
+	 * @return the tile key
+	 */
+	protected long tileKey(int tilingIndex, double [] input){
+		Tiling tiling = this.tilings.get(tilingIndex);
+		if(input.length != tiling.widths.length){
+			throw new RuntimeException("Error: the input feature vector to be tiled is a different dimensionality " +
+					"than the dimensionality on which this tiling was defined; " +
+					"e.g., the specified widths vector for this tiling is a different dimension than the input vector.");
+		}
+		long h = HashMixing.mix((long)(tilingIndex + 1));
+		for(int i = 0; i < input.length; i++){
+			if(tiling.dimensionMask[i]){
+				long c = (long)Math.floor((input[i] - tiling.offset[i]) / tiling.widths[i]);
+				h = HashMixing.mix(h * 0x9e3779b97f4a7c15L + c);
+			}
+		}
+		return h == 0 ? 1 : h;
+	}
+
+}
@@ -0,0 +1,19 @@
+package burlap.behavior.functionapproximation.sparse.tilecoding;
+
+/**
+ * Enum for specifying how {@link HashedTileCodingFeatures} maps tiles to its fixed number of feature ids.
+ */
+public enum TileMapping {
+
+	/**
+	 * Assign collision-free feature ids to tiles, in the order in which they are first seen, until all feature ids have been
+	 * assigned, and hash tiles to feature ids afterwards
+	 */
+	ASSIGN_THEN_HASH,
+
+	/**
+	 * Always hash tiles to feature ids
+	 */
+	HASH_ONLY
+
+}
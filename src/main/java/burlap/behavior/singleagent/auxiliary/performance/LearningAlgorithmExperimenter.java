@@ -4,9 +4,19 @@ import burlap.behavior.singleagent.Episode;
 import burlap.behavior.singleagent.learning.LearningAgent;
 import burlap.behavior.singleagent.learning.LearningAgentFactory;
 import burlap.debugtools.DPrint;
+import burlap.debugtools.RandomFactory;
 import burlap.mdp.singleagent.environment.Environment;
+import burlap.mdp.singleagent.environment.EnvironmentFactory;
 import burlap.mdp.singleagent.environment.extensions.EnvironmentServer;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 
 /**
  * This class is used to simplify the comparison of different learning algorithms. It takes as input a test {@link burlap.mdp.singleagent.environment.Environment}
@@ -29,6 +39,15 @@ import burlap.mdp.singleagent.environment.extensions.EnvironmentServer;
  * By default the cumulative reward per step will be plotted and if more than one trial is specified, the both the most recent trail and the trial average plot will be shown.
  * If only one trial is specified, then only the most recent trial plot will be shown. To control the kinds of plots displayed use the 
  * {@link #setUpPlottingConfiguration(int, int, int, int, TrialMode, PerformanceMetric...)} method. 
+ * <p>
+ * If the experimenter is constructed with an {@link EnvironmentFactory} instead of a single test {@link Environment}, each trial is run in
+ * its own environment generated by the factory, and trials may be run in parallel with the {@link #setNumThreads(int)} method. Each trial is then
+ * recorded with a {@link PerformancePlotter.TrialRecording} and added to the plotter after it completes, in trial order, so the plots and CSV
+ * output do not depend on the number of threads. To make trials reproducible, use the {@link #setTrialSeed(long)} method: each trial then runs
+ * with its own {@link RandomFactory} (see {@link RandomFactory#setThreadFactory(RandomFactory)}), whose generators are seeded from the trial seed,
+ * the agent index and the trial index. Because the environment and agent of a trial are generated inside that scope, any
+ * random generators they get from {@link RandomFactory} (including those of a domain generated by the environment factory) are
+ * seeded the same way in serial and parallel runs.
  * 
  * @author James MacGlashan
  *
@@ -42,6 +61,12 @@ public class LearningAlgorithmExperimenter {
 	protected Environment 		testEnvironment;
 
 
+	/**
+	 * The factory used to generate a test {@link burlap.mdp.singleagent.environment.Environment} for each trial; null if a single test environment is used.
+	 */
+	protected EnvironmentFactory	environmentFactory;
+
+
 	/**
 	 * The {@link EnvironmentServer} that wraps the test {@link burlap.mdp.singleagent.environment.Environment}
 	 * and tells a {@link burlap.behavior.singleagent.auxiliary.performance.PerformancePlotter} about the individual interactions.
@@ -109,6 +134,18 @@ public class LearningAlgorithmExperimenter {
 	public int							debugCode = 63634013;
 
 
+	/**
+	 * The number of trials that are run in parallel
+	 */
+	protected int						numThreads = 1;
+
+
+	/**
+	 * The seed from which the random generators of each trial are seeded; null if trials use the shared {@link RandomFactory}
+	 */
+	protected Long						trialSeed = null;
+
+
 	
 	
 	
@@ -132,6 +169,22 @@ public class LearningAlgorithmExperimenter {
 		this.trialLength = trialLength;
 		this.agentFactories = agentFactories;
 	}
+
+
+	/**
+	 * Initializes with a factory that generates a new test {@link burlap.mdp.singleagent.environment.Environment} for each trial,
+	 * which allows trials to be run in parallel (see {@link #setNumThreads(int)}).
+	 * The trialLength will be interpreted as the number of episodes, but it can be reinterpreted as a total number of steps per trial using the
+	 * {@link #toggleTrialLengthInterpretation(boolean)}.
+	 * @param environmentFactory the factory that generates the test {@link burlap.mdp.singleagent.environment.Environment} of each trial.
+	 * @param nTrials the number of trials
+	 * @param trialLength the length of the trials (by default in episodes, but can be intereted as maximum step length)
+	 * @param agentFactories factories to generate the agents to be tested.
+	 */
+	public LearningAlgorithmExperimenter(EnvironmentFactory environmentFactory, int nTrials, int trialLength, LearningAgentFactory...agentFactories){
+		this((Environment)null, nTrials, trialLength, agentFactories);
+		this.environmentFactory = environmentFactory;
+	}
 	
 	
 	
@@ -200,6 +253,35 @@ public class LearningAlgorithmExperimenter {
 	}
 	
 	
+	/**
+	 * Sets the number of trials that are run in parallel. Parallel trials require that this experimenter was constructed
+	 * with an {@link EnvironmentFactory}, and the environment factory and agent factories must be safe to call from multiple threads.
+	 * @param numThreads the number of trials that are run in parallel
+	 */
+	public void setNumThreads(int numThreads){
+		if(numThreads < 1){
+			throw new RuntimeException("The experimenter requires at least one thread; " + numThreads + " were requested.");
+		}
+		if(numThreads > 1 && this.environmentFactory == null){
+			throw new RuntimeException("Running trials in parallel requires an EnvironmentFactory to generate the environment of each trial.");
+		}
+		this.numThreads = numThreads;
+	}
+
+
+	/**
+	 * Sets the seed from which the random generators of each trial are seeded, which makes the trials reproducible regardless of the number of threads.
+	 * Requires that this experimenter was constructed with an {@link EnvironmentFactory}.
+	 * @param seed the seed from which the random generators of each trial are seeded
+	 */
+	public void setTrialSeed(long seed){
+		if(this.environmentFactory == null){
+			throw new RuntimeException("Seeding trials requires an EnvironmentFactory to generate the environment of each trial.");
+		}
+		this.trialSeed = seed;
+	}
+
+
 	/**
 	 * Starts the experiment and runs all trails for all agents.
 	 */
@@ -222,12 +304,19 @@ public class LearningAlgorithmExperimenter {
 		}
 		
 		
-		//this.domain.addActionObserverForAllAction(plotter);
-		this.environmentSever = new EnvironmentServer(this.testEnvironment, plotter);
-		
 		if(this.displayPlots){
 			this.plotter.startGUI();
 		}
+
+		if(this.environmentFactory != null){
+			this.runRecordedTrials();
+			this.plotter.endAllAgents();
+			this.completedExperiment = true;
+			return;
+		}
+
+		//this.domain.addActionObserverForAllAction(plotter);
+		this.environmentSever = new EnvironmentServer(this.testEnvironment, plotter);
 		
 		for(int i = 0; i < this.agentFactories.length; i++){
 			
@@ -360,6 +449,118 @@ public class LearningAlgorithmExperimenter {
 		this.plotter.endTrial();
 		
 	}
+
+
+	/**
+	 * Runs all trials for all agents, each in its own environment generated by the {@link #environmentFactory}, using {@link #numThreads} threads,
+	 * and adds the recorded trials to the plotter in order.
+	 */
+	protected void runRecordedTrials(){
+
+		if(this.numThreads == 1){
+			for(int i = 0; i < this.agentFactories.length; i++){
+				for(int j = 0; j < this.nTrials; j++){
+					DPrint.cl(this.debugCode, "Beginning " + this.agentFactories[i].getAgentName() + " trial " + (j+1) + "/" + this.nTrials);
+					this.addRecordedTrial(i, j, this.runRecordedTrial(i, j));
+				}
+			}
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.numThreads);
+		try{
+			List<List<Future<PerformancePlotter.TrialRecording>>> trials = new ArrayList<List<Future<PerformancePlotter.TrialRecording>>>(this.agentFactories.length);
+			for(int i = 0; i < this.agentFactories.length; i++){
+				List<Future<PerformancePlotter.TrialRecording>> agentTrials = new ArrayList<Future<PerformancePlotter.TrialRecording>>(this.nTrials);
+				for(int j = 0; j < this.nTrials; j++){
+					final int agentIndex = i;
+					final int trial = j;
+					agentTrials.add(pool.submit(new Callable<PerformancePlotter.TrialRecording>() {
+						@Override
+						public PerformancePlotter.TrialRecording call() throws Exception {
+							return runRecordedTrial(agentIndex, trial);
+						}
+					}));
+				}
+				trials.add(agentTrials);
+			}
+
+			for(int i = 0; i < this.agentFactories.length; i++){
+				for(int j = 0; j < this.nTrials; j++){
+					this.addRecordedTrial(i, j, trials.get(i).get(j).get());
+					DPrint.cl(this.debugCode, "Completed " + this.agentFactories[i].getAgentName() + " trial " + (j+1) + "/" + this.nTrials);
+				}
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException(e);
+		} catch(ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		} finally{
+			pool.shutdownNow();
+		}
+
+	}
+
+
+	/**
+	 * Adds a recorded trial to the plotter, starting a new agent in the plotter with the first trial of every agent after the first.
+	 * Trials are added in order: all trials of an agent before those of the next agent.
+	 * @param agentIndex the index of the agent factory of the trial's agent
+	 * @param trial the index of the trial
+	 * @param recording the recorded trial
+	 */
+	protected void addRecordedTrial(int agentIndex, int trial, PerformancePlotter.TrialRecording recording){
+		if(agentIndex > 0 && trial == 0){
+			this.plotter.startNewAgent(this.agentFactories[agentIndex].getAgentName());
+		}
+		this.plotter.addTrial(recording);
+	}
+
+
+	/**
+	 * Runs a trial for an agent in a new environment generated by the {@link #environmentFactory} and records it. If a trial seed is set,
+	 * the environment and agent are generated and the trial is run with a {@link RandomFactory} seeded for the trial.
+	 * @param agentIndex the index of the agent factory used to generate the agent to test.
+	 * @param trial the index of the trial
+	 * @return the recorded trial
+	 */
+	protected PerformancePlotter.TrialRecording runRecordedTrial(int agentIndex, int trial){
+
+		RandomFactory previous = RandomFactory.getThreadFactory();
+		if(this.trialSeed != null){
+			RandomFactory.setThreadFactory(new RandomFactory(this.trialSeed + 1000003L * agentIndex + trial));
+		}
+
+		try{
+			Environment env = this.environmentFactory.generateEnvironment();
+			LearningAgent agent = this.agentFactories[agentIndex].generateAgent();
+
+			PerformancePlotter.TrialRecording recording = new PerformancePlotter.TrialRecording();
+			EnvironmentServer server = new EnvironmentServer(env, recording);
+
+			if(this.trialLengthIsInEpisodes){
+				for(int i = 0; i < this.trialLength; i++){
+					agent.runLearningEpisode(server);
+					recording.endEpisode();
+					server.resetEnvironment();
+				}
+			}
+			else{
+				int stepsRemaining = this.trialLength;
+				while(stepsRemaining > 0){
+					Episode ea = agent.runLearningEpisode(server, stepsRemaining);
+					stepsRemaining -= ea.numTimeSteps()-1; //-1  because we want to subtract the number of actions, not the number of states seen
+					recording.endEpisode();
+					server.resetEnvironment();
+				}
+			}
+
+			return recording;
+		} finally{
+			RandomFactory.setThreadFactory(previous);
+		}
+
+	}
 	
 	
 	
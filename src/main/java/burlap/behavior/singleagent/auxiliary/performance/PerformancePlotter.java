@@ -42,6 +42,10 @@ import java.util.List;
  * providing the name of the new agent to be tested. Since the constructor takes the name of the first agent, this method does not have to be called for
  * the first agent. When all testing for all agents is complete, a call to the {@link #endTrialsForCurrentAgent()} method should be made.
  * <p>
+ * Trials may also be recorded away from the plotter, for example on other threads, with a {@link TrialRecording} that observes the
+ * trial's environment. A completed recording is added with the {@link #addTrial(TrialRecording)} method, which produces the same data as
+ * if the plotter had observed the trial itself. Recordings should be added from a single thread in the order in which the trials should appear.
+ * <p>
  * To ensure proper use of this class, it is highly reccomended that the {@link LearningAlgorithmExperimenter} class is used, since it handles all of these
  * method calls behind the scenes.
  * <p>
@@ -415,6 +419,36 @@ public class PerformancePlotter extends JFrame implements EnvironmentObserver {
 	}
 	
 	
+	/**
+	 * Adds a trial of the current agent that was recorded with a {@link TrialRecording}, exactly as if the plotter had
+	 * observed it: the recorded steps and episodes are replayed between calls to {@link #startNewTrial()} and {@link #endTrial()}.
+	 * As with observed steps, the recording is ignored if data collection is turned off (see {@link #toggleDataCollection(boolean)}).
+	 * @param recording the recorded trial
+	 */
+	public void addTrial(TrialRecording recording){
+
+		if(!this.collectData){
+			return;
+		}
+
+		this.startNewTrial();
+
+		synchronized(this){
+			for(List<Double> episode : recording.episodeRewards){
+				for(double r : episode){
+					this.curTrial.stepIncrement(r);
+					this.curTimeStep++;
+				}
+				this.curTrial.setupForNewEpisode();
+				this.curEpisode++;
+			}
+		}
+
+		this.endTrial();
+
+	}
+	
+	
 	/**
 	 * Informs the plotter that data collecton for a new agent should begin.
 	 * If the current agent is already set to the agent name provided, then a warning message is printed and nothing changes.
@@ -1322,6 +1356,82 @@ public class PerformancePlotter extends JFrame implements EnvironmentObserver {
 	}
 	
 	
+
+
+	/**
+	 * An {@link EnvironmentObserver} that records the rewards of each episode of a trial, so that the trial can be added to a
+	 * {@link PerformancePlotter} with {@link #addTrial(TrialRecording)} after it completes. Each recording should observe a single
+	 * trial, and {@link #endEpisode()} must be called at the end of each of its episodes.
+	 */
+	public static class TrialRecording implements EnvironmentObserver {
+
+		/**
+		 * The rewards of each completed episode
+		 */
+		protected List<List<Double>> episodeRewards = new ArrayList<List<Double>>();
+
+		/**
+		 * The rewards of the current episode
+		 */
+		protected List<Double> curEpisodeRewards = new ArrayList<Double>();
+
+		/**
+		 * The total number of recorded steps
+		 */
+		protected int numSteps = 0;
+
+
+		@Override
+		public void observeEnvironmentActionInitiation(State o, burlap.mdp.core.action.Action action) {
+			//do nothing
+		}
+
+		@Override
+		public void observeEnvironmentInteraction(EnvironmentOutcome eo) {
+			this.curEpisodeRewards.add(eo.r);
+			this.numSteps++;
+		}
+
+		@Override
+		public void observeEnvironmentReset(Environment resetEnvironment) {
+			//do nothing
+		}
+
+		/**
+		 * Informs the recording that all data for the last episode has been collected.
+		 */
+		public void endEpisode(){
+			this.episodeRewards.add(this.curEpisodeRewards);
+			this.curEpisodeRewards = new ArrayList<Double>();
+		}
+
+		/**
+		 * Returns the number of completed episodes.
+		 * @return the number of completed episodes
+		 */
+		public int numEpisodes(){
+			return this.episodeRewards.size();
+		}
+
+		/**
+		 * Returns the total number of recorded steps.
+		 * @return the total number of recorded steps
+		 */
+		public int numSteps(){
+			return this.numSteps;
+		}
+
+		/**
+		 * Returns the reward of each step of a completed episode.
+		 * @param episode the index of the episode
+		 * @return the reward of each step of the episode
+		 */
+		public List<Double> episodeRewards(int episode){
+			return this.episodeRewards.get(episode);
+		}
+
+	}
+
 	
 	/**
 	 * A class for a mutable boolean
@@ -5,17 +5,30 @@ import burlap.behavior.policy.BoltzmannQPolicy;
 import burlap.behavior.policy.Policy;
 import burlap.behavior.singleagent.Episode;
 import burlap.behavior.singleagent.learnfromdemo.CustomRewardModel;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners.DifferentiableDP;
 import burlap.behavior.singleagent.learnfromdemo.mlirl.support.BoltzmannPolicyGradient;
 import burlap.behavior.singleagent.learnfromdemo.mlirl.support.DifferentiableQFunction;
 import burlap.behavior.singleagent.learnfromdemo.mlirl.support.DifferentiableRF;
+import burlap.behavior.singleagent.planning.Planner;
 import burlap.behavior.valuefunction.QProvider;
-import burlap.datastructures.HashedAggregator;
+import burlap.behavior.valuefunction.QValue;
+import burlap.datastructures.BoltzmannDistribution;
 import burlap.debugtools.DPrint;
 import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+import burlap.statehashing.simple.SimpleHashableStateFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * An implementation of Maximum-likelihood Inverse Reinforcement Learning [1]. This class takes as input (from an
@@ -30,6 +43,12 @@ import java.util.Map;
  * The gradient ascent will stop either after a fixed number of steps or until the change in likelihood is smaller
  * than some threshold. If the max number of steps is set to -1, then it will continue until the change in likelihood
  * is smaller than the threshold.
+ * <p>
+ * The log-likelihood and its gradient are computed from the Boltzmann policy at each distinct state of the expert trajectories, which is evaluated
+ * once per computation and shared by all trajectories that visit the state (as identified by the planner's {@link HashableStateFactory}).
+ * The planner plans from each distinct state on the calling thread. If the planner is a {@link DifferentiableDP}, whose Q-values and
+ * Q-value gradients are read-only once it has planned, the policies of the distinct states are then evaluated in parallel; see {@link #setNumThreads(int)}.
+ * The trajectories are split into shards that are summed on separate threads into primitive arrays, which are added together at the end.
  *
  *
  *
@@ -68,6 +87,16 @@ public class MLIRL {
 	 */
 	protected int debugCode = 625420;
 
+	/**
+	 * The number of threads used to evaluate the log-likelihood and its gradient
+	 */
+	protected int numThreads = 1;
+
+	/**
+	 * The thread pool used by {@link #performIRL()} for all its parallel evaluations; null when it is not running
+	 */
+	protected ExecutorService pool = null;
+
 
 	/**
 	 * Initializes.
@@ -128,10 +157,49 @@ public class MLIRL {
 	}
 
 
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the number of threads used to evaluate the log-likelihood and its gradient. The default is 1. The trajectories are always summed
+	 * in parallel shards, but the Boltzmann policies of the distinct states are only evaluated in parallel if the planner is a {@link DifferentiableDP};
+	 * with any other planner, they are planned and evaluated one at a time on the calling thread, as with a single thread.
+	 * {@link #performIRL()} creates one pool of this many threads for the whole gradient ascent.
+	 * @param numThreads the number of threads, which must be at least 1
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1){
+			throw new RuntimeException("MLIRL requires at least one thread; " + numThreads + " were requested.");
+		}
+		this.numThreads = numThreads;
+	}
+
+
 	/**
-	 * Runs gradient ascent.
+	 * Runs gradient ascent. If more than one thread is used, a single thread pool is used for every evaluation of the log-likelihood and its gradient,
+	 * and shut down when gradient ascent ends.
 	 */
 	public void performIRL(){
+		boolean ownsPool = this.pool == null && this.numThreads > 1;
+		if(ownsPool){
+			this.pool = Executors.newFixedThreadPool(this.numThreads);
+		}
+		try{
+			this.runGradientAscent();
+		} finally{
+			if(ownsPool){
+				this.pool.shutdown();
+				this.pool = null;
+			}
+		}
+	}
+
+
+	/**
+	 * Runs gradient ascent with the current thread pool, if any.
+	 */
+	protected void runGradientAscent(){
 
 		DifferentiableRF rf = this.request.getRf();
 
@@ -194,11 +262,11 @@ public class MLIRL {
 	public double logLikelihood(){
 
 		double [] weights = this.request.getEpisodeWeights();
-		List<Episode> exampleTrajectories = this.request.getExpertEpisodes();
+		double [] logLikes = this.trajectoryLogLikelihoods();
 
 		double sum = 0.;
-		for(int i = 0; i < exampleTrajectories.size(); i++){
-			sum += this.logLikelihoodOfTrajectory(exampleTrajectories.get(i), weights[i]);
+		for(int i = 0; i < logLikes.length; i++){
+			sum += logLikes[i] * weights[i];
 		}
 
 		return sum;
@@ -206,6 +274,51 @@ public class MLIRL {
 	}
 
 
+	/**
+	 * Computes and returns the log-likelihood of each expert trajectory under the current reward function parameters, ignoring the episode weights.
+	 * @return the log-likelihood of each expert trajectory, in the order of the expert episodes
+	 */
+	public double [] trajectoryLogLikelihoods(){
+
+		final int n = this.request.getExpertEpisodes().size();
+		final Map<HashableState, StatePolicy> policies = this.evaluatePolicies(false);
+		final HashableStateFactory hashingFactory = this.hashingFactory();
+
+		final double [] logLikes = new double[n];
+		this.runShards(n, this.numShards(n), new ShardTask() {
+			@Override
+			public void run(int shard, int start, int end) {
+				trajectoryLogLikelihoods(policies, hashingFactory, start, end, logLikes);
+			}
+		});
+
+		return logLikes;
+
+	}
+
+
+	/**
+	 * Computes the log-likelihood of a range of the expert trajectories from evaluated policies, ignoring the episode weights.
+	 * @param policies the evaluated policies returned by {@link #evaluatePolicies(boolean)}
+	 * @param hashingFactory the {@link HashableStateFactory} with which the policies are identified
+	 * @param start the first trajectory of the range
+	 * @param end the trajectory after the last of the range
+	 * @param logLikes the array in which the log-likelihood of trajectory i is stored at index i
+	 */
+	protected void trajectoryLogLikelihoods(Map<HashableState, StatePolicy> policies, HashableStateFactory hashingFactory, int start, int end, double [] logLikes){
+		List<Episode> exampleTrajectories = this.request.getExpertEpisodes();
+		for(int i = start; i < end; i++){
+			Episode ea = exampleTrajectories.get(i);
+			double logLike = 0.;
+			for(int t = 0; t < ea.numTimeSteps()-1; t++){
+				StatePolicy sp = policies.get(hashingFactory.hashState(ea.state(t)));
+				logLike += Math.log(sp.actionProb(ea.action(t)));
+			}
+			logLikes[i] = logLike;
+		}
+	}
+
+
 	/**
 	 * Computes and returns the log-likelihood of the given trajectory under the current reward function parameters and weights it by the given weight.
 	 * @param ea the trajectory
@@ -233,37 +346,154 @@ public class MLIRL {
 	 * @return the gradient of the log-likelihood of all trajectories
 	 */
 	public FunctionGradient logLikelihoodGradient(){
-		HashedAggregator<Integer> gradientSum = new HashedAggregator<Integer>();
 
-		double [] weights = this.request.getEpisodeWeights();
-		List<Episode> exampleTrajectories = this.request.getExpertEpisodes();
+		final double [] weights = this.request.getEpisodeWeights();
+		final List<Episode> exampleTrajectories = this.request.getExpertEpisodes();
+		final Map<HashableState, StatePolicy> policies = this.evaluatePolicies(true);
+		final HashableStateFactory hashingFactory = this.hashingFactory();
+		final int numParameters = this.request.getRf().numParameters();
+
+		final double [][] sums = new double[this.numShards(exampleTrajectories.size())][];
+		this.runShards(exampleTrajectories.size(), sums.length, new ShardTask() {
+			@Override
+			public void run(int shard, int start, int end) {
+				double [] sum = new double[numParameters];
+				for(int i = start; i < end; i++){
+					Episode ea = exampleTrajectories.get(i);
+					double weight = weights[i];
+					for(int t = 0; t < ea.numTimeSteps()-1; t++){
+						StatePolicy sp = policies.get(hashingFactory.hashState(ea.state(t)));
+						sp.addLogGradient(ea.action(t), weight, sum);
+					}
+				}
+				sums[shard] = sum;
+			}
+		});
 
-		for(int i = 0; i < exampleTrajectories.size(); i++){
-			Episode ea = exampleTrajectories.get(i);
-			double weight = weights[i];
+		double [] sum = sums[0];
+		for(int i = 1; i < sums.length; i++){
+			addToVector(sum, sums[i]);
+		}
+
+		FunctionGradient gradient = new FunctionGradient.SparseGradient();
+		for(int i = 0; i < sum.length; i++){
+			if(sum[i] != 0.){
+				gradient.put(i, sum[i]);
+			}
+		}
+
+		return gradient;
+	}
+
+
+	/**
+	 * Plans from each distinct state of the expert trajectories and evaluates the Boltzmann policy, and optionally the gradient of its log,
+	 * for the actions taken in it. If the planner is a {@link DifferentiableDP}, the states are evaluated in parallel after planning from all of them;
+	 * otherwise, each state is evaluated right after planning from it.
+	 * @param gradients whether to evaluate the gradients of the log policy
+	 * @return the evaluated policy of each distinct state
+	 */
+	protected Map<HashableState, StatePolicy> evaluatePolicies(final boolean gradients){
+
+		HashableStateFactory hashingFactory = this.hashingFactory();
+		Map<HashableState, StatePolicy> policies = new LinkedHashMap<HashableState, StatePolicy>();
+		for(Episode ea : this.request.getExpertEpisodes()){
 			for(int t = 0; t < ea.numTimeSteps()-1; t++){
-				this.request.getPlanner().planFromState(ea.state(t));
-				FunctionGradient policyGrad = this.logPolicyGrad(ea.state(t), ea.action(t));
-				//weigh it by trajectory strength
-				for(FunctionGradient.PartialDerivative pd : policyGrad.getNonZeroPartialDerivatives()){
-					double newVal = pd.value * weight;
-					gradientSum.add(pd.parameterId, newVal);
+				HashableState sh = hashingFactory.hashState(ea.state(t));
+				StatePolicy sp = policies.get(sh);
+				if(sp == null){
+					sp = new StatePolicy(ea.state(t));
+					policies.put(sh, sp);
+				}
+				if(!sp.actions.contains(ea.action(t))){
+					sp.actions.add(ea.action(t));
 				}
-
 			}
 		}
 
-		FunctionGradient gradient = new FunctionGradient.SparseGradient(gradientSum.size());
-		for(Map.Entry<Integer, Double> e : gradientSum.entrySet()){
-			gradient.put(e.getKey(), e.getValue());
+		Planner planner = this.request.getPlanner();
+		final List<StatePolicy> states = new ArrayList<StatePolicy>(policies.values());
+		if(this.numThreads > 1 && planner instanceof DifferentiableDP){
+			for(StatePolicy sp : states){
+				planner.planFromState(sp.s);
+			}
+			this.runShards(states.size(), this.numShards(states.size()), new ShardTask() {
+				@Override
+				public void run(int shard, int start, int end) {
+					for(int i = start; i < end; i++){
+						states.get(i).evaluate(gradients);
+					}
+				}
+			});
+		}
+		else{
+			for(StatePolicy sp : states){
+				planner.planFromState(sp.s);
+				sp.evaluate(gradients);
+			}
 		}
 
-		return gradient;
+		return policies;
+	}
+
+
+	/**
+	 * Returns the planner's {@link HashableStateFactory}, or a {@link SimpleHashableStateFactory} if it has none.
+	 * @return the {@link HashableStateFactory} with which distinct states are identified
+	 */
+	protected HashableStateFactory hashingFactory(){
+		HashableStateFactory hashingFactory = this.request.getPlanner().getHashingFactory();
+		if(hashingFactory == null){
+			hashingFactory = new SimpleHashableStateFactory();
+		}
+		return hashingFactory;
 	}
 
 
+	protected int numShards(int n){
+		return Math.max(1, Math.min(this.numThreads, n));
+	}
 
 
+	/**
+	 * Splits the range [0, n) into contiguous shards and runs a task on each shard, on its own thread if there is more than one shard. The shards
+	 * run on the pool of {@link #performIRL()} while it is running, or else on a pool created for this call.
+	 * @param n the size of the range
+	 * @param numShards the number of shards
+	 * @param task the task
+	 */
+	protected void runShards(final int n, int numShards, final ShardTask task){
+		if(numShards == 1){
+			task.run(0, 0, n);
+			return;
+		}
+		final int shardSize = (n + numShards - 1) / numShards;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numShards);
+		for(int i = 0; i < numShards; i++){
+			final int shard = i;
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					task.run(shard, Math.min(n, shard*shardSize), Math.min(n, (shard+1)*shardSize));
+					return null;
+				}
+			});
+		}
+		ExecutorService pool = this.pool != null ? this.pool : Executors.newFixedThreadPool(numShards);
+		try{
+			for(Future<Object> result : pool.invokeAll(tasks)){
+				result.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException(e);
+		} catch(ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		} finally{
+			if(pool != this.pool){
+				pool.shutdown();
+			}
+		}
+	}
 
 
 	/**
@@ -302,4 +532,114 @@ public class MLIRL {
 	}
 
 
+
+
+	/**
+	 * A task over a contiguous shard of a range.
+	 */
+	protected interface ShardTask{
+		void run(int shard, int start, int end);
+	}
+
+
+	/**
+	 * The Boltzmann policy at a distinct state of the expert trajectories: the probability of each action taken in it, and, if evaluated,
+	 * the gradient of the log probability of each action taken in it as parallel arrays of parameter ids and partial derivatives.
+	 */
+	protected class StatePolicy{
+
+		protected State s;
+		protected List<Action> actions = new ArrayList<Action>(1);
+		protected double [] probs;
+		protected int [][] gradientIds;
+		protected double [][] gradientValues;
+
+		public StatePolicy(State s) {
+			this.s = s;
+		}
+
+		/**
+		 * Evaluates the policy, and optionally the gradient of its log, for the actions taken in this state from the planner's current Q-values.
+		 * @param gradients whether to evaluate the gradients of the log policy
+		 */
+		public void evaluate(boolean gradients){
+
+			DifferentiableQFunction planner = (DifferentiableQFunction)request.getPlanner();
+			double beta = request.getBoltzmannBeta();
+
+			List<QValue> qValues = ((QProvider)planner).qValues(this.s);
+			double [] qs = new double[qValues.size()];
+			for(int i = 0; i < qs.length; i++){
+				qs[i] = qValues.get(i).q;
+			}
+			double [] allProbs = new BoltzmannDistribution(qs, 1./beta).getProbabilities();
+
+			FunctionGradient [] qGradients = null;
+			if(gradients){
+				qGradients = new FunctionGradient[qs.length];
+				for(int i = 0; i < qs.length; i++){
+					qGradients[i] = planner.qGradient(this.s, qValues.get(i).a);
+				}
+				this.gradientIds = new int[this.actions.size()][];
+				this.gradientValues = new double[this.actions.size()][];
+			}
+
+			this.probs = new double[this.actions.size()];
+			for(int j = 0; j < this.actions.size(); j++){
+				int aind = -1;
+				for(int i = 0; i < qValues.size(); i++){
+					if(qValues.get(i).a.equals(this.actions.get(j))){
+						aind = i;
+						break;
+					}
+				}
+				this.probs[j] = aind == -1 ? 0. : allProbs[aind];
+
+				if(gradients){
+					if(aind == -1){
+						throw new RuntimeException("Error in computing BoltzmannPolicyGradient: Could not find query action in Q-value list.");
+					}
+					FunctionGradient gradient = BoltzmannPolicyGradient.computePolicyGradient(allProbs, qs, qGradients, aind, beta);
+					double invActProb = 1. / this.probs[j];
+					int n = gradient.getNonZeroPartialDerivatives().size();
+					this.gradientIds[j] = new int[n];
+					this.gradientValues[j] = new double[n];
+					int k = 0;
+					for(FunctionGradient.PartialDerivative pd : gradient.getNonZeroPartialDerivatives()){
+						this.gradientIds[j][k] = pd.parameterId;
+						this.gradientValues[j][k] = pd.value * invActProb;
+						k++;
+					}
+				}
+			}
+
+		}
+
+		/**
+		 * Returns the probability of an action taken in this state.
+		 * @param a the action
+		 * @return the probability of the action
+		 */
+		public double actionProb(Action a){
+			return this.probs[this.actions.indexOf(a)];
+		}
+
+		/**
+		 * Adds the weighted gradient of the log probability of an action taken in this state to a dense vector.
+		 * @param a the action
+		 * @param weight the weight
+		 * @param sum the dense vector
+		 */
+		public void addLogGradient(Action a, double weight, double [] sum){
+			int j = this.actions.indexOf(a);
+			int [] ids = this.gradientIds[j];
+			double [] values = this.gradientValues[j];
+			for(int k = 0; k < ids.length; k++){
+				sum[ids[k]] += values[k] * weight;
+			}
+		}
+
+	}
+
+
 }
@@ -6,10 +6,17 @@ import burlap.behavior.singleagent.learnfromdemo.mlirl.support.QGradientPlannerF
 import burlap.behavior.singleagent.planning.Planner;
 import burlap.debugtools.DPrint;
 import burlap.debugtools.RandomFactory;
+import burlap.statehashing.HashableState;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * An implementation of Multiple Intentions Maximum-likelihood Inverse Reinforcement Learning [1]. This algorithm
@@ -21,6 +28,17 @@ import java.util.Random;
  * At initialization, the reward function parameters for each behavior cluster will be randomly assigned values between
  * -1 and 1. If you want to change this behavior, subclass this object and override the
  * {@link #initializeClusterRFParameters(java.util.List)} method.
+ * <p>
+ * Each cluster has its own {@link burlap.behavior.singleagent.learnfromdemo.mlirl.MLIRL} instance and its own planner generated by the
+ * request's {@link QGradientPlannerFactory}, so clusters do not share any mutable planning state. With {@link #setNumThreads(int)}, the
+ * expectation and maximization steps run on a fixed-size thread pool: in the expectation step, the clusters plan concurrently and their
+ * trajectory log-likelihoods are then computed in concurrent shards of trajectories; in the maximization step, the gradient ascent of each
+ * cluster runs concurrently. The results are the same for any number of threads only if the planners are deterministic,
+ * such as {@link burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners.DifferentiableVI}: planners that sample, such as
+ * {@link burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners.DifferentiableSparseSampling} with a finite transition sample size,
+ * draw from random generators that all clusters share (typically the model's, from {@link RandomFactory}) in an order that depends on how the
+ * clusters are scheduled, so their results vary between runs with more than one thread. The log-likelihoods and gradients of
+ * each cluster can additionally be split across trajectories by setting the number of threads of its {@link MLIRL} instance (see {@link #getClusterMLIRLs()}).
  *
  * <p>
  * 1. Babes, Monica, et al. "Apprenticeship learning about multiple intentions." Proceedings of the 28th International Conference on Machine Learning (ICML-11). 2011.
@@ -47,11 +65,29 @@ public class MultipleIntentionsMLIRL {
 
 
 	/**
-	 * The {@link burlap.behavior.singleagent.learnfromdemo.mlirl.MLIRL} instance used to perform the maximization step
-	 * for each clusters reward function parameter values.
+	 * The {@link burlap.behavior.singleagent.learnfromdemo.mlirl.MLIRL} instance of each cluster, used to compute its trajectory likelihoods and
+	 * to perform the maximization step of its reward function parameter values.
+	 */
+	protected List<MLIRL> clusterMLIRLs;
+
+	/**
+	 * An {@link burlap.behavior.singleagent.learnfromdemo.mlirl.MLIRL} instance created for the source request with the MLIRL parameters
+	 * of this object. It is still created, and its debug printing toggled, but this class no longer uses it.
+	 * @deprecated each cluster now has its own instance, so that clusters can be processed concurrently; use {@link #getClusterMLIRLs()} instead.
 	 */
+	@Deprecated
 	protected MLIRL mlirlInstance;
 
+	/**
+	 * The number of threads on which clusters and trajectories are processed
+	 */
+	protected int numThreads = 1;
+
+	/**
+	 * The thread pool on which clusters are processed while {@link #performIRL()} runs; null otherwise.
+	 */
+	protected ExecutorService executor;
+
 	/**
 	 * The number of EM iterations to run.
 	 */
@@ -90,6 +126,10 @@ public class MultipleIntentionsMLIRL {
 
 		this.numEMIterations = emIterations;
 		this.mlirlInstance = new MLIRL(request, mlIRLLearningRate, maxMLIRLLikelihoodChange, maxMLIRLSteps);
+		this.clusterMLIRLs = new ArrayList<MLIRL>(this.clusterRequests.size());
+		for(MLIRLRequest clusterRequest : this.clusterRequests){
+			this.clusterMLIRLs.add(new MLIRL(clusterRequest, mlIRLLearningRate, maxMLIRLLikelihoodChange, maxMLIRLSteps));
+		}
 
 
 	}
@@ -102,19 +142,36 @@ public class MultipleIntentionsMLIRL {
 
 		int k = this.clusterPriors.length;
 
-		for(int i = 0; i < this.numEMIterations; i++){
+		if(this.numThreads > 1){
+			this.executor = Executors.newFixedThreadPool(this.numThreads);
+		}
 
-			DPrint.cl(this.debugCode, "Starting EM iteration " + (i+1) + "/" + this.numEMIterations);
+		try{
+			for(int i = 0; i < this.numEMIterations; i++){
+
+				DPrint.cl(this.debugCode, "Starting EM iteration " + (i+1) + "/" + this.numEMIterations);
+
+				final double [][] trajectoryPerClusterWeights = this.computePerClusterMLIRLWeights();
+				List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(k);
+				for(int j = 0; j < k; j++){
+					final int cluster = j;
+					tasks.add(new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							clusterRequests.get(cluster).setEpisodeWeights(trajectoryPerClusterWeights[cluster].clone());
+							clusterMLIRLs.get(cluster).performIRL();
+							return null;
+						}
+					});
+				}
+				this.runClusterTasks(tasks);
 
-			double [][] trajectoryPerClusterWeights = this.computePerClusterMLIRLWeights();
-			for(int j = 0; j < k; j++){
-				MLIRLRequest clusterRequest = this.clusterRequests.get(j);
-				clusterRequest.setEpisodeWeights(trajectoryPerClusterWeights[j].clone());
-				this.mlirlInstance.setRequest(clusterRequest);
-				this.mlirlInstance.performIRL();
 			}
-
-
+		} finally {
+			if(this.executor != null){
+				this.executor.shutdown();
+				this.executor = null;
+			}
 		}
 
 		DPrint.cl(this.debugCode, "Finished EM");
@@ -137,9 +194,7 @@ public class MultipleIntentionsMLIRL {
 		for(int i = 0; i < k; i++){
 			double logPrior = Math.log(this.clusterPriors[i]);
 
-			//set the IRL request for the current cluster
-			this.mlirlInstance.setRequest(this.clusterRequests.get(i));
-			double logTrajectory = this.mlirlInstance.logLikelihoodOfTrajectory(t, 1.);
+			double logTrajectory = this.clusterMLIRLs.get(i).logLikelihoodOfTrajectory(t, 1.);
 			double v = logTrajectory + logPrior;
 			probs[i] = v;
 			mx = Math.max(mx, v);
@@ -181,6 +236,34 @@ public class MultipleIntentionsMLIRL {
 	}
 
 
+	/**
+	 * Returns the {@link burlap.behavior.singleagent.learnfromdemo.mlirl.MLIRL} instance of each behavior cluster.
+	 * @return the {@link burlap.behavior.singleagent.learnfromdemo.mlirl.MLIRL} instance of each behavior cluster.
+	 */
+	public List<MLIRL> getClusterMLIRLs(){
+		return this.clusterMLIRLs;
+	}
+
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+
+	/**
+	 * Sets the number of threads of the pool on which {@link #performIRL()} runs the expectation and maximization steps. The default is 1.
+	 * In the expectation step, each cluster plans on its own thread, and the trajectory log-likelihoods of every cluster are then computed
+	 * in shards of trajectories. In the maximization step, each cluster runs its gradient ascent on its own thread.
+	 * @param numThreads the number of threads, which must be at least 1
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1){
+			throw new RuntimeException("Multiple intentions MLIRL requires at least one thread; " + numThreads + " were requested.");
+		}
+		this.numThreads = numThreads;
+	}
+
+
 	/**
 	 * Returns the behavior cluster prior probabilities.
 	 * @return the behavior cluster prior probabilities.
@@ -203,6 +286,9 @@ public class MultipleIntentionsMLIRL {
 	public void toggleDebugPrinting(boolean printDebug){
 		DPrint.toggleCode(this.debugCode, printDebug);
 		this.mlirlInstance.toggleDebugPrinting(printDebug);
+		for(MLIRL mlirl : this.clusterMLIRLs){
+			mlirl.toggleDebugPrinting(printDebug);
+		}
 	}
 
 
@@ -236,24 +322,48 @@ public class MultipleIntentionsMLIRL {
 		int k = this.clusterPriors.length;
 		int n = this.request.getExpertEpisodes().size();
 
-		double [][] newWeights = new double[k][n];
+		final double [][] newWeights = new double[k][n];
 
-		//first do pass computing log prior weighted likelihood of each trajectory
+		//first plan and evaluate the policy of each cluster in the states of the trajectories, one task per cluster
+		final List<Map<HashableState, MLIRL.StatePolicy>> policies = new ArrayList<Map<HashableState, MLIRL.StatePolicy>>(k);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(k);
 		for(int i = 0; i < k; i++){
-			double logPrior = Math.log(this.clusterPriors[i]);
-
-			//set the IRL request for the current cluster
-			this.mlirlInstance.setRequest(this.clusterRequests.get(i));
-
-			//compute the trajectory log-likelihoods and add them in
-			for(int j = 0; j < n; j++){
-				double trajectLogLikelihood = this.mlirlInstance.logLikelihoodOfTrajectory(
-						this.request.getExpertEpisodes().get(j), 1.);
+			policies.add(null);
+			final int cluster = i;
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					policies.set(cluster, clusterMLIRLs.get(cluster).evaluatePolicies(false));
+					return null;
+				}
+			});
+		}
+		this.runClusterTasks(tasks);
 
-				double val = logPrior + trajectLogLikelihood;
-				newWeights[i][j] = val;
+		//then compute the log prior weighted likelihood of each trajectory, one task per cluster and shard of trajectories
+		int numShards = Math.max(1, Math.min(this.numThreads, n));
+		final int shardSize = (n + numShards - 1) / numShards;
+		tasks = new ArrayList<Callable<Object>>(k*numShards);
+		for(int i = 0; i < k; i++){
+			final int cluster = i;
+			for(int j = 0; j < numShards; j++){
+				final int start = Math.min(n, j*shardSize);
+				final int end = Math.min(n, (j+1)*shardSize);
+				tasks.add(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						MLIRL mlirl = clusterMLIRLs.get(cluster);
+						mlirl.trajectoryLogLikelihoods(policies.get(cluster), mlirl.hashingFactory(), start, end, newWeights[cluster]);
+						double logPrior = Math.log(clusterPriors[cluster]);
+						for(int t = start; t < end; t++){
+							newWeights[cluster][t] += logPrior;
+						}
+						return null;
+					}
+				});
 			}
 		}
+		this.runClusterTasks(tasks);
 
 		//now pass through normalizing in log space, and then exponentiate to get back probability
 		//also maintain sum of entire matrix to normalize for new cluster priors
@@ -282,6 +392,31 @@ public class MultipleIntentionsMLIRL {
 	}
 
 
+	/**
+	 * Runs the given tasks, on the thread pool if {@link #performIRL()} is running with more than one thread, and otherwise in order on the calling thread.
+	 * @param tasks the tasks
+	 */
+	protected void runClusterTasks(List<Callable<Object>> tasks){
+		try{
+			if(this.executor == null){
+				for(Callable<Object> task : tasks){
+					task.call();
+				}
+				return;
+			}
+			for(Future<Object> result : this.executor.invokeAll(tasks)){
+				result.get();
+			}
+		} catch(ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		} catch(RuntimeException e){
+			throw e;
+		} catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+
 	/**
 	 * Given a matrix holding the log[Pr(c)] + log(Pr(t | c)] values in its entries, where
 	 * Pr(c) is the probability of the cluster and Pr(t | c)] is the probability of the trajectory given the cluster,
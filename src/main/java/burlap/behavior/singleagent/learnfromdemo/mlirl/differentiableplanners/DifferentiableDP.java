@@ -75,6 +75,12 @@ public abstract class DifferentiableDP extends DynamicProgramming implements Dif
 	 */
 	protected FunctionGradient performDPValueGradientUpdateOn(HashableState sh){
 
+		if(model.terminal(sh.s())){
+			//terminal states always have a state value of 0, so their value does not depend on the parameters
+			FunctionGradient vGradient = new FunctionGradient.SparseGradient();
+			this.valueGradient.put(sh, vGradient);
+			return vGradient;
+		}
 
 		//get q objects
 		List<QValue> Qs = this.qValues(sh.s());
@@ -1,25 +1,43 @@
 package burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners;
 
+import burlap.behavior.functionapproximation.FunctionGradient;
 import burlap.behavior.policy.BoltzmannQPolicy;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners.dpoperator.DifferentiableDPOperator;
 import burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners.dpoperator.DifferentiableSoftmaxOperator;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners.dpoperator.LinearGradientDPOperator;
 import burlap.behavior.singleagent.learnfromdemo.mlirl.support.DifferentiableRF;
+import burlap.behavior.singleagent.options.Option;
 import burlap.behavior.singleagent.planning.Planner;
+import burlap.behavior.singleagent.planning.stochastic.CompiledTransitionTable;
 import burlap.debugtools.DPrint;
 import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
 import burlap.mdp.singleagent.SADomain;
 import burlap.mdp.singleagent.model.FullModel;
+import burlap.mdp.singleagent.model.SampleModel;
 import burlap.mdp.singleagent.model.TransitionProb;
 import burlap.statehashing.HashableState;
 import burlap.statehashing.HashableStateFactory;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Performs Differentiable Value Iteration using the Boltzmann backup operator and a
  * {@link burlap.behavior.singleagent.learnfromdemo.mlirl.support.DifferentiableRF}. This class
  * behaves the same as the normal {@link burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration}
  * valueFunction except for being in the differentiable value function case.
+ * <p>
+ * If {@link #toggleCompiledTransitions(boolean)} is enabled, the reachable states are compiled into the {@link CompiledTransitionTable} returned by
+ * {@link #getCompiledTransitions()} and the values and value gradients are stored in dense primitive arrays indexed by state id and reward function parameter. Each sweep then
+ * performs the value and value gradient backups without querying the model, hashing states, or building {@link FunctionGradient} objects.
+ * In this mode, the rewards and reward gradients are taken from the {@link DifferentiableRF} and are recompiled every time VI is run, while
+ * the compiled transition dynamics are kept across calls to {@link #resetSolver()} and {@link #setModel(burlap.mdp.singleagent.model.SampleModel)}
+ * and reused as long as the reachable states are the same, as they are when MLIRL changes the reward function parameters.
+ * Call {@link #recomputeReachableStates()} if the transition dynamics change. Compiled sweeps can be split across threads with
+ * {@link #setNumThreads(int)}: the states are split into one contiguous partition per thread, which is updated in place while
+ * the values of other partitions are read from the previous sweep. Options are not supported in this mode.
  * @author James MacGlashan.
  */
 public class DifferentiableVI extends DifferentiableDP implements Planner {
@@ -58,6 +76,42 @@ public class DifferentiableVI extends DifferentiableDP implements Planner {
 
 	protected double												boltzBeta;
 
+
+	/**
+	 * The number of threads, and partitions of the state space, used for each compiled sweep
+	 */
+	protected int													numThreads = 1;
+
+
+	/**
+	 * The expected reward of each compiled action slot
+	 */
+	protected double []												slotRewards;
+
+
+	/**
+	 * The expected reward gradient of each compiled action slot; the gradient of slot j is stored at offset j*numParameters
+	 */
+	protected double []												slotRewardGradients;
+
+
+	/**
+	 * The value of each compiled state after the last compiled run of VI; null if VI has not been run on the compiled dynamics since the solver was reset
+	 */
+	protected double []												denseValues;
+
+
+	/**
+	 * The value gradient of each compiled state after the last compiled run of VI; the gradient of state i is stored at offset i*numParameters
+	 */
+	protected double []												denseValueGradients;
+
+
+	/**
+	 * The number of reward function parameters of the dense gradients
+	 */
+	protected int													numParameters;
+
 	/**
 	 * Initializes the valueFunction.
 	 * @param domain the domain in which to plan
@@ -87,6 +141,24 @@ public class DifferentiableVI extends DifferentiableDP implements Planner {
 	 */
 	public void recomputeReachableStates(){
 		this.foundReachableStates = false;
+		this.compiledTransitions = null;
+	}
+
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+
+	/**
+	 * Sets the number of threads, and partitions of the state space, used for each sweep on the compiled transition dynamics. The default is 1.
+	 * @param numThreads the number of threads to use for each compiled sweep; must be at least 1
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1){
+			throw new RuntimeException("Differentiable VI requires at least one thread; " + numThreads + " were requested.");
+		}
+		this.numThreads = numThreads;
 	}
 
 
@@ -120,9 +192,21 @@ public class DifferentiableVI extends DifferentiableDP implements Planner {
 
 	@Override
 	public void resetSolver(){
+		//the compiled dynamics do not depend on the reward function, so they are kept and reused if the reachable states are unchanged
+		CompiledTransitionTable ct = this.compiledTransitions;
 		super.resetSolver();
+		this.compiledTransitions = ct;
 		this.foundReachableStates = false;
 		this.hasRunVI = false;
+		this.denseValues = null;
+		this.denseValueGradients = null;
+	}
+
+	@Override
+	public void setModel(SampleModel model) {
+		CompiledTransitionTable ct = this.compiledTransitions;
+		super.setModel(model);
+		this.compiledTransitions = ct;
 	}
 
 	/**
@@ -137,6 +221,14 @@ public class DifferentiableVI extends DifferentiableDP implements Planner {
 			throw new RuntimeException("Cannot run VI until the reachable states have been found. Use the planFromState, performReachabilityFrom, addStateToStateSpace or addStatesToStateSpace methods at least once before calling runVI.");
 		}
 
+		if(this.useCompiledTransitions){
+			this.runCompiledVI();
+			return;
+		}
+
+		this.denseValues = null;
+		this.denseValueGradients = null;
+
 		Set<HashableState> states = valueFunction.keySet();
 
 		int i;
@@ -165,6 +257,404 @@ public class DifferentiableVI extends DifferentiableDP implements Planner {
 	}
 
 
+	/**
+	 * Runs VI on the compiled transition dynamics of the reachable states until the specified termination conditions are met, storing the values
+	 * and value gradients in dense arrays. The values are also stored in the value function.
+	 */
+	protected void runCompiledVI(){
+
+		CompiledTransitionTable ct = this.getCompiledTransitions();
+		this.numParameters = this.rf.numParameters();
+		int n = ct.numSourceStates();
+
+		int nParts = Math.max(1, Math.min(this.numThreads, n));
+		int [] partitions = new int[nParts+1];
+		for(int p = 0; p <= nParts; p++){
+			partitions[p] = (int)((long)n * p / nParts);
+		}
+
+		if(this.slotRewards == null || this.slotRewards.length != ct.numActionSlots() || this.slotRewardGradients.length != ct.numActionSlots()*this.numParameters){
+			this.slotRewards = new double[ct.numActionSlots()];
+			this.slotRewardGradients = new double[ct.numActionSlots()*this.numParameters];
+		}
+
+		double [] v = this.compiledValues(ct);
+		double [] g = new double[ct.numStates() * this.numParameters];
+		double [] vPrev = v;
+		double [] gPrev = g;
+		if(nParts > 1){
+			vPrev = v.clone();
+			gPrev = g.clone();
+		}
+
+		int maxActions = ct.maxActions();
+		SweepScratch [] scratch = new SweepScratch[nParts];
+		for(int p = 0; p < nParts; p++){
+			scratch[p] = new SweepScratch(maxActions, this.numParameters);
+		}
+
+		ForkJoinPool pool = nParts > 1 ? new ForkJoinPool(nParts) : null;
+		int i;
+		try{
+			this.runPartitions(pool, new CompileRewardsTask(ct, partitions, 0, nParts));
+
+			for(i = 0; i < this.maxIterations; i++){
+
+				double delta = this.runPartitions(pool, new DifferentiableSweepTask(ct, v, g, vPrev, gPrev, scratch, partitions, 0, nParts));
+				if(nParts > 1){
+					System.arraycopy(v, 0, vPrev, 0, v.length);
+					System.arraycopy(g, 0, gPrev, 0, g.length);
+				}
+
+				if(delta < this.maxDelta){
+					break; //approximated well enough; stop iterating
+				}
+
+			}
+		} finally {
+			if(pool != null){
+				pool.shutdown();
+			}
+		}
+
+		this.storeCompiledValues(ct, v);
+		this.valueGradient.clear();
+		this.denseValues = v;
+		this.denseValueGradients = g;
+
+		DPrint.cl(this.debugCode, "Passes: " + i);
+
+		this.hasRunVI = true;
+
+	}
+
+
+	/**
+	 * Returns the {@link CompiledTransitionTable} of the states in the value function, compiling it if the states have changed since it was last compiled.
+	 * @return the {@link CompiledTransitionTable} of the states in the value function
+	 */
+	@Override
+	public CompiledTransitionTable getCompiledTransitions(){
+
+		CompiledTransitionTable ct = this.compiledTransitions;
+		boolean valid = ct != null && ct.numSourceStates() == this.valueFunction.size();
+		if(valid){
+			for(HashableState sh : this.valueFunction.keySet()){
+				int id = ct.stateId(sh);
+				if(id == -1 || id >= ct.numSourceStates()){
+					valid = false;
+					break;
+				}
+			}
+		}
+
+		if(!valid){
+			this.compiledTransitions = null;
+			ct = super.getCompiledTransitions();
+			for(int j = 0; j < ct.numActionSlots(); j++){
+				if(ct.action(j) instanceof Option){
+					this.compiledTransitions = null;
+					throw new RuntimeException("Differentiable VI on compiled transition dynamics does not support options.");
+				}
+			}
+		}
+
+		return ct;
+	}
+
+
+	/**
+	 * Runs a partitioned task on the pool, or on the calling thread if there is no pool.
+	 * @param pool the pool, or null
+	 * @param task the task
+	 * @return the result of the task
+	 */
+	protected double runPartitions(ForkJoinPool pool, RecursiveTask<Double> task){
+		if(pool == null){
+			return task.invoke();
+		}
+		return pool.invoke(task);
+	}
+
+
+	/**
+	 * Computes the expected reward and expected reward gradient of the action slots of the given source states from the {@link DifferentiableRF}.
+	 * @param ct the compiled transition dynamics
+	 * @param begin the first source state
+	 * @param end the source state after the last
+	 */
+	protected void compileRewards(CompiledTransitionTable ct, int begin, int end){
+
+		int P = this.numParameters;
+		for(int i = begin; i < end; i++){
+			State s = ct.state(i).s();
+			for(int j = ct.actionsBegin(i); j < ct.actionsEnd(i); j++){
+				Action a = ct.action(j);
+				double r = 0.;
+				int offset = j*P;
+				Arrays.fill(this.slotRewardGradients, offset, offset + P, 0.);
+				for(int t = ct.transitionsBegin(j); t < ct.transitionsEnd(j); t++){
+					double p = ct.probability(t);
+					State sp = ct.state(ct.successor(t)).s();
+					r += p * this.rf.reward(s, a, sp);
+					for(FunctionGradient.PartialDerivative pd : this.rf.gradient(s, a, sp).getNonZeroPartialDerivatives()){
+						this.slotRewardGradients[offset + pd.parameterId] += p * pd.value;
+					}
+				}
+				this.slotRewards[j] = r;
+			}
+		}
+
+	}
+
+
+	/**
+	 * Performs the value and value gradient backups of a partition of the source states. Values and gradients of states in the partition
+	 * are read from, and written to, v and g; those of other states are read from vPrev and gPrev.
+	 * @param ct the compiled transition dynamics
+	 * @param v the values updated in place
+	 * @param g the value gradients updated in place
+	 * @param vPrev the values of the previous sweep
+	 * @param gPrev the value gradients of the previous sweep
+	 * @param begin the first source state of the partition
+	 * @param end the source state after the last in the partition
+	 * @return the maximum change in value
+	 */
+	protected double differentiableSweep(CompiledTransitionTable ct, double [] v, double [] g, double [] vPrev, double [] gPrev, int begin, int end){
+		return this.differentiableSweep(ct, v, g, vPrev, gPrev, begin, end, new SweepScratch(ct.maxActions(), this.numParameters));
+	}
+
+
+	/**
+	 * Performs the value and value gradient backups of a partition of the source states using the given scratch arrays, which must not be
+	 * used by any other partition at the same time. Values and gradients of states in the partition are read from, and written to, v and g;
+	 * those of other states are read from vPrev and gPrev.
+	 * @param ct the compiled transition dynamics
+	 * @param v the values updated in place
+	 * @param g the value gradients updated in place
+	 * @param vPrev the values of the previous sweep
+	 * @param gPrev the value gradients of the previous sweep
+	 * @param begin the first source state of the partition
+	 * @param end the source state after the last in the partition
+	 * @param scratch the scratch arrays of the partition
+	 * @return the maximum change in value
+	 */
+	protected double differentiableSweep(CompiledTransitionTable ct, double [] v, double [] g, double [] vPrev, double [] gPrev, int begin, int end, SweepScratch scratch){
+
+		int P = this.numParameters;
+		double [] weights = scratch.weights;
+		double [] row = scratch.row;
+		double [] qRow = scratch.qRow;
+		DifferentiableDPOperator op = this.getOperator();
+
+		double delta = 0.;
+		for(int i = begin; i < end; i++){
+
+			int aBegin = ct.actionsBegin(i);
+			int nActions = ct.actionsEnd(i) - aBegin;
+			if(nActions == 0){
+				continue;
+			}
+
+			double [] aqs = scratch.qs(nActions);
+			for(int j = 0; j < nActions; j++){
+				aqs[j] = this.compiledQ(ct, aBegin + j, v, vPrev, begin, end);
+			}
+
+			Arrays.fill(row, 0.);
+			if(op instanceof LinearGradientDPOperator){
+				((LinearGradientDPOperator)op).gradientWeights(aqs, weights);
+				for(int j = 0; j < nActions; j++){
+					if(weights[j] != 0.){
+						this.addCompiledQGradient(ct, aBegin + j, weights[j], g, gPrev, begin, end, row);
+					}
+				}
+			}
+			else{
+				FunctionGradient [] qGradients = scratch.qGradients(nActions);
+				for(int j = 0; j < nActions; j++){
+					Arrays.fill(qRow, 0.);
+					this.addCompiledQGradient(ct, aBegin + j, 1., g, gPrev, begin, end, qRow);
+					qGradients[j] = sparseGradient(qRow, 0, P);
+				}
+				for(FunctionGradient.PartialDerivative pd : op.gradient(aqs, qGradients).getNonZeroPartialDerivatives()){
+					row[pd.parameterId] = pd.value;
+				}
+			}
+
+			double newV = op.apply(aqs);
+			delta = Math.max(Math.abs(newV - v[i]), delta);
+			v[i] = newV;
+			System.arraycopy(row, 0, g, i*P, P);
+
+		}
+
+		return delta;
+	}
+
+
+	/**
+	 * The scratch arrays of a partition of a compiled sweep, which are reused by every sweep of a run of VI. Operators are given arrays whose
+	 * length is the number of actions of a state, so the Q-value and Q-value gradient arrays are kept for each distinct number of actions.
+	 */
+	protected static class SweepScratch {
+
+		protected double [][] qs;
+		protected FunctionGradient [][] qGradients;
+		protected double [] weights;
+		protected double [] row;
+		protected double [] qRow;
+
+		/**
+		 * Initializes.
+		 * @param maxActions the maximum number of actions of a source state
+		 * @param numParameters the number of reward function parameters
+		 */
+		public SweepScratch(int maxActions, int numParameters){
+			this.qs = new double[maxActions+1][];
+			this.qGradients = new FunctionGradient[maxActions+1][];
+			this.weights = new double[maxActions];
+			this.row = new double[numParameters];
+			this.qRow = new double[numParameters];
+		}
+
+		/**
+		 * Returns the Q-value array for states with the given number of actions.
+		 * @param nActions the number of actions
+		 * @return the Q-value array of length nActions
+		 */
+		public double [] qs(int nActions){
+			double [] q = this.qs[nActions];
+			if(q == null){
+				q = new double[nActions];
+				this.qs[nActions] = q;
+			}
+			return q;
+		}
+
+		/**
+		 * Returns the Q-value gradient array for states with the given number of actions.
+		 * @param nActions the number of actions
+		 * @return the Q-value gradient array of length nActions
+		 */
+		public FunctionGradient [] qGradients(int nActions){
+			FunctionGradient [] q = this.qGradients[nActions];
+			if(q == null){
+				q = new FunctionGradient[nActions];
+				this.qGradients[nActions] = q;
+			}
+			return q;
+		}
+
+	}
+
+
+	/**
+	 * Computes the Q-value of a compiled action slot. Values of successors in [begin, end) are read from v; others from vPrev.
+	 */
+	protected double compiledQ(CompiledTransitionTable ct, int slot, double [] v, double [] vPrev, int begin, int end){
+		double sum = 0.;
+		for(int t = ct.transitionsBegin(slot); t < ct.transitionsEnd(slot); t++){
+			int sp = ct.successor(t);
+			sum += ct.probability(t) * (sp >= begin && sp < end ? v[sp] : vPrev[sp]);
+		}
+		return this.slotRewards[slot] + this.gamma * sum;
+	}
+
+
+	/**
+	 * Adds the weighted Q-value gradient of a compiled action slot to a dense row. Gradients of successors in [begin, end) are read from g; others from gPrev.
+	 */
+	protected void addCompiledQGradient(CompiledTransitionTable ct, int slot, double weight, double [] g, double [] gPrev, int begin, int end, double [] row){
+		int P = this.numParameters;
+		int offset = slot*P;
+		for(int k = 0; k < P; k++){
+			row[k] += weight * this.slotRewardGradients[offset + k];
+		}
+		for(int t = ct.transitionsBegin(slot); t < ct.transitionsEnd(slot); t++){
+			int sp = ct.successor(t);
+			double [] sg = sp >= begin && sp < end ? g : gPrev;
+			double c = weight * this.gamma * ct.probability(t);
+			int spOffset = sp*P;
+			for(int k = 0; k < P; k++){
+				row[k] += c * sg[spOffset + k];
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the compiled action slot of the given state and action, or -1 if the state is not a compiled source state or VI has not been
+	 * run on the compiled transition dynamics since the solver was last reset.
+	 */
+	protected int compiledSlot(State s, Action a){
+		if(this.denseValueGradients == null){
+			return -1;
+		}
+		CompiledTransitionTable ct = this.compiledTransitions;
+		int id = ct.stateId(this.hashingFactory.hashState(s));
+		if(id == -1 || id >= ct.numSourceStates()){
+			return -1;
+		}
+		for(int j = ct.actionsBegin(id); j < ct.actionsEnd(id); j++){
+			if(ct.action(j).equals(a)){
+				return j;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Returns a sparse {@link FunctionGradient} of the non-zero entries of a range of a dense array.
+	 */
+	protected static FunctionGradient sparseGradient(double [] dense, int offset, int numParameters){
+		FunctionGradient gradient = new FunctionGradient.SparseGradient();
+		for(int k = 0; k < numParameters; k++){
+			double pd = dense[offset + k];
+			if(pd != 0.){
+				gradient.put(k, pd);
+			}
+		}
+		return gradient;
+	}
+
+
+	@Override
+	public double qValue(State s, Action a) {
+		int slot = this.compiledSlot(s, a);
+		if(slot == -1){
+			return super.qValue(s, a);
+		}
+		return this.compiledQ(this.compiledTransitions, slot, this.denseValues, this.denseValues, 0, 0);
+	}
+
+
+	@Override
+	public FunctionGradient valueGradient(State s) {
+		if(this.denseValueGradients == null){
+			return super.valueGradient(s);
+		}
+		int id = this.compiledTransitions.stateId(this.hashingFactory.hashState(s));
+		if(id == -1){
+			return new FunctionGradient.SparseGradient();
+		}
+		return sparseGradient(this.denseValueGradients, id*this.numParameters, this.numParameters);
+	}
+
+
+	@Override
+	protected FunctionGradient computeQGradient(State s, Action ga) {
+		int slot = this.compiledSlot(s, ga);
+		if(slot == -1){
+			return super.computeQGradient(s, ga);
+		}
+		double [] row = new double[this.numParameters];
+		this.addCompiledQGradient(this.compiledTransitions, slot, 1., this.denseValueGradients, this.denseValueGradients, 0, 0, row);
+		return sparseGradient(row, 0, this.numParameters);
+	}
+
+
 	/**
 	 * Adds the given state to the state space over which VI iterates.
 	 * @param s the state to add
@@ -247,4 +737,115 @@ public class DifferentiableVI extends DifferentiableDP implements Planner {
 	}
 
 
+
+
+	/**
+	 * A {@link RecursiveTask} that runs an operation on a range of partitions by recursively splitting it, and returns the maximum of the
+	 * results of the partitions.
+	 */
+	protected abstract class PartitionTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		protected CompiledTransitionTable ct;
+		protected int [] partitions;
+		protected int begin;
+		protected int end;
+
+		public PartitionTask(CompiledTransitionTable ct, int[] partitions, int begin, int end) {
+			this.ct = ct;
+			this.partitions = partitions;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		protected Double compute() {
+			if(this.end - this.begin == 1){
+				return this.run(this.partitions[this.begin], this.partitions[this.end]);
+			}
+
+			int mid = (this.begin + this.end) / 2;
+			PartitionTask left = this.split(this.begin, mid);
+			PartitionTask right = this.split(mid, this.end);
+			left.fork();
+			double rightResult = right.compute();
+			double leftResult = left.join();
+			return Math.max(leftResult, rightResult);
+		}
+
+		/**
+		 * Runs the operation on a partition of the source states.
+		 * @param sBegin the first source state of the partition
+		 * @param sEnd the source state after the last in the partition
+		 * @return the result of the partition
+		 */
+		protected abstract double run(int sBegin, int sEnd);
+
+		/**
+		 * Returns a task for a sub range of partitions.
+		 */
+		protected abstract PartitionTask split(int begin, int end);
+
+	}
+
+
+	/**
+	 * Compiles the rewards and reward gradients of the action slots of a range of partitions.
+	 */
+	protected class CompileRewardsTask extends PartitionTask {
+
+		private static final long serialVersionUID = 1L;
+
+		public CompileRewardsTask(CompiledTransitionTable ct, int[] partitions, int begin, int end) {
+			super(ct, partitions, begin, end);
+		}
+
+		@Override
+		protected double run(int sBegin, int sEnd) {
+			compileRewards(this.ct, sBegin, sEnd);
+			return 0.;
+		}
+
+		@Override
+		protected PartitionTask split(int begin, int end) {
+			return new CompileRewardsTask(this.ct, this.partitions, begin, end);
+		}
+	}
+
+
+	/**
+	 * Performs the value and value gradient backups of a range of partitions and returns the maximum change in value.
+	 */
+	protected class DifferentiableSweepTask extends PartitionTask {
+
+		private static final long serialVersionUID = 1L;
+
+		protected double [] v;
+		protected double [] g;
+		protected double [] vPrev;
+		protected double [] gPrev;
+		protected SweepScratch [] scratch;
+
+		public DifferentiableSweepTask(CompiledTransitionTable ct, double[] v, double[] g, double[] vPrev, double[] gPrev, SweepScratch[] scratch, int[] partitions, int begin, int end) {
+			super(ct, partitions, begin, end);
+			this.v = v;
+			this.g = g;
+			this.vPrev = vPrev;
+			this.gPrev = gPrev;
+			this.scratch = scratch;
+		}
+
+		@Override
+		protected double run(int sBegin, int sEnd) {
+			return differentiableSweep(this.ct, this.v, this.g, this.vPrev, this.gPrev, sBegin, sEnd, this.scratch[this.begin]);
+		}
+
+		@Override
+		protected PartitionTask split(int begin, int end) {
+			return new DifferentiableSweepTask(this.ct, this.v, this.g, this.vPrev, this.gPrev, this.scratch, this.partitions, begin, end);
+		}
+	}
+
+
 }
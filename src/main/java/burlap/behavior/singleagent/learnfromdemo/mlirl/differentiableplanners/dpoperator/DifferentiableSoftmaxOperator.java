@@ -8,7 +8,7 @@ import burlap.behavior.singleagent.planning.stochastic.dpoperator.SoftmaxOperato
  * Provides the gradient for the {@link SoftmaxOperator}
  * @author James MacGlashan.
  */
-public class DifferentiableSoftmaxOperator extends SoftmaxOperator implements DifferentiableDPOperator{
+public class DifferentiableSoftmaxOperator extends SoftmaxOperator implements LinearGradientDPOperator{
 
 	public DifferentiableSoftmaxOperator() {
 		super();
@@ -41,4 +41,23 @@ public class DifferentiableSoftmaxOperator extends SoftmaxOperator implements Di
 		return vGradient;
 	}
 
+	@Override
+	public void gradientWeights(double[] qs, double[] weights) {
+
+		double maxBetaScaled = BoltzmannPolicyGradient.maxBetaScaled(qs, this.beta);
+		double logSum = BoltzmannPolicyGradient.logSum(qs, maxBetaScaled, this.beta);
+
+		double v = 0.;
+		for(int i = 0; i < qs.length; i++){
+			weights[i] = Math.exp(this.beta * qs[i] - logSum);
+			v += weights[i] * qs[i];
+		}
+
+		//d(sum_i p_i q_i) = sum_i p_i dq_i + sum_i q_i dp_i, where dp_i = beta p_i (dq_i - sum_j p_j dq_j)
+		for(int i = 0; i < qs.length; i++){
+			weights[i] *= 1. + this.beta * (qs[i] - v);
+		}
+
+	}
+
 }
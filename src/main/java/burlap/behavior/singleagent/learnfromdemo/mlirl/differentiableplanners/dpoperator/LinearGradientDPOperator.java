@@ -0,0 +1,17 @@
+package burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners.dpoperator;
+
+/**
+ * A {@link DifferentiableDPOperator} whose gradient is a weighted sum of the gradients of the Q-values on which it operates, with weights
+ * that depend only on the Q-values. This allows planners that store gradients in dense arrays to compute the operator's gradient
+ * without building {@link burlap.behavior.functionapproximation.FunctionGradient} objects.
+ */
+public interface LinearGradientDPOperator extends DifferentiableDPOperator {
+
+	/**
+	 * Computes the weight of each Q-value gradient in the gradient of this DP operator.
+	 * @param qs the q-values
+	 * @param weights the array to which the weight of each Q-value gradient is written
+	 */
+	void gradientWeights(double [] qs, double [] weights);
+
+}
@@ -9,7 +9,7 @@ import java.util.Set;
  * Provides the sub gradient of the {@link BellmanOperator} max operator.
  * @author James MacGlashan.
  */
-public class SubDifferentiableMaxOperator extends BellmanOperator implements DifferentiableDPOperator {
+public class SubDifferentiableMaxOperator extends BellmanOperator implements LinearGradientDPOperator {
 
 	@Override
 	public FunctionGradient gradient(double[] qs, FunctionGradient[] qGradients) {
@@ -32,4 +32,18 @@ public class SubDifferentiableMaxOperator extends BellmanOperator implements Dif
 
 		return gradient;
 	}
+
+	@Override
+	public void gradientWeights(double[] qs, double[] weights) {
+
+		int mxi = 0;
+		for(int i = 0; i < qs.length; i++){
+			weights[i] = 0.;
+			if(qs[i] > qs[mxi]){
+				mxi = i;
+			}
+		}
+		weights[mxi] = 1.;
+
+	}
 }
@@ -0,0 +1,25 @@
+package burlap.behavior.singleagent.learning.experiencereplay;
+
+/**
+ * An {@link ExperienceMemory} that samples experiences in proportion to priorities derived from their temporal difference (TD) errors,
+ * as in prioritized experience replay [1]. Because prioritized sampling biases the updates, each sampled experience has an importance-sampling
+ * weight that learners should multiply their update for the experience by, and learners should report the TD errors of the sampled
+ * experiences back to the memory after updating, so that their priorities are kept current.
+ * <p>
+ * [1] Schaul, Tom, et al. "Prioritized experience replay." arXiv preprint arXiv:1511.05952 (2015).
+ */
+public interface PrioritizedMemory extends ExperienceMemory {
+
+	/**
+	 * Returns the importance-sampling weights of the experiences returned by the most recent {@link #sampleExperiences(int)} call, in the same order.
+	 * @return the importance-sampling weights of the most recently sampled experiences
+	 */
+	double [] lastSampleWeights();
+
+	/**
+	 * Updates the priorities of the experiences returned by the most recent {@link #sampleExperiences(int)} call with their TD errors.
+	 * @param tdErrors the TD errors of the most recently sampled experiences, in the order they were sampled
+	 */
+	void updatePriorities(double [] tdErrors);
+
+}
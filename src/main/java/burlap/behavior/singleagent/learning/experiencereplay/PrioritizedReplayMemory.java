@@ -0,0 +1,388 @@
+package burlap.behavior.singleagent.learning.experiencereplay;
+
+import burlap.datastructures.SumTree;
+import burlap.debugtools.RandomFactory;
+import burlap.mdp.singleagent.environment.EnvironmentOutcome;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A fixed size {@link PrioritizedMemory} implementing the proportional and rank-based variants of prioritized experience replay [1]. When
+ * this memory is full and a new experience is added, the oldest experience is deleted to make room. The priority of an experience is its
+ * absolute TD error plus a small epsilon; new experiences get the largest priority reported so far, so that every experience is likely to
+ * be replayed at least once. The probability of sampling an experience is:
+ * <ul>
+ *     <li>{@link Prioritization#PROPORTIONAL}: proportional to its priority to the power alpha. The weights are stored in a {@link SumTree},
+ *     so sampling an experience and updating its priority take O(lg(n)) time.</li>
+ *     <li>{@link Prioritization#RANK_BASED}: proportional to (1/rank)^alpha, where rank is the rank of its priority. As in [1], the ranks
+ *     are approximated by the positions of the experiences in a binary max-heap of priorities, so updating a priority takes O(lg(n)) time, and a rank is sampled
+ *     from the fixed rank distribution by binary search of its precomputed cumulative weights.</li>
+ * </ul>
+ * The {@link #sampleExperiences(int)} method draws one experience from each of n equal probability segments of the distribution, with replacement,
+ * and returns n experiences whenever the memory is not empty. The importance-sampling weight of an experience with sampling probability P is (N*P)^-beta, normalized
+ * by the largest possible weight so that weights are at most 1.
+ * <p>
+ * [1] Schaul, Tom, et al. "Prioritized experience replay." arXiv preprint arXiv:1511.05952 (2015).
+ */
+public class PrioritizedReplayMemory implements PrioritizedMemory {
+
+	/**
+	 * The ways in which the sampling probability of an experience is derived from its priority
+	 */
+	public enum Prioritization{
+		PROPORTIONAL,
+		RANK_BASED
+	}
+
+
+	protected Prioritization prioritization;
+
+	protected int next = 0;
+	protected EnvironmentOutcome[] memory;
+	protected int size = 0;
+
+	/**
+	 * How strongly priorities skew sampling; 0 is uniform sampling
+	 */
+	protected double alpha = 0.6;
+
+	/**
+	 * How strongly importance-sampling weights correct for prioritized sampling; 1 is a full correction
+	 */
+	protected double beta = 0.4;
+
+	/**
+	 * The value added to absolute TD errors so that no experience has zero priority
+	 */
+	protected double epsilon = 1e-6;
+
+	/**
+	 * The priority of each memory slot
+	 */
+	protected double [] priorities;
+
+	/**
+	 * The largest priority so far, given to new experiences
+	 */
+	protected double maxPriority = 1.;
+
+	/**
+	 * The priorities to the power alpha for {@link Prioritization#PROPORTIONAL} sampling
+	 */
+	protected SumTree tree;
+
+	/**
+	 * The memory slots in a max-heap ordered by priority for {@link Prioritization#RANK_BASED} sampling
+	 */
+	protected int [] heap;
+
+	/**
+	 * The position of each memory slot in the heap
+	 */
+	protected int [] heapPosition;
+
+	/**
+	 * The cumulative rank weights; element r is the sum of (1/k)^alpha for k = 1, ..., r
+	 */
+	protected double [] rankCumulative;
+
+	/**
+	 * The memory slots of the most recently sampled experiences
+	 */
+	protected int [] lastSlots = new int[0];
+
+	/**
+	 * The importance-sampling weights of the most recently sampled experiences
+	 */
+	protected double [] lastWeights = new double[0];
+
+
+	/**
+	 * Initializes with proportional prioritization.
+	 * @param size the number of experiences to store
+	 */
+	public PrioritizedReplayMemory(int size) {
+		this(size, Prioritization.PROPORTIONAL);
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param size the number of experiences to store
+	 * @param prioritization how the sampling probability of an experience is derived from its priority
+	 */
+	public PrioritizedReplayMemory(int size, Prioritization prioritization) {
+		if(size < 1){
+			throw new RuntimeException("PrioritizedReplayMemory requires memory size > 0; was request size of " + size);
+		}
+		this.prioritization = prioritization;
+		this.memory = new EnvironmentOutcome[size];
+		this.priorities = new double[size];
+		if(prioritization == Prioritization.PROPORTIONAL){
+			this.tree = new SumTree(size);
+		}
+		else{
+			this.heap = new int[size];
+			this.heapPosition = new int[size];
+			this.computeRankCumulative();
+		}
+	}
+
+
+	public Prioritization getPrioritization() {
+		return prioritization;
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+	/**
+	 * Sets how strongly priorities skew sampling; 0 is uniform sampling. The default is 0.6.
+	 * @param alpha the priority exponent
+	 */
+	public void setAlpha(double alpha) {
+		this.alpha = alpha;
+		if(this.prioritization == Prioritization.PROPORTIONAL){
+			for(int i = 0; i < this.size; i++){
+				this.tree.set(i, Math.pow(this.priorities[i], alpha));
+			}
+		}
+		else{
+			this.computeRankCumulative();
+		}
+	}
+
+	public double getBeta() {
+		return beta;
+	}
+
+	/**
+	 * Sets how strongly importance-sampling weights correct for prioritized sampling; 1 is a full correction. The default is 0.4;
+	 * [1] anneals it to 1 over the course of learning.
+	 * @param beta the importance-sampling exponent
+	 */
+	public void setBeta(double beta) {
+		this.beta = beta;
+	}
+
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	/**
+	 * Sets the value added to absolute TD errors so that no experience has zero priority. The default is 1e-6.
+	 * @param epsilon the value added to absolute TD errors
+	 */
+	public void setEpsilon(double epsilon) {
+		this.epsilon = epsilon;
+	}
+
+
+	/**
+	 * Returns the number of stored experiences
+	 * @return the number of stored experiences
+	 */
+	public int size(){
+		return this.size;
+	}
+
+
+	/**
+	 * Returns the priority of the experience in a memory slot; slots are filled in order and reused from 0 once the memory is full.
+	 * @param slot the memory slot
+	 * @return the priority of the experience in the slot
+	 */
+	public double priority(int slot){
+		return this.priorities[slot];
+	}
+
+
+	@Override
+	public void addExperience(EnvironmentOutcome eo) {
+		int slot = this.next;
+		boolean isNew = this.size < this.memory.length;
+		this.memory[slot] = eo;
+		this.next = (this.next+1) % this.memory.length;
+		this.size = Math.min(this.size+1, this.memory.length);
+
+		if(this.prioritization == Prioritization.RANK_BASED && isNew){
+			this.priorities[slot] = 0.;
+			this.placeInHeap(slot, this.size-1);
+		}
+		this.setPriority(slot, this.maxPriority);
+	}
+
+
+	@Override
+	public List<EnvironmentOutcome> sampleExperiences(int n) {
+
+		if(this.size == 0){
+			this.lastSlots = new int[0];
+			this.lastWeights = new double[0];
+			return new ArrayList<EnvironmentOutcome>();
+		}
+
+		Random r = RandomFactory.getMapped(0);
+		List<EnvironmentOutcome> samples = new ArrayList<EnvironmentOutcome>(n);
+		this.lastSlots = new int[n];
+		this.lastWeights = new double[n];
+
+		//probability of the least likely experience, for normalizing weights
+		double minProb;
+		double total;
+		if(this.prioritization == Prioritization.PROPORTIONAL){
+			total = this.tree.total();
+			minProb = this.tree.min() / total;
+		}
+		else{
+			total = this.rankCumulative[this.size];
+			minProb = Math.pow(this.size, -this.alpha) / total;
+		}
+
+		for(int i = 0; i < n; i++){
+			double u = (i + r.nextDouble()) / n;
+			int slot;
+			double prob;
+			if(this.prioritization == Prioritization.PROPORTIONAL){
+				slot = Math.min(this.tree.sample(u), this.size-1);
+				prob = this.tree.get(slot) / total;
+			}
+			else{
+				int rank = this.sampleRank(u * total);
+				slot = this.heap[rank-1];
+				prob = Math.pow(rank, -this.alpha) / total;
+			}
+			this.lastSlots[i] = slot;
+			this.lastWeights[i] = Math.pow(prob / minProb, -this.beta);
+			samples.add(this.memory[slot]);
+		}
+
+		return samples;
+	}
+
+
+	@Override
+	public double [] lastSampleWeights() {
+		return this.lastWeights;
+	}
+
+
+	@Override
+	public void updatePriorities(double [] tdErrors) {
+		int n = Math.min(tdErrors.length, this.lastSlots.length);
+		for(int i = 0; i < n; i++){
+			double p = Math.abs(tdErrors[i]) + this.epsilon;
+			this.maxPriority = Math.max(this.maxPriority, p);
+			this.setPriority(this.lastSlots[i], p);
+		}
+	}
+
+
+	@Override
+	public void resetMemory() {
+		this.size = 0;
+		this.next = 0;
+		this.maxPriority = 1.;
+		this.lastSlots = new int[0];
+		this.lastWeights = new double[0];
+		if(this.tree != null){
+			this.tree.clear();
+		}
+	}
+
+
+	/**
+	 * Sets the priority of a memory slot and updates the sampling structures.
+	 * @param slot the memory slot
+	 * @param p the priority
+	 */
+	protected void setPriority(int slot, double p){
+		double old = this.priorities[slot];
+		this.priorities[slot] = p;
+		if(this.prioritization == Prioritization.PROPORTIONAL){
+			this.tree.set(slot, Math.pow(p, this.alpha));
+		}
+		else if(p > old){
+			this.siftUp(this.heapPosition[slot]);
+		}
+		else{
+			this.siftDown(this.heapPosition[slot]);
+		}
+	}
+
+
+	/**
+	 * Returns the smallest rank r such that the cumulative rank weight of r exceeds the given value.
+	 * @param value the cumulative rank weight value
+	 * @return the sampled rank, between 1 and the memory size
+	 */
+	protected int sampleRank(double value){
+		int lo = 1;
+		int hi = this.size;
+		while(lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if(this.rankCumulative[mid] > value){
+				hi = mid;
+			}
+			else{
+				lo = mid+1;
+			}
+		}
+		return lo;
+	}
+
+
+	/**
+	 * Computes the cumulative rank weights for the current alpha.
+	 */
+	protected void computeRankCumulative(){
+		this.rankCumulative = new double[this.memory.length+1];
+		for(int k = 1; k <= this.memory.length; k++){
+			this.rankCumulative[k] = this.rankCumulative[k-1] + Math.pow(k, -this.alpha);
+		}
+	}
+
+
+	protected void siftUp(int pos){
+		int slot = this.heap[pos];
+		while(pos > 0){
+			int parent = (pos-1) / 2;
+			if(this.priorities[this.heap[parent]] >= this.priorities[slot]){
+				break;
+			}
+			this.placeInHeap(this.heap[parent], pos);
+			pos = parent;
+		}
+		this.placeInHeap(slot, pos);
+	}
+
+
+	protected void siftDown(int pos){
+		int slot = this.heap[pos];
+		while(true){
+			int child = 2*pos + 1;
+			if(child >= this.size){
+				break;
+			}
+			if(child+1 < this.size && this.priorities[this.heap[child+1]] > this.priorities[this.heap[child]]){
+				child++;
+			}
+			if(this.priorities[this.heap[child]] <= this.priorities[slot]){
+				break;
+			}
+			this.placeInHeap(this.heap[child], pos);
+			pos = child;
+		}
+		this.placeInHeap(slot, pos);
+	}
+
+
+	protected void placeInHeap(int slot, int pos){
+		this.heap[pos] = slot;
+		this.heapPosition[slot] = pos;
+	}
+
+}
@@ -0,0 +1,459 @@
+package burlap.behavior.singleagent.learning.lspi;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An LSTDQ [1] solver that accumulates its samples incrementally and in place. LSTDQ finds the weights w that solve A w = b, where
+ * A = I/c + sum_i phi_i (phi_i - gamma phi'_i)^T and b = sum_i r_i phi_i, phi_i are the state-action features of sample i, phi'_i are the
+ * features of its next state and the action the evaluated policy selects there, and c is the identity scalar with which LSPI initializes
+ * its inverse matrix. A is split into a policy-independent part, G = I/c + sum_i phi_i phi_i^T, and a policy-dependent part,
+ * gamma sum_i phi_i phi'_i^T. G and b are accumulated as samples are added with {@link #addSample(double[], double)}, so samples collected
+ * later can be added without starting over. Both parts are accumulated over only the non-zero features of the
+ * samples, into preallocated primitive arrays, so sparse feature vectors are cheap and adding samples does not allocate matrices.
+ * <p>
+ * The policy-dependent part needs the features of every sample again each time a policy is evaluated. By default, the non-zero features of each
+ * sample are kept on the heap for this, which costs an int and a double (12 bytes) per non-zero feature of each sample, plus two array headers
+ * per sample, on top of the numFeatures^2 doubles of G. When the caller already stores the sample features, for example in a {@link SARSFeatureStore},
+ * keeping them can be disabled with {@link #setKeepSampleFeatures(boolean)}, and the caller then provides them to each
+ * {@link #solve(SampleFeatures, NextFeatures, int)} call instead.
+ * <p>
+ * The policy-dependent part can be accumulated in parallel over shards of the samples (see {@link #setNumThreads(int)}); each shard
+ * accumulates its own matrix, the shard matrices are summed, and the system is then solved once. The solution is the same as that of the
+ * sequential Sherman-Morrison updates of {@link LSPI}, up to floating point error.
+ * <p>
+ * 1. Lagoudakis, Michail G., and Ronald Parr. "Least-squares policy iteration." The Journal of Machine Learning Research 4 (2003): 1107-1149.
+ */
+public class IncrementalLSTDQ {
+
+	/**
+	 * The discount factor
+	 */
+	protected double gamma;
+
+	/**
+	 * The identity scalar c; the accumulated matrix starts as I/c
+	 */
+	protected double identityScalar;
+
+	/**
+	 * The number of features
+	 */
+	protected int numFeatures = 0;
+
+	/**
+	 * The policy-independent part of A, row-major
+	 */
+	protected double [] gram = new double[0];
+
+	/**
+	 * The vector b
+	 */
+	protected double [] b = new double[0];
+
+	/**
+	 * The number of samples added
+	 */
+	protected int numSamples = 0;
+
+	/**
+	 * Whether the non-zero features of each sample are kept
+	 */
+	protected boolean keepSampleFeatures = true;
+
+	/**
+	 * The ids of the non-zero features of each sample, if they are kept
+	 */
+	protected List<int[]> sampleIds = new ArrayList<int[]>();
+
+	/**
+	 * The values of the non-zero features of each sample, if they are kept
+	 */
+	protected List<double[]> sampleValues = new ArrayList<double[]>();
+
+	/**
+	 * The number of threads used to accumulate the policy-dependent part
+	 */
+	protected int numThreads = 1;
+
+	protected int [] idBuffer = new int[16];
+	protected double [] valueBuffer = new double[16];
+
+
+	/**
+	 * Initializes with no samples.
+	 * @param gamma the discount factor
+	 * @param identityScalar the identity scalar c; the accumulated matrix starts as I/c
+	 */
+	public IncrementalLSTDQ(double gamma, double identityScalar) {
+		this.gamma = gamma;
+		this.identityScalar = identityScalar;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the number of threads used to accumulate the policy-dependent part of A in {@link #solve(List)}. The default is 1.
+	 * @param numThreads the number of threads
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Returns whether the non-zero features of each sample are kept, so that {@link #solve(List)} and {@link #solve(NextFeatures, int)}
+	 * can be used.
+	 * @return true if the sample features are kept; false otherwise
+	 */
+	public boolean isKeepingSampleFeatures() {
+		return keepSampleFeatures;
+	}
+
+	/**
+	 * Sets whether the non-zero features of each sample are kept on the heap. If they are not, only G and b are accumulated as samples
+	 * are added, and the sample features must be provided to {@link #solve(SampleFeatures, NextFeatures, int)}. The default is true.
+	 * This can only be changed when there are no samples.
+	 * @param keepSampleFeatures whether to keep the non-zero features of each sample
+	 */
+	public void setKeepSampleFeatures(boolean keepSampleFeatures) {
+		if(this.numSamples > 0 && keepSampleFeatures != this.keepSampleFeatures){
+			throw new RuntimeException("IncrementalLSTDQ can only change whether it keeps sample features when it has no samples; call reset() first.");
+		}
+		this.keepSampleFeatures = keepSampleFeatures;
+	}
+
+	/**
+	 * Returns the number of samples added.
+	 * @return the number of samples added
+	 */
+	public int numSamples(){
+		return this.numSamples;
+	}
+
+	/**
+	 * Returns the number of features, which is the largest feature vector length seen.
+	 * @return the number of features
+	 */
+	public int numFeatures(){
+		return this.numFeatures;
+	}
+
+
+	/**
+	 * Adds a sample with a dense state-action feature vector.
+	 * @param phi the state-action features of the sample
+	 * @param r the reward of the sample
+	 */
+	public void addSample(double [] phi, double r){
+		int n = this.nonZero(phi, phi.length);
+		this.addSample(this.idBuffer, this.valueBuffer, n, r);
+	}
+
+
+	/**
+	 * Adds a sample with a sparse state-action feature vector.
+	 * @param ids the ids of the non-zero features
+	 * @param values the values of the non-zero features
+	 * @param n the number of non-zero features
+	 * @param r the reward of the sample
+	 */
+	public void addSample(int [] ids, double [] values, int n, double r){
+		int maxId = -1;
+		for(int i = 0; i < n; i++){
+			maxId = Math.max(maxId, ids[i]);
+		}
+		this.ensureFeatures(maxId+1);
+
+		int nf = this.numFeatures;
+		for(int i = 0; i < n; i++){
+			int row = ids[i]*nf;
+			double v = values[i];
+			for(int j = 0; j < n; j++){
+				this.gram[row + ids[j]] += v*values[j];
+			}
+			this.b[ids[i]] += r*v;
+		}
+		if(this.keepSampleFeatures){
+			this.sampleIds.add(Arrays.copyOf(ids, n));
+			this.sampleValues.add(Arrays.copyOf(values, n));
+		}
+		this.numSamples++;
+	}
+
+
+	/**
+	 * Solves for the weights given the next state-action features of every sample under the evaluated policy.
+	 * @param nextFeatures the dense next state-action features of each sample, in the order the samples were added
+	 * @return the weights
+	 */
+	public double [] solve(final List<double[]> nextFeatures){
+
+		if(nextFeatures.size() != this.numSamples()){
+			throw new RuntimeException("LSTDQ requires next state-action features for each of the " + this.numSamples() + " samples; received " + nextFeatures.size());
+		}
+		int maxLength = 0;
+		for(double [] f : nextFeatures){
+			maxLength = Math.max(maxLength, f.length);
+		}
+		return this.solve(new NextFeatures() {
+			@Override
+			public int features(int sample, double[] buffer) {
+				double [] f = nextFeatures.get(sample);
+				System.arraycopy(f, 0, buffer, 0, f.length);
+				return f.length;
+			}
+		}, maxLength);
+	}
+
+
+	/**
+	 * Solves for the weights given a source of the next state-action features of every sample under the evaluated policy, which writes
+	 * the features into a buffer rather than returning a new vector for each sample. When multiple threads are used, the source is called
+	 * concurrently for different samples. The sample features must be kept (see {@link #setKeepSampleFeatures(boolean)}).
+	 * @param nextFeatures the source of the dense next state-action features of each sample
+	 * @param numNextFeatures the largest length of the next state-action feature vectors
+	 * @return the weights
+	 */
+	public double [] solve(NextFeatures nextFeatures, int numNextFeatures){
+		if(!this.keepSampleFeatures){
+			throw new RuntimeException("IncrementalLSTDQ does not keep the sample features, so they must be provided to solve.");
+		}
+		return this.solve(null, nextFeatures, numNextFeatures);
+	}
+
+
+	/**
+	 * Solves for the weights given sources of the features and of the next state-action features of every sample under the evaluated policy.
+	 * When multiple threads are used, the sources are called concurrently for different samples.
+	 * @param sampleFeatures the source of the non-zero state-action features of each sample, which must be those with which the sample was added; null to use the kept sample features
+	 * @param nextFeatures the source of the dense next state-action features of each sample
+	 * @param numNextFeatures the largest length of the next state-action feature vectors
+	 * @return the weights
+	 */
+	public double [] solve(final SampleFeatures sampleFeatures, final NextFeatures nextFeatures, int numNextFeatures){
+
+		if(sampleFeatures == null && !this.keepSampleFeatures){
+			throw new RuntimeException("IncrementalLSTDQ does not keep the sample features, so they must be provided to solve.");
+		}
+
+		this.ensureFeatures(numNextFeatures);
+		final int nf = this.numFeatures;
+
+		//policy-dependent part over shards of the samples
+		int numShards = Math.min(this.numThreads, Math.max(1, this.numSamples()));
+		final double [][] partials = new double[numShards][];
+		if(numShards == 1){
+			partials[0] = this.accumulateNext(sampleFeatures, nextFeatures, 0, this.numSamples(), nf);
+		}
+		else{
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numShards);
+			final int shardSize = (this.numSamples() + numShards - 1) / numShards;
+			for(int i = 0; i < numShards; i++){
+				final int shard = i;
+				tasks.add(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						int start = shard*shardSize;
+						partials[shard] = accumulateNext(sampleFeatures, nextFeatures, start, Math.min(numSamples(), start+shardSize), nf);
+						return null;
+					}
+				});
+			}
+			this.runTasks(tasks, numShards);
+		}
+
+		DenseMatrix64F a = new DenseMatrix64F(nf, nf);
+		System.arraycopy(this.gram, 0, a.data, 0, nf*nf);
+		for(double [] partial : partials){
+			for(int i = 0; i < partial.length; i++){
+				a.data[i] -= this.gamma*partial[i];
+			}
+		}
+
+		DenseMatrix64F bv = DenseMatrix64F.wrap(nf, 1, this.b.clone());
+		DenseMatrix64F w = new DenseMatrix64F(nf, 1);
+		if(!CommonOps.solve(a, bv, w)){
+			DenseMatrix64F inv = new DenseMatrix64F(nf, nf);
+			CommonOps.pinv(a, inv);
+			CommonOps.mult(inv, bv, w);
+		}
+
+		return w.data;
+	}
+
+
+	/**
+	 * Removes all samples.
+	 */
+	public void reset(){
+		this.numFeatures = 0;
+		this.gram = new double[0];
+		this.b = new double[0];
+		this.numSamples = 0;
+		this.sampleIds.clear();
+		this.sampleValues.clear();
+	}
+
+
+	/**
+	 * Returns sum_i phi_i phi'_i^T over a range of samples.
+	 * @param sampleFeatures the state-action features of all samples; null to use the kept sample features
+	 * @param nextFeatures the next state-action features of all samples
+	 * @param start the first sample
+	 * @param end one past the last sample
+	 * @param nf the number of features
+	 * @return the accumulated matrix, row-major
+	 */
+	protected double [] accumulateNext(SampleFeatures sampleFeatures, NextFeatures nextFeatures, int start, int end, int nf){
+		double [] partial = new double[nf*nf];
+		int [] nextIds = new int[nf];
+		double [] nextValues = new double[nf];
+		double [] next = new double[nf];
+		int [] ids = null;
+		double [] values = null;
+		if(sampleFeatures != null){
+			ids = new int[nf];
+			values = new double[nf];
+		}
+		for(int s = start; s < end; s++){
+			int length = nextFeatures.features(s, next);
+			int nn = 0;
+			for(int j = 0; j < length; j++){
+				if(next[j] != 0.){
+					nextIds[nn] = j;
+					nextValues[nn] = next[j];
+					nn++;
+				}
+			}
+			int n;
+			if(sampleFeatures != null){
+				n = sampleFeatures.features(s, ids, values);
+			}
+			else{
+				ids = this.sampleIds.get(s);
+				values = this.sampleValues.get(s);
+				n = ids.length;
+			}
+			for(int i = 0; i < n; i++){
+				int row = ids[i]*nf;
+				double v = values[i];
+				for(int j = 0; j < nn; j++){
+					partial[row + nextIds[j]] += v*nextValues[j];
+				}
+			}
+		}
+		return partial;
+	}
+
+
+	/**
+	 * Writes the non-zero entries of a dense vector into the id and value buffers.
+	 * @param phi the dense vector
+	 * @param length the length of the vector
+	 * @return the number of non-zero entries
+	 */
+	protected int nonZero(double [] phi, int length){
+		if(this.idBuffer.length < length){
+			this.idBuffer = new int[length];
+			this.valueBuffer = new double[length];
+		}
+		int n = 0;
+		for(int i = 0; i < length; i++){
+			if(phi[i] != 0.){
+				this.idBuffer[n] = i;
+				this.valueBuffer[n] = phi[i];
+				n++;
+			}
+		}
+		return n;
+	}
+
+
+	/**
+	 * Grows the accumulated matrix and vector, if needed, to the given number of features; new features start with the identity prior.
+	 * @param nf the number of features
+	 */
+	protected void ensureFeatures(int nf){
+		if(nf <= this.numFeatures){
+			return;
+		}
+		double [] ngram = new double[nf*nf];
+		for(int i = 0; i < this.numFeatures; i++){
+			System.arraycopy(this.gram, i*this.numFeatures, ngram, i*nf, this.numFeatures);
+		}
+		for(int i = this.numFeatures; i < nf; i++){
+			ngram[i*nf + i] = 1. / this.identityScalar;
+		}
+		this.gram = ngram;
+		this.b = Arrays.copyOf(this.b, nf);
+		this.numFeatures = nf;
+	}
+
+
+	/**
+	 * Runs tasks on a thread pool and waits for them to finish.
+	 * @param tasks the tasks
+	 * @param numThreads the number of threads
+	 */
+	protected void runTasks(List<Callable<Object>> tasks, int numThreads){
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try{
+			List<Future<Object>> results = pool.invokeAll(tasks);
+			for(Future<Object> result : results){
+				result.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException(e);
+		} catch(ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		} finally{
+			pool.shutdown();
+		}
+	}
+
+
+
+	/**
+	 * A source of the state-action features of the samples, for solving when they are not kept.
+	 */
+	public interface SampleFeatures{
+
+		/**
+		 * Writes the non-zero state-action features of a sample into buffers.
+		 * @param sample the sample, in the order the samples were added
+		 * @param ids the buffer for the ids of the non-zero features, with a length of at least the number of features
+		 * @param values the buffer for the values of the non-zero features, with a length of at least the number of features
+		 * @return the number of non-zero features written
+		 */
+		int features(int sample, int [] ids, double [] values);
+
+	}
+
+
+	/**
+	 * A source of the dense next state-action features of the samples under an evaluated policy.
+	 */
+	public interface NextFeatures{
+
+		/**
+		 * Writes the next state-action features of a sample into a buffer.
+		 * @param sample the sample, in the order the samples were added
+		 * @param buffer the buffer, with a length of at least the number of features
+		 * @return the number of features written
+		 */
+		int features(int sample, double [] buffer);
+
+	}
+
+}
@@ -15,6 +15,7 @@ import burlap.behavior.singleagent.planning.Planner;
 import burlap.behavior.valuefunction.QProvider;
 import burlap.behavior.valuefunction.QValue;
 import burlap.debugtools.DPrint;
+import burlap.debugtools.RandomFactory;
 import burlap.mdp.auxiliary.common.ConstantStateGenerator;
 import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
@@ -23,9 +24,11 @@ import burlap.mdp.singleagent.environment.Environment;
 import burlap.mdp.singleagent.model.RewardFunction;
 import org.ejml.simple.SimpleMatrix;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 
 /**
@@ -137,6 +140,36 @@ public class LSPI extends MDPSolver implements QProvider, LearningAgent, Planner
 	 * The minimum number of new observations received from learning episodes before LSPI will be run again.
 	 */
 	protected int													minNewStepsForLearningPI = 100;
+
+	/**
+	 * The LSTDQ system of the samples of the dataset
+	 */
+	protected IncrementalLSTDQ										lstdq;
+
+	/**
+	 * The dataset whose samples were added to the LSTDQ system
+	 */
+	protected SARSData												lstdqDataset;
+
+	/**
+	 * The last sample added to the LSTDQ system
+	 */
+	protected SARS													lastLSTDQSample;
+
+	/**
+	 * Whether the state-action features of the samples are cached in a {@link SARSFeatureStore} between policy iterations
+	 */
+	protected boolean												cacheFeatures = false;
+
+	/**
+	 * The directory of the memory-mapped files of the feature cache; null to cache features on the heap
+	 */
+	protected File													featureCacheDirectory;
+
+	/**
+	 * The cached state-action features of the samples added to the LSTDQ system
+	 */
+	protected SARSFeatureStore										featureStore;
 	
 	
 	/**
@@ -165,6 +198,7 @@ public class LSPI extends MDPSolver implements QProvider, LearningAgent, Planner
 		this.saFeatures = saFeatures;
 		this.vfa = new DenseStateActionLinearVFA(saFeatures, 0.);
 		this.learningPolicy = new EpsilonGreedy(this, 0.1);
+		this.lstdq = new IncrementalLSTDQ(gamma, this.identityScalar);
 	}
 
 	/**
@@ -180,6 +214,7 @@ public class LSPI extends MDPSolver implements QProvider, LearningAgent, Planner
 		this.vfa = new DenseStateActionLinearVFA(saFeatures, 0.);
 		this.learningPolicy = new EpsilonGreedy(this, 0.1);
 		this.dataset = dataset;
+		this.lstdq = new IncrementalLSTDQ(gamma, this.identityScalar);
 	}
 
 
@@ -240,6 +275,8 @@ public class LSPI extends MDPSolver implements QProvider, LearningAgent, Planner
 	 */
 	public void setSaFeatures(DenseStateActionFeatures saFeatures) {
 		this.saFeatures = saFeatures;
+		this.lstdq.reset();
+		this.clearFeatureStore();
 	}
 
 	
@@ -257,6 +294,12 @@ public class LSPI extends MDPSolver implements QProvider, LearningAgent, Planner
 	 */
 	public void setIdentityScalar(double identityScalar) {
 		this.identityScalar = identityScalar;
+		IncrementalLSTDQ lstdq = new IncrementalLSTDQ(this.gamma, identityScalar);
+		lstdq.setNumThreads(this.lstdq.getNumThreads());
+		this.lstdq = lstdq;
+		this.clearFeatureStore();
+		this.lstdqDataset = null;
+		this.lastLSTDQSample = null;
 	}
 
 	
@@ -380,58 +423,216 @@ public class LSPI extends MDPSolver implements QProvider, LearningAgent, Planner
 
 	
 	/**
-	 * Runs LSTDQ on this object's current {@link SARSData} dataset.
+	 * Returns the number of threads used to accumulate the policy-dependent part of the LSTDQ system
+	 * @return the number of threads used to accumulate the policy-dependent part of the LSTDQ system
+	 */
+	public int getNumLSTDQThreads() {
+		return this.lstdq.getNumThreads();
+	}
+
+	/**
+	 * Sets the number of threads used to accumulate the policy-dependent part of the LSTDQ system; the samples are split into
+	 * a shard for each thread. The default is 1.
+	 * @param numThreads the number of threads
+	 */
+	public void setNumLSTDQThreads(int numThreads) {
+		this.lstdq.setNumThreads(numThreads);
+	}
+
+
+	/**
+	 * Returns whether the state-action features of the samples are cached between policy iterations.
+	 * @return true if the state-action features of the samples are cached; false otherwise
+	 */
+	public boolean isCachingFeatures() {
+		return cacheFeatures;
+	}
+
+	/**
+	 * Toggles whether the state-action features of the samples are cached between policy iterations in a {@link SARSFeatureStore}. When
+	 * caching, the features of each sample, and of its next state with every applicable action, are computed once, and each LSTDQ
+	 * iteration selects the greedy next actions and accumulates its system from the cached features, without evaluating the features
+	 * of any state. The cache is extended as samples are appended to the dataset, and rebuilt with the LSTDQ system (see {@link #LSTDQ()}) or if the state-action features change.
+	 * The default is false.
+	 * @param cacheFeatures whether to cache the state-action features of the samples
+	 */
+	public void toggleFeatureCaching(boolean cacheFeatures) {
+		this.cacheFeatures = cacheFeatures;
+		if(!cacheFeatures){
+			this.clearFeatureStore();
+		}
+	}
+
+	public File getFeatureCacheDirectory() {
+		return featureCacheDirectory;
+	}
+
+	/**
+	 * Sets the directory in which the feature cache is stored in memory-mapped temporary files, for datasets whose features do not fit in memory;
+	 * null stores the cache on the heap, which is the default. This method does not enable caching; see {@link #toggleFeatureCaching(boolean)}.
+	 * @param featureCacheDirectory the directory of the memory-mapped feature cache files; null to cache features on the heap
+	 */
+	public void setFeatureCacheDirectory(File featureCacheDirectory) {
+		this.featureCacheDirectory = featureCacheDirectory;
+		this.clearFeatureStore();
+	}
+
+
+	/**
+	 * Runs LSTDQ on this object's current {@link SARSData} dataset. The policy-independent part of the LSTDQ system is kept
+	 * in an {@link IncrementalLSTDQ} between calls, so only samples that were appended to the dataset since the last call are added to it;
+	 * the system is rebuilt if the dataset was replaced by another {@link SARSData} instance, shrank, or no longer holds the same
+	 * {@link SARS} instance at the position of the last added sample. Other in-place modifications of samples that were already added
+	 * are not detected. If features are cached (see {@link #toggleFeatureCaching(boolean)}),
+	 * the features of the samples and the next state-action features are read from the cache.
 	 * @return the new weight matrix as a {@link SimpleMatrix} object.
 	 */
 	public SimpleMatrix LSTDQ(){
-		
-		//set our policy
-		Policy p = new GreedyQPolicy(this);
-		
-		//first we want to get all the features for all of our states in our data set; this is important if our feature database generates new features on the fly
-		List<SSFeatures> features = new ArrayList<LSPI.SSFeatures>(this.dataset.size());
-		int nf = 0;
-		for(SARS sars : this.dataset.dataset){
-			SSFeatures transitionFeatures = new SSFeatures(this.saFeatures.features(sars.s, sars.a), this.saFeatures.features(sars.sp, p.action(sars.sp)));
-			features.add(transitionFeatures);
-			nf = Math.max(nf, transitionFeatures.sActionFeatures.length);
+
+		this.updateLSTDQSamples();
+
+		double [] weights;
+		if(this.featureStore != null){
+			final SARSFeatureStore store = this.featureStore;
+			final int [] selected = this.greedyNextActions(store);
+			weights = this.lstdq.solve(new IncrementalLSTDQ.SampleFeatures() {
+				@Override
+				public int features(int sample, int[] ids, double[] values) {
+					return store.saNonZeroFeatures(sample, ids, values);
+				}
+			}, new IncrementalLSTDQ.NextFeatures() {
+				@Override
+				public int features(int sample, double[] buffer) {
+					if(selected[sample] == -1){
+						return 0;
+					}
+					store.nextFeatures(sample, selected[sample], buffer);
+					return store.numFeatures();
+				}
+			}, store.numFeatures());
 		}
+		else{
 
-		SimpleMatrix B = SimpleMatrix.identity(nf).scale(this.identityScalar);
-		SimpleMatrix b = new SimpleMatrix(nf, 1);
-		
-		
-		
-		for(int i = 0; i < features.size(); i++){
+			//set our policy
+			Policy p = new GreedyQPolicy(this);
 
-			SimpleMatrix phi = this.phiConstructor(features.get(i).sActionFeatures, nf);
-			SimpleMatrix phiPrime = this.phiConstructor(features.get(i).sPrimeActionFeatures, nf);
-			double r = this.dataset.get(i).r;
-			
+			//get the next state-action features of our data set under the policy; this is important if our feature database generates new features on the fly
+			List<double[]> nextFeatures = new ArrayList<double[]>(this.dataset.size());
+			for(SARS sars : this.dataset.dataset){
+				nextFeatures.add(this.saFeatures.features(sars.sp, p.action(sars.sp)));
+			}
 
-			SimpleMatrix numerator = B.mult(phi).mult(phi.minus(phiPrime.scale(gamma)).transpose()).mult(B);
-			SimpleMatrix denomenatorM = phi.minus(phiPrime.scale(this.gamma)).transpose().mult(B).mult(phi);
-			double denomenator = denomenatorM.get(0) + 1;
-			
-			B = B.minus(numerator.scale(1./denomenator));
-			b = b.plus(phi.scale(r));
-			
-			//DPrint.cl(0, "updated matrix for row " + i + "/" + features.size());
-			
+			weights = this.lstdq.solve(nextFeatures);
 		}
-		
-		
-		SimpleMatrix w = B.mult(b);
+
+		SimpleMatrix w = new SimpleMatrix(weights.length, 1, true, weights);
 		
 		this.vfa = this.vfa.copy();
-		for(int i = 0; i < nf; i++){
-			this.vfa.setParameter(i, w.get(i, 0));
-		}
+		this.vfa.setStateActionWeights(weights.clone());
 		
 		return w;
 		
 		
 	}
+
+
+	/**
+	 * Adds the samples appended to the dataset since the last call to the {@link IncrementalLSTDQ} system. The system is rebuilt instead if
+	 * the dataset is a different instance, has fewer samples than were added, or holds a different {@link SARS} instance at the position of
+	 * the last added sample; earlier samples are not checked. If features are cached, the samples are also added to the
+	 * feature cache, which is rebuilt with the system or if the state-action features changed. The system then reads the features of the samples
+	 * from the cache instead of keeping its own copy of them.
+	 */
+	protected void updateLSTDQSamples(){
+		int added = this.lstdq.numSamples();
+		boolean rebuild = this.lstdqDataset != this.dataset || this.dataset.size() < added
+				|| (added > 0 && this.dataset.get(added-1) != this.lastLSTDQSample);
+		if(this.cacheFeatures && (this.featureStore == null || !this.featureStore.isValidFor(this.saFeatures))){
+			this.clearFeatureStore();
+			this.featureStore = new SARSFeatureStore(this.saFeatures, this.featureCacheDirectory);
+			rebuild = true;
+		}
+		boolean keepSampleFeatures = this.featureStore == null;
+		if(rebuild || this.lstdq.isKeepingSampleFeatures() != keepSampleFeatures){
+			this.lstdq.reset();
+			this.lstdq.setKeepSampleFeatures(keepSampleFeatures);
+			if(this.featureStore != null){
+				this.featureStore.clear();
+			}
+			added = 0;
+		}
+		int [] ids = new int[0];
+		double [] values = new double[0];
+		for(int i = added; i < this.dataset.size(); i++){
+			SARS sars = this.dataset.get(i);
+			if(this.featureStore != null){
+				this.featureStore.add(sars.s, sars.a, sars.r, sars.sp, this.applicableActions(sars.sp));
+				if(ids.length < this.featureStore.numFeatures()){
+					ids = new int[this.featureStore.numFeatures()];
+					values = new double[this.featureStore.numFeatures()];
+				}
+				int n = this.featureStore.saNonZeroFeatures(i, ids, values);
+				this.lstdq.addSample(ids, values, n, sars.r);
+			}
+			else{
+				this.lstdq.addSample(this.saFeatures.features(sars.s, sars.a), sars.r);
+			}
+			this.lastLSTDQSample = sars;
+		}
+		this.lstdqDataset = this.dataset;
+	}
+
+
+	/**
+	 * Selects the greedy next action of each sample in a feature cache under the current Q-function. As with {@link GreedyQPolicy}, ties are broken
+	 * uniformly randomly with {@link RandomFactory#getMapped(int)} 0, so the same actions are selected as by the policy.
+	 * @param store the feature cache
+	 * @return the index of the selected action among those applicable in the next state of each sample; -1 if no action is applicable
+	 */
+	protected int [] greedyNextActions(SARSFeatureStore store){
+		Random rand = RandomFactory.getMapped(0);
+		double [] weights = this.vfa.getStateActionWeights();
+		int [] selected = new int[store.size()];
+		int [] maxActions = new int[16];
+		for(int i = 0; i < selected.length; i++){
+			int n = store.numNextActions(i);
+			if(n == 0){
+				selected[i] = -1;
+				continue;
+			}
+			if(maxActions.length < n){
+				maxActions = new int[n];
+			}
+			int numMax = 1;
+			maxActions[0] = 0;
+			double maxQ = store.nextDot(i, 0, weights);
+			for(int j = 1; j < n; j++){
+				double q = store.nextDot(i, j, weights);
+				if(q == maxQ){
+					maxActions[numMax] = j;
+					numMax++;
+				}
+				else if(q > maxQ){
+					maxActions[0] = j;
+					numMax = 1;
+					maxQ = q;
+				}
+			}
+			selected[i] = maxActions[rand.nextInt(numMax)];
+		}
+		return selected;
+	}
+
+
+	/**
+	 * Releases the feature cache, if any.
+	 */
+	protected void clearFeatureStore(){
+		if(this.featureStore != null){
+			this.featureStore.clear();
+			this.featureStore = null;
+		}
+	}
 	
 	/**
 	 * Runs LSPI for either numIterations or until the change in the weight matrix is no greater than maxChange.
@@ -527,6 +728,8 @@ public class LSPI extends MDPSolver implements QProvider, LearningAgent, Planner
 	public void resetSolver() {
 		this.dataset.clear();
 		this.vfa.resetParameters();
+		this.lstdq.reset();
+		this.clearFeatureStore();
 	}
 	
 	
@@ -0,0 +1,593 @@
+package burlap.behavior.singleagent.learning.lspi;
+
+import burlap.behavior.functionapproximation.dense.DenseStateActionFeatures;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.state.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A columnar store of the precomputed features of SARS samples, so that LSPI does not need to recompute state-action features on every
+ * policy iteration. For each sample, the store keeps the state-action features phi(s, a), the reward, and the state-action features phi(s', a')
+ * of the next state with every action a' applicable in it, which is all that is needed to evaluate any greedy policy of a linear Q-function
+ * over the samples. Features are stored as fixed-width rows of doubles in chunks of primitive memory: either on the heap, or, for datasets that
+ * do not fit in memory, in memory-mapped temporary files in a given directory. Rewards, the next state-action rows of each sample, and
+ * the actions are stored in primitive arrays.
+ * <p>
+ * The features are only valid for the {@link DenseStateActionFeatures} with which the store was created (see {@link #isValidFor(DenseStateActionFeatures)}).
+ * Feature vectors may grow as features are generated on the fly: shorter vectors are padded with zeros, and a longer vector widens the stored rows.
+ * Rows are widened to at least double their width, so that features that grow one at a time only occasionally require copying the stored rows.
+ * <p>
+ * The rows can be read without copying them into a dense vector with {@link #saNonZeroFeatures(int, int[], double[])}, which reads the non-zero
+ * features of a sample directly from the chunk that stores it, so that an {@link IncrementalLSTDQ} solver does not need its own copy of them.
+ * <p>
+ * Memory-mapped files are unmapped and deleted when the store is cleared (see {@link #clear()}). Files that still exist when the JVM exits, because the
+ * store was never cleared or a file could not be deleted, are deleted by a single shutdown hook.
+ */
+public class SARSFeatureStore {
+
+	/**
+	 * The number of doubles in each chunk of feature memory
+	 */
+	protected static final int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * The state-action features
+	 */
+	protected DenseStateActionFeatures features;
+
+	/**
+	 * The directory of the memory-mapped files; null to store features on the heap
+	 */
+	protected File mappedDirectory;
+
+	/**
+	 * The length of the feature vectors; -1 until the first sample is added
+	 */
+	protected int numFeatures = -1;
+
+	/**
+	 * The number of samples
+	 */
+	protected int numSamples = 0;
+
+	/**
+	 * The reward of each sample
+	 */
+	protected double [] rewards = new double[16];
+
+	/**
+	 * The first next state-action row of each sample; element i+1 is one past the last row of sample i
+	 */
+	protected int [] nextStart = new int[17];
+
+	/**
+	 * The action id of each next state-action row
+	 */
+	protected int [] nextActions = new int[16];
+
+	/**
+	 * The actions by id
+	 */
+	protected List<Action> actions = new ArrayList<Action>();
+
+	/**
+	 * The id of each action
+	 */
+	protected Map<Action, Integer> actionIds = new HashMap<Action, Integer>();
+
+	/**
+	 * The state-action feature rows of the samples
+	 */
+	protected RowStore saRows;
+
+	/**
+	 * The next state-action feature rows
+	 */
+	protected RowStore nextRows;
+
+
+	/**
+	 * Initializes a store on the heap.
+	 * @param features the state-action features
+	 */
+	public SARSFeatureStore(DenseStateActionFeatures features) {
+		this(features, null);
+	}
+
+
+	/**
+	 * Initializes a store in memory-mapped files in the given directory, or on the heap if the directory is null.
+	 * @param features the state-action features
+	 * @param mappedDirectory the directory of the memory-mapped files; null to store features on the heap
+	 */
+	public SARSFeatureStore(DenseStateActionFeatures features, File mappedDirectory) {
+		this.features = features;
+		this.mappedDirectory = mappedDirectory;
+	}
+
+
+	/**
+	 * Returns whether the stored features were computed with the given state-action features.
+	 * @param features the state-action features
+	 * @return true if the stored features were computed with the given features; false otherwise
+	 */
+	public boolean isValidFor(DenseStateActionFeatures features){
+		return this.features == features;
+	}
+
+
+	/**
+	 * Adds a sample.
+	 * @param s the state
+	 * @param a the action taken
+	 * @param r the reward received
+	 * @param sp the next state
+	 * @param nextActions the actions applicable in the next state, in the order in which Q-values are computed for it
+	 */
+	public void add(State s, Action a, double r, State sp, List<Action> nextActions){
+
+		double [] phi = this.features.features(s, a);
+		double [][] nextPhis = new double[nextActions.size()][];
+		int width = phi.length;
+		for(int i = 0; i < nextPhis.length; i++){
+			nextPhis[i] = this.features.features(sp, nextActions.get(i));
+			width = Math.max(width, nextPhis[i].length);
+		}
+
+		if(this.saRows == null){
+			this.numFeatures = width;
+			this.saRows = this.newRowStore(width);
+			this.nextRows = this.newRowStore(width);
+		}
+		else if(width > this.numFeatures){
+			this.widen(width);
+		}
+
+		if(this.numSamples == this.rewards.length){
+			this.rewards = Arrays.copyOf(this.rewards, this.numSamples*2);
+			this.nextStart = Arrays.copyOf(this.nextStart, this.numSamples*2 + 1);
+		}
+		int start = this.nextStart[this.numSamples];
+		if(start + nextPhis.length > this.nextActions.length){
+			this.nextActions = Arrays.copyOf(this.nextActions, Math.max(start + nextPhis.length, this.nextActions.length*2));
+		}
+
+		this.saRows.add(phi);
+		for(int i = 0; i < nextPhis.length; i++){
+			this.nextRows.add(nextPhis[i]);
+			this.nextActions[start + i] = this.actionId(nextActions.get(i));
+		}
+		this.rewards[this.numSamples] = r;
+		this.nextStart[this.numSamples+1] = start + nextPhis.length;
+		this.numSamples++;
+
+	}
+
+
+	/**
+	 * Returns the number of samples.
+	 * @return the number of samples
+	 */
+	public int size(){
+		return this.numSamples;
+	}
+
+	/**
+	 * Returns the length of the feature vectors.
+	 * @return the length of the feature vectors; -1 if no sample has been added
+	 */
+	public int numFeatures(){
+		return this.numFeatures;
+	}
+
+	/**
+	 * Returns the reward of a sample.
+	 * @param i the sample
+	 * @return the reward of the sample
+	 */
+	public double reward(int i){
+		return this.rewards[i];
+	}
+
+	/**
+	 * Writes the non-zero state-action features of a sample into buffers, reading them directly from the stored row.
+	 * @param i the sample
+	 * @param ids the buffer for the ids of the non-zero features, with a length of at least {@link #numFeatures()}
+	 * @param values the buffer for the values of the non-zero features, with a length of at least {@link #numFeatures()}
+	 * @return the number of non-zero features
+	 */
+	public int saNonZeroFeatures(int i, int [] ids, double [] values){
+		return this.saRows.nonZero(i, this.numFeatures, ids, values);
+	}
+
+	/**
+	 * Copies the state-action features of a sample into a buffer.
+	 * @param i the sample
+	 * @param buffer the buffer, with a length of at least {@link #numFeatures()}
+	 */
+	public void saFeatures(int i, double [] buffer){
+		this.saRows.get(i, buffer, this.numFeatures);
+	}
+
+	/**
+	 * Returns the number of actions applicable in the next state of a sample.
+	 * @param i the sample
+	 * @return the number of actions applicable in the next state
+	 */
+	public int numNextActions(int i){
+		return this.nextStart[i+1] - this.nextStart[i];
+	}
+
+	/**
+	 * Returns an action applicable in the next state of a sample.
+	 * @param i the sample
+	 * @param j the index of the action among those applicable in the next state
+	 * @return the action
+	 */
+	public Action nextAction(int i, int j){
+		return this.actions.get(this.nextActions[this.nextStart[i] + j]);
+	}
+
+	/**
+	 * Copies the next state-action features of a sample for one of the actions applicable in the next state into a buffer.
+	 * @param i the sample
+	 * @param j the index of the action among those applicable in the next state
+	 * @param buffer the buffer, with a length of at least {@link #numFeatures()}
+	 */
+	public void nextFeatures(int i, int j, double [] buffer){
+		this.nextRows.get(this.nextStart[i] + j, buffer, this.numFeatures);
+	}
+
+	/**
+	 * Returns the dot product of the weights with the next state-action features of a sample for one of the actions applicable in the next state,
+	 * which is the Q-value of the action in the next state under a linear Q-function.
+	 * @param i the sample
+	 * @param j the index of the action among those applicable in the next state
+	 * @param weights the weights; null for all zero weights
+	 * @return the dot product
+	 */
+	public double nextDot(int i, int j, double [] weights){
+		if(weights == null){
+			return 0.;
+		}
+		return this.nextRows.dot(this.nextStart[i] + j, weights);
+	}
+
+
+	/**
+	 * Removes all samples and releases the feature memory; memory-mapped files are unmapped and deleted.
+	 */
+	public void clear(){
+		if(this.saRows != null){
+			this.saRows.release();
+			this.nextRows.release();
+		}
+		this.saRows = null;
+		this.nextRows = null;
+		this.numFeatures = -1;
+		this.numSamples = 0;
+		this.rewards = new double[16];
+		this.nextStart = new int[17];
+		this.nextActions = new int[16];
+	}
+
+
+	protected int actionId(Action a){
+		Integer id = this.actionIds.get(a);
+		if(id == null){
+			id = this.actions.size();
+			this.actions.add(a);
+			this.actionIds.put(a, id);
+		}
+		return id;
+	}
+
+
+	/**
+	 * Increases the length of the feature vectors. If the stored rows are not wide enough, they are copied into rows with at least double
+	 * the width, padded with zeros.
+	 * @param width the new length of the feature vectors
+	 */
+	protected void widen(int width){
+		if(width <= this.saRows.width){
+			this.numFeatures = width;
+			return;
+		}
+		int rowWidth = Math.max(width, 2*this.saRows.width);
+		RowStore nsaRows = this.newRowStore(rowWidth);
+		RowStore nnextRows = this.newRowStore(rowWidth);
+		double [] row = new double[rowWidth];
+		for(int i = 0; i < this.saRows.numRows; i++){
+			this.saRows.get(i, row, this.saRows.width);
+			nsaRows.add(row);
+		}
+		for(int i = 0; i < this.nextRows.numRows; i++){
+			this.nextRows.get(i, row, this.nextRows.width);
+			nnextRows.add(row);
+		}
+		this.saRows.release();
+		this.nextRows.release();
+		this.saRows = nsaRows;
+		this.nextRows = nnextRows;
+		this.numFeatures = width;
+	}
+
+
+	protected RowStore newRowStore(int width){
+		int rowsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(1, width));
+		if(this.mappedDirectory == null){
+			return new HeapRowStore(width, rowsPerChunk);
+		}
+		return new MappedRowStore(width, rowsPerChunk, this.mappedDirectory);
+	}
+
+
+	/**
+	 * Fixed-width rows of doubles stored in chunks.
+	 */
+	protected static abstract class RowStore{
+
+		protected int width;
+		protected int rowsPerChunk;
+		protected int numRows = 0;
+		protected List<DoubleBuffer> chunks = new ArrayList<DoubleBuffer>();
+
+		public RowStore(int width, int rowsPerChunk) {
+			this.width = width;
+			this.rowsPerChunk = rowsPerChunk;
+		}
+
+		/**
+		 * Creates a chunk with room for {@link #rowsPerChunk} rows.
+		 * @return the new chunk
+		 */
+		protected abstract DoubleBuffer newChunk();
+
+		/**
+		 * Releases the memory of the chunks. The rows must not be read afterwards.
+		 */
+		public abstract void release();
+
+		/**
+		 * Writes a row at the end, padded with zeros if it is shorter than the row width.
+		 * @param row the row
+		 */
+		public void add(double [] row){
+			int chunk = this.numRows / this.rowsPerChunk;
+			if(chunk == this.chunks.size()){
+				this.chunks.add(this.newChunk());
+			}
+			DoubleBuffer buffer = this.chunks.get(chunk);
+			int offset = (this.numRows % this.rowsPerChunk) * this.width;
+			int n = Math.min(this.width, row.length);
+			for(int i = 0; i < n; i++){
+				buffer.put(offset + i, row[i]);
+			}
+			for(int i = n; i < this.width; i++){
+				buffer.put(offset + i, 0.);
+			}
+			this.numRows++;
+		}
+
+		/**
+		 * Copies the first n entries of a row into a buffer.
+		 * @param row the row
+		 * @param out the buffer
+		 * @param n the number of entries to copy, which is at most the row width
+		 */
+		public void get(int row, double [] out, int n){
+			DoubleBuffer buffer = this.chunks.get(row / this.rowsPerChunk);
+			int offset = (row % this.rowsPerChunk) * this.width;
+			for(int i = 0; i < n; i++){
+				out[i] = buffer.get(offset + i);
+			}
+		}
+
+		/**
+		 * Writes the non-zero entries among the first n entries of a row into buffers.
+		 * @param row the row
+		 * @param n the number of entries to read, which is at most the row width
+		 * @param ids the buffer for the indices of the non-zero entries
+		 * @param values the buffer for the values of the non-zero entries
+		 * @return the number of non-zero entries
+		 */
+		public int nonZero(int row, int n, int [] ids, double [] values){
+			DoubleBuffer buffer = this.chunks.get(row / this.rowsPerChunk);
+			int offset = (row % this.rowsPerChunk) * this.width;
+			int nn = 0;
+			for(int i = 0; i < n; i++){
+				double v = buffer.get(offset + i);
+				if(v != 0.){
+					ids[nn] = i;
+					values[nn] = v;
+					nn++;
+				}
+			}
+			return nn;
+		}
+
+		/**
+		 * Returns the dot product of a row with a weight vector, in which missing weights are zero.
+		 * @param row the row
+		 * @param weights the weights
+		 * @return the dot product
+		 */
+		public double dot(int row, double [] weights){
+			DoubleBuffer buffer = this.chunks.get(row / this.rowsPerChunk);
+			int offset = (row % this.rowsPerChunk) * this.width;
+			int n = Math.min(this.width, weights.length);
+			double sum = 0.;
+			for(int i = 0; i < n; i++){
+				sum += buffer.get(offset + i) * weights[i];
+			}
+			return sum;
+		}
+
+	}
+
+
+	/**
+	 * Rows stored in heap arrays.
+	 */
+	protected static class HeapRowStore extends RowStore{
+
+		public HeapRowStore(int width, int rowsPerChunk) {
+			super(width, rowsPerChunk);
+		}
+
+		@Override
+		protected DoubleBuffer newChunk() {
+			return DoubleBuffer.wrap(new double[this.rowsPerChunk * this.width]);
+		}
+
+		@Override
+		public void release() {
+			this.chunks.clear();
+		}
+	}
+
+
+	/**
+	 * Rows stored in memory-mapped temporary files.
+	 */
+	protected static class MappedRowStore extends RowStore{
+
+		/**
+		 * The mapped files of all stores that have not been deleted yet, which are deleted by a shutdown hook
+		 */
+		protected static final Set<File> liveFiles = new LinkedHashSet<File>();
+
+		/**
+		 * Whether the shutdown hook that deletes the live files has been registered
+		 */
+		protected static boolean shutdownHookRegistered = false;
+
+		protected File directory;
+		protected List<File> files = new ArrayList<File>();
+		protected List<MappedByteBuffer> mappings = new ArrayList<MappedByteBuffer>();
+
+		public MappedRowStore(int width, int rowsPerChunk, File directory) {
+			super(width, rowsPerChunk);
+			this.directory = directory;
+		}
+
+		@Override
+		protected DoubleBuffer newChunk() {
+			try{
+				File file = File.createTempFile("sars", ".features", this.directory);
+				this.files.add(file);
+				addLiveFile(file);
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				try{
+					MappedByteBuffer mapping = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 8L * this.rowsPerChunk * this.width);
+					this.mappings.add(mapping);
+					return mapping.asDoubleBuffer();
+				} finally{
+					raf.close();
+				}
+			} catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void release() {
+			this.chunks.clear();
+			for(MappedByteBuffer mapping : this.mappings){
+				unmap(mapping);
+			}
+			this.mappings.clear();
+			for(File file : this.files){
+				if(file.delete() || !file.exists()){
+					removeLiveFile(file);
+				}
+			}
+			this.files.clear();
+		}
+
+
+		/**
+		 * Records a mapped file to delete at shutdown, registering the shutdown hook on first use.
+		 * @param file the file
+		 */
+		protected static void addLiveFile(File file){
+			synchronized(liveFiles){
+				if(!shutdownHookRegistered){
+					Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+						@Override
+						public void run() {
+							synchronized(liveFiles){
+								for(File f : liveFiles){
+									f.delete();
+								}
+								liveFiles.clear();
+							}
+						}
+					}));
+					shutdownHookRegistered = true;
+				}
+				liveFiles.add(file);
+			}
+		}
+
+
+		/**
+		 * Removes a deleted file from the files to delete at shutdown.
+		 * @param file the file
+		 */
+		protected static void removeLiveFile(File file){
+			synchronized(liveFiles){
+				liveFiles.remove(file);
+			}
+		}
+
+
+		/**
+		 * Unmaps a mapped buffer immediately rather than when it is garbage collected, so that its file can be deleted on every platform.
+		 * Java has no public method for this, so the JDK's internal cleaner is used through reflection; if that is not possible, the buffer
+		 * is unmapped when it is garbage collected and the file is deleted at shutdown if it could not be deleted before.
+		 * @param mapping the mapped buffer, which must not be used afterwards
+		 */
+		protected static void unmap(MappedByteBuffer mapping){
+			try{
+				//Java 9 and later
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", java.nio.ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), mapping);
+				return;
+			} catch(Exception e){
+				//fall through to the Java 8 cleaner
+			}
+			try{
+				Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(mapping);
+				if(cleaner != null){
+					Method clean = cleaner.getClass().getMethod("clean");
+					clean.setAccessible(true);
+					clean.invoke(cleaner);
+				}
+			} catch(Exception e){
+				//leave the buffer to be unmapped when it is garbage collected
+			}
+		}
+	}
+
+}
@@ -0,0 +1,685 @@
+package burlap.behavior.singleagent.learning.tdmethods;
+
+import burlap.behavior.learningrate.ConstantLR;
+import burlap.behavior.learningrate.LearningRate;
+import burlap.behavior.policy.GreedyQPolicy;
+import burlap.behavior.policy.Policy;
+import burlap.behavior.policy.PolicyUtils;
+import burlap.behavior.singleagent.Episode;
+import burlap.behavior.singleagent.MDPSolver;
+import burlap.behavior.singleagent.learning.LearningAgent;
+import burlap.behavior.singleagent.options.EnvironmentOptionOutcome;
+import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.singleagent.planning.Planner;
+import burlap.behavior.valuefunction.ConstantValueFunction;
+import burlap.behavior.valuefunction.QFunction;
+import burlap.behavior.valuefunction.QProvider;
+import burlap.behavior.valuefunction.QValue;
+import burlap.debugtools.DPrint;
+import burlap.debugtools.MyTimer;
+import burlap.debugtools.RandomFactory;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.domain.singleagent.gridworld.GridWorldTerminalFunction;
+import burlap.domain.singleagent.gridworld.state.GridAgent;
+import burlap.domain.singleagent.gridworld.state.GridWorldState;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.state.State;
+import burlap.mdp.singleagent.SADomain;
+import burlap.mdp.singleagent.environment.Environment;
+import burlap.mdp.singleagent.environment.EnvironmentOutcome;
+import burlap.mdp.singleagent.environment.SimulatedEnvironment;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+import burlap.statehashing.simple.SimpleHashableStateFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A tabular Q-learning algorithm in which many threads, each acting in their own {@link Environment}, learn a single shared Q-function
+ * concurrently and without locks, in the style of Hogwild! [1]. States are added to the shared Q-function with a {@link ConcurrentHashMap},
+ * and each Q-value update is applied atomically with a compare-and-set, so concurrent updates to the same Q-value are never lost, but
+ * threads do not otherwise coordinate: a thread may compute an update from a Q-value that another thread is changing at the same time.
+ * <p>
+ * Use {@link #runLearningEpisodes(List, int)} to learn with one worker thread per provided {@link Environment}. Each worker follows
+ * an epsilon-greedy policy (with epsilon=0.1 by default) that uses its own random number generator, and resets its environment after each episode.
+ * The {@link LearningAgent} methods run a single episode in the calling thread, and may also be called from several threads at once.
+ * If you are going to use this algorithm for planning, call {@link #initializeForPlanning(int)} before calling {@link #planFromState(State)},
+ * which runs the episodes in {@link #getNumThreads()} {@link SimulatedEnvironment}s.
+ * <p>
+ * Because the threads are interleaved nondeterministically, the learned Q-function is not reproducible, even with a seeded random number
+ * generator. The {@link LearningRate} and the {@link QFunction} used to initialize Q-values must be safe to use from multiple threads;
+ * {@link ConstantLR} and {@link ConstantValueFunction} are. This implementation will work correctly with options.
+ * <p>
+ * The agent time passed to the {@link LearningRate} is the total number of learning steps of all threads, which each thread only re-reads
+ * every {@link #AGENT_TIME_REFRESH_STEPS} steps (and at the start of each episode); in between, it adds its own steps to its last reading.
+ * <p>
+ * The {@link #main(String[])} method benchmarks the samples per second and final policy quality of this learner against {@link QLearning}.
+ * <p>
+ * 1. Recht, Benjamin, et al. "Hogwild: A lock-free approach to parallelizing stochastic gradient descent." Advances in Neural Information Processing Systems. 2011.
+ */
+public class ConcurrentQLearning extends MDPSolver implements QProvider, LearningAgent, Planner {
+
+
+	/**
+	 * The number of steps a thread takes before it re-reads the total number of learning steps of all threads for the learning rate
+	 */
+	public static final int AGENT_TIME_REFRESH_STEPS = 256;
+
+
+	/**
+	 * The shared tabular mapping from states to Q-values
+	 */
+	protected ConcurrentMap<HashableState, QNode>					qFunction = new ConcurrentHashMap<HashableState, QNode>();
+
+	/**
+	 * The object that defines how Q-values are initialized.
+	 */
+	protected QFunction												qInitFunction;
+
+	/**
+	 * The learning rate function used.
+	 */
+	protected LearningRate											learningRate;
+
+	/**
+	 * The probability with which the learning policy takes a random action
+	 */
+	protected double												epsilon = 0.1;
+
+	/**
+	 * The maximum number of steps that will be taken in an episode before the agent terminates a learning episode
+	 */
+	protected int													maxEpisodeSize;
+
+	/**
+	 * The number of threads used by {@link #planFromState(State)}
+	 */
+	protected int													numThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of episodes to use for planning
+	 */
+	protected int													numEpisodesForPlanning = 1;
+
+	/**
+	 * The learning step counter of each thread that has called the {@link LearningAgent} methods and of each running worker thread of
+	 * {@link #runLearningEpisodes(List, int)}. Each counter is
+	 * only incremented by its own thread, so threads do not contend on a shared counter; the total number of steps is the sum of the counters.
+	 */
+	protected List<AtomicLong>										stepCounters = new CopyOnWriteArrayList<AtomicLong>();
+
+	/**
+	 * The number of learning steps counted by the worker threads of finished {@link #runLearningEpisodes(List, int)} calls
+	 */
+	protected AtomicLong											finishedWorkerSteps = new AtomicLong();
+
+	/**
+	 * The learning step counter of each thread that calls the {@link LearningAgent} methods
+	 */
+	protected ThreadLocal<AtomicLong>								threadStepCounter = new ThreadLocal<AtomicLong>(){
+		@Override
+		protected AtomicLong initialValue() {
+			AtomicLong counter = new AtomicLong();
+			stepCounters.add(counter);
+			return counter;
+		}
+	};
+
+	/**
+	 * The random number generator of each thread that calls the {@link LearningAgent} methods
+	 */
+	protected ThreadLocal<Random>									threadRandom = new ThreadLocal<Random>(){
+		@Override
+		protected Random initialValue() {
+			return new Random(RandomFactory.getMapped(0).nextLong());
+		}
+	};
+
+
+	/**
+	 * Initializes with the same Q-value initialization everywhere, and places no limit on the number of steps the
+	 * agent can take in an episode.
+	 * @param domain the domain in which to learn
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factory to use for Q-lookups
+	 * @param qInit the initial Q-value to user everywhere
+	 * @param learningRate the learning rate
+	 */
+	public ConcurrentQLearning(SADomain domain, double gamma, HashableStateFactory hashingFactory, double qInit, double learningRate) {
+		this(domain, gamma, hashingFactory, new ConstantValueFunction(qInit), learningRate, Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param domain the domain in which to learn
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factory to use for Q-lookups
+	 * @param qInit a {@link QFunction} object that can be used to initialize the Q-values; it must be safe to use from multiple threads.
+	 * @param learningRate the learning rate
+	 * @param maxEpisodeSize the maximum number of steps the agent will take in a learning episode for the agent stops trying.
+	 */
+	public ConcurrentQLearning(SADomain domain, double gamma, HashableStateFactory hashingFactory, QFunction qInit, double learningRate, int maxEpisodeSize) {
+		this.solverInit(domain, gamma, hashingFactory);
+		this.qInitFunction = qInit;
+		this.learningRate = new ConstantLR(learningRate);
+		this.maxEpisodeSize = maxEpisodeSize;
+	}
+
+
+	/**
+	 * Sets the number of simulated episodes to use for planning when the {@link #planFromState(State)} method is called.
+	 * @param numEpisodesForPlanning the number of simulated episodes to run for planning.
+	 */
+	public void initializeForPlanning(int numEpisodesForPlanning){
+		this.numEpisodesForPlanning = numEpisodesForPlanning;
+	}
+
+
+	/**
+	 * Sets the learning rate function to use. It must be safe to use from multiple threads.
+	 * @param lr the learning rate function to use
+	 */
+	public void setLearningRateFunction(LearningRate lr){
+		this.learningRate = lr;
+	}
+
+
+	/**
+	 * Sets how to initialize Q-values for previously unexperienced state-action pairs. It must be safe to use from multiple threads.
+	 * @param qInit a {@link QFunction} object that can be used to initialize the Q-values.
+	 */
+	public void setQInitFunction(QFunction qInit){
+		this.qInitFunction = qInit;
+	}
+
+
+	/**
+	 * Returns the probability with which the learning policy takes a random action.
+	 * @return the probability with which the learning policy takes a random action.
+	 */
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+
+	/**
+	 * Sets the probability with which the learning policy takes a random action. Otherwise, it takes the action with the highest Q-value,
+	 * breaking ties uniformly randomly.
+	 * @param epsilon the probability with which the learning policy takes a random action.
+	 */
+	public void setEpsilon(double epsilon) {
+		this.epsilon = epsilon;
+	}
+
+
+	/**
+	 * Returns the number of threads used by {@link #planFromState(State)}.
+	 * @return the number of threads used for planning
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+
+	/**
+	 * Sets the number of threads, each with their own {@link SimulatedEnvironment}, used by {@link #planFromState(State)}. The default
+	 * is the number of available processors.
+	 * @param numThreads the number of threads used for planning
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1){
+			throw new RuntimeException("Concurrent Q-learning requires at least one thread; " + numThreads + " were requested.");
+		}
+		this.numThreads = numThreads;
+	}
+
+
+	/**
+	 * Returns the total number of learning steps performed by all threads. While threads are learning, the result is approximate.
+	 * @return the total number of learning steps performed by all threads.
+	 */
+	public long getTotalNumberOfSteps(){
+		long total = this.finishedWorkerSteps.get();
+		for(AtomicLong counter : this.stepCounters){
+			total += counter.get();
+		}
+		return total;
+	}
+
+
+	@Override
+	public List<QValue> qValues(State s) {
+		QNode node = this.getStateNode(this.stateHash(s));
+		List<QValue> qs = new ArrayList<QValue>(node.actions.length);
+		for(int i = 0; i < node.actions.length; i++){
+			qs.add(new QValue(s, node.actions[i], node.q(i)));
+		}
+		return qs;
+	}
+
+	@Override
+	public double qValue(State s, Action a) {
+		QNode node = this.getStateNode(this.stateHash(s));
+		return node.q(node.index(a));
+	}
+
+	@Override
+	public double value(State s) {
+		return this.getStateNode(this.stateHash(s)).maxQ();
+	}
+
+
+	/**
+	 * Returns the {@link QNode} stored for the given hashed state. If no node is stored, then one is created with Q-values
+	 * initialized using this object's {@link QFunction} and added, unless another thread adds one first.
+	 * @param s the hashed state
+	 * @return the {@link QNode} stored for the hashed state
+	 */
+	protected QNode getStateNode(HashableState s){
+
+		QNode node = this.qFunction.get(s);
+
+		if(node == null){
+			List<Action> gas = this.applicableActions(s.s());
+			if(gas.isEmpty()){
+				throw new RuntimeException("No possible actions in this state, cannot continue Q-learning");
+			}
+			double [] qs = new double[gas.size()];
+			for(int i = 0; i < qs.length; i++){
+				qs[i] = this.qInitFunction.qValue(s.s(), gas.get(i));
+			}
+			node = new QNode(gas.toArray(new Action[gas.size()]), qs);
+			QNode existing = this.qFunction.putIfAbsent(s, node);
+			if(existing != null){
+				node = existing;
+			}
+		}
+
+		return node;
+
+	}
+
+
+	/**
+	 * Plans from the input state by running {@link #initializeForPlanning(int)} episodes in {@link #getNumThreads()} concurrent
+	 * {@link SimulatedEnvironment}s and then returns a {@link GreedyQPolicy} that greedily
+	 * selects the action with the highest Q-value and breaks ties uniformly randomly.
+	 * @param initialState the initial state of the planning problem
+	 * @return a {@link GreedyQPolicy}.
+	 */
+	@Override
+	public GreedyQPolicy planFromState(State initialState) {
+
+		if(this.model == null){
+			throw new RuntimeException("ConcurrentQLearning cannot execute planFromState because a model is not specified.");
+		}
+
+		List<Environment> envs = new ArrayList<Environment>(this.numThreads);
+		for(int i = 0; i < this.numThreads; i++){
+			envs.add(new SimulatedEnvironment(this.domain, initialState));
+		}
+		this.runLearningEpisodes(envs, this.numEpisodesForPlanning);
+
+		return new GreedyQPolicy(this);
+
+	}
+
+
+	/**
+	 * Runs learning episodes concurrently, with one worker thread for each of the given environments. Each worker repeatedly runs an
+	 * episode of at most the maximum episode size and then resets its environment, until the given number of episodes has been
+	 * run over all workers.
+	 * @param envs the environments in which to learn; each is used by only one thread
+	 * @param numEpisodes the total number of episodes to run
+	 * @return the total number of steps taken in the episodes
+	 */
+	public long runLearningEpisodes(List<? extends Environment> envs, int numEpisodes){
+
+		if(envs.isEmpty()){
+			throw new RuntimeException("Concurrent Q-learning requires at least one environment.");
+		}
+
+		final AtomicInteger remainingEpisodes = new AtomicInteger(numEpisodes);
+		List<Callable<Long>> workers = new ArrayList<Callable<Long>>(envs.size());
+		Random seeds = RandomFactory.getMapped(0);
+		for(final Environment env : envs){
+			final Random rand = new Random(seeds.nextLong());
+			workers.add(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					AtomicLong counter = new AtomicLong();
+					stepCounters.add(counter);
+					long steps = 0;
+					try{
+						while(remainingEpisodes.getAndDecrement() > 0){
+							steps += runEpisode(env, maxEpisodeSize, rand, counter, null);
+							env.resetEnvironment();
+						}
+					} finally{
+						//fold the counter of this short-lived thread into the total so that counters do not accumulate across calls
+						finishedWorkerSteps.addAndGet(counter.get());
+						stepCounters.remove(counter);
+					}
+					return steps;
+				}
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(envs.size());
+		long steps = 0;
+		try{
+			for(Future<Long> f : pool.invokeAll(workers)){
+				steps += f.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException(e);
+		} catch(ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		} finally{
+			pool.shutdown();
+		}
+
+		DPrint.cl(this.debugCode, "Ran " + numEpisodes + " episodes with " + envs.size() + " threads; steps: " + steps);
+
+		return steps;
+
+	}
+
+
+	@Override
+	public Episode runLearningEpisode(Environment env) {
+		return this.runLearningEpisode(env, -1);
+	}
+
+	@Override
+	public Episode runLearningEpisode(Environment env, int maxSteps) {
+		Episode ea = new Episode(env.currentObservation());
+		this.runEpisode(env, maxSteps, this.threadRandom.get(), this.threadStepCounter.get(), ea);
+		return ea;
+	}
+
+
+	/**
+	 * Runs a learning episode in the given environment, updating the shared Q-function.
+	 * @param env the environment in which to learn
+	 * @param maxSteps the maximum number of steps in the episode; -1 for no limit
+	 * @param rand the random number generator of the learning policy
+	 * @param stepCounter the learning step counter of the calling thread
+	 * @param ea the episode to which transitions are recorded; null if they should not be recorded
+	 * @return the number of steps taken
+	 */
+	protected int runEpisode(Environment env, int maxSteps, Random rand, AtomicLong stepCounter, Episode ea){
+
+		HashableState curState = this.stateHash(env.currentObservation());
+		int eStepCounter = 0;
+
+		//summing the counters of all threads on every step would read every other thread's counter, so the total is only re-read periodically
+		long agentTimeBase = this.getTotalNumberOfSteps();
+		int stepsSinceRefresh = 0;
+
+		while(!env.isInTerminalState() && (eStepCounter < maxSteps || maxSteps == -1)){
+
+			QNode curNode = this.getStateNode(curState);
+			int actionIndex = this.learningActionIndex(curNode, rand);
+			Action action = curNode.actions[actionIndex];
+
+			EnvironmentOutcome eo;
+			if(!(action instanceof Option)){
+				eo = env.executeAction(action);
+			}
+			else{
+				eo = ((Option)action).control(env, this.gamma);
+			}
+
+			HashableState nextState = this.stateHash(eo.op);
+			double maxQ = 0.;
+
+			if(!eo.terminated){
+				maxQ = this.getStateNode(nextState).maxQ();
+			}
+
+			//manage option specifics
+			double r = eo.r;
+			double discount = eo instanceof EnvironmentOptionOutcome ? ((EnvironmentOptionOutcome)eo).discount : this.gamma;
+			int stepInc = eo instanceof EnvironmentOptionOutcome ? ((EnvironmentOptionOutcome)eo).numSteps() : 1;
+			eStepCounter += stepInc;
+
+			if(ea != null){
+				if(!(action instanceof Option)){
+					ea.transition(action, nextState.s(), r);
+				}
+				else{
+					ea.appendAndMergeEpisodeAnalysis(((EnvironmentOptionOutcome)eo).episode);
+				}
+			}
+
+			//update Q-value
+			//the learning rate's agent time is an int, so it saturates rather than overflowing
+			int agentTime = (int)Math.min(agentTimeBase + stepsSinceRefresh, Integer.MAX_VALUE);
+			double alpha = this.learningRate.pollLearningRate(agentTime, curState.s(), action);
+			//only this thread writes its counter
+			stepCounter.lazySet(stepCounter.get() + 1);
+			curNode.update(actionIndex, alpha, r + (discount * maxQ));
+
+			stepsSinceRefresh++;
+			if(stepsSinceRefresh == AGENT_TIME_REFRESH_STEPS){
+				agentTimeBase = this.getTotalNumberOfSteps();
+				stepsSinceRefresh = 0;
+			}
+
+			//move on polling environment for its current state in case it changed during processing
+			curState = this.stateHash(env.currentObservation());
+
+		}
+
+		return eStepCounter;
+
+	}
+
+
+	/**
+	 * Selects the index of the action to take in a state with an epsilon-greedy policy, breaking ties between greedy actions uniformly randomly.
+	 * @param node the node of the state
+	 * @param rand the random number generator to use
+	 * @return the index of the selected action
+	 */
+	protected int learningActionIndex(QNode node, Random rand){
+		int n = node.actions.length;
+		if(rand.nextDouble() < this.epsilon){
+			return rand.nextInt(n);
+		}
+		int best = 0;
+		double max = node.q(0);
+		int numTies = 1;
+		for(int i = 1; i < n; i++){
+			double q = node.q(i);
+			if(q > max){
+				max = q;
+				best = i;
+				numTies = 1;
+			}
+			else if(q == max){
+				//reservoir sampling selects each tied action with equal probability
+				numTies++;
+				if(rand.nextInt(numTies) == 0){
+					best = i;
+				}
+			}
+		}
+		return best;
+	}
+
+
+	@Override
+	public void resetSolver() {
+		this.qFunction.clear();
+		this.finishedWorkerSteps.set(0);
+		for(AtomicLong counter : this.stepCounters){
+			counter.set(0);
+		}
+	}
+
+
+	/**
+	 * The shared Q-values of a state, stored as the bits of doubles in an {@link AtomicLongArray} so that they can be updated with
+	 * a compare-and-set.
+	 */
+	public static class QNode {
+
+		/**
+		 * The actions of the state
+		 */
+		public final Action [] actions;
+
+		/**
+		 * The Q-value of each action, stored with {@link Double#doubleToRawLongBits(double)}
+		 */
+		protected final AtomicLongArray qs;
+
+
+		/**
+		 * Initializes.
+		 * @param actions the actions of the state
+		 * @param qs the initial Q-value of each action
+		 */
+		public QNode(Action[] actions, double [] qs) {
+			this.actions = actions;
+			this.qs = new AtomicLongArray(qs.length);
+			for(int i = 0; i < qs.length; i++){
+				this.qs.set(i, Double.doubleToRawLongBits(qs[i]));
+			}
+		}
+
+
+		/**
+		 * Returns the Q-value of an action.
+		 * @param i the index of the action
+		 * @return the Q-value of the action
+		 */
+		public double q(int i){
+			return Double.longBitsToDouble(this.qs.get(i));
+		}
+
+
+		/**
+		 * Returns the index of an action.
+		 * @param a the action
+		 * @return the index of the action
+		 */
+		public int index(Action a){
+			for(int i = 0; i < this.actions.length; i++){
+				if(this.actions[i].equals(a)){
+					return i;
+				}
+			}
+			throw new RuntimeException("No Q-value is stored for action " + a.toString());
+		}
+
+
+		/**
+		 * Returns the maximum Q-value.
+		 * @return the maximum Q-value
+		 */
+		public double maxQ(){
+			double max = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < this.actions.length; i++){
+				max = Math.max(max, this.q(i));
+			}
+			return max;
+		}
+
+
+		/**
+		 * Atomically moves the Q-value of an action toward a target: q = q + alpha * (target - q).
+		 * @param i the index of the action
+		 * @param alpha the learning rate
+		 * @param target the target Q-value
+		 */
+		public void update(int i, double alpha, double target){
+			while(true){
+				long bits = this.qs.get(i);
+				double q = Double.longBitsToDouble(bits);
+				if(this.qs.compareAndSet(i, bits, Double.doubleToRawLongBits(q + alpha * (target - q)))){
+					return;
+				}
+			}
+		}
+
+	}
+
+
+	/**
+	 * Benchmarks {@link ConcurrentQLearning} against {@link QLearning} in a stochastic four rooms grid world, reporting the number
+	 * of learning steps per second and the average number of steps the learned greedy policy takes to reach the goal.
+	 * @param args optionally, the total number of learning episodes and the number of threads
+	 */
+	public static void main(String [] args){
+
+		int numEpisodes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		GridWorldDomain gwd = new GridWorldDomain(11, 11);
+		gwd.setMapToFourRooms();
+		gwd.setProbSucceedTransitionDynamics(0.8);
+		gwd.setTf(new GridWorldTerminalFunction(10, 10));
+		SADomain domain = gwd.generateDomain();
+		State s = new GridWorldState(new GridAgent(0, 0));
+		HashableStateFactory hashingFactory = new SimpleHashableStateFactory();
+
+		QLearning ql = new QLearning(domain, 0.99, hashingFactory, 0., 0.1, 1000);
+		SimulatedEnvironment env = new SimulatedEnvironment(domain, s);
+		MyTimer timer = new MyTimer(true);
+		long steps = 0;
+		for(int i = 0; i < numEpisodes; i++){
+			steps += ql.runLearningEpisode(env, 1000).numTimeSteps() - 1;
+			env.resetEnvironment();
+		}
+		timer.stop();
+		report("QLearning", steps, timer.getTime(), new GreedyQPolicy(ql), s, domain);
+
+		ConcurrentQLearning cql = new ConcurrentQLearning(domain, 0.99, hashingFactory, new ConstantValueFunction(0.), 0.1, 1000);
+		List<Environment> envs = new ArrayList<Environment>(numThreads);
+		for(int i = 0; i < numThreads; i++){
+			envs.add(new SimulatedEnvironment(domain, s));
+		}
+		timer = new MyTimer(true);
+		steps = cql.runLearningEpisodes(envs, numEpisodes);
+		timer.stop();
+		report("ConcurrentQLearning (" + numThreads + " threads)", steps, timer.getTime(), new GreedyQPolicy(cql), s, domain);
+
+	}
+
+
+	/**
+	 * Prints the throughput of a learner and the average episode length of its greedy policy over 100 rollouts.
+	 * @param name the name of the learner
+	 * @param steps the number of learning steps taken
+	 * @param seconds the time taken to learn
+	 * @param p the greedy policy of the learner
+	 * @param s the initial state
+	 * @param domain the domain
+	 */
+	protected static void report(String name, long steps, double seconds, Policy p, State s, SADomain domain){
+		double totalLength = 0.;
+		for(int i = 0; i < 100; i++){
+			totalLength += PolicyUtils.rollout(p, s, domain.getModel(), 1000).numTimeSteps() - 1;
+		}
+		System.out.println(name + ": " + steps + " steps in " + seconds + "s (" + (int)(steps / seconds) + " steps/s); greedy policy average episode length: " + (totalLength / 100.));
+	}
+
+}
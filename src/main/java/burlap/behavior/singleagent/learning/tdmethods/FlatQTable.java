@@ -0,0 +1,427 @@
+package burlap.behavior.singleagent.learning.tdmethods;
+
+import burlap.behavior.valuefunction.QValue;
+import burlap.datastructures.HashMixing;
+import burlap.mdp.core.action.Action;
+import burlap.statehashing.HashableState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A tabular Q-function that stores Q-values in a primitive <code>double[]</code>. Each stored state is assigned a dense
+ * integer id, in the order in which states are added, and the Q-values of the actions of a state are stored contiguously
+ * in a range of Q-value slots, in the order of the actions given when the state was added. States are mapped to their ids with
+ * an open-addressing hash index, so looking up a state, reading a Q-value or updating a Q-value never allocates objects.
+ * <p>
+ * Each distinct action is assigned an ordinal the first time it is stored, along with the position it had in the action list
+ * of its state. Looking up the slot of an action first checks the slot at that position, so when states list their actions in the same
+ * order (as is typical), finding a slot takes constant time regardless of the number of actions.
+ * <p>
+ * This class is used by {@link QLearning} and {@link SarsaLam} when their flat Q-table is enabled (see {@link QLearning#toggleFlatQTable(boolean)}).
+ */
+public class FlatQTable {
+
+	/**
+	 * The default initial state capacity
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The maximum fraction of occupied index slots before the index is resized
+	 */
+	protected static final double LOAD_FACTOR = 0.5;
+
+
+	/**
+	 * The stored states, indexed by state id
+	 */
+	protected HashableState [] states;
+
+	/**
+	 * The hash index; each entry is a state id + 1, or 0 for empty entries
+	 */
+	protected int [] index;
+
+	/**
+	 * The (mixed) hash code of the state of each index entry
+	 */
+	protected int [] indexHashes;
+
+	/**
+	 * The first Q-value slot of each state, indexed by state id; the slots of state i end at the first slot of state i+1
+	 */
+	protected int [] actionOffsets;
+
+	/**
+	 * The action of each Q-value slot
+	 */
+	protected Action [] actions;
+
+	/**
+	 * The action ordinal of each Q-value slot
+	 */
+	protected int [] slotOrdinals;
+
+	/**
+	 * The ordinal of each distinct stored action
+	 */
+	protected Map<Action, Integer> actionOrdinals = new HashMap<Action, Integer>();
+
+	/**
+	 * The position of each action ordinal in the action list of the first state that stored it
+	 */
+	protected int [] ordinalPositions = new int[16];
+
+	/**
+	 * The Q-value of each Q-value slot
+	 */
+	protected double [] qs;
+
+	/**
+	 * The number of stored states
+	 */
+	protected int numStates = 0;
+
+
+	/**
+	 * Initializes with a default initial capacity.
+	 */
+	public FlatQTable() {
+		this(DEFAULT_CAPACITY);
+	}
+
+
+	/**
+	 * Initializes with enough capacity to store the given number of states without resizing.
+	 * @param expectedStates the number of states the table is expected to store
+	 */
+	public FlatQTable(int expectedStates) {
+		int capacity = 16;
+		while(capacity * LOAD_FACTOR < expectedStates){
+			capacity <<= 1;
+		}
+		this.index = new int[capacity];
+		this.indexHashes = new int[capacity];
+		this.states = new HashableState[Math.max(16, expectedStates)];
+		this.actionOffsets = new int[this.states.length + 1];
+		this.actions = new Action[this.states.length * 4];
+		this.slotOrdinals = new int[this.actions.length];
+		this.qs = new double[this.actions.length];
+	}
+
+
+	/**
+	 * Returns the number of stored states.
+	 * @return the number of stored states.
+	 */
+	public int numStates(){
+		return this.numStates;
+	}
+
+
+	/**
+	 * Returns the total number of Q-value slots of all stored states.
+	 * @return the total number of Q-value slots.
+	 */
+	public int numSlots(){
+		return this.actionOffsets[this.numStates];
+	}
+
+
+	/**
+	 * Returns the id of the given state.
+	 * @param sh the hashed state
+	 * @return the id of the state, or -1 if it is not stored.
+	 */
+	public int stateId(HashableState sh){
+		int i = this.indexEntry(sh, HashMixing.mix(sh.hashCode()));
+		return i >= 0 ? this.index[i] - 1 : -1;
+	}
+
+
+	/**
+	 * Adds a state with the given actions, whose Q-values are all set to the corresponding entry of the initial Q-values.
+	 * The state must not already be stored.
+	 * @param sh the hashed state
+	 * @param stateActions the actions of the state
+	 * @param initialQs the initial Q-value of each action
+	 * @return the id of the new state
+	 */
+	public int addState(HashableState sh, List<Action> stateActions, double [] initialQs){
+		int h = HashMixing.mix(sh.hashCode());
+		int entry = this.indexEntry(sh, h);
+		if(entry >= 0){
+			throw new RuntimeException("Cannot add state to FlatQTable because it is already stored.");
+		}
+		entry = -(entry + 1);
+
+		int id = this.numStates;
+		if(id + 1 >= this.states.length){
+			this.states = Arrays.copyOf(this.states, this.states.length * 2);
+			this.actionOffsets = Arrays.copyOf(this.actionOffsets, this.states.length + 1);
+		}
+		int begin = this.actionOffsets[id];
+		int end = begin + stateActions.size();
+		if(end > this.actions.length){
+			int capacity = Math.max(end, this.actions.length * 2);
+			this.actions = Arrays.copyOf(this.actions, capacity);
+			this.slotOrdinals = Arrays.copyOf(this.slotOrdinals, capacity);
+			this.qs = Arrays.copyOf(this.qs, capacity);
+		}
+		for(int i = 0; i < stateActions.size(); i++){
+			this.actions[begin + i] = stateActions.get(i);
+			this.slotOrdinals[begin + i] = this.ordinal(stateActions.get(i), i);
+			this.qs[begin + i] = initialQs[i];
+		}
+
+		this.states[id] = sh;
+		this.actionOffsets[id + 1] = end;
+		this.numStates++;
+
+		this.index[entry] = id + 1;
+		this.indexHashes[entry] = h;
+		if(this.numStates > this.index.length * LOAD_FACTOR){
+			this.rehash(this.index.length << 1);
+		}
+
+		return id;
+	}
+
+
+	/**
+	 * Returns the stored state with the given id.
+	 * @param id the state id
+	 * @return the stored state
+	 */
+	public HashableState state(int id){
+		return this.states[id];
+	}
+
+
+	/**
+	 * Returns the first Q-value slot of a state.
+	 * @param id the state id
+	 * @return the first Q-value slot of the state
+	 */
+	public int slotsBegin(int id){
+		return this.actionOffsets[id];
+	}
+
+
+	/**
+	 * Returns the Q-value slot after the last Q-value slot of a state.
+	 * @param id the state id
+	 * @return the Q-value slot after the last Q-value slot of the state
+	 */
+	public int slotsEnd(int id){
+		return this.actionOffsets[id + 1];
+	}
+
+
+	/**
+	 * Returns the Q-value slot of an action in a state.
+	 * @param id the state id
+	 * @param a the action
+	 * @return the Q-value slot of the action, or -1 if the state has no such action.
+	 */
+	public int slot(int id, Action a){
+		Integer ordinal = this.actionOrdinals.get(a);
+		if(ordinal == null){
+			return -1;
+		}
+		int begin = this.actionOffsets[id];
+		int end = this.actionOffsets[id + 1];
+		int i = begin + this.ordinalPositions[ordinal];
+		if(i < end && this.slotOrdinals[i] == ordinal){
+			return i;
+		}
+		for(i = begin; i < end; i++){
+			if(this.slotOrdinals[i] == ordinal){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Returns the action of a Q-value slot.
+	 * @param slot the Q-value slot
+	 * @return the action of the slot
+	 */
+	public Action action(int slot){
+		return this.actions[slot];
+	}
+
+
+	/**
+	 * Returns the Q-value of a Q-value slot.
+	 * @param slot the Q-value slot
+	 * @return the Q-value of the slot
+	 */
+	public double q(int slot){
+		return this.qs[slot];
+	}
+
+
+	/**
+	 * Sets the Q-value of a Q-value slot.
+	 * @param slot the Q-value slot
+	 * @param q the new Q-value
+	 */
+	public void setQ(int slot, double q){
+		this.qs[slot] = q;
+	}
+
+
+	/**
+	 * Returns the maximum Q-value of a state.
+	 * @param id the state id
+	 * @return the maximum Q-value of the state
+	 */
+	public double maxQ(int id){
+		double max = Double.NEGATIVE_INFINITY;
+		int end = this.actionOffsets[id + 1];
+		for(int i = this.actionOffsets[id]; i < end; i++){
+			if(this.qs[i] > max){
+				max = this.qs[i];
+			}
+		}
+		return max;
+	}
+
+
+	/**
+	 * Returns new {@link QValue} objects for the Q-values of a state. Changing the returned objects does not change the table.
+	 * @param id the state id
+	 * @return the Q-values of the state
+	 */
+	public List<QValue> qValues(int id){
+		int begin = this.actionOffsets[id];
+		int end = this.actionOffsets[id + 1];
+		List<QValue> result = new ArrayList<QValue>(end - begin);
+		for(int i = begin; i < end; i++){
+			result.add(new QValue(this.states[id].s(), this.actions[i], this.qs[i]));
+		}
+		return result;
+	}
+
+
+	/**
+	 * Removes all stored states.
+	 */
+	public void clear(){
+		Arrays.fill(this.index, 0);
+		Arrays.fill(this.states, 0, this.numStates, null);
+		Arrays.fill(this.actions, 0, this.actionOffsets[this.numStates], null);
+		this.numStates = 0;
+	}
+
+
+	/**
+	 * Adds all states and Q-values of a {@link QLearningStateNode} map. States that are already stored are skipped.
+	 * @param nodes the {@link QLearningStateNode} map
+	 */
+	public void addNodes(Map<HashableState, QLearningStateNode> nodes){
+		for(Map.Entry<HashableState, QLearningStateNode> e : nodes.entrySet()){
+			if(this.stateId(e.getKey()) != -1){
+				continue;
+			}
+			List<QValue> qEntry = e.getValue().qEntry;
+			List<Action> stateActions = new ArrayList<Action>(qEntry.size());
+			double [] initialQs = new double[qEntry.size()];
+			for(int i = 0; i < qEntry.size(); i++){
+				stateActions.add(qEntry.get(i).a);
+				initialQs[i] = qEntry.get(i).q;
+			}
+			this.addState(e.getKey(), stateActions, initialQs);
+		}
+	}
+
+
+	/**
+	 * Adds a {@link QLearningStateNode} for every stored state to a map.
+	 * @param nodes the map to which nodes are added
+	 */
+	public void toNodes(Map<HashableState, QLearningStateNode> nodes){
+		for(int id = 0; id < this.numStates; id++){
+			QLearningStateNode node = new QLearningStateNode(this.states[id]);
+			for(int i = this.actionOffsets[id]; i < this.actionOffsets[id + 1]; i++){
+				node.addQValue(this.actions[i], this.qs[i]);
+			}
+			nodes.put(this.states[id], node);
+		}
+	}
+
+
+	/**
+	 * Returns the ordinal of an action, assigning it a new ordinal if it has not been stored before.
+	 * @param a the action
+	 * @param position the position of the action in the action list of the state being added
+	 * @return the ordinal of the action
+	 */
+	protected int ordinal(Action a, int position){
+		Integer ordinal = this.actionOrdinals.get(a);
+		if(ordinal == null){
+			ordinal = this.actionOrdinals.size();
+			if(ordinal == this.ordinalPositions.length){
+				this.ordinalPositions = Arrays.copyOf(this.ordinalPositions, ordinal * 2);
+			}
+			this.ordinalPositions[ordinal] = position;
+			this.actionOrdinals.put(a, ordinal);
+		}
+		return ordinal;
+	}
+
+
+	/**
+	 * Returns the index entry storing the given state, or -(insertionEntry + 1) if it is not stored.
+	 * @param sh the hashed state
+	 * @param h the mixed hash code of the state
+	 * @return the index entry storing the state, or -(insertionEntry + 1) if it is not stored.
+	 */
+	protected int indexEntry(HashableState sh, int h){
+		int mask = this.index.length - 1;
+		int i = h & mask;
+		int id;
+		while((id = this.index[i]) != 0){
+			if(this.indexHashes[i] == h){
+				HashableState k = this.states[id - 1];
+				if(k == sh || k.equals(sh)){
+					return i;
+				}
+			}
+			i = (i + 1) & mask;
+		}
+		return -(i + 1);
+	}
+
+
+	/**
+	 * Moves all index entries into a new index with the given capacity.
+	 * @param capacity the new number of index entries; must be a power of 2
+	 */
+	protected void rehash(int capacity){
+		int [] oldIndex = this.index;
+		int [] oldHashes = this.indexHashes;
+		this.index = new int[capacity];
+		this.indexHashes = new int[capacity];
+		int mask = capacity - 1;
+		for(int j = 0; j < oldIndex.length; j++){
+			if(oldIndex[j] == 0){
+				continue;
+			}
+			int i = oldHashes[j] & mask;
+			while(this.index[i] != 0){
+				i = (i + 1) & mask;
+			}
+			this.index[i] = oldIndex[j];
+			this.indexHashes[i] = oldHashes[j];
+		}
+	}
+
+}
@@ -48,6 +48,9 @@ import java.util.Map;
  * want to use a custom learning rate decay schedule rather than a constant learning rate, use the
  * {@link #setLearningRateFunction(burlap.behavior.learningrate.LearningRate)}.
  * <p>
+ * By default, Q-values are stored in a map from hashed states to {@link QLearningStateNode} objects. For long-running
+ * agents, a {@link FlatQTable} that stores Q-values in a primitive array can be used instead with the {@link #toggleFlatQTable(boolean)} method.
+ * <p>
  * 1. Watkins, Christopher JCH, and Peter Dayan. "Q-learning." Machine learning 8.3-4 (1992): 279-292. <p>
  * 2. Sutton, Richard S., Doina Precup, and Satinder Singh. "Between MDPs and semi-MDPs: A framework for temporal abstraction in reinforcement learning." Artificial intelligence 112.1 (1999): 181-211.
  * 
@@ -61,6 +64,11 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 	 * The tabular mapping from states to Q-values
 	 */
 	protected Map<HashableState, QLearningStateNode> 				qFunction;
+
+	/**
+	 * The flat Q-table used instead of {@link #qFunction} when enabled; null otherwise.
+	 */
+	protected FlatQTable											flatQTable;
 	
 	/**
 	 * The object that defines how Q-values are initialized.
@@ -306,13 +314,57 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 	}
 
 
+	/**
+	 * Sets whether Q-values are stored in a {@link FlatQTable}, which keeps Q-values in a primitive array indexed by dense state and action slots,
+	 * rather than in a map of {@link QLearningStateNode} objects. Any Q-values already learned are moved to the new storage.
+	 * When the flat Q-table is used, the {@link QValue} objects returned by {@link #qValues(State)} are copies that
+	 * do not change as learning continues. The default is false.
+	 * @param useFlatQTable whether to store Q-values in a {@link FlatQTable}
+	 */
+	public void toggleFlatQTable(boolean useFlatQTable){
+		if(useFlatQTable && this.flatQTable == null){
+			this.flatQTable = new FlatQTable();
+			this.flatQTable.addNodes(this.qFunction);
+			this.qFunction.clear();
+		}
+		else if(!useFlatQTable && this.flatQTable != null){
+			this.flatQTable.toNodes(this.qFunction);
+			this.flatQTable = null;
+		}
+	}
+
+
+	/**
+	 * Returns whether Q-values are stored in a {@link FlatQTable}.
+	 * @return true if Q-values are stored in a {@link FlatQTable}; false if they are stored in a map of {@link QLearningStateNode} objects.
+	 */
+	public boolean isUsingFlatQTable(){
+		return this.flatQTable != null;
+	}
+
+
+	/**
+	 * Returns the {@link FlatQTable} storing the Q-values, if it is used.
+	 * @return the {@link FlatQTable} storing the Q-values, or null if Q-values are stored in a map of {@link QLearningStateNode} objects.
+	 */
+	public FlatQTable getFlatQTable(){
+		return this.flatQTable;
+	}
+
+
 	@Override
 	public List<QValue> qValues(State s) {
+		if(this.flatQTable != null){
+			return this.flatQTable.qValues(this.flatStateId(this.stateHash(s)));
+		}
 		return this.getQs(this.stateHash(s));
 	}
 
 	@Override
 	public double qValue(State s, Action a) {
+		if(this.flatQTable != null){
+			return this.flatQTable.q(this.flatSlot(this.flatStateId(this.stateHash(s)), a));
+		}
 		return this.getQ(this.stateHash(s), a).q;
 	}
 	
@@ -380,6 +432,47 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 		
 	}
 	
+	/**
+	 * Returns the id of the given hashed state in the {@link FlatQTable}. If the state is not stored, it is added with its applicable
+	 * actions and its Q-values are initialized using this object's {@link burlap.behavior.valuefunction.QFunction} data member.
+	 * @param s the hashed state
+	 * @return the id of the state in the {@link FlatQTable}
+	 */
+	protected int flatStateId(HashableState s){
+
+		int id = this.flatQTable.stateId(s);
+
+		if(id == -1){
+			List<Action> gas = this.applicableActions(s.s());
+			if(gas.isEmpty()){
+				throw new RuntimeErrorException(new Error("No possible actions in this state, cannot continue Q-learning"));
+			}
+			double [] initialQs = new double[gas.size()];
+			for(int i = 0; i < initialQs.length; i++){
+				initialQs[i] = qInitFunction.qValue(s.s(), gas.get(i));
+			}
+			id = this.flatQTable.addState(s, gas, initialQs);
+		}
+
+		return id;
+
+	}
+
+
+	/**
+	 * Returns the {@link FlatQTable} Q-value slot of an action in a state.
+	 * @param id the id of the state in the {@link FlatQTable}
+	 * @param a the action
+	 * @return the Q-value slot of the action
+	 */
+	protected int flatSlot(int id, Action a){
+		int slot = this.flatQTable.slot(id, a);
+		if(slot == -1){
+			throw new RuntimeException("No Q-value is stored for action " + a.toString() + " in the flat Q-table.");
+		}
+		return slot;
+	}
+
 	/**
 	 * Returns the maximum Q-value in the hashed stated.
 	 * @param s the state for which to get he maximum Q-value;
@@ -440,7 +533,7 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 		while(!env.isInTerminalState() && (eStepCounter < maxSteps || maxSteps == -1)){
 
 			Action action = learningPolicy.action(curState.s());
-			QValue curQ = this.getQ(curState, action);
+			StoredQValue curQ = this.storedQ(curState, action);
 
 
 
@@ -458,7 +551,7 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 			double maxQ = 0.;
 
 			if(!eo.terminated){
-				maxQ = this.getMaxQ(nextState);
+				maxQ = this.storedMaxQ(nextState);
 			}
 
 			//manage option specifics
@@ -476,12 +569,13 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 
 
 
-			double oldQ = curQ.q;
+			double oldQ = this.readQ(curQ);
 
 			//update Q-value
-			curQ.q = curQ.q + this.learningRate.pollLearningRate(this.totalNumberOfSteps, curState.s(), action) * (r + (discount * maxQ) - curQ.q);
+			double newQ = oldQ + this.learningRate.pollLearningRate(this.totalNumberOfSteps, curState.s(), action) * (r + (discount * maxQ) - oldQ);
+			this.writeQ(curQ, newQ);
 
-			double deltaQ = Math.abs(oldQ - curQ.q);
+			double deltaQ = Math.abs(oldQ - newQ);
 			if(deltaQ > maxQChangeInLastEpisode){
 				maxQChangeInLastEpisode = deltaQ;
 			}
@@ -499,11 +593,78 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 	}
 
 
+	/**
+	 * Returns a reference to the stored Q-value of an action in a hashed state, whether Q-values are stored in
+	 * {@link QLearningStateNode} objects or in the {@link FlatQTable}. The state is added if it is not stored yet.
+	 * @param s the hashed state
+	 * @param a the action
+	 * @return a reference to the stored Q-value
+	 */
+	protected StoredQValue storedQ(HashableState s, Action a){
+		if(this.flatQTable != null){
+			int id = this.flatStateId(s);
+			return new StoredQValue(s, id, this.flatSlot(id, a));
+		}
+		return new StoredQValue(s, this.getQ(s, a));
+	}
+
+
+	/**
+	 * Returns the current value of a stored Q-value.
+	 * @param q the reference to the stored Q-value
+	 * @return the current Q-value
+	 */
+	protected double readQ(StoredQValue q){
+		return q.q != null ? q.q.q : this.flatQTable.q(q.slot);
+	}
+
+
+	/**
+	 * Returns the action of a stored Q-value.
+	 * @param q the reference to the stored Q-value
+	 * @return the action of the Q-value
+	 */
+	protected Action storedAction(StoredQValue q){
+		return q.q != null ? q.q.a : this.flatQTable.action(q.slot);
+	}
+
+
+	/**
+	 * Sets a stored Q-value.
+	 * @param q the reference to the stored Q-value
+	 * @param v the new Q-value
+	 */
+	protected void writeQ(StoredQValue q, double v){
+		if(q.q != null){
+			q.q.q = v;
+		}
+		else{
+			this.flatQTable.setQ(q.slot, v);
+		}
+	}
+
+
+	/**
+	 * Returns the maximum stored Q-value of a hashed state, adding the state if it is not stored yet.
+	 * @param s the hashed state
+	 * @return the maximum Q-value of the state
+	 */
+	protected double storedMaxQ(HashableState s){
+		if(this.flatQTable != null){
+			return this.flatQTable.maxQ(this.flatStateId(s));
+		}
+		return this.getMaxQ(s);
+	}
+
+
 	
 	
 	@Override
 	public void resetSolver(){
 		this.qFunction.clear();
+		if(this.flatQTable != null){
+			this.flatQTable.clear();
+		}
 		this.eStepCounter = 0;
 		this.maxQChangeInLastEpisode = Double.POSITIVE_INFINITY;
 	}
@@ -513,13 +674,18 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 	 * Writes the q-function table stored in this object to the specified file path.
 	 * Uses a standard YAML approach, which means the HashableState and underlying Domain states
 	 * must have JavaBean like properties; i.e., have a default constructor and getters and setters (or public data
-	 * members) for all relevant fields.
+	 * members) for all relevant fields. If the {@link FlatQTable} is used, it is written in the same format.
 	 * @param path the path to write the value function
 	 */
 	public void writeQTable(String path){
+		Map<HashableState, QLearningStateNode> nodes = this.qFunction;
+		if(this.flatQTable != null){
+			nodes = new HashMap<HashableState, QLearningStateNode>();
+			this.flatQTable.toNodes(nodes);
+		}
 		Yaml yaml = new Yaml();
 		try {
-			yaml.dump(this.qFunction, new BufferedWriter(new FileWriter(path)));
+			yaml.dump(nodes, new BufferedWriter(new FileWriter(path)));
 		} catch(IOException e) {
 			e.printStackTrace();
 		}
@@ -528,16 +694,97 @@ public class QLearning extends MDPSolver implements QProvider, LearningAgent, Pl
 
 	/**
 	 * Loads the q-function table located on disk at the specified path. Expects the file to be a Yaml
-	 * representation of a Java {@link Map} from {@link HashableState} to {@link QLearningStateNode}.
+	 * representation of a Java {@link Map} from {@link HashableState} to {@link QLearningStateNode}. If the {@link FlatQTable} is used,
+	 * the loaded Q-values replace its contents.
 	 * @param path the path to the save value function table
 	 */
 	public void loadQTable(String path){
 		Yaml yaml = new Yaml();
 		try {
 			this.qFunction = (Map<HashableState, QLearningStateNode>)yaml.load(new FileInputStream(path));
+			if(this.flatQTable != null){
+				this.flatQTable.clear();
+				this.flatQTable.addNodes(this.qFunction);
+				this.qFunction.clear();
+			}
 		} catch(FileNotFoundException e) {
 			e.printStackTrace();
 		}
 	}
 
+
+
+	/**
+	 * A reference to a stored Q-value, which is either a {@link QValue} of a {@link QLearningStateNode}, or a Q-value slot
+	 * of the {@link FlatQTable}. Episode loops read and update Q-values through these references with {@link #readQ(StoredQValue)}
+	 * and {@link #writeQ(StoredQValue, double)}, so the same loop works with either storage.
+	 */
+	public static class StoredQValue{
+
+		/**
+		 * The hashed state of the Q-value
+		 */
+		public HashableState			sh;
+
+		/**
+		 * The stored {@link QValue} object; null if the Q-value is stored in the {@link FlatQTable}
+		 */
+		public QValue					q;
+
+		/**
+		 * The {@link FlatQTable} state id; -1 if the Q-value is stored in a {@link QLearningStateNode}
+		 */
+		public int						stateId = -1;
+
+		/**
+		 * The {@link FlatQTable} Q-value slot; -1 if the Q-value is stored in a {@link QLearningStateNode}
+		 */
+		public int						slot = -1;
+
+
+		/**
+		 * Initializes a reference to a Q-value stored in a {@link QLearningStateNode}.
+		 * @param sh the hashed state
+		 * @param q the stored {@link QValue} object
+		 */
+		public StoredQValue(HashableState sh, QValue q){
+			this.sh = sh;
+			this.q = q;
+		}
+
+
+		/**
+		 * Initializes a reference to a Q-value stored in the {@link FlatQTable}.
+		 * @param sh the hashed state
+		 * @param stateId the {@link FlatQTable} state id
+		 * @param slot the {@link FlatQTable} Q-value slot
+		 */
+		public StoredQValue(HashableState sh, int stateId, int slot){
+			this.sh = sh;
+			this.stateId = stateId;
+			this.slot = slot;
+		}
+
+
+		/**
+		 * Returns whether this reference and another refer to the same state.
+		 * @param o the other reference
+		 * @return true if both references refer to the same state; false otherwise.
+		 */
+		public boolean sameState(StoredQValue o){
+			return this.q != null ? this.sh.equals(o.sh) : this.stateId == o.stateId;
+		}
+
+
+		/**
+		 * Returns whether this reference and another refer to the same stored Q-value.
+		 * @param o the other reference
+		 * @return true if both references refer to the same Q-value; false otherwise.
+		 */
+		public boolean sameQ(StoredQValue o){
+			return this.q != null ? this.q == o.q : this.slot == o.slot;
+		}
+
+	}
+
 }
@@ -31,6 +31,9 @@ import java.util.LinkedList;
  * want to use a custom learning rate decay schedule rather than a constant learning rate, use the
  * {@link #setLearningRateFunction(burlap.behavior.learningrate.LearningRate)}.
  * <p>
+ * If the {@link FlatQTable} is enabled with {@link #toggleFlatQTable(boolean)}, the eligibility traces refer to the Q-value slots
+ * of the {@link FlatQTable}.
+ * <p>
  * @author James MacGlashan
  * 
  * <p>
@@ -156,7 +159,7 @@ public class SarsaLam extends QLearning {
 		LinkedList<EligibilityTrace> traces = new LinkedList<SarsaLam.EligibilityTrace>();
 
 		Action action = learningPolicy.action(curState.s());
-		QValue curQ = this.getQ(curState, action);
+		StoredQValue curQ = this.storedQ(curState, action);
 
 
 
@@ -172,8 +175,8 @@ public class SarsaLam extends QLearning {
 
 			HashableState nextState = this.stateHash(eo.op);
 			Action nextAction = learningPolicy.action(nextState.s());
-			QValue nextQ = this.getQ(nextState, nextAction);
-			double nextQV = nextQ.q;
+			StoredQValue nextQ = this.storedQ(nextState, nextAction);
+			double nextQV = this.readQ(nextQ);
 
 			if(env.isInTerminalState()){
 				nextQV = 0.;
@@ -196,14 +199,14 @@ public class SarsaLam extends QLearning {
 
 
 			//delta
-			double delta = r + (discount * nextQV) - curQ.q;
+			double delta = r + (discount * nextQV) - this.readQ(curQ);
 
 			//update all
 			boolean foundCurrentQTrace = false;
 			for(EligibilityTrace et : traces){
 
-				if(et.sh.equals(curState)){
-					if(et.q.a.equals(action)){
+				if(et.storedQ.sameState(curQ)){
+					if(et.storedQ.sameQ(curQ)){
 						foundCurrentQTrace = true;
 						et.eligibility = 1.; //replacing traces
 					}
@@ -212,12 +215,13 @@ public class SarsaLam extends QLearning {
 					}
 				}
 
-				double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, et.sh.s(), et.q.a);
+				double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, et.sh.s(), this.storedAction(et.storedQ));
 
-				et.q.q = et.q.q + (learningRate * et.eligibility * delta);
+				double q = this.readQ(et.storedQ) + (learningRate * et.eligibility * delta);
+				this.writeQ(et.storedQ, q);
 				et.eligibility = et.eligibility * lambda * discount;
 
-				double deltaQ = Math.abs(et.initialQ - et.q.q);
+				double deltaQ = Math.abs(et.initialQ - q);
 				if(deltaQ > maxQChangeInLastEpisode){
 					maxQChangeInLastEpisode = deltaQ;
 				}
@@ -226,13 +230,15 @@ public class SarsaLam extends QLearning {
 
 			if(!foundCurrentQTrace){
 				//then update and add it
-				double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, curQ.s, curQ.a);
-				curQ.q = curQ.q + (learningRate * delta);
-				EligibilityTrace et = new EligibilityTrace(curState, curQ, lambda*discount);
+				double initialQ = this.readQ(curQ);
+				double learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, curState.s(), this.storedAction(curQ));
+				double q = initialQ + (learningRate * delta);
+				this.writeQ(curQ, q);
+				EligibilityTrace et = new EligibilityTrace(curQ, lambda*discount, initialQ);
 
 				traces.add(et);
 
-				double deltaQ = Math.abs(et.initialQ - et.q.q);
+				double deltaQ = Math.abs(initialQ - q);
 				if(deltaQ > maxQChangeInLastEpisode){
 					maxQChangeInLastEpisode = deltaQ;
 				}
@@ -280,6 +286,11 @@ public class SarsaLam extends QLearning {
 		 * The current Q-value info for this trace (contains the action reference)
 		 */
 		public QValue					q;
+
+		/**
+		 * The reference to the stored Q-value of this trace
+		 */
+		public StoredQValue				storedQ;
 		
 		/**
 		 * The initial numeric Q-value for this trace when it was created.
@@ -297,9 +308,25 @@ public class SarsaLam extends QLearning {
 		public EligibilityTrace(HashableState sh, QValue q, double elgigbility){
 			this.sh = sh;
 			this.q = q;
+			this.storedQ = new StoredQValue(sh, q);
 			this.eligibility = elgigbility;
 			this.initialQ = q.q;
 		}
+
+
+		/**
+		 * Creates a new eligibility trace for a stored Q-value, which may be stored in the {@link FlatQTable}, in which case {@link #q} is null.
+		 * @param storedQ the reference to the stored Q-value of the trace
+		 * @param eligibility the eligibility value
+		 * @param initialQ the Q-value of the trace when it was created
+		 */
+		public EligibilityTrace(StoredQValue storedQ, double eligibility, double initialQ){
+			this.sh = storedQ.sh;
+			this.q = storedQ.q;
+			this.storedQ = storedQ;
+			this.eligibility = eligibility;
+			this.initialQ = initialQ;
+		}
 		
 		
 	}
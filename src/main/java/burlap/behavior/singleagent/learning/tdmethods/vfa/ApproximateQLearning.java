@@ -8,6 +8,7 @@ import burlap.behavior.singleagent.MDPSolver;
 import burlap.behavior.singleagent.learning.LearningAgent;
 import burlap.behavior.singleagent.learning.experiencereplay.ExperienceMemory;
 import burlap.behavior.singleagent.learning.experiencereplay.FixedSizeMemory;
+import burlap.behavior.singleagent.learning.experiencereplay.PrioritizedMemory;
 import burlap.behavior.singleagent.options.EnvironmentOptionOutcome;
 import burlap.behavior.valuefunction.QProvider;
 import burlap.behavior.valuefunction.QValue;
@@ -33,7 +34,8 @@ import java.util.List;
  * <br><br>
  * By default, the state q-function is not used (equivalent to updating it with every step) and the there is not experience
  * replay. However, you can change these settings with the {@link #useStaleTarget(int)} and {@link #setExperienceReplay(ExperienceMemory, int)}
- * methods.
+ * methods. If the memory is a {@link PrioritizedMemory}, implementations of {@link #updateQFunction(List)} should scale the update for each
+ * sample by {@link #sampleWeight(int)} and report the TD errors of the samples with {@link #reportTDErrors(double[])}, as {@link GradientDescentQLearning} does.
  * <br><br>
  * Finally, this implementation also has support for setting a {@link StateMapping} function so that states are transformed
  * from the {@link EnvironmentOutcome} observation into some other representation. By default, not state mapping is performed
@@ -84,6 +86,11 @@ public abstract class ApproximateQLearning extends MDPSolver implements Learning
 	 */
 	protected int numReplay = 1;
 
+	/**
+	 * The importance-sampling weights of the samples of the current {@link #updateQFunction(List)} call; null if they were not sampled from a {@link PrioritizedMemory}
+	 */
+	protected double [] sampleWeights = null;
+
 	/**
 	 * The learners policy to use. Typically these will be policies that link back to this object so that they change as the Q-value estimate change.
 	 */
@@ -205,7 +212,11 @@ public abstract class ApproximateQLearning extends MDPSolver implements Learning
 
 			//perform learners
 			List<EnvironmentOutcome> samples = this.memory.sampleExperiences(this.numReplay);
+			if(this.memory instanceof PrioritizedMemory){
+				this.sampleWeights = ((PrioritizedMemory)this.memory).lastSampleWeights();
+			}
 			this.updateQFunction(samples);
+			this.sampleWeights = null;
 
 			//update stale function
 			this.stepsSinceStale++;
@@ -332,6 +343,31 @@ public abstract class ApproximateQLearning extends MDPSolver implements Learning
 	}
 
 
+	/**
+	 * Returns the importance-sampling weight of a sample of the current {@link #updateQFunction(List)} call, by which its update should be scaled.
+	 * @param i the index of the sample
+	 * @return the importance-sampling weight of the sample; 1 if the samples were not drawn from a {@link PrioritizedMemory}
+	 */
+	protected double sampleWeight(int i){
+		if(this.sampleWeights == null || i >= this.sampleWeights.length){
+			return 1.;
+		}
+		return this.sampleWeights[i];
+	}
+
+
+	/**
+	 * Reports the TD errors of the samples of the current {@link #updateQFunction(List)} call to the memory, if the samples were drawn from a
+	 * {@link PrioritizedMemory}, so that it can update their priorities.
+	 * @param tdErrors the TD error of each sample, in order
+	 */
+	protected void reportTDErrors(double [] tdErrors){
+		if(this.sampleWeights != null){
+			((PrioritizedMemory)this.memory).updatePriorities(tdErrors);
+		}
+	}
+
+
 	/**
 	 * Causes this objects value function approximation to be updated with respect to the provided experiences. This should result in the
 	 * vfa data member being updated. Updates should be made using target Q-values of the next state from the stale Q-function, which can be accessed
@@ -0,0 +1,178 @@
+package burlap.behavior.singleagent.learning.tdmethods.vfa;
+
+import burlap.behavior.functionapproximation.dense.DenseCrossProductFeatures;
+import burlap.behavior.functionapproximation.dense.DenseStateActionLinearVFA;
+import burlap.behavior.functionapproximation.dense.DenseStateFeatures;
+import burlap.behavior.singleagent.options.EnvironmentOptionOutcome;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.state.State;
+import burlap.mdp.singleagent.SADomain;
+import burlap.mdp.singleagent.environment.EnvironmentOutcome;
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A gradient descent Q-learning implementation for linear Q-functions over dense state features that updates a whole batch of experiences
+ * with matrix operations. The Q-function is a {@link DenseStateActionLinearVFA} over the {@link DenseCrossProductFeatures} of the state features,
+ * so its weights form a matrix W with a row of state feature weights for each action. For a batch of B experiences, the state features
+ * of the batch are written into the rows of a dense B x d matrix Phi (and of the next states into Phi'), the Q-values of all actions
+ * are computed at once as Phi W^T (and Phi' W'^T with the weights W' of the target Q-function), and the gradient step is the single
+ * matrix product W += (lr/B) D^T Phi, where D holds the TD error of each experience in the column of its action. The matrices are
+ * reused across updates, so an update allocates only the feature vectors returned by the state features.
+ * <p>
+ * The update is the same as that of {@link GradientDescentQLearning} with a constant learning rate, which sums the per-experience gradients
+ * and applies them after the whole batch is processed. As with any {@link ApproximateQLearning}, the batch size is set with
+ * {@link #setExperienceReplay(burlap.behavior.singleagent.learning.experiencereplay.ExperienceMemory, int)}, and a target network that is refreshed
+ * every n steps is used with {@link #useStaleTarget(int)}; a {@link burlap.behavior.singleagent.learning.experiencereplay.PrioritizedMemory}
+ * is also supported.
+ */
+public class BatchedGradientDescentQLearning extends ApproximateQLearning {
+
+	/**
+	 * The state features
+	 */
+	protected DenseStateFeatures stateFeatures;
+
+	/**
+	 * The state-action features, which define the row of the weight matrix of each action
+	 */
+	protected DenseCrossProductFeatures stateActionFeatures;
+
+	/**
+	 * The learning rate
+	 */
+	protected double learningRate;
+
+	protected DenseMatrix64F phi = new DenseMatrix64F(1, 1);
+	protected DenseMatrix64F phiNext = new DenseMatrix64F(1, 1);
+	protected DenseMatrix64F qs = new DenseMatrix64F(1, 1);
+	protected DenseMatrix64F qsNext = new DenseMatrix64F(1, 1);
+	protected DenseMatrix64F deltas = new DenseMatrix64F(1, 1);
+	protected DenseMatrix64F weightGradient = new DenseMatrix64F(1, 1);
+
+
+	/**
+	 * Initializes.
+	 * @param domain the learning domain
+	 * @param gamma the discount factor
+	 * @param stateFeatures the state features
+	 * @param numActions the number of actions in the domain
+	 * @param learningRate the learning rate
+	 */
+	public BatchedGradientDescentQLearning(SADomain domain, double gamma, DenseStateFeatures stateFeatures, int numActions, double learningRate) {
+		this(domain, gamma, new DenseStateActionLinearVFA(new DenseCrossProductFeatures(stateFeatures, numActions), 0.), learningRate);
+	}
+
+
+	/**
+	 * Initializes with a linear Q-function, which must use {@link DenseCrossProductFeatures}.
+	 * @param domain the learning domain
+	 * @param gamma the discount factor
+	 * @param vfa the linear Q-function
+	 * @param learningRate the learning rate
+	 */
+	public BatchedGradientDescentQLearning(SADomain domain, double gamma, DenseStateActionLinearVFA vfa, double learningRate) {
+		super(domain, gamma, vfa);
+		if(!(vfa.getFeatures() instanceof DenseCrossProductFeatures)){
+			throw new RuntimeException("BatchedGradientDescentQLearning requires a DenseStateActionLinearVFA with DenseCrossProductFeatures.");
+		}
+		this.stateActionFeatures = (DenseCrossProductFeatures)vfa.getFeatures();
+		this.stateFeatures = this.stateActionFeatures.getStateFeatures();
+		this.learningRate = learningRate;
+	}
+
+	public double getLearningRate() {
+		return learningRate;
+	}
+
+	public void setLearningRate(double learningRate) {
+		this.learningRate = learningRate;
+	}
+
+
+	@Override
+	public void updateQFunction(List<EnvironmentOutcome> samples) {
+
+		int n = samples.size();
+		if(n == 0){
+			return;
+		}
+		int numActions = this.stateActionFeatures.getNumActions();
+
+		//extract the features of the batch
+		for(int i = 0; i < n; i++){
+			EnvironmentOutcome eo = samples.get(i);
+			double [] f = this.stateFeatures.features(this.stateMapping.mapState(eo.o));
+			if(i == 0){
+				this.phi.reshape(n, f.length, false);
+				this.phiNext.reshape(n, f.length, false);
+			}
+			System.arraycopy(f, 0, this.phi.data, i*f.length, f.length);
+			if(!eo.terminated){
+				System.arraycopy(this.stateFeatures.features(this.stateMapping.mapState(eo.op)), 0, this.phiNext.data, i*f.length, f.length);
+			}
+			else{
+				Arrays.fill(this.phiNext.data, i*f.length, (i+1)*f.length, 0.);
+			}
+		}
+		int d = this.phi.numCols;
+
+		DenseMatrix64F w = this.weightMatrix((DenseStateActionLinearVFA)this.vfa, samples.get(0), numActions, d);
+		DenseMatrix64F targetW = this.staleVfa == this.vfa ? w : this.weightMatrix((DenseStateActionLinearVFA)this.staleVfa, samples.get(0), numActions, d);
+
+		//Q-values of all actions for the batch
+		this.qs.reshape(n, numActions, false);
+		this.qsNext.reshape(n, numActions, false);
+		CommonOps.multTransB(this.phi, w, this.qs);
+		CommonOps.multTransB(this.phiNext, targetW, this.qsNext);
+
+		//TD errors in the columns of the taken actions
+		this.deltas.reshape(n, numActions, false);
+		this.deltas.zero();
+		double [] tdErrors = new double[n];
+		for(int i = 0; i < n; i++){
+			EnvironmentOutcome eo = samples.get(i);
+			int a = this.stateActionFeatures.getActionOffset(eo.a);
+			double nextQV = 0.;
+			if(!eo.terminated){
+				nextQV = Double.NEGATIVE_INFINITY;
+				State nextState = this.stateMapping.mapState(eo.op);
+				for(Action na : this.applicableActions(nextState)){
+					nextQV = Math.max(nextQV, this.qsNext.get(i, this.stateActionFeatures.getActionOffset(na)));
+				}
+			}
+			double discount = eo instanceof EnvironmentOptionOutcome ? ((EnvironmentOptionOutcome)eo).discount : this.gamma;
+			double delta = eo.r + (discount*nextQV) - this.qs.get(i, a);
+			tdErrors[i] = delta;
+			this.deltas.add(i, a, delta * this.sampleWeight(i));
+		}
+
+		this.reportTDErrors(tdErrors);
+
+		//gradient step
+		this.weightGradient.reshape(numActions, d, false);
+		CommonOps.multTransA(this.deltas, this.phi, this.weightGradient);
+		CommonOps.addEquals(w, this.learningRate / n, this.weightGradient);
+
+	}
+
+
+	/**
+	 * Returns a matrix that wraps the weights of a linear Q-function, with a row for each action.
+	 * @param vfa the linear Q-function
+	 * @param eo an experience, which is evaluated to initialize the weights to their default value if they have not been yet
+	 * @param numActions the number of actions
+	 * @param d the number of state features
+	 * @return the weight matrix, which shares its data with the Q-function
+	 */
+	protected DenseMatrix64F weightMatrix(DenseStateActionLinearVFA vfa, EnvironmentOutcome eo, int numActions, int d){
+		if(vfa.getStateActionWeights() == null){
+			vfa.evaluate(this.stateMapping.mapState(eo.o), eo.a);
+		}
+		return DenseMatrix64F.wrap(numActions, d, vfa.getStateActionWeights());
+	}
+
+}
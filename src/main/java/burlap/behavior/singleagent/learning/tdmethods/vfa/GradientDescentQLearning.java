@@ -14,7 +14,9 @@ import java.util.Map;
 
 /**
  * An implementation of Gradient Descent Q-learning. By default, updates the Q-function for the most recent example,
- * but because it extends {@link ApproximateQLearning}, it can set to use experience replay and state Q-functions.
+ * but because it extends {@link ApproximateQLearning}, it can set to use experience replay and state Q-functions. With a
+ * {@link burlap.behavior.singleagent.learning.experiencereplay.PrioritizedMemory}, the TD error of each sample is scaled by its
+ * importance-sampling weight and reported back to the memory.
  * @author James MacGlashan.
  */
 public class GradientDescentQLearning extends ApproximateQLearning {
@@ -61,7 +63,9 @@ public class GradientDescentQLearning extends ApproximateQLearning {
 	public void updateQFunction(List<EnvironmentOutcome> samples) {
 
 		HashedAggregator<Integer> sumGradient = new HashedAggregator<Integer>();
-		for(EnvironmentOutcome eo : samples){
+		double [] tdErrors = new double[samples.size()];
+		for(int i = 0; i < samples.size(); i++){
+			EnvironmentOutcome eo = samples.get(i);
 
 			//get statistics
 			double curQ = this.vfa.evaluate(eo.o, eo.a);
@@ -73,6 +77,8 @@ public class GradientDescentQLearning extends ApproximateQLearning {
 
 			//compute function delta
 			double delta = eo.r + (discount*nextQV) - curQ;
+			tdErrors[i] = delta;
+			delta *= this.sampleWeight(i);
 
 			//get gradient and add it
 			FunctionGradient gradient = ((DifferentiableStateActionValue)this.vfa).gradient(eo.o, eo.a);
@@ -84,6 +90,8 @@ public class GradientDescentQLearning extends ApproximateQLearning {
 
 		}
 
+		this.reportTDErrors(tdErrors);
+
 		//now update parameters
 		double scalar = 1. / samples.size();
 		for(Map.Entry<Integer, Double> pd : sumGradient.entrySet()){
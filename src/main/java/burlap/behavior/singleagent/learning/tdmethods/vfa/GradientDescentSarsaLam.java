@@ -2,6 +2,7 @@ package burlap.behavior.singleagent.learning.tdmethods.vfa;
 
 import burlap.behavior.functionapproximation.DifferentiableStateActionValue;
 import burlap.behavior.functionapproximation.FunctionGradient;
+import burlap.behavior.functionapproximation.sparse.ArrayLinearVFA;
 import burlap.behavior.learningrate.ConstantLR;
 import burlap.behavior.learningrate.LearningRate;
 import burlap.behavior.policy.EpsilonGreedy;
@@ -43,6 +44,10 @@ import java.util.*;
  * want to use a custom learning rate decay schedule rather than a constant learning rate, use the
  * {@link #setLearningRate(burlap.behavior.learningrate.LearningRate)}.
  * <p>
+ * If the value function approximation is an {@link ArrayLinearVFA}, each learning step writes gradients into reused buffers
+ * and keeps the eligibility traces in primitive arrays indexed by parameter id (see {@link ArrayEpisodeTraces}), so that steps do not
+ * allocate; the learned weights are the same as they would be with the general implementation.
+ * <p>
  * @author James MacGlashan
  * 
  * <p>
@@ -330,14 +335,14 @@ public class GradientDescentSarsaLam extends MDPSolver implements QProvider, Lea
 
 		State curState = initialState;
 		eStepCounter = 0;
-		Map <Integer, EligibilityTraceVector> traces = new HashMap<Integer, EligibilityTraceVector>();
+		EpisodeTraces traces = this.vfa instanceof ArrayLinearVFA ? new ArrayEpisodeTraces((ArrayLinearVFA)this.vfa) : new MapEpisodeTraces();
 
 		Action action = this.learningPolicy.action(curState);
 		while(!env.isInTerminalState() && (eStepCounter < maxSteps || maxSteps == -1)){
 
 			//get Q-value and gradient
 			double curQ = this.vfa.evaluate(curState, action);
-			FunctionGradient gradient = this.vfa.gradient(curState, action);
+			traces.computeGradient(curState, action);
 
 			EnvironmentOutcome eo;
 			if(!(action instanceof Option)){
@@ -377,33 +382,14 @@ public class GradientDescentSarsaLam extends MDPSolver implements QProvider, Lea
 			if(this.useReplacingTraces){
 				List<Action> allActions = this.applicableActions(curState);
 				for(Action oa : allActions){
-
-					//get non-zero parameters and zero them
 					this.vfa.evaluate(curState, oa);
-					FunctionGradient ofg = this.vfa.gradient(curState, oa);
-					for(FunctionGradient.PartialDerivative pds : ofg.getNonZeroPartialDerivatives()){
-						EligibilityTraceVector et = traces.get(pds.parameterId);
-						if(et != null){
-							et.eligibilityValue = 0.;
-						}
-						else{
-							//no trace for this yet, so add it
-							et = new EligibilityTraceVector(pds.parameterId, this.vfa.getParameter(pds.parameterId), 0.);
-							traces.put(pds.parameterId, et);
-						}
-					}
-
+					traces.replaceTraces(curState, oa);
 				}
 			}
 			else{
 				//if not using replacing traces, then add any new parameters whose traces need to be set, but set initially
 				//at zero since it will be updated in the next loop
-				for(FunctionGradient.PartialDerivative pds : gradient.getNonZeroPartialDerivatives()){
-					if(!traces.containsKey(pds.parameterId)){
-						traces.put(pds.parameterId, new EligibilityTraceVector(pds.parameterId, this.vfa.getParameter(pds.parameterId), 0.));
-					}
-				}
-
+				traces.traceGradient();
 			}
 
 
@@ -413,34 +399,7 @@ public class GradientDescentSarsaLam extends MDPSolver implements QProvider, Lea
 				learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, curState, action);
 			}
 
-			Set <Integer> deletedSet = new HashSet<Integer>();
-			for(EligibilityTraceVector et : traces.values()){
-				if(this.useFeatureWiseLearningRate){
-					learningRate = this.learningRate.pollLearningRate(this.totalNumberOfSteps, et.weight);
-				}
-
-				et.eligibilityValue += gradient.getPartialDerivative(et.weight);
-				double newParam = vfa.getParameter(et.weight) + learningRate * delta * et.eligibilityValue;
-				this.vfa.setParameter(et.weight, newParam);
-
-				double deltaW = Math.abs(et.initialWeightValue - newParam);
-				if(deltaW > maxWeightChangeInLastEpisode){
-					maxWeightChangeInLastEpisode = deltaW;
-				}
-
-				//now decay and delete from tracking if too small
-				et.eligibilityValue *= this.lambda*discount;
-				if(et.eligibilityValue < this.minEligibityForUpdate){
-					deletedSet.add(et.weight);
-				}
-
-
-			}
-
-			//delete traces marked for deletion
-			for(Integer t : deletedSet){
-				traces.remove(t);
-			}
+			traces.updateParameters(learningRate, delta, discount);
 
 			//move on
 			curState = nextState;
@@ -456,6 +415,19 @@ public class GradientDescentSarsaLam extends MDPSolver implements QProvider, Lea
 	}
 
 
+	/**
+	 * Records the change of a parameter after it has been updated, if it is the largest change in the episode.
+	 * @param initialWeight the value of the parameter when its trace started
+	 * @param newParam the updated value of the parameter
+	 */
+	protected void recordWeightChange(double initialWeight, double newParam){
+		double deltaW = Math.abs(initialWeight - newParam);
+		if(deltaW > maxWeightChangeInLastEpisode){
+			maxWeightChangeInLastEpisode = deltaW;
+		}
+	}
+
+
 	@Override
 	public List<QValue> qValues(State s) {
 		List<Action> gas = this.applicableActions(s);
@@ -514,6 +486,220 @@ public class GradientDescentSarsaLam extends MDPSolver implements QProvider, Lea
 	}
 	
 	
+	/**
+	 * The eligibility traces of an episode and the gradient of the current step, which {@link #runLearningEpisode(Environment, int)}
+	 * uses to update the VFA parameters.
+	 */
+	protected abstract class EpisodeTraces{
+
+		/**
+		 * Computes the gradient of the Q-value of the current state-action pair, which must have just been evaluated.
+		 * @param s the current state
+		 * @param a the current action
+		 */
+		public abstract void computeGradient(State s, Action a);
+
+		/**
+		 * Zeros the traces of the parameters with a non-zero partial derivative for a state-action pair, which must have just been
+		 * evaluated, and starts tracing those that are not traced yet.
+		 * @param s the current state
+		 * @param a an action applicable in the current state
+		 */
+		public abstract void replaceTraces(State s, Action a);
+
+		/**
+		 * Starts tracing, with zero eligibility, the parameters of the current gradient that are not traced yet.
+		 */
+		public abstract void traceGradient();
+
+		/**
+		 * Adds the current gradient to the traces, updates the traced parameters, and then decays the traces and stops tracing
+		 * parameters whose eligibility is too small.
+		 * @param learningRate the learning rate to use, if the learning rate is not feature-wise
+		 * @param delta the TD error
+		 * @param discount the discount of the step
+		 */
+		public abstract void updateParameters(double learningRate, double delta, double discount);
+
+	}
+
+
+	/**
+	 * {@link EpisodeTraces} for any {@link DifferentiableStateActionValue}, with traces stored in a map of {@link EligibilityTraceVector} objects.
+	 */
+	protected class MapEpisodeTraces extends EpisodeTraces{
+
+		/**
+		 * The trace of each traced parameter
+		 */
+		protected Map <Integer, EligibilityTraceVector> traces = new HashMap<Integer, EligibilityTraceVector>();
+
+		/**
+		 * The gradient of the current state-action pair
+		 */
+		protected FunctionGradient gradient;
+
+		@Override
+		public void computeGradient(State s, Action a) {
+			this.gradient = vfa.gradient(s, a);
+		}
+
+		@Override
+		public void replaceTraces(State s, Action a) {
+			//get non-zero parameters and zero them
+			FunctionGradient ofg = vfa.gradient(s, a);
+			for(FunctionGradient.PartialDerivative pds : ofg.getNonZeroPartialDerivatives()){
+				EligibilityTraceVector et = traces.get(pds.parameterId);
+				if(et != null){
+					et.eligibilityValue = 0.;
+				}
+				else{
+					//no trace for this yet, so add it
+					et = new EligibilityTraceVector(pds.parameterId, vfa.getParameter(pds.parameterId), 0.);
+					traces.put(pds.parameterId, et);
+				}
+			}
+		}
+
+		@Override
+		public void traceGradient() {
+			for(FunctionGradient.PartialDerivative pds : gradient.getNonZeroPartialDerivatives()){
+				if(!traces.containsKey(pds.parameterId)){
+					traces.put(pds.parameterId, new EligibilityTraceVector(pds.parameterId, vfa.getParameter(pds.parameterId), 0.));
+				}
+			}
+		}
+
+		@Override
+		public void updateParameters(double learningRate, double delta, double discount) {
+
+			Set <Integer> deletedSet = new HashSet<Integer>();
+			for(EligibilityTraceVector et : traces.values()){
+				if(useFeatureWiseLearningRate){
+					learningRate = GradientDescentSarsaLam.this.learningRate.pollLearningRate(totalNumberOfSteps, et.weight);
+				}
+
+				et.eligibilityValue += gradient.getPartialDerivative(et.weight);
+				double newParam = vfa.getParameter(et.weight) + learningRate * delta * et.eligibilityValue;
+				vfa.setParameter(et.weight, newParam);
+				recordWeightChange(et.initialWeightValue, newParam);
+
+				//now decay and delete from tracking if too small
+				et.eligibilityValue *= lambda*discount;
+				if(et.eligibilityValue < minEligibityForUpdate){
+					deletedSet.add(et.weight);
+				}
+
+			}
+
+			//delete traces marked for deletion
+			for(Integer t : deletedSet){
+				traces.remove(t);
+			}
+		}
+
+	}
+
+
+	/**
+	 * {@link EpisodeTraces} for an {@link ArrayLinearVFA}, which writes gradients into reused buffers and keeps the traces in an
+	 * {@link ArrayEligibilityTraces} object, so that steps do not allocate.
+	 */
+	protected class ArrayEpisodeTraces extends EpisodeTraces{
+
+		/**
+		 * The value function approximation, which is {@link #vfa}
+		 */
+		protected ArrayLinearVFA avfa;
+
+		/**
+		 * The traces of the parameters
+		 */
+		protected ArrayEligibilityTraces traces;
+
+		/**
+		 * The buffer of the gradient of the current state-action pair
+		 */
+		protected FunctionGradient.BufferedSparseGradient gradient = new FunctionGradient.BufferedSparseGradient();
+
+		/**
+		 * The buffer of the gradients of the other actions used to replace traces
+		 */
+		protected FunctionGradient.BufferedSparseGradient otherGradient = new FunctionGradient.BufferedSparseGradient();
+
+		/**
+		 * Initializes.
+		 * @param avfa the value function approximation, which is {@link #vfa}
+		 */
+		public ArrayEpisodeTraces(ArrayLinearVFA avfa) {
+			this.avfa = avfa;
+			this.traces = new ArrayEligibilityTraces(avfa.numParameters());
+		}
+
+		@Override
+		public void computeGradient(State s, Action a) {
+			avfa.gradient(s, a, gradient);
+		}
+
+		@Override
+		public void replaceTraces(State s, Action a) {
+			//get non-zero parameters and zero them
+			avfa.gradient(s, a, otherGradient);
+			for(int i = 0; i < otherGradient.numNonZeroPDs(); i++){
+				int w = otherGradient.parameterId(i);
+				if(traces.isTraced(w)){
+					traces.eligibility[w] = 0.;
+				}
+				else{
+					//no trace for this yet, so add it
+					traces.add(w, avfa.getParameter(w), 0.);
+				}
+			}
+		}
+
+		@Override
+		public void traceGradient() {
+			for(int i = 0; i < gradient.numNonZeroPDs(); i++){
+				int w = gradient.parameterId(i);
+				if(!traces.isTraced(w)){
+					traces.add(w, avfa.getParameter(w), 0.);
+				}
+			}
+		}
+
+		@Override
+		public void updateParameters(double learningRate, double delta, double discount) {
+
+			traces.setGradient(gradient);
+			int numKept = 0;
+			for(int i = 0; i < traces.size; i++){
+				int w = traces.traced[i];
+				if(useFeatureWiseLearningRate){
+					learningRate = GradientDescentSarsaLam.this.learningRate.pollLearningRate(totalNumberOfSteps, w);
+				}
+
+				traces.eligibility[w] += traces.partialDerivatives[w];
+				double newParam = avfa.getParameter(w) + learningRate * delta * traces.eligibility[w];
+				avfa.setParameter(w, newParam);
+				recordWeightChange(traces.initialWeights[w], newParam);
+
+				//now decay and delete from tracking if too small
+				traces.eligibility[w] *= lambda*discount;
+				if(traces.eligibility[w] < minEligibityForUpdate){
+					traces.isTraced[w] = false;
+				}
+				else{
+					traces.traced[numKept++] = w;
+				}
+
+			}
+			traces.size = numKept;
+			traces.clearGradient(gradient);
+		}
+
+	}
+
+
 	/**
 	 * An object for keeping track of the eligibility traces within an episode for each VFA weight
 	 * @author James MacGlashan
@@ -551,4 +737,124 @@ public class GradientDescentSarsaLam extends MDPSolver implements QProvider, Lea
 		
 	}
 
+
+	/**
+	 * Eligibility traces for the weights of an {@link ArrayLinearVFA}, stored in primitive arrays indexed by parameter id,
+	 * along with the list of traced parameter ids.
+	 */
+	public static class ArrayEligibilityTraces{
+
+		/**
+		 * The eligibility value of each parameter
+		 */
+		public double []			eligibility;
+
+		/**
+		 * The value of each parameter when its trace started
+		 */
+		public double []			initialWeights;
+
+		/**
+		 * Whether each parameter is traced
+		 */
+		public boolean []			isTraced;
+
+		/**
+		 * The partial derivative of each parameter in the current gradient; zero for parameters not in the gradient
+		 */
+		public double []			partialDerivatives;
+
+		/**
+		 * The traced parameter ids
+		 */
+		public int []				traced;
+
+		/**
+		 * The number of traced parameters
+		 */
+		public int					size = 0;
+
+
+		/**
+		 * Initializes with space for the given number of parameters.
+		 * @param numParameters the number of parameters
+		 */
+		public ArrayEligibilityTraces(int numParameters){
+			int capacity = Math.max(16, numParameters);
+			this.eligibility = new double[capacity];
+			this.initialWeights = new double[capacity];
+			this.isTraced = new boolean[capacity];
+			this.partialDerivatives = new double[capacity];
+			this.traced = new int[16];
+		}
+
+
+		/**
+		 * Returns whether a parameter is traced.
+		 * @param w the parameter id
+		 * @return true if the parameter is traced; false otherwise
+		 */
+		public boolean isTraced(int w){
+			return w < this.isTraced.length && this.isTraced[w];
+		}
+
+
+		/**
+		 * Starts tracing a parameter that is not traced.
+		 * @param w the parameter id
+		 * @param weightValue the current value of the parameter
+		 * @param eligibilityValue the eligibility to assign to it
+		 */
+		public void add(int w, double weightValue, double eligibilityValue){
+			this.ensureParameter(w);
+			this.eligibility[w] = eligibilityValue;
+			this.initialWeights[w] = weightValue;
+			this.isTraced[w] = true;
+			if(this.size == this.traced.length){
+				this.traced = Arrays.copyOf(this.traced, this.size * 2);
+			}
+			this.traced[this.size++] = w;
+		}
+
+
+		/**
+		 * Sets the partial derivatives of the current gradient.
+		 * @param gradient the current gradient
+		 */
+		public void setGradient(FunctionGradient.BufferedSparseGradient gradient){
+			for(int i = 0; i < gradient.numNonZeroPDs(); i++){
+				int w = gradient.parameterId(i);
+				this.ensureParameter(w);
+				this.partialDerivatives[w] = gradient.partialDerivative(i);
+			}
+		}
+
+
+		/**
+		 * Resets the partial derivatives of the current gradient to zero.
+		 * @param gradient the current gradient
+		 */
+		public void clearGradient(FunctionGradient.BufferedSparseGradient gradient){
+			for(int i = 0; i < gradient.numNonZeroPDs(); i++){
+				this.partialDerivatives[gradient.parameterId(i)] = 0.;
+			}
+		}
+
+
+		/**
+		 * Grows the arrays, if needed, so that they have an entry for the given parameter id.
+		 * @param w the parameter id
+		 */
+		protected void ensureParameter(int w){
+			if(w >= this.eligibility.length){
+				int capacity = Math.max(w + 1, this.eligibility.length * 2);
+				this.eligibility = Arrays.copyOf(this.eligibility, capacity);
+				this.initialWeights = Arrays.copyOf(this.initialWeights, capacity);
+				this.isTraced = Arrays.copyOf(this.isTraced, capacity);
+				this.partialDerivatives = Arrays.copyOf(this.partialDerivatives, capacity);
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,29 @@
+package burlap.behavior.singleagent.planning;
+
+/**
+ * A {@link Planner} whose planning can be limited by a {@link PlanningBudget} of wall-clock time and/or expanded nodes. When the
+ * budget is exhausted, {@link #planFromState(burlap.mdp.core.state.State)} returns with the best Q-values computed so far,
+ * which makes it possible to guarantee a decision within a deadline. After each planning call, the planner's counters are available from
+ * {@link #getLastPlanningStatistics()}.
+ */
+public interface AnytimePlanner extends Planner {
+
+	/**
+	 * Sets the budget that limits each planning call.
+	 * @param budget the planning budget; null for no budget
+	 */
+	void setPlanningBudget(PlanningBudget budget);
+
+	/**
+	 * Returns the budget that limits each planning call.
+	 * @return the planning budget; null if there is no budget
+	 */
+	PlanningBudget getPlanningBudget();
+
+	/**
+	 * Returns the statistics of the most recent planning call.
+	 * @return the statistics of the most recent planning call
+	 */
+	PlanningStatistics getLastPlanningStatistics();
+
+}
@@ -0,0 +1,91 @@
+package burlap.behavior.singleagent.planning;
+
+/**
+ * A limit on the wall-clock time and/or the number of nodes that an {@link AnytimePlanner} may use in a single call to
+ * {@link Planner#planFromState(burlap.mdp.core.state.State)}. When the budget is exhausted, the planner stops and its
+ * Q-values are the best estimates it has computed so far. What counts as a node depends on the planner; see the documentation
+ * of each {@link AnytimePlanner} implementation.
+ */
+public class PlanningBudget {
+
+	/**
+	 * The maximum planning time in nanoseconds; -1 for no limit
+	 */
+	protected long maxTimeNanos;
+
+	/**
+	 * The maximum number of nodes; -1 for no limit
+	 */
+	protected long maxNodes;
+
+
+	/**
+	 * Initializes.
+	 * @param maxTimeMillis the maximum planning time in milliseconds; -1 for no limit
+	 * @param maxNodes the maximum number of nodes; -1 for no limit
+	 */
+	public PlanningBudget(long maxTimeMillis, long maxNodes) {
+		this.maxTimeNanos = maxTimeMillis == -1 ? -1 : maxTimeMillis * 1000000L;
+		this.maxNodes = maxNodes;
+	}
+
+
+	/**
+	 * Returns a budget that only limits the planning time.
+	 * @param maxTimeMillis the maximum planning time in milliseconds
+	 * @return a budget that only limits the planning time
+	 */
+	public static PlanningBudget time(long maxTimeMillis){
+		return new PlanningBudget(maxTimeMillis, -1);
+	}
+
+
+	/**
+	 * Returns a budget that only limits the number of nodes.
+	 * @param maxNodes the maximum number of nodes
+	 * @return a budget that only limits the number of nodes
+	 */
+	public static PlanningBudget nodes(long maxNodes){
+		return new PlanningBudget(-1, maxNodes);
+	}
+
+
+	/**
+	 * Returns the maximum planning time in milliseconds
+	 * @return the maximum planning time in milliseconds; -1 if there is no limit
+	 */
+	public long getMaxTimeMillis() {
+		return maxTimeNanos == -1 ? -1 : maxTimeNanos / 1000000L;
+	}
+
+
+	/**
+	 * Returns the maximum number of nodes
+	 * @return the maximum number of nodes; -1 if there is no limit
+	 */
+	public long getMaxNodes() {
+		return maxNodes;
+	}
+
+
+	/**
+	 * Returns whether this budget is exhausted after the given time and number of nodes.
+	 * @param elapsedNanos the planning time used so far in nanoseconds
+	 * @param nodes the number of nodes used so far
+	 * @return true if either limit has been reached; false otherwise
+	 */
+	public boolean isExhausted(long elapsedNanos, long nodes){
+		return (this.maxNodes != -1 && nodes >= this.maxNodes) || (this.maxTimeNanos != -1 && elapsedNanos >= this.maxTimeNanos);
+	}
+
+
+	/**
+	 * Returns whether this budget is exhausted for the planning call recorded by the given statistics.
+	 * @param stats the statistics of the current planning call
+	 * @return true if either limit has been reached; false otherwise
+	 */
+	public boolean isExhausted(PlanningStatistics stats){
+		return this.isExhausted(stats.getElapsedNanos(), stats.getNodesExpanded());
+	}
+
+}
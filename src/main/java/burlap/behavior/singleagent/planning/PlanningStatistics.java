@@ -0,0 +1,176 @@
+package burlap.behavior.singleagent.planning;
+
+/**
+ * Counters for a single call to {@link Planner#planFromState(burlap.mdp.core.state.State)} of an {@link AnytimePlanner}:
+ * the elapsed time, the number of planning iterations (such as rollouts) and the number of nodes expanded, and whether
+ * planning stopped because its {@link PlanningBudget} was exhausted. What counts as an iteration and as a node
+ * depends on the planner; see the documentation of each {@link AnytimePlanner} implementation.
+ */
+public class PlanningStatistics {
+
+	/**
+	 * The value of {@link System#nanoTime()} when planning started
+	 */
+	protected long startNanos;
+
+	/**
+	 * The value of {@link System#nanoTime()} when planning finished; -1 while planning
+	 */
+	protected long endNanos = -1;
+
+	/**
+	 * The number of planning iterations
+	 */
+	protected long iterations;
+
+	/**
+	 * The number of nodes expanded
+	 */
+	protected long nodesExpanded;
+
+	/**
+	 * Whether planning stopped because the planning budget was exhausted
+	 */
+	protected boolean budgetExhausted;
+
+
+	/**
+	 * Resets the counters and records the start of planning.
+	 */
+	public void start(){
+		this.startNanos = System.nanoTime();
+		this.endNanos = -1;
+		this.iterations = 0;
+		this.nodesExpanded = 0;
+		this.budgetExhausted = false;
+	}
+
+
+	/**
+	 * Records the end of planning.
+	 */
+	public void finish(){
+		this.endNanos = System.nanoTime();
+	}
+
+
+	/**
+	 * Returns whether the given budget is exhausted, and if so, records that planning stopped because of it.
+	 * @param budget the planning budget; null for no budget
+	 * @return true if the budget is exhausted; false otherwise or if there is no budget
+	 */
+	public boolean checkBudget(PlanningBudget budget){
+		if(budget != null && budget.isExhausted(this)){
+			this.budgetExhausted = true;
+			return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Adds planning iterations.
+	 * @param n the number of iterations to add
+	 */
+	public void addIterations(long n){
+		this.iterations += n;
+	}
+
+
+	/**
+	 * Sets the number of planning iterations.
+	 * @param iterations the number of planning iterations
+	 */
+	public void setIterations(long iterations){
+		this.iterations = iterations;
+	}
+
+
+	/**
+	 * Sets the number of nodes expanded.
+	 * @param nodesExpanded the number of nodes expanded
+	 */
+	public void setNodesExpanded(long nodesExpanded){
+		this.nodesExpanded = nodesExpanded;
+	}
+
+
+	/**
+	 * Sets whether planning stopped because the planning budget was exhausted.
+	 * @param budgetExhausted whether planning stopped because the planning budget was exhausted
+	 */
+	public void setBudgetExhausted(boolean budgetExhausted){
+		this.budgetExhausted = budgetExhausted;
+	}
+
+
+	/**
+	 * Returns the planning time in nanoseconds, up to now if planning has not finished.
+	 * @return the planning time in nanoseconds
+	 */
+	public long getElapsedNanos(){
+		return (this.endNanos == -1 ? System.nanoTime() : this.endNanos) - this.startNanos;
+	}
+
+
+	/**
+	 * Returns the planning time in seconds, up to now if planning has not finished.
+	 * @return the planning time in seconds
+	 */
+	public double getElapsedSeconds(){
+		return this.getElapsedNanos() / 1e9;
+	}
+
+
+	/**
+	 * Returns the number of planning iterations.
+	 * @return the number of planning iterations
+	 */
+	public long getIterations(){
+		return this.iterations;
+	}
+
+
+	/**
+	 * Returns the number of nodes expanded.
+	 * @return the number of nodes expanded
+	 */
+	public long getNodesExpanded(){
+		return this.nodesExpanded;
+	}
+
+
+	/**
+	 * Returns whether planning stopped because the planning budget was exhausted.
+	 * @return true if planning stopped because the planning budget was exhausted; false otherwise
+	 */
+	public boolean wasBudgetExhausted(){
+		return this.budgetExhausted;
+	}
+
+
+	/**
+	 * Returns the number of planning iterations per second.
+	 * @return the number of planning iterations per second
+	 */
+	public double getIterationsPerSecond(){
+		return this.iterations / this.getElapsedSeconds();
+	}
+
+
+	/**
+	 * Returns the number of nodes expanded per second.
+	 * @return the number of nodes expanded per second
+	 */
+	public double getNodesPerSecond(){
+		return this.nodesExpanded / this.getElapsedSeconds();
+	}
+
+
+	@Override
+	public String toString() {
+		return this.iterations + " iterations; " + this.nodesExpanded + " nodes; " + (this.getElapsedNanos() / 1000000L) + "ms"
+				+ (this.budgetExhausted ? "; budget exhausted" : "");
+	}
+
+}
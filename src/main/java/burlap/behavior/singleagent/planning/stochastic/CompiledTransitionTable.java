@@ -0,0 +1,643 @@
+package burlap.behavior.singleagent.planning.stochastic;
+
+import burlap.behavior.policy.EnumerablePolicy;
+import burlap.behavior.policy.PolicyUtils;
+import burlap.behavior.policy.support.ActionProb;
+import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.singleagent.planning.stochastic.dpoperator.DPOperator;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.action.ActionType;
+import burlap.mdp.core.action.ActionUtils;
+import burlap.mdp.singleagent.model.FullModel;
+import burlap.mdp.singleagent.model.TransitionProb;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+
+import java.util.*;
+
+/**
+ * A compiled, index-based representation of the transition dynamics of a finite set of (reachable) states. Each state
+ * is assigned an integer id and the applicable actions and transitions of every state are stored in compressed sparse
+ * row (CSR) style primitive arrays: the actions of state <code>i</code> are in the range
+ * [<code>actionOffsets[i]</code>, <code>actionOffsets[i+1]</code>) and the transitions of action slot <code>j</code> are in the
+ * range [<code>transitionOffsets[j]</code>, <code>transitionOffsets[j+1]</code>) of the successor, probability and reward arrays.
+ * <p>
+ * Once compiled, Bellman sweeps over the state space can be performed on a <code>double[]</code> of state values indexed
+ * by state id without querying the model or hashing any states. The Q-value of an action slot is computed in
+ * exactly the same order as {@link DynamicProgramming#computeQ(burlap.mdp.core.state.State, Action)}, so sweeps
+ * produce the same values as their model-based counterparts. {@link Option}s are supported: their expected reward is
+ * stored once for the action slot and their transition probabilities are treated as already discounted.
+ * <p>
+ * The first {@link #numSourceStates()} ids are the source states provided to the constructor, in their iteration order.
+ * Successor states that were not in the source set (e.g., terminal states that were pruned during reachability
+ * analysis) are given subsequent ids, but have no compiled actions, so their value is never changed by a sweep.
+ * Similarly, terminal source states have no compiled actions.
+ * <p>
+ * The table is a snapshot of the model: if the model, discount factor, or set of source states change, a new table
+ * must be compiled.
+ */
+public class CompiledTransitionTable {
+
+	/**
+	 * The hashed states indexed by their id
+	 */
+	protected HashableState [] states;
+
+	/**
+	 * The id of each compiled hashed state
+	 */
+	protected Map<HashableState, Integer> stateIds;
+
+	/**
+	 * The number of source states from which the table was compiled
+	 */
+	protected int numSourceStates;
+
+	/**
+	 * Whether each state is a terminal state
+	 */
+	protected boolean [] terminal;
+
+	/**
+	 * The offset of each state's first action slot; has length numStates+1
+	 */
+	protected int [] actionOffsets;
+
+	/**
+	 * The action of each action slot
+	 */
+	protected Action [] actions;
+
+	/**
+	 * The reward that is received once for an action slot, regardless of outcome (only non-zero for options)
+	 */
+	protected double [] actionRewards;
+
+	/**
+	 * The discount factor applied to the successor values of an action slot (1 for options, since their transition probabilities are already discounted)
+	 */
+	protected double [] actionDiscounts;
+
+	/**
+	 * The offset of each action slot's first transition; has length numActionSlots+1
+	 */
+	protected int [] transitionOffsets;
+
+	/**
+	 * The successor state id of each transition
+	 */
+	protected int [] successors;
+
+	/**
+	 * The probability of each transition
+	 */
+	protected double [] probabilities;
+
+	/**
+	 * The reward of each transition
+	 */
+	protected double [] rewards;
+
+	/**
+	 * The largest number of actions applicable in any state
+	 */
+	protected int maxActions;
+
+
+	/**
+	 * Compiles the transition dynamics of the given source states.
+	 * @param sourceStates the states whose transition dynamics will be compiled
+	 * @param model the {@link FullModel} defining the transition dynamics
+	 * @param actionTypes the action types whose applicable actions in each state will be compiled
+	 * @param hashingFactory the {@link HashableStateFactory} used to hash successor states
+	 * @param gamma the discount factor
+	 */
+	public CompiledTransitionTable(Collection<HashableState> sourceStates, FullModel model, List<ActionType> actionTypes,
+								   HashableStateFactory hashingFactory, double gamma){
+
+		this.numSourceStates = sourceStates.size();
+		this.stateIds = new HashMap<HashableState, Integer>(this.numSourceStates*2);
+
+		List<HashableState> orderedStates = new ArrayList<HashableState>(this.numSourceStates);
+		for(HashableState sh : sourceStates){
+			this.stateIds.put(sh, orderedStates.size());
+			orderedStates.add(sh);
+		}
+
+		int [] aOffsets = new int[this.numSourceStates+1];
+		List<Action> aList = new ArrayList<Action>(this.numSourceStates);
+		double [] aRewards = new double[this.numSourceStates];
+		double [] aDiscounts = new double[this.numSourceStates];
+		int [] tOffsets = new int[this.numSourceStates+1];
+		int [] succ = new int[this.numSourceStates];
+		double [] probs = new double[this.numSourceStates];
+		double [] rs = new double[this.numSourceStates];
+		int nTransitions = 0;
+
+		boolean [] sourceTerminal = new boolean[this.numSourceStates];
+
+		for(int i = 0; i < this.numSourceStates; i++){
+
+			aOffsets[i] = aList.size();
+
+			HashableState sh = orderedStates.get(i);
+			if(model.terminal(sh.s())){
+				sourceTerminal[i] = true;
+				continue;
+			}
+
+			List<Action> gas = ActionUtils.allApplicableActionsForTypes(actionTypes, sh.s());
+			this.maxActions = Math.max(this.maxActions, gas.size());
+			for(Action ga : gas){
+
+				int slot = aList.size();
+				aList.add(ga);
+				if(slot >= aRewards.length){
+					aRewards = Arrays.copyOf(aRewards, aRewards.length*2);
+					aDiscounts = Arrays.copyOf(aDiscounts, aDiscounts.length*2);
+				}
+				if(slot+1 >= tOffsets.length){
+					tOffsets = Arrays.copyOf(tOffsets, tOffsets.length*2);
+				}
+				tOffsets[slot] = nTransitions;
+
+				List<TransitionProb> tps = model.transitions(sh.s(), ga);
+				boolean isOption = ga instanceof Option;
+				aRewards[slot] = isOption ? tps.get(0).eo.r : 0.;
+				aDiscounts[slot] = isOption ? 1. : gamma;
+
+				for(TransitionProb tp : tps){
+
+					HashableState tsh = hashingFactory.hashState(tp.eo.op);
+					Integer tid = this.stateIds.get(tsh);
+					if(tid == null){
+						tid = orderedStates.size();
+						this.stateIds.put(tsh, tid);
+						orderedStates.add(tsh);
+					}
+
+					if(nTransitions >= succ.length){
+						succ = Arrays.copyOf(succ, succ.length*2);
+						probs = Arrays.copyOf(probs, probs.length*2);
+						rs = Arrays.copyOf(rs, rs.length*2);
+					}
+					succ[nTransitions] = tid;
+					probs[nTransitions] = tp.p;
+					rs[nTransitions] = isOption ? 0. : tp.eo.r;
+					nTransitions++;
+
+				}
+
+			}
+
+		}
+
+		int nStates = orderedStates.size();
+		int nSlots = aList.size();
+
+		this.states = orderedStates.toArray(new HashableState[nStates]);
+		this.terminal = new boolean[nStates];
+		System.arraycopy(sourceTerminal, 0, this.terminal, 0, this.numSourceStates);
+		for(int i = this.numSourceStates; i < nStates; i++){
+			this.terminal[i] = model.terminal(this.states[i].s());
+		}
+
+		//states outside of the source set have no compiled actions
+		this.actionOffsets = Arrays.copyOf(aOffsets, nStates+1);
+		for(int i = this.numSourceStates; i <= nStates; i++){
+			this.actionOffsets[i] = nSlots;
+		}
+
+		this.actions = aList.toArray(new Action[nSlots]);
+		this.actionRewards = Arrays.copyOf(aRewards, nSlots);
+		this.actionDiscounts = Arrays.copyOf(aDiscounts, nSlots);
+		this.transitionOffsets = Arrays.copyOf(tOffsets, nSlots+1);
+		this.transitionOffsets[nSlots] = nTransitions;
+		this.successors = Arrays.copyOf(succ, nTransitions);
+		this.probabilities = Arrays.copyOf(probs, nTransitions);
+		this.rewards = Arrays.copyOf(rs, nTransitions);
+
+	}
+
+
+	/**
+	 * Returns the total number of compiled states, including successor states that were not in the source set.
+	 * @return the total number of compiled states
+	 */
+	public int numStates(){
+		return this.states.length;
+	}
+
+
+	/**
+	 * Returns the number of source states from which this table was compiled. These states have ids 0 to numSourceStates-1.
+	 * @return the number of source states
+	 */
+	public int numSourceStates(){
+		return this.numSourceStates;
+	}
+
+
+	/**
+	 * Returns the total number of compiled action slots.
+	 * @return the total number of compiled action slots.
+	 */
+	public int numActionSlots(){
+		return this.actions.length;
+	}
+
+
+	/**
+	 * Returns the total number of compiled transitions.
+	 * @return the total number of compiled transitions.
+	 */
+	public int numTransitions(){
+		return this.successors.length;
+	}
+
+
+	/**
+	 * Returns the largest number of actions applicable in any compiled state.
+	 * @return the largest number of actions applicable in any compiled state.
+	 */
+	public int maxActions(){
+		return this.maxActions;
+	}
+
+
+	/**
+	 * Returns the hashed state with the given id
+	 * @param id the state id
+	 * @return the {@link HashableState} with the given id
+	 */
+	public HashableState state(int id){
+		return this.states[id];
+	}
+
+
+	/**
+	 * Returns the id of the given hashed state, or -1 if it was not compiled.
+	 * @param sh the {@link HashableState}
+	 * @return the id of the state, or -1 if it was not compiled.
+	 */
+	public int stateId(HashableState sh){
+		Integer id = this.stateIds.get(sh);
+		if(id == null){
+			return -1;
+		}
+		return id;
+	}
+
+
+	/**
+	 * Returns whether the state with the given id is a terminal state
+	 * @param id the state id
+	 * @return true if the state is terminal; false otherwise
+	 */
+	public boolean isTerminal(int id){
+		return this.terminal[id];
+	}
+
+
+	/**
+	 * Returns the index of the first action slot of the given state.
+	 * @param id the state id
+	 * @return the index of the first action slot of the given state
+	 */
+	public int actionsBegin(int id){
+		return this.actionOffsets[id];
+	}
+
+
+	/**
+	 * Returns the index after the last action slot of the given state.
+	 * @param id the state id
+	 * @return the index after the last action slot of the given state.
+	 */
+	public int actionsEnd(int id){
+		return this.actionOffsets[id+1];
+	}
+
+
+	/**
+	 * Returns the action of the given action slot
+	 * @param slot the action slot index
+	 * @return the {@link Action} of the action slot
+	 */
+	public Action action(int slot){
+		return this.actions[slot];
+	}
+
+
+	/**
+	 * Returns the id of the successor state of the given transition
+	 * @param t the transition index
+	 * @return the successor state id
+	 */
+	public int successor(int t){
+		return this.successors[t];
+	}
+
+
+	/**
+	 * Returns the index of the first transition of the given action slot.
+	 * @param slot the action slot index
+	 * @return the index of the first transition of the action slot
+	 */
+	public int transitionsBegin(int slot){
+		return this.transitionOffsets[slot];
+	}
+
+
+	/**
+	 * Returns the index after the last transition of the given action slot.
+	 * @param slot the action slot index
+	 * @return the index after the last transition of the action slot
+	 */
+	public int transitionsEnd(int slot){
+		return this.transitionOffsets[slot+1];
+	}
+
+
+	/**
+	 * Returns the probability of the given transition. For {@link Option}s, this is the discounted probability.
+	 * @param t the transition index
+	 * @return the probability of the transition
+	 */
+	public double probability(int t){
+		return this.probabilities[t];
+	}
+
+
+	/**
+	 * Returns the reward of the given transition. For {@link Option}s, this is always zero and the
+	 * expected reward of the option is instead returned by {@link #actionReward(int)}.
+	 * @param t the transition index
+	 * @return the reward of the transition
+	 */
+	public double reward(int t){
+		return this.rewards[t];
+	}
+
+
+	/**
+	 * Returns the reward received once for the given action slot, regardless of outcome. This is only non-zero for {@link Option}s.
+	 * @param slot the action slot index
+	 * @return the reward received once for the action slot
+	 */
+	public double actionReward(int slot){
+		return this.actionRewards[slot];
+	}
+
+
+	/**
+	 * Returns the discount factor applied to successor state values of the given action slot.
+	 * @param slot the action slot index
+	 * @return the discount factor applied to successor state values
+	 */
+	public double actionDiscount(int slot){
+		return this.actionDiscounts[slot];
+	}
+
+
+	/**
+	 * Computes the Q-value of the given action slot from the provided state values.
+	 * @param slot the action slot index
+	 * @param v the state values, indexed by state id
+	 * @return the Q-value
+	 */
+	public double q(int slot, double [] v){
+		double q = this.actionRewards[slot];
+		double discount = this.actionDiscounts[slot];
+		int end = this.transitionOffsets[slot+1];
+		for(int t = this.transitionOffsets[slot]; t < end; t++){
+			q += this.probabilities[t] * (this.rewards[t] + (discount * v[this.successors[t]]));
+		}
+		return q;
+	}
+
+
+	/**
+	 * Performs a Bellman backup on the given state, but does not store the result.
+	 * @param id the state id
+	 * @param v the state values, indexed by state id
+	 * @param operator the {@link DPOperator} used to reduce the Q-values
+	 * @param qs a buffer for the Q-values with length of at least {@link #maxActions()}; only used if the operator is not the standard max operator.
+	 * @return the new value of the state, or its current value if it has no compiled actions.
+	 */
+	public double bellmanValue(int id, double [] v, DPOperator operator, double [] qs){
+		int begin = this.actionOffsets[id];
+		int end = this.actionOffsets[id+1];
+		if(begin == end){
+			return v[id];
+		}
+		int n = end - begin;
+		double [] buf = qs.length == n ? qs : new double[n];
+		for(int j = begin; j < end; j++){
+			buf[j-begin] = this.q(j, v);
+		}
+		return operator.apply(buf);
+	}
+
+
+	/**
+	 * Performs an in-place (Gauss-Seidel) Bellman sweep over all source states.
+	 * @param v the state values, indexed by state id, which will be updated
+	 * @param operator the {@link DPOperator} used to reduce the Q-values
+	 * @return the maximum change in value of any state
+	 */
+	public double bellmanSweep(double [] v, DPOperator operator){
+		return this.bellmanSweep(v, 0, this.numSourceStates, operator);
+	}
+
+
+	/**
+	 * Performs an in-place (Gauss-Seidel) Bellman sweep over the states with ids in the range [begin, end).
+	 * @param v the state values, indexed by state id, which will be updated
+	 * @param begin the first state id to update
+	 * @param end the state id after the last state to update
+	 * @param operator the {@link DPOperator} used to reduce the Q-values
+	 * @return the maximum change in value of any state in the range
+	 */
+	public double bellmanSweep(double [] v, int begin, int end, DPOperator operator){
+		double [][] buffers = new double[this.maxActions+1][];
+		double delta = 0.;
+		for(int i = begin; i < end; i++){
+			int n = this.actionOffsets[i+1] - this.actionOffsets[i];
+			if(n == 0){
+				continue;
+			}
+			if(buffers[n] == null){
+				buffers[n] = new double[n];
+			}
+			double nv = this.bellmanValue(i, v, operator, buffers[n]);
+			delta = Math.max(Math.abs(nv - v[i]), delta);
+			v[i] = nv;
+		}
+		return delta;
+	}
+
+
+	/**
+	 * Performs a synchronous (Jacobi) Bellman sweep over the states with ids in the range [begin, end). Q-values
+	 * are computed only from the values in <code>vIn</code> and the new values are written to <code>vOut</code>, so that
+	 * disjoint ranges can be swept concurrently.
+	 * @param vIn the state values of the previous sweep, indexed by state id; not modified
+	 * @param vOut the array, indexed by state id, to which the new values of the range are written
+	 * @param begin the first state id to update
+	 * @param end the state id after the last state to update
+	 * @param operator the {@link DPOperator} used to reduce the Q-values
+	 * @return the maximum change in value of any state in the range
+	 */
+	public double jacobiSweep(double [] vIn, double [] vOut, int begin, int end, DPOperator operator){
+		double [][] buffers = new double[this.maxActions+1][];
+		double delta = 0.;
+		for(int i = begin; i < end; i++){
+			int n = this.actionOffsets[i+1] - this.actionOffsets[i];
+			if(n == 0){
+				vOut[i] = vIn[i];
+				continue;
+			}
+			if(buffers[n] == null){
+				buffers[n] = new double[n];
+			}
+			double nv = this.bellmanValue(i, vIn, operator, buffers[n]);
+			delta = Math.max(Math.abs(nv - vIn[i]), delta);
+			vOut[i] = nv;
+		}
+		return delta;
+	}
+
+
+	/**
+	 * Performs a Gauss-Seidel Bellman sweep restricted to the partition of states with ids in the range [begin, end).
+	 * Successor states inside the partition are read from (and updated in) <code>v</code>, while successor states outside
+	 * of the partition are read from <code>vPrev</code>. Because a partition only reads its own entries of <code>v</code>,
+	 * disjoint partitions can be swept concurrently with deterministic results.
+	 * @param v the state values, indexed by state id, whose entries in the range will be updated in place
+	 * @param vPrev the state values of the previous sweep, indexed by state id; not modified
+	 * @param begin the first state id of the partition
+	 * @param end the state id after the last state of the partition
+	 * @param operator the {@link DPOperator} used to reduce the Q-values
+	 * @return the maximum change in value of any state in the partition
+	 */
+	public double partitionedSweep(double [] v, double [] vPrev, int begin, int end, DPOperator operator){
+		double [][] buffers = new double[this.maxActions+1][];
+		double delta = 0.;
+		for(int i = begin; i < end; i++){
+			int aBegin = this.actionOffsets[i];
+			int n = this.actionOffsets[i+1] - aBegin;
+			if(n == 0){
+				continue;
+			}
+			if(buffers[n] == null){
+				buffers[n] = new double[n];
+			}
+			double [] qs = buffers[n];
+			for(int j = 0; j < n; j++){
+				int slot = aBegin + j;
+				double q = this.actionRewards[slot];
+				double discount = this.actionDiscounts[slot];
+				int tEnd = this.transitionOffsets[slot+1];
+				for(int t = this.transitionOffsets[slot]; t < tEnd; t++){
+					int sp = this.successors[t];
+					double vp = sp >= begin && sp < end ? v[sp] : vPrev[sp];
+					q += this.probabilities[t] * (this.rewards[t] + (discount * vp));
+				}
+				qs[j] = q;
+			}
+			double nv = operator.apply(qs);
+			delta = Math.max(Math.abs(nv - v[i]), delta);
+			v[i] = nv;
+		}
+		return delta;
+	}
+
+
+	/**
+	 * Performs an in-place (Gauss-Seidel) fixed-policy Bellman sweep over all source states.
+	 * @param v the state values, indexed by state id, which will be updated
+	 * @param actionProbs the probability of each action slot under the evaluated policy, indexed by action slot
+	 * @return the maximum change in value of any state
+	 */
+	public double fixedPolicySweep(double [] v, double [] actionProbs){
+		double delta = 0.;
+		for(int i = 0; i < this.numSourceStates; i++){
+			int begin = this.actionOffsets[i];
+			int end = this.actionOffsets[i+1];
+			if(begin == end){
+				continue;
+			}
+			double nv = 0.;
+			for(int j = begin; j < end; j++){
+				double p = actionProbs[j];
+				if(p == 0.){
+					continue; //doesn't contribute
+				}
+				nv += p * this.q(j, v);
+			}
+			delta = Math.max(Math.abs(nv - v[i]), delta);
+			v[i] = nv;
+		}
+		return delta;
+	}
+
+
+	/**
+	 * Returns the probability of each action slot under the given policy. The policy is queried once for each source state.
+	 * @param p the {@link EnumerablePolicy}
+	 * @return the probability of each action slot, indexed by action slot
+	 */
+	public double [] policyProbabilities(EnumerablePolicy p){
+		double [] actionProbs = new double[this.actions.length];
+		for(int i = 0; i < this.numSourceStates; i++){
+			int begin = this.actionOffsets[i];
+			int end = this.actionOffsets[i+1];
+			if(begin == end){
+				continue;
+			}
+			List<ActionProb> dist = p.policyDistribution(this.states[i].s());
+			for(int j = begin; j < end; j++){
+				actionProbs[j] = PolicyUtils.actionProbGivenDistribution(this.actions[j], dist);
+			}
+		}
+		return actionProbs;
+	}
+
+
+	/**
+	 * Returns the probability of each action slot under the policy that is greedy with respect to the Q-values
+	 * of the given state values. Ties are broken uniformly, as in {@link burlap.behavior.policy.GreedyQPolicy}.
+	 * @param v the state values, indexed by state id
+	 * @return the probability of each action slot, indexed by action slot
+	 */
+	public double [] greedyPolicyProbabilities(double [] v){
+		double [] actionProbs = new double[this.actions.length];
+		for(int i = 0; i < this.numSourceStates; i++){
+			int begin = this.actionOffsets[i];
+			int end = this.actionOffsets[i+1];
+			if(begin == end){
+				continue;
+			}
+			int numMax = 0;
+			double maxQ = Double.NEGATIVE_INFINITY;
+			for(int j = begin; j < end; j++){
+				double q = this.q(j, v);
+				actionProbs[j] = q;
+				if(numMax == 0 || q > maxQ){
+					numMax = 1;
+					maxQ = q;
+				}
+				else if(q == maxQ){
+					numMax++;
+				}
+			}
+			double uniformMax = 1. / numMax;
+			for(int j = begin; j < end; j++){
+				actionProbs[j] = actionProbs[j] == maxQ ? uniformMax : 0.;
+			}
+		}
+		return actionProbs;
+	}
+
+}
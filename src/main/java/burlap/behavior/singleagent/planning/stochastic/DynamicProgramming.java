@@ -10,7 +10,10 @@ import burlap.behavior.singleagent.planning.stochastic.dpoperator.DPOperator;
 import burlap.behavior.valuefunction.ConstantValueFunction;
 import burlap.behavior.valuefunction.QProvider;
 import burlap.behavior.valuefunction.QValue;
+import burlap.behavior.valuefunction.OpenAddressingValueTable;
 import burlap.behavior.valuefunction.ValueFunction;
+import burlap.behavior.valuefunction.ValueTable;
+import burlap.debugtools.DPrint;
 import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
 import burlap.mdp.singleagent.SADomain;
@@ -34,7 +37,8 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 
 	
 	/**
-	 * A map for storing the current value function estimate for each state.
+	 * A map for storing the current value function estimate for each state. If it is a {@link ValueTable}, values are read and
+	 * written as primitives.
 	 */
 	protected Map <HashableState, Double>							valueFunction;
 	
@@ -46,6 +50,20 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 
 
 	protected DPOperator operator = new BellmanOperator();
+
+
+	/**
+	 * Whether sweeps over the state space should be performed on a {@link CompiledTransitionTable} of the states in the value function
+	 * rather than by querying the model. Default is false.
+	 */
+	protected boolean useCompiledTransitions = false;
+
+
+	/**
+	 * The compiled transition dynamics of the states in the value function. Null if they have not been compiled yet or
+	 * if the compiled table has been invalidated.
+	 */
+	protected CompiledTransitionTable compiledTransitions;
 	
 
 	
@@ -76,6 +94,113 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 	@Override
 	public void resetSolver(){
 		this.valueFunction.clear();
+		this.compiledTransitions = null;
+	}
+
+	@Override
+	public void setModel(SampleModel model) {
+		super.setModel(model);
+		this.compiledTransitions = null;
+	}
+
+	@Override
+	public void setGamma(double gamma) {
+		super.setGamma(gamma);
+		this.compiledTransitions = null;
+	}
+
+
+	/**
+	 * Sets whether sweeps over the state space should be performed on a {@link CompiledTransitionTable}. When enabled,
+	 * the transition dynamics of all states in the value function are compiled once into integer-indexed primitive arrays
+	 * the first time a sweep is performed after the state space was found, and all subsequent sweeps
+	 * are performed without querying the model or hashing states. This trades memory for speed and requires
+	 * the model to be a {@link FullModel}. Default is false.
+	 * @param toggle true to perform sweeps on compiled transition dynamics; false to query the model on every sweep.
+	 */
+	public void toggleCompiledTransitions(boolean toggle){
+		this.useCompiledTransitions = toggle;
+		if(!toggle){
+			this.compiledTransitions = null;
+		}
+	}
+
+
+	/**
+	 * Returns whether sweeps over the state space are performed on a {@link CompiledTransitionTable}.
+	 * @return true if sweeps are performed on a {@link CompiledTransitionTable}; false otherwise.
+	 */
+	public boolean isUsingCompiledTransitions(){
+		return this.useCompiledTransitions;
+	}
+
+
+	/**
+	 * Returns the {@link CompiledTransitionTable} of the states currently in the value function, compiling it first
+	 * if it has not been compiled or was invalidated since it was last compiled.
+	 * @return the {@link CompiledTransitionTable} of the states currently in the value function
+	 */
+	public CompiledTransitionTable getCompiledTransitions(){
+		if(this.compiledTransitions == null){
+			DPrint.cl(this.debugCode, "Compiling transition dynamics");
+			this.compiledTransitions = new CompiledTransitionTable(this.valueFunction.keySet(), (FullModel)this.model, this.actionTypes, this.hashingFactory, this.gamma);
+			DPrint.cl(this.debugCode, "Finished compiling transition dynamics; # states: " + this.compiledTransitions.numStates() + "; # transitions: " + this.compiledTransitions.numTransitions());
+		}
+		return this.compiledTransitions;
+	}
+	
+	/**
+	 * Sets the map used to store the value function, copying any values already stored into it. The default is a {@link HashMap};
+	 * use an {@link OpenAddressingValueTable} to store values as primitives, which avoids boxing a {@link Double} on every
+	 * Bellman update and uses less memory for large state spaces.
+	 * @param valueTable the map used to store the value function.
+	 */
+	public void setValueTable(Map<HashableState, Double> valueTable){
+		if(valueTable != this.valueFunction){
+			valueTable.putAll(this.valueFunction);
+			this.valueFunction = valueTable;
+		}
+	}
+
+
+	/**
+	 * Returns the map used to store the value function.
+	 * @return the map used to store the value function.
+	 */
+	public Map<HashableState, Double> getValueTable(){
+		return this.valueFunction;
+	}
+
+
+	/**
+	 * Returns the value stored for the given state, or the given absent value if no value is stored for it. If the value function
+	 * is a {@link ValueTable}, the value is read without boxing.
+	 * @param sh the hashed state
+	 * @param absentValue the value to return if no value is stored for the state
+	 * @return the value stored for the state, or absentValue if no value is stored.
+	 */
+	protected double storedValue(HashableState sh, double absentValue){
+		if(this.valueFunction instanceof ValueTable){
+			return ((ValueTable)this.valueFunction).getValue(sh, absentValue);
+		}
+		Double v = this.valueFunction.get(sh);
+		return v == null ? absentValue : v;
+	}
+
+
+	/**
+	 * Stores the value of the given state in the value function. If the value function is a {@link ValueTable}, the value is
+	 * written without boxing.
+	 * @param sh the hashed state
+	 * @param v the value to store
+	 */
+	protected void storeValue(HashableState sh, double v){
+		if(this.valueFunction instanceof ValueTable){
+			((ValueTable)this.valueFunction).putValue(sh, v);
+		}
+		else{
+			this.valueFunction.put(sh, v);
+		}
 	}
 	
 	/**
@@ -147,8 +272,10 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 		if(this.model.terminal(sh.s())){
 			return 0.;
 		}
-		Double V = valueFunction.get(sh);
-		double v = V == null ? this.getDefaultValue(sh.s()) : V;
+		double v = this.storedValue(sh, Double.NaN);
+		if(Double.isNaN(v) && !valueFunction.containsKey(sh)){
+			v = this.getDefaultValue(sh.s());
+		}
 		return v;
 	}
 	
@@ -246,9 +373,10 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 	 * @param path the path to write the value function
 	 */
 	public void writeValueTable(String path){
+		Map<HashableState, Double> table = new HashMap<HashableState, Double>(this.valueFunction);
 		Yaml yaml = new Yaml();
 		try {
-			yaml.dump(this.valueFunction, new BufferedWriter(new FileWriter(path)));
+			yaml.dump(table, new BufferedWriter(new FileWriter(path)));
 		} catch(IOException e) {
 			e.printStackTrace();
 		}
@@ -262,7 +390,12 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 	public void loadValueTable(String path){
 		Yaml yaml = new Yaml();
 		try {
-			this.valueFunction = (Map<HashableState, Double>)yaml.load(new FileReader(path));
+			Map<HashableState, Double> table = (Map<HashableState, Double>)yaml.load(new FileReader(path));
+			this.valueFunction.clear();
+			for(Map.Entry<HashableState, Double> e : table.entrySet()){
+				this.valueFunction.put(e.getKey(), e.getValue());
+			}
+			this.compiledTransitions = null;
 		} catch(FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -279,7 +412,7 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 		
 		if(model.terminal(sh.s())){
 			//terminal states always have a state value of 0
-			valueFunction.put(sh, 0.);
+			this.storeValue(sh, 0.);
 			return 0.;
 		}
 
@@ -294,7 +427,7 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 		}
 
 		double nv = operator.apply(qs);
-		valueFunction.put(sh, nv);
+		this.storeValue(sh, nv);
 		
 		return nv;
 	}
@@ -313,7 +446,7 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 		
 		if(this.model.terminal(sh.s())){
 			//terminal states always have a state value of 0
-			valueFunction.put(sh, 0.);
+			this.storeValue(sh, 0.);
 			return 0.;
 		}
 		
@@ -338,7 +471,7 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 		
 		
 		
-		valueFunction.put(sh, weightedQ);
+		this.storeValue(sh, weightedQ);
 		
 		return weightedQ;
 		
@@ -392,6 +525,32 @@ public class DynamicProgramming extends MDPSolver implements ValueFunction, QPro
 	
 	
 	
+	/**
+	 * Returns the current value of every state in the given {@link CompiledTransitionTable}, indexed by state id.
+	 * @param ct the {@link CompiledTransitionTable}
+	 * @return the current value of every state, indexed by state id
+	 */
+	protected double [] compiledValues(CompiledTransitionTable ct){
+		double [] v = new double[ct.numStates()];
+		for(int i = 0; i < v.length; i++){
+			v[i] = this.value(ct.state(i));
+		}
+		return v;
+	}
+
+
+	/**
+	 * Stores the values of the source states of the given {@link CompiledTransitionTable} in the value function.
+	 * @param ct the {@link CompiledTransitionTable}
+	 * @param v the state values, indexed by state id
+	 */
+	protected void storeCompiledValues(CompiledTransitionTable ct, double [] v){
+		for(int i = 0; i < ct.numSourceStates(); i++){
+			this.storeValue(ct.state(i), v[i]);
+		}
+	}
+	
+	
 	/**
 	 * Returns the default V-value to use for the state
 	 * @param s the input state to get the default V-value for
@@ -0,0 +1,576 @@
+package burlap.behavior.singleagent.planning.stochastic.montecarlo.uct;
+
+import burlap.behavior.policy.GreedyQPolicy;
+import burlap.behavior.singleagent.options.EnvironmentOptionOutcome;
+import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.singleagent.planning.PlanningBudget;
+import burlap.debugtools.DPrint;
+import burlap.mdp.core.state.State;
+import burlap.mdp.singleagent.SADomain;
+import burlap.mdp.singleagent.environment.EnvironmentOutcome;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A version of {@link UCT} that performs its rollouts on multiple threads, so that a fixed number of rollouts completes in less time.
+ * Two kinds of parallelism are supported, selected with {@link ParallelMode}:
+ * <p>
+ * <ul>
+ *     <li>{@link ParallelMode#ROOT}: each thread builds its own independent UCT tree from the query state with its share of the rollouts
+ *     and its own random generator. When all threads finish, the statistics of the root action nodes of the trees are summed into a
+ *     single root node, which is used for the Q-values. The successors of the merged root action nodes are those of the thread trees,
+ *     but the nodes below the root only have the statistics of the tree from which they came.</li>
+ *     <li>{@link ParallelMode#TREE}: all threads perform rollouts in a single shared tree. Each state node is locked while an action is
+ *     selected from it and while its action node statistics and successors are updated, and the depth index of the tree uses concurrent
+ *     maps. To keep threads from following the same path, a thread that selects an action applies a virtual loss to it: the visit
+ *     is counted immediately with a pessimistic return of -{@link #getVirtualLoss()}, which is replaced by the sampled return when the rollout
+ *     returns. If two threads create a node for the same state and depth at the same time, the statistics of the node that is connected second
+ *     are merged into the first. After planning, the tree statistics are the same as if the rollouts had been performed one at a time.</li>
+ * </ul>
+ * <p>
+ * A {@link burlap.behavior.singleagent.planning.PlanningBudget} may be used as with {@link UCT}. In {@link ParallelMode#ROOT} mode, each thread's
+ * tree gets the time limit of the budget and an equal share of its node limit.
+ * Tree reuse ({@link #toggleTreeReuse(boolean)}) is not supported, and enabling it throws an exception; a new tree is built for every planning call.
+ * <p>
+ * Because rollouts are performed concurrently, the {@link burlap.mdp.singleagent.model.SampleModel}, the {@link HashableStateFactory}
+ * and the goal condition must be safe to use from multiple threads. Since rollouts are interleaved, results are not reproducible from a seed
+ * when more than one thread is used.
+ */
+public class ParallelUCT extends UCT {
+
+	/**
+	 * The kinds of rollout parallelism
+	 */
+	public static enum ParallelMode{
+		/**
+		 * Independent trees per thread whose root statistics are merged
+		 */
+		ROOT,
+
+		/**
+		 * A single tree shared by all threads, with virtual loss
+		 */
+		TREE
+	}
+
+
+	/**
+	 * The kind of rollout parallelism used
+	 */
+	protected ParallelMode mode;
+
+	/**
+	 * The number of threads that perform rollouts
+	 */
+	protected int numThreads;
+
+	/**
+	 * The virtual loss applied to an action node while a rollout through it is in progress in {@link ParallelMode#TREE} mode
+	 */
+	protected double virtualLoss = 1.;
+
+	/**
+	 * Whether any thread has found a goal state in the current planning call
+	 */
+	protected volatile boolean goalFound;
+
+
+	/**
+	 * Initializes with as many threads as there are available processors.
+	 * @param domain the domain in which to plan
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factory
+	 * @param horizon the planning horizon
+	 * @param nRollouts the number of rollouts to perform
+	 * @param explorationBias the exploration bias constant (suggested &gt;2)
+	 * @param mode the kind of rollout parallelism to use
+	 */
+	public ParallelUCT(SADomain domain, double gamma, HashableStateFactory hashingFactory, int horizon, int nRollouts, int explorationBias, ParallelMode mode){
+		this(domain, gamma, hashingFactory, horizon, nRollouts, explorationBias, mode, Runtime.getRuntime().availableProcessors());
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param domain the domain in which to plan
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factory
+	 * @param horizon the planning horizon
+	 * @param nRollouts the number of rollouts to perform
+	 * @param explorationBias the exploration bias constant (suggested &gt;2)
+	 * @param mode the kind of rollout parallelism to use
+	 * @param numThreads the number of threads that perform rollouts
+	 */
+	public ParallelUCT(SADomain domain, double gamma, HashableStateFactory hashingFactory, int horizon, int nRollouts, int explorationBias, ParallelMode mode, int numThreads){
+		super(domain, gamma, hashingFactory, horizon, nRollouts, explorationBias);
+		this.mode = mode;
+		this.setNumThreads(numThreads);
+	}
+
+
+	/**
+	 * Returns the kind of rollout parallelism used
+	 * @return the kind of rollout parallelism used
+	 */
+	public ParallelMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the kind of rollout parallelism used
+	 * @param mode the kind of rollout parallelism used
+	 */
+	public void setMode(ParallelMode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns the number of threads that perform rollouts
+	 * @return the number of threads that perform rollouts
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the number of threads that perform rollouts
+	 * @param numThreads the number of threads that perform rollouts
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1){
+			throw new RuntimeException("ParallelUCT requires at least one thread; " + numThreads + " were requested.");
+		}
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Returns the virtual loss applied to an action node while a rollout through it is in progress in {@link ParallelMode#TREE} mode
+	 * @return the virtual loss
+	 */
+	public double getVirtualLoss() {
+		return virtualLoss;
+	}
+
+	/**
+	 * Sets the virtual loss applied to an action node while a rollout through it is in progress in {@link ParallelMode#TREE} mode.
+	 * Larger values spread threads over more of the tree.
+	 * @param virtualLoss the virtual loss
+	 */
+	public void setVirtualLoss(double virtualLoss) {
+		this.virtualLoss = virtualLoss;
+	}
+
+
+	@Override
+	public void toggleTreeReuse(boolean reuseTree) {
+		if(reuseTree){
+			throw new RuntimeException("ParallelUCT does not support tree reuse.");
+		}
+		super.toggleTreeReuse(false);
+	}
+
+
+	@Override
+	public GreedyQPolicy planFromState(State initialState) {
+
+		if(this.maxRollOutsFromRoot == -1 && this.planningBudget == null){
+			throw new RuntimeException("ParallelUCT requires a maximum number of rollouts or a planning budget.");
+		}
+
+		this.planningStatistics.start();
+
+		if(this.mode == ParallelMode.ROOT){
+			this.planRootParallel(initialState);
+		}
+		else{
+			this.planTreeParallel(initialState);
+		}
+
+		this.planningStatistics.setIterations(this.numRollOutsFromRoot);
+		this.planningStatistics.setNodesExpanded(this.numVisits);
+		this.planningStatistics.finish();
+		DPrint.cl(debugCode, "\nRollouts: " + numRollOutsFromRoot + "; Best Action Expected Return: " + this.bestReturnAction(root).averageReturn());
+
+		return new GreedyQPolicy(this);
+	}
+
+
+	/**
+	 * Plans with {@link ParallelMode#ROOT} parallelism: builds an independent tree on each thread and merges their root statistics.
+	 * @param initialState the state from which to plan
+	 */
+	protected void planRootParallel(State initialState){
+
+		final List<UCT> workers = new ArrayList<UCT>(this.numThreads);
+		for(int i = 0; i < this.numThreads; i++){
+			int nRollouts = this.maxRollOutsFromRoot == -1 ? -1 :
+					this.maxRollOutsFromRoot / this.numThreads + (i < this.maxRollOutsFromRoot % this.numThreads ? 1 : 0);
+			UCT worker = new UCT(this.domain, this.gamma, this.hashingFactory, this.maxHorizon, nRollouts, 0);
+			worker.explorationBias = this.explorationBias;
+			worker.setModel(this.model);
+			worker.setActionTypes(this.actionTypes);
+			worker.stateNodeConstructor = this.stateNodeConstructor;
+			worker.actionNodeConstructor = this.actionNodeConstructor;
+			worker.goalCondition = this.goalCondition;
+			worker.rand = new Random(this.rand.nextLong());
+			worker.setDebugCode(this.debugCode);
+			if(this.planningBudget != null){
+				long maxNodes = this.planningBudget.getMaxNodes();
+				worker.setPlanningBudget(new PlanningBudget(this.planningBudget.getMaxTimeMillis(), maxNodes == -1 ? -1 : Math.max(1, maxNodes / this.numThreads)));
+			}
+			workers.add(worker);
+		}
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(workers.size());
+		for(final UCT worker : workers){
+			final State s = initialState;
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					worker.planFromState(s);
+					return null;
+				}
+			});
+		}
+		this.runTasks(tasks);
+
+		//merge the root statistics of the worker trees
+		HashableState shi = this.stateHash(initialState);
+		this.root = stateNodeConstructor.generate(shi, 0, actionTypes, actionNodeConstructor);
+		this.initializeIndex(shi, new HashMap<HashableState, UCTStateNode>(), new HashSet<HashableState>());
+		this.foundGoal = false;
+		this.treeSize = 1;
+		this.numVisits = 0;
+		this.numRollOutsFromRoot = 0;
+		for(UCT worker : workers){
+			this.root.n += worker.root.n;
+			for(UCTActionNode wan : worker.root.actionNodes){
+				UCTActionNode an = this.matchingActionNode(this.root, wan);
+				an.sumReturn += wan.sumReturn;
+				an.n += wan.n;
+				for(UCTStateNode successor : wan.getAllSuccessors()){
+					an.addSuccessor(successor);
+				}
+			}
+			this.uniqueStatesInTree.addAll(worker.uniqueStatesInTree);
+			this.treeSize += worker.treeSize - 1;
+			this.numVisits += worker.numVisits;
+			this.numRollOutsFromRoot += worker.numRollOutsFromRoot;
+			this.foundGoal = this.foundGoal || worker.foundGoal;
+			if(worker.getLastPlanningStatistics().wasBudgetExhausted()){
+				this.planningStatistics.setBudgetExhausted(true);
+			}
+		}
+
+	}
+
+
+	/**
+	 * Plans with {@link ParallelMode#TREE} parallelism: all threads perform rollouts in a single shared tree with virtual loss.
+	 * @param initialState the state from which to plan
+	 */
+	protected void planTreeParallel(State initialState){
+
+		HashableState shi = this.stateHash(initialState);
+		this.root = stateNodeConstructor.generate(shi, 0, actionTypes, actionNodeConstructor);
+		this.initializeIndex(shi, new ConcurrentHashMap<HashableState, UCTStateNode>(),
+				Collections.newSetFromMap(new ConcurrentHashMap<HashableState, Boolean>()));
+		this.foundGoal = false;
+		this.goalFound = false;
+		this.treeSize = 1;
+
+		final AtomicInteger rolloutsStarted = new AtomicInteger();
+		final AtomicInteger rolloutsCompleted = new AtomicInteger();
+		final AtomicLong visits = new AtomicLong();
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(this.numThreads);
+		for(int i = 0; i < this.numThreads; i++){
+			final Random workerRand = new Random(this.rand.nextLong());
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					RolloutState rs = new RolloutState(workerRand);
+					while(!goalFound && !treeBudgetExhausted(rolloutsCompleted.get(), visits.get())
+							&& (rolloutsStarted.getAndIncrement() < maxRollOutsFromRoot || maxRollOutsFromRoot == -1)){
+						rs.foundGoalOnRollout = false;
+						rs.numVisits = 0;
+						treeParallelRollOut(root, 0, maxHorizon, rs);
+						visits.addAndGet(rs.numVisits);
+						rolloutsCompleted.incrementAndGet();
+					}
+					return null;
+				}
+			});
+		}
+		this.runTasks(tasks);
+
+		this.numRollOutsFromRoot = rolloutsCompleted.get();
+		this.numVisits = (int)visits.get();
+		this.foundGoal = this.goalFound;
+
+	}
+
+
+	/**
+	 * Returns whether the planning budget is exhausted in {@link ParallelMode#TREE} mode, after at least one rollout has completed.
+	 * @param rolloutsCompleted the number of completed rollouts
+	 * @param visits the number of node visits of the completed rollouts
+	 * @return true if the budget is exhausted; false otherwise or if there is no budget
+	 */
+	protected boolean treeBudgetExhausted(int rolloutsCompleted, long visits){
+		if(this.planningBudget == null || rolloutsCompleted == 0){
+			return false;
+		}
+		if(this.planningBudget.isExhausted(this.planningStatistics.getElapsedNanos(), visits)){
+			this.planningStatistics.setBudgetExhausted(true);
+			return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Performs a rollout in the shared tree from the given node, like {@link #treeRollOut(UCTStateNode, int, int)}, but locking state nodes while
+	 * their action nodes are used and applying a virtual loss to the selected action while the rollout through it is in progress.
+	 * @param node the node from which to rollout
+	 * @param depth the depth of the node
+	 * @param childrenLeftToAdd the number of new subsequent nodes that can be connected to the tree
+	 * @param rs the rollout state of the calling thread
+	 * @return the sample return from rolling out from this node
+	 */
+	protected double treeParallelRollOut(UCTStateNode node, int depth, int childrenLeftToAdd, RolloutState rs){
+
+		rs.numVisits++;
+
+		if(depth == maxHorizon){
+			return 0.;
+		}
+
+		if(model.terminal(node.state.s())){
+			if(goalCondition != null && goalCondition.satisfies(node.state.s())){
+				goalFound = true;
+				rs.foundGoalOnRollout = true;
+			}
+			return 0.;
+		}
+
+		UCTActionNode anode;
+		synchronized(node){
+			anode = this.selectActionNode(node, rs.rand);
+			if(anode == null){
+				//no actions can be performed in this state
+				return 0.;
+			}
+			node.n++;
+			anode.n++;
+			anode.sumReturn -= this.virtualLoss;
+		}
+
+		//sample the action
+		EnvironmentOutcome eo = model.sample(node.state.s(), anode.action);
+		HashableState shprime = this.stateHash(eo.op);
+		double r = eo.r;
+		int depthChange = 1;
+		if(anode.action instanceof Option){
+			depthChange = ((EnvironmentOptionOutcome)eo).numSteps();
+		}
+
+		UCTStateNode snprime = this.queryTreeIndex(shprime, depth+depthChange);
+
+		double sampledReturn;
+
+		boolean shouldConnectNode = false;
+		double futureReturn;
+		if(snprime != null){
+
+			//then this state already exists in the tree
+			synchronized(node){
+				if(!anode.referencesSuccessor(snprime)){
+					anode.addSuccessor(snprime);
+				}
+			}
+
+			futureReturn = this.treeParallelRollOut(snprime, depth + depthChange, childrenLeftToAdd, rs);
+			sampledReturn = r + Math.pow(gamma, depthChange) * futureReturn;
+
+		}
+		else{
+
+			//this state is not in the tree at this depth so create it
+			snprime = stateNodeConstructor.generate(shprime, depth+1, actionTypes, actionNodeConstructor);
+
+			//store it in the tree depending on how many new nodes have already been stored in this roll out
+			if(childrenLeftToAdd > 0){
+				shouldConnectNode = true;
+			}
+
+			//and do an exploratory sample from it
+			futureReturn = this.treeParallelRollOut(snprime, depth + depthChange, childrenLeftToAdd-1, rs);
+			sampledReturn = r + gamma * futureReturn;
+
+		}
+
+		if(shouldConnectNode || rs.foundGoalOnRollout){
+			//another thread may have connected a node for the same state and depth in the meantime, in which case it is used instead
+			snprime = this.addNodeToSharedIndexTree(snprime);
+			uniqueStatesInTree.add(snprime.state);
+		}
+
+		synchronized(node){
+			//replace the virtual loss with the sampled return
+			anode.sumReturn += sampledReturn + this.virtualLoss;
+			if(shouldConnectNode || rs.foundGoalOnRollout){
+				anode.addSuccessor(snprime);
+			}
+		}
+
+		return sampledReturn;
+	}
+
+
+	/**
+	 * Adds a {@link UCTStateNode} to the shared tree index, unless a node for the same state and depth was already added. In that case,
+	 * the statistics and successors of the given node, which were gathered by the rollout that created it, are merged into the existing node
+	 * with {@link #mergeIntoExistingNode(UCTStateNode, UCTStateNode)}.
+	 * @param snode the {@link UCTStateNode} to add
+	 * @return the node for the state and depth in the tree index
+	 */
+	protected UCTStateNode addNodeToSharedIndexTree(UCTStateNode snode){
+		UCTStateNode existing;
+		synchronized(this.stateDepthIndex){
+			while(stateDepthIndex.size() <= snode.depth){
+				stateDepthIndex.add(new ConcurrentHashMap<HashableState, UCTStateNode>());
+			}
+			existing = stateDepthIndex.get(snode.depth).get(snode.state);
+			if(existing == null){
+				this.addNodeToIndexTree(snode);
+				return snode;
+			}
+		}
+		if(existing != snode){
+			this.mergeIntoExistingNode(existing, snode);
+		}
+		return existing;
+	}
+
+
+	/**
+	 * Adds the visit counts, returns and successors of a state node that was not connected to the tree to the node for the same state and depth
+	 * that is in the tree. The unconnected node must not be used by any other thread.
+	 * @param existing the node in the tree
+	 * @param snode the unconnected node whose statistics are merged
+	 */
+	protected void mergeIntoExistingNode(UCTStateNode existing, UCTStateNode snode){
+		synchronized(existing){
+			existing.n += snode.n;
+			for(UCTActionNode san : snode.actionNodes){
+				UCTActionNode an = this.matchingActionNode(existing, san);
+				an.sumReturn += san.sumReturn;
+				an.n += san.n;
+				for(UCTStateNode successor : san.getAllSuccessors()){
+					an.addSuccessor(successor);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Sets up the tree index data structures for a new planning call with the root node.
+	 * @param shi the hashed root state
+	 * @param depth0Map the map to use for the nodes at depth 0
+	 * @param uniqueStates the set to use for the unique states in the tree
+	 */
+	protected void initializeIndex(HashableState shi, Map<HashableState, UCTStateNode> depth0Map, Set<HashableState> uniqueStates){
+		this.uniqueStatesInTree = uniqueStates;
+		this.stateDepthIndex = new CopyOnWriteArrayList<Map<HashableState, UCTStateNode>>();
+		this.statesToStateNodes = new HashMap<HashableState, List<UCTStateNode>>();
+		depth0Map.put(shi, this.root);
+		this.stateDepthIndex.add(depth0Map);
+	}
+
+
+	/**
+	 * Returns the action node of a state node whose action is equal to the action of another action node.
+	 * @param snode the state node to search
+	 * @param anode the action node whose action is matched
+	 * @return the matching action node
+	 */
+	protected UCTActionNode matchingActionNode(UCTStateNode snode, UCTActionNode anode){
+		for(UCTActionNode an : snode.actionNodes){
+			if(an.action.equals(anode.action)){
+				return an;
+			}
+		}
+		throw new RuntimeException("ParallelUCT could not merge node statistics because action " + anode.action.toString() + " is not applicable in the merged node.");
+	}
+
+
+	/**
+	 * Runs tasks on {@link #numThreads} threads and waits for them to complete.
+	 * @param tasks the tasks to run
+	 */
+	protected void runTasks(List<Callable<Object>> tasks){
+		ExecutorService pool = Executors.newFixedThreadPool(this.numThreads);
+		try{
+			List<Future<Object>> results = pool.invokeAll(tasks);
+			for(Future<Object> result : results){
+				result.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException(e);
+		} catch(ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		} finally{
+			pool.shutdown();
+		}
+	}
+
+
+	/**
+	 * The per-thread state of rollouts in {@link ParallelMode#TREE} mode.
+	 */
+	protected static class RolloutState{
+
+		/**
+		 * The random generator used to break ties
+		 */
+		public Random rand;
+
+		/**
+		 * Whether the current rollout has found a goal state
+		 */
+		public boolean foundGoalOnRollout = false;
+
+		/**
+		 * The number of node visits of the thread
+		 */
+		public int numVisits = 0;
+
+		/**
+		 * Initializes.
+		 * @param rand the random generator used to break ties
+		 */
+		public RolloutState(Random rand){
+			this.rand = rand;
+		}
+	}
+
+}
@@ -4,7 +4,9 @@ import burlap.behavior.policy.GreedyQPolicy;
 import burlap.behavior.singleagent.MDPSolver;
 import burlap.behavior.singleagent.options.EnvironmentOptionOutcome;
 import burlap.behavior.singleagent.options.Option;
-import burlap.behavior.singleagent.planning.Planner;
+import burlap.behavior.singleagent.planning.AnytimePlanner;
+import burlap.behavior.singleagent.planning.PlanningBudget;
+import burlap.behavior.singleagent.planning.PlanningStatistics;
 import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCTActionNode.UCTActionConstructor;
 import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCTStateNode.UCTStateConstructor;
 import burlap.behavior.valuefunction.QProvider;
@@ -36,12 +38,22 @@ import java.util.*;
  * will be more computationally efficient than replanning at each step, but may have degrading performance after each step since
  * each step has a shorter horizon from which to plan and may not have as many samples from which it estimated its Q-value.
  * <p>
+ * In closed-loop execution, UCT can keep the part of its tree that is still relevant (see {@link #toggleTreeReuse(boolean)}): when planning
+ * from a state that was sampled as a successor of the current root, the tree is re-rooted at that successor's node, the depth of every node in its subtree
+ * is shifted so that the new root has depth 0, and the rest of the tree is discarded. The visits of the retained root count toward
+ * the number of rollouts, so fewer new rollouts are performed. If the state is not a successor of the root, the tree is rebuilt as usual.
+ * <p>
+ * Planning can also be limited by a {@link PlanningBudget} (see {@link #setPlanningBudget(PlanningBudget)}), in which case rollouts stop
+ * when either the number of rollouts or the budget is reached (set the number of rollouts to -1 to only use the budget). The budget
+ * is checked between rollouts and at least one rollout is always performed. For the budget and the {@link PlanningStatistics},
+ * iterations are rollouts and nodes are state node visits.
+ * <p>
  * 1. Kocsis, Levente, and Csaba Szepesvari. "Bandit based monte-carlo planning." ECML (2006). 282-293.
  * 
  * @author James MacGlashan
  *
  */
-public class UCT extends MDPSolver implements Planner, QProvider {
+public class UCT extends MDPSolver implements AnytimePlanner, QProvider {
 
 	protected List<Map<HashableState, UCTStateNode>> 			stateDepthIndex;
 	protected Map <HashableState, List <UCTStateNode>>			statesToStateNodes;
@@ -64,6 +76,11 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 	protected int												numVisits;
 	
 	protected Random											rand;
+
+	protected PlanningBudget									planningBudget = null;
+	protected PlanningStatistics								planningStatistics = new PlanningStatistics();
+
+	protected boolean											reuseTree = false;
 	
 	
 	
@@ -119,6 +136,43 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 	}
 
 
+	/**
+	 * Toggles whether the tree is re-rooted at a successor of the current root, rather than rebuilt, when planning from that successor.
+	 * The visits of the retained root count as rollouts toward the number of rollouts, so planning from a reused tree performs
+	 * only as many new rollouts as are needed to reach that number, and none if the retained root was already visited that many times.
+	 * The default is false.
+	 * @param reuseTree whether the tree should be reused
+	 */
+	public void toggleTreeReuse(boolean reuseTree){
+		this.reuseTree = reuseTree;
+	}
+
+
+	/**
+	 * Returns whether the tree is re-rooted at a successor of the current root, rather than rebuilt, when planning from that successor.
+	 * @return true if the tree is reused; false otherwise
+	 */
+	public boolean isReusingTree(){
+		return this.reuseTree;
+	}
+
+
+	@Override
+	public void setPlanningBudget(PlanningBudget budget) {
+		this.planningBudget = budget;
+	}
+
+	@Override
+	public PlanningBudget getPlanningBudget() {
+		return this.planningBudget;
+	}
+
+	@Override
+	public PlanningStatistics getLastPlanningStatistics() {
+		return this.planningStatistics;
+	}
+
+
 	/**
 	 * Plans from the input state and then returns a {@link burlap.behavior.policy.GreedyQPolicy} that greedily
 	 * selects the action with the highest Q-value and breaks ties uniformly randomly.
@@ -132,22 +186,29 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 		
 		treeSize = 1;
 		numVisits = 0;
+		planningStatistics.start();
 		
 		HashableState shi = this.stateHash(initialState);
-		root = stateNodeConstructor.generate(shi, 0, actionTypes, actionNodeConstructor);
-		
-		uniqueStatesInTree = new HashSet<HashableState>();
-		
-		stateDepthIndex = new ArrayList<Map<HashableState,UCTStateNode>>();
-		statesToStateNodes = new HashMap<HashableState, List<UCTStateNode>>();
-		Map <HashableState, UCTStateNode> depth0Map = new HashMap<HashableState, UCTStateNode>();
-		depth0Map.put(shi, root);
-		stateDepthIndex.add(depth0Map);
+		numRollOutsFromRoot = 0;
+		if(reuseTree && root != null && this.reRootTree(shi)){
+			numRollOutsFromRoot = root.n;
+			DPrint.cl(debugCode, "Reusing tree with " + treeSize + " nodes and " + root.n + " root visits");
+		}
+		else{
+			root = stateNodeConstructor.generate(shi, 0, actionTypes, actionNodeConstructor);
+
+			uniqueStatesInTree = new HashSet<HashableState>();
+
+			stateDepthIndex = new ArrayList<Map<HashableState,UCTStateNode>>();
+			statesToStateNodes = new HashMap<HashableState, List<UCTStateNode>>();
+			Map <HashableState, UCTStateNode> depth0Map = new HashMap<HashableState, UCTStateNode>();
+			depth0Map.put(shi, root);
+			stateDepthIndex.add(depth0Map);
+		}
 		
 		
 		int lastNumUnique = 0;
 		
-		numRollOutsFromRoot = 0;
 		while(!this.stopPlanning()){
 			
 			this.initializeRollOut();
@@ -155,6 +216,8 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 			this.treeRollOut(root, 0, maxHorizon);
 			
 			numRollOutsFromRoot++;
+			planningStatistics.addIterations(1);
+			planningStatistics.setNodesExpanded(numVisits);
 			
 			int nu = uniqueStatesInTree.size();
 			if(nu - lastNumUnique > 0){
@@ -163,6 +226,7 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 			}
 
 		}
+		planningStatistics.finish();
 		DPrint.cl(debugCode, "\nRollouts: " + numRollOutsFromRoot + "; Best Action Expected Return: " + this.bestReturnAction(root).averageReturn());
 
 		return new GreedyQPolicy(this);
@@ -180,7 +244,9 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 		//if the root node isn't the query state, then replan
 		HashableState sh = this.hashingFactory.hashState(s);
 		if(!sh.equals(this.root.state)){
-			this.resetSolver();
+			if(!this.reuseTree){
+				this.resetSolver();
+			}
 			this.planFromState(s);
 		}
 
@@ -204,7 +270,9 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 		//if the root node isn't the query state, then replan
 		HashableState sh = this.hashingFactory.hashState(s);
 		if(!sh.equals(this.root.state)){
-			this.resetSolver();
+			if(!this.reuseTree){
+				this.resetSolver();
+			}
 			this.planFromState(s);
 		}
 
@@ -233,6 +301,59 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 		this.numRollOutsFromRoot = 0;
 	}
 	
+	/**
+	 * Re-roots the tree at the most visited successor node of the current root for the given state, shifting the depths of the nodes
+	 * in its subtree and discarding all other nodes.
+	 * @param sh the state at which to re-root the tree
+	 * @return true if the tree was re-rooted; false if the state is not a successor of the current root
+	 */
+	protected boolean reRootTree(HashableState sh){
+
+		UCTStateNode newRoot = null;
+		for(UCTActionNode an : root.actionNodes){
+			List<UCTStateNode> successors = an.successorStates.get(sh);
+			if(successors != null){
+				for(UCTStateNode sn : successors){
+					if(newRoot == null || sn.n > newRoot.n){
+						newRoot = sn;
+					}
+				}
+			}
+		}
+		if(newRoot == null){
+			return false;
+		}
+
+		int shift = newRoot.depth;
+		root = newRoot;
+		treeSize = 0;
+		uniqueStatesInTree = new HashSet<HashableState>();
+		stateDepthIndex = new ArrayList<Map<HashableState,UCTStateNode>>();
+		statesToStateNodes = new HashMap<HashableState, List<UCTStateNode>>();
+
+		//nodes can be reached along more than one path, so visited nodes are tracked by identity
+		Set<UCTStateNode> visited = Collections.newSetFromMap(new IdentityHashMap<UCTStateNode, Boolean>());
+		LinkedList<UCTStateNode> open = new LinkedList<UCTStateNode>();
+		visited.add(newRoot);
+		open.add(newRoot);
+		while(!open.isEmpty()){
+			UCTStateNode node = open.poll();
+			for(UCTActionNode an : node.actionNodes){
+				for(UCTStateNode successor : an.getAllSuccessors()){
+					if(visited.add(successor)){
+						open.add(successor);
+					}
+				}
+			}
+			node.depth -= shift;
+			this.addNodeToIndexTree(node);
+			uniqueStatesInTree.add(node.state);
+		}
+
+		return true;
+	}
+	
+	
 	/*
 	 * Initializes data members; should be called before {@link treeRollOut(UCTStateNode, int, int)}
 	 */
@@ -338,14 +459,17 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 	
 	/**
 	 * Returns true if rollouts and planning should cease. Planning will stop
-	 * if the valueFunction is told to terminate upon finding a goal and one was found, or if
-	 * the maximum number of rollouts have already been performed.
+	 * if the valueFunction is told to terminate upon finding a goal and one was found, if
+	 * the maximum number of rollouts have already been performed, or if the planning budget is exhausted after at least one rollout.
 	 * @return true if rollouts and planning should cease; false otherwise.
 	 */
 	public boolean stopPlanning(){
 		if(foundGoal){
 			return true;
 		}
+		if(numRollOutsFromRoot > 0 && planningStatistics.checkBudget(planningBudget)){
+			return true;
+		}
 		if(maxRollOutsFromRoot == -1){
 			return false;
 		}
@@ -368,6 +492,17 @@ public class UCT extends MDPSolver implements Planner, QProvider {
 	 * @return the {@link UCTActionNode} to be taken.
 	 */
 	protected UCTActionNode selectActionNode(UCTStateNode snode){
+		return this.selectActionNode(snode, this.rand);
+	}
+
+
+	/**
+	 * Selections which action to take, like {@link #selectActionNode(UCTStateNode)}, but breaks ties with the given random generator.
+	 * @param snode the UCT node from which to select an action.
+	 * @param rand the random generator used to break ties
+	 * @return the {@link UCTActionNode} to be taken.
+	 */
+	protected UCTActionNode selectActionNode(UCTStateNode snode, Random rand){
 		
 		List <UCTActionNode> candidates = new ArrayList<UCTActionNode>();
 		
@@ -1,6 +1,7 @@
 package burlap.behavior.singleagent.planning.stochastic.policyiteration;
 
 import burlap.behavior.policy.EnumerablePolicy;
+import burlap.behavior.singleagent.planning.stochastic.CompiledTransitionTable;
 import burlap.behavior.singleagent.planning.stochastic.DynamicProgramming;
 import burlap.debugtools.DPrint;
 import burlap.mdp.core.action.Action;
@@ -83,6 +84,11 @@ public class PolicyEvaluation extends DynamicProgramming {
 		}
 
 
+		if(this.useCompiledTransitions){
+			this.evaluateCompiledPolicy(policy);
+			return;
+		}
+
 		double maxChangeInPolicyEvaluation = Double.NEGATIVE_INFINITY;
 
 		Set <HashableState> states = valueFunction.keySet();
@@ -112,6 +118,33 @@ public class PolicyEvaluation extends DynamicProgramming {
 	}
 
 
+	/**
+	 * Computes the value function for the given policy over the states that have been discovered using the
+	 * {@link CompiledTransitionTable} of those states. The policy is queried once per state to
+	 * get its action distribution and all evaluation sweeps are then performed on the compiled table.
+	 * @param policy the {@link burlap.behavior.policy.Policy} to evaluate
+	 */
+	protected void evaluateCompiledPolicy(EnumerablePolicy policy){
+
+		CompiledTransitionTable ct = this.getCompiledTransitions();
+		double [] v = this.compiledValues(ct);
+		double [] actionProbs = ct.policyProbabilities(policy);
+
+		for(int i = 0; i < this.maxEvalIterations; i++){
+
+			double delta = ct.fixedPolicySweep(v, actionProbs);
+
+			if(delta < this.maxEvalDelta){
+				break; //approximated well enough; stop iterating
+			}
+
+		}
+
+		this.storeCompiledValues(ct, v);
+
+	}
+
+
 	/**
 	 * This method will find all reachable states that will be used when computing the value function.
 	 * This method will not do anything if all reachable states from the input state have been discovered from previous calls to this method.
@@ -169,6 +202,7 @@ public class PolicyEvaluation extends DynamicProgramming {
 
 		DPrint.cl(this.debugCode, "Finished reachability analysis; # states: " + valueFunction.size());
 
+		this.compiledTransitions = null;
 
 		return true;
 
@@ -4,6 +4,7 @@ import burlap.behavior.policy.EnumerablePolicy;
 import burlap.behavior.policy.GreedyQPolicy;
 import burlap.behavior.policy.Policy;
 import burlap.behavior.singleagent.planning.Planner;
+import burlap.behavior.singleagent.planning.stochastic.CompiledTransitionTable;
 import burlap.behavior.singleagent.planning.stochastic.DynamicProgramming;
 import burlap.debugtools.DPrint;
 import burlap.mdp.core.action.Action;
@@ -139,6 +140,7 @@ public class PolicyIteration extends DynamicProgramming implements Planner {
 	 */
 	public void recomputeReachableStates(){
 		this.foundReachableStates = false;
+		this.compiledTransitions = null;
 	}
 
 
@@ -169,13 +171,18 @@ public class PolicyIteration extends DynamicProgramming implements Planner {
 
 		int iterations = 0;
 		if(this.performReachabilityFrom(initialState) || !this.hasRunPlanning){
-			
-			double delta;
-			do{
-				delta = this.evaluatePolicy();
-				iterations++;
-				this.evaluativePolicy = new GreedyQPolicy(this.getCopyOfValueFunction());
-			}while(delta > this.maxPIDelta && iterations < maxPolicyIterations);
+
+			if(this.useCompiledTransitions){
+				iterations = this.runCompiledPolicyIteration();
+			}
+			else {
+				double delta;
+				do{
+					delta = this.evaluatePolicy();
+					iterations++;
+					this.evaluativePolicy = new GreedyQPolicy(this.getCopyOfValueFunction());
+				}while(delta > this.maxPIDelta && iterations < maxPolicyIterations);
+			}
 
 			this.hasRunPlanning = true;
 			
@@ -243,6 +250,72 @@ public class PolicyIteration extends DynamicProgramming implements Planner {
 	
 	
 	
+	/**
+	 * Runs policy iteration on the {@link CompiledTransitionTable} of the reachable states. The initial evaluative policy
+	 * is queried once per state; each subsequent greedy policy is derived directly from the compiled table, so
+	 * no model queries or state hashing are performed after compilation. When finished, the values are stored in the
+	 * value function and the evaluative policy is set to the greedy policy over them.
+	 * @return the number of policy iterations performed
+	 */
+	protected int runCompiledPolicyIteration(){
+
+		if(!this.foundReachableStates){
+			throw new RuntimeException("Cannot run VI until the reachable states have been found. Use planFromState method at least once or instead.");
+		}
+
+		CompiledTransitionTable ct = this.getCompiledTransitions();
+		double [] v = this.compiledValues(ct);
+		double [] actionProbs = ct.policyProbabilities(this.evaluativePolicy);
+
+		int iterations = 0;
+		double delta;
+		do{
+			delta = this.evaluateCompiledPolicy(ct, v, actionProbs);
+			iterations++;
+			actionProbs = ct.greedyPolicyProbabilities(v);
+		}while(delta > this.maxPIDelta && iterations < maxPolicyIterations);
+
+		this.storeCompiledValues(ct, v);
+		this.evaluativePolicy = new GreedyQPolicy(this.getCopyOfValueFunction());
+
+		return iterations;
+
+	}
+
+
+	/**
+	 * Computes the value function of a policy on a {@link CompiledTransitionTable}.
+	 * @param ct the {@link CompiledTransitionTable}
+	 * @param v the state values, indexed by state id, which will be updated
+	 * @param actionProbs the probability of each action slot under the evaluated policy
+	 * @return the maximum single iteration change in the value function
+	 */
+	protected double evaluateCompiledPolicy(CompiledTransitionTable ct, double [] v, double [] actionProbs){
+
+		double maxChangeInPolicyEvaluation = Double.NEGATIVE_INFINITY;
+
+		int i;
+		for(i = 0; i < this.maxIterations; i++){
+
+			double delta = ct.fixedPolicySweep(v, actionProbs);
+
+			maxChangeInPolicyEvaluation = Math.max(delta, maxChangeInPolicyEvaluation);
+
+			if(delta < this.maxEvalDelta){
+				i++;
+				break; //approximated well enough; stop iterating
+			}
+
+		}
+
+		DPrint.cl(this.debugCode, "Iterations in inner VI for policy eval: " + i);
+		this.totalValueIterations += i;
+
+		return maxChangeInPolicyEvaluation;
+
+	}
+	
+	
 	/**
 	 * This method will find all reachable states that will be used when computing the value function.
 	 * This method will not do anything if all reachable states from the input state have been discovered from previous calls to this method.
@@ -302,6 +375,7 @@ public class PolicyIteration extends DynamicProgramming implements Planner {
 		DPrint.cl(this.debugCode, "Finished reachability analysis; # states: " + valueFunction.size());
 		
 		this.foundReachableStates = true;
+		this.compiledTransitions = null;
 		
 		return true;
 		
@@ -1,7 +1,9 @@
 package burlap.behavior.singleagent.planning.stochastic.rtdp;
 
 import burlap.behavior.policy.GreedyQPolicy;
-import burlap.behavior.singleagent.planning.Planner;
+import burlap.behavior.singleagent.planning.AnytimePlanner;
+import burlap.behavior.singleagent.planning.PlanningBudget;
+import burlap.behavior.singleagent.planning.PlanningStatistics;
 import burlap.behavior.singleagent.planning.stochastic.DynamicProgramming;
 import burlap.behavior.singleagent.planning.stochastic.dpoperator.DPOperator;
 import burlap.behavior.valuefunction.QValue;
@@ -37,6 +39,11 @@ import java.util.*;
  * the method {@link #setStateSelectionMode(StateSelectionMode)}. Another optional state selection mode is to always choose the next state
  * with the highest uncertainty, but this tends to be even slower due to being overly conservative so it is not reccommended in genral.
  * See the {@link StateSelectionMode} documentation for more information.
+ * <p>
+ * Planning can also be limited by a {@link PlanningBudget} (see {@link #setPlanningBudget(PlanningBudget)}), which is checked after every
+ * rollout step; when it is exhausted, the current rollout is cut short (its reverse updates are still performed) and planning stops. Since
+ * behavior follows the lower bound, the resulting Q-values are the best current estimates. For the budget and the {@link PlanningStatistics},
+ * iterations are rollouts and nodes are rollout steps (state expansions).
  * 
  * 
  * 
@@ -50,7 +57,7 @@ import java.util.*;
  * @author James MacGlashan
  *
  */
-public class BoundedRTDP extends DynamicProgramming implements Planner {
+public class BoundedRTDP extends DynamicProgramming implements AnytimePlanner {
 
 	
 	/**
@@ -152,6 +159,24 @@ public class BoundedRTDP extends DynamicProgramming implements Planner {
 	 * The default is true.
 	 */
 	protected boolean							runRolloutsInReverse = true;
+
+
+	/**
+	 * The budget that limits each planning call; null for no budget
+	 */
+	protected PlanningBudget					planningBudget = null;
+
+
+	/**
+	 * The statistics of the most recent planning call
+	 */
+	protected PlanningStatistics				planningStatistics = new PlanningStatistics();
+
+
+	/**
+	 * The number of steps at the start of the current planning call
+	 */
+	protected int								planningStartSteps = 0;
 	
 	
 	
@@ -244,10 +269,14 @@ public class BoundedRTDP extends DynamicProgramming implements Planner {
 	public GreedyQPolicy planFromState(State initialState) {
 	
 		DPrint.cl(this.debugCode, "Beginning Planning.");
+		this.planningStatistics.start();
+		this.planningStartSteps = this.numSteps;
 		int nr = 0;
-		while(this.runRollout(initialState) > this.maxDiff && (nr < this.maxRollouts || this.maxRollouts == -1)){
+		while(this.runRollout(initialState) > this.maxDiff && (nr < this.maxRollouts || this.maxRollouts == -1)
+				&& !this.planningBudgetExhausted()){
 			nr++;
 		}
+		this.planningStatistics.finish();
 		
 		
 		DPrint.cl(this.debugCode, "Finished planning with a total of " + this.numBellmanUpdates + " backups.");
@@ -256,6 +285,31 @@ public class BoundedRTDP extends DynamicProgramming implements Planner {
 
 	}
 	
+	@Override
+	public void setPlanningBudget(PlanningBudget budget) {
+		this.planningBudget = budget;
+	}
+
+	@Override
+	public PlanningBudget getPlanningBudget() {
+		return this.planningBudget;
+	}
+
+	@Override
+	public PlanningStatistics getLastPlanningStatistics() {
+		return this.planningStatistics;
+	}
+
+
+	/**
+	 * Returns whether the planning budget of the current planning call is exhausted.
+	 * @return true if the planning budget is exhausted; false otherwise or if there is no budget
+	 */
+	protected boolean planningBudgetExhausted(){
+		this.planningStatistics.setNodesExpanded(this.numSteps - this.planningStartSteps);
+		return this.planningStatistics.checkBudget(this.planningBudget);
+	}
+	
 	/**
 	 * Sets the value function to use to be the upper bound.
 	 */
@@ -325,6 +379,10 @@ public class BoundedRTDP extends DynamicProgramming implements Planner {
 			if(select.expectedGap < this.maxDiff){
 				break;
 			}
+
+			if(this.planningBudget != null && this.planningBudgetExhausted()){
+				break;
+			}
 			
 			
 		}
@@ -365,6 +423,8 @@ public class BoundedRTDP extends DynamicProgramming implements Planner {
 		else{
 			this.setValueFunctionToUpperBound();
 		}
+
+		this.planningStatistics.addIterations(1);
 		
 		return lastGap;
 		
@@ -0,0 +1,350 @@
+package burlap.behavior.singleagent.planning.stochastic.sparsesampling;
+
+import burlap.behavior.policy.GreedyQPolicy;
+import burlap.behavior.singleagent.options.EnvironmentOptionOutcome;
+import burlap.behavior.singleagent.options.Option;
+import burlap.behavior.valuefunction.QValue;
+import burlap.debugtools.RandomFactory;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.state.State;
+import burlap.mdp.singleagent.SADomain;
+import burlap.mdp.singleagent.environment.EnvironmentOutcome;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A version of {@link SparseSampling} that expands the tree on multiple threads with fork-join parallelism. When a state node with a
+ * height of at least {@link #getMinParallelHeight()} estimates its Q-values, each of its C samples of each action (or, when computing the exact value
+ * function, each action) is estimated in a separate task, including the recursive estimation of the sampled successor node. Nodes below
+ * that height are expanded sequentially on the thread that reached them, which keeps the tasks large enough to be worth forking.
+ * <p>
+ * The state nodes are indexed in a concurrent map, so a node that is sampled by several tasks is shared, as in {@link SparseSampling}. If two tasks
+ * reach the same open node at the same time, both estimate its value and the last estimate is kept; each estimate is a valid sparse sampling estimate.
+ * <p>
+ * Each sample task installs a {@link RandomFactory} as the factory of its thread (see {@link RandomFactory#setThreadFactory(RandomFactory)}),
+ * reseeded (see {@link RandomFactory#reseed(long)}) from a seed drawn at the start of planning and the node, action and sample of the task.
+ * Each pool thread keeps one factory, so no generators are created per sample. Models that get their random generators from {@link RandomFactory}
+ * when sampling, such as the {@link burlap.mdp.singleagent.model.FullModel.Helper#sampleByEnumeration(burlap.mdp.singleagent.model.FullModel, State, Action)}
+ * implementations and the model of {@link burlap.domain.singleagent.gridworld.GridWorldDomain}, therefore use an independent stream in each task.
+ * Models that keep their own random generator regardless of the thread factory share it between threads, so they must be safe to use from multiple
+ * threads, as must the {@link HashableStateFactory}. Because shared nodes may be estimated by any of the tasks that reach them, results are not
+ * reproducible from a seed.
+ * <p>
+ * Tree reuse ({@link #toggleTreeReuse(boolean)}) is not supported.
+ */
+public class ParallelSparseSampling extends SparseSampling {
+
+	/**
+	 * The number of threads used for planning
+	 */
+	protected int numThreads;
+
+	/**
+	 * The minimum height of a state node for its samples to be estimated in parallel
+	 */
+	protected int minParallelHeight = 2;
+
+	/**
+	 * The pool used during the current planning call; null when not planning
+	 */
+	protected ForkJoinPool pool = null;
+
+	/**
+	 * The seed from which the seeds of the sample tasks of the current planning call are derived
+	 */
+	protected long planningSeed;
+
+	/**
+	 * The state nodes indexed by their state and height; the same map as {@link #nodesByHeight}
+	 */
+	protected ConcurrentHashMap<HashedHeightState, StateNode> concurrentNodesByHeight;
+
+	/**
+	 * The random factory that sample tasks install on each pool thread
+	 */
+	protected ThreadLocal<RandomFactory> taskRandomFactories = new ThreadLocal<RandomFactory>();
+
+
+	/**
+	 * Initializes with one thread for each available processor.
+	 * @param domain the planning domain
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factory for matching generated states with their state nodes.
+	 * @param h the height of the tree
+	 * @param c the number of transition dynamics samples used. If set to -1, then the full transition dynamics are used.
+	 */
+	public ParallelSparseSampling(SADomain domain, double gamma, HashableStateFactory hashingFactory, int h, int c){
+		this(domain, gamma, hashingFactory, h, c, Runtime.getRuntime().availableProcessors());
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param domain the planning domain
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factory for matching generated states with their state nodes.
+	 * @param h the height of the tree
+	 * @param c the number of transition dynamics samples used. If set to -1, then the full transition dynamics are used.
+	 * @param numThreads the number of threads used for planning
+	 */
+	public ParallelSparseSampling(SADomain domain, double gamma, HashableStateFactory hashingFactory, int h, int c, int numThreads){
+		super(domain, gamma, hashingFactory, h, c);
+		this.concurrentNodesByHeight = new ConcurrentHashMap<HashedHeightState, StateNode>();
+		this.nodesByHeight = this.concurrentNodesByHeight;
+		this.setNumThreads(numThreads);
+	}
+
+
+	/**
+	 * Returns the number of threads used for planning
+	 * @return the number of threads used for planning
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the number of threads used for planning
+	 * @param numThreads the number of threads used for planning
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1){
+			throw new RuntimeException("ParallelSparseSampling requires at least one thread.");
+		}
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Returns the minimum height of a state node for its samples to be estimated in parallel
+	 * @return the minimum height of a state node for its samples to be estimated in parallel
+	 */
+	public int getMinParallelHeight() {
+		return minParallelHeight;
+	}
+
+	/**
+	 * Sets the minimum height of a state node for its samples to be estimated in parallel. The default is 2.
+	 * @param minParallelHeight the minimum height of a state node for its samples to be estimated in parallel
+	 */
+	public void setMinParallelHeight(int minParallelHeight) {
+		this.minParallelHeight = Math.max(1, minParallelHeight);
+	}
+
+
+	@Override
+	public void toggleTreeReuse(boolean reuseTree) {
+		if(reuseTree){
+			throw new RuntimeException("ParallelSparseSampling does not support tree reuse.");
+		}
+		super.toggleTreeReuse(false);
+	}
+
+
+	@Override
+	public GreedyQPolicy planFromState(State initialState) {
+		this.planningSeed = RandomFactory.getDefault().nextLong();
+		this.pool = new ForkJoinPool(this.numThreads);
+		try{
+			return super.planFromState(initialState);
+		} finally{
+			this.pool.shutdown();
+			this.pool = null;
+		}
+	}
+
+
+	@Override
+	protected StateNode getStateNode(State s, int height) {
+		HashableState sh = this.hashingFactory.hashState(s);
+		HashedHeightState hhs = new HashedHeightState(sh, height);
+		StateNode sn = this.concurrentNodesByHeight.get(hhs);
+		if(sn == null){
+			sn = this.createStateNode(sh, height);
+			StateNode existing = this.concurrentNodesByHeight.putIfAbsent(hhs, sn);
+			if(existing != null){
+				sn = existing;
+			}
+		}
+		return sn;
+	}
+
+
+	@Override
+	protected StateNode createStateNode(HashableState sh, int height) {
+		return new ParallelStateNode(sh, height);
+	}
+
+
+	@Override
+	protected synchronized void incrementValueEstimates() {
+		super.incrementValueEstimates();
+	}
+
+
+	@Override
+	protected synchronized void checkPlanningBudget() {
+		super.checkPlanningBudget();
+	}
+
+
+	/**
+	 * Returns the seed of the random factory of a sample task.
+	 * @param sh the state of the node that draws the sample
+	 * @param height the height of the node
+	 * @param actionIndex the index of the sampled action
+	 * @param sample the index of the sample
+	 * @return the seed of the task
+	 */
+	protected long taskSeed(HashableState sh, int height, int actionIndex, int sample){
+		long h = this.planningSeed;
+		h = (h ^ sh.hashCode()) * 0x9e3779b97f4a7c15L;
+		h = (h ^ height) * 0x9e3779b97f4a7c15L;
+		h = (h ^ actionIndex) * 0x9e3779b97f4a7c15L;
+		h = (h ^ sample) * 0xff51afd7ed558ccdL;
+		return h ^ (h >>> 33);
+	}
+
+
+	/**
+	 * A state node that estimates its Q-values with fork-join tasks.
+	 */
+	public class ParallelStateNode extends StateNode{
+
+		/**
+		 * Creates a node for the given hased state at the given height
+		 * @param sh the hashed state
+		 * @param height the height of the node
+		 */
+		public ParallelStateNode(HashableState sh, int height) {
+			super(sh, height);
+		}
+
+
+		@Override
+		public List<QValue> estimateQs() {
+
+			if(this.height < minParallelHeight || pool == null){
+				return super.estimateQs();
+			}
+
+			//the root is estimated from the calling thread, so move it into the pool
+			if(!ForkJoinTask.inForkJoinPool()){
+				return pool.invoke(new RecursiveTask<List<QValue>>() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected List<QValue> compute() {
+						return ParallelStateNode.this.estimateQs();
+					}
+				});
+			}
+
+			List<Action> gas = ParallelSparseSampling.this.applicableActions(this.sh.s());
+			int c = computeExactValueFunction ? 1 : ParallelSparseSampling.this.getCAtHeight(this.height);
+			List<RecursiveTask<Double>> tasks = new ArrayList<RecursiveTask<Double>>(gas.size()*c);
+			for(int i = 0; i < gas.size(); i++){
+				Action ga = gas.get(i);
+				for(int j = 0; j < c; j++){
+					if(computeExactValueFunction){
+						tasks.add(new ExactQTask(this, ga));
+					}
+					else{
+						tasks.add(new SampleTask(this, ga, taskSeed(this.sh, this.height, i, j)));
+					}
+				}
+			}
+			ForkJoinTask.invokeAll(tasks);
+
+			List<QValue> qs = new ArrayList<QValue>(gas.size());
+			for(int i = 0; i < gas.size(); i++){
+				double sum = 0.;
+				for(int j = 0; j < c; j++){
+					sum += tasks.get(i*c + j).join();
+				}
+				qs.add(new QValue(this.sh.s(), gas.get(i), sum / c));
+			}
+
+			return qs;
+		}
+
+	}
+
+
+	/**
+	 * A task that samples one transition of an action from a node and returns its reward plus the discounted value of the sampled successor node.
+	 */
+	protected class SampleTask extends RecursiveTask<Double>{
+
+		private static final long serialVersionUID = 1L;
+
+		protected StateNode node;
+		protected Action ga;
+		protected long seed;
+
+		public SampleTask(StateNode node, Action ga, long seed) {
+			this.node = node;
+			this.ga = ga;
+			this.seed = seed;
+		}
+
+		@Override
+		protected Double compute() {
+			RandomFactory taskFactory = taskRandomFactories.get();
+			if(taskFactory == null){
+				taskFactory = new RandomFactory(this.seed);
+				taskRandomFactories.set(taskFactory);
+			}
+			else{
+				//a task that is run while this thread waits on another one reseeds the same factory, which is safe because
+				//the waiting task has already drawn its sample
+				taskFactory.reseed(this.seed);
+			}
+			RandomFactory previous = RandomFactory.getThreadFactory();
+			RandomFactory.setThreadFactory(taskFactory);
+			try{
+				EnvironmentOutcome eo = model.sample(this.node.sh.s(), this.ga);
+
+				//manage option stepsize modifications
+				int k = 1;
+				if(this.ga instanceof Option){
+					k = ((EnvironmentOptionOutcome)eo).numSteps();
+				}
+
+				StateNode nsn = ParallelSparseSampling.this.getStateNode(eo.op, this.node.height-k);
+				return eo.r + Math.pow(ParallelSparseSampling.this.gamma, k)*nsn.estimateV();
+			} finally{
+				RandomFactory.setThreadFactory(previous);
+			}
+		}
+	}
+
+
+	/**
+	 * A task that computes the exact Q-value of an action from a node.
+	 */
+	protected class ExactQTask extends RecursiveTask<Double>{
+
+		private static final long serialVersionUID = 1L;
+
+		protected StateNode node;
+		protected Action ga;
+
+		public ExactQTask(StateNode node, Action ga) {
+			this.node = node;
+			this.ga = ga;
+		}
+
+		@Override
+		protected Double compute() {
+			return this.node.exactQValue(this.ga);
+		}
+	}
+
+}
@@ -5,7 +5,9 @@ import burlap.behavior.policy.Policy;
 import burlap.behavior.singleagent.MDPSolver;
 import burlap.behavior.singleagent.options.EnvironmentOptionOutcome;
 import burlap.behavior.singleagent.options.Option;
-import burlap.behavior.singleagent.planning.Planner;
+import burlap.behavior.singleagent.planning.AnytimePlanner;
+import burlap.behavior.singleagent.planning.PlanningBudget;
+import burlap.behavior.singleagent.planning.PlanningStatistics;
 import burlap.behavior.singleagent.planning.stochastic.dpoperator.BellmanOperator;
 import burlap.behavior.singleagent.planning.stochastic.dpoperator.DPOperator;
 import burlap.behavior.valuefunction.ConstantValueFunction;
@@ -62,6 +64,20 @@ import java.util.Map;
  * all the model implements {@link burlap.mdp.singleagent.model.FullModel}). To set this class to compute the exact finite horizon value function, use the
  * {@link #setComputeExactValueFunction(boolean)} method. Note that you cannot use {@link Option}s when using the full Bellman update.
  * <p>
+ * Planning can also be limited by a {@link PlanningBudget} (see {@link #setPlanningBudget(PlanningBudget)}). With a budget, the tree is
+ * planned with iterative deepening: the root Q-values are estimated for heights 1, 2, ..., H, and when the budget is exhausted, the
+ * tree under construction is abandoned and the Q-values of the highest completed height are used (or the leaf values, if not even height 1 completed).
+ * The state nodes closed by abandoned and earlier trees are kept and reused as usual. For the budget and the {@link PlanningStatistics},
+ * iterations are completed heights and nodes are value estimates.
+ * <p>
+ * In closed-loop execution, the tree can be reused across planning calls (see {@link #toggleTreeReuse(boolean)}). In this mode, each state node
+ * remembers the transitions it sampled (or, when computing the exact value function, the transitions of the full model) along with
+ * the successor nodes they lead to. When planning from a state that is a node at height H-1 in the previous tree, such as a sampled
+ * successor of the previous root, the subtree of that node is re-rooted: every node in the subtree is moved up one height and keeps its
+ * transitions, and all other nodes are discarded. Values must still be recomputed, because the height of the nodes changed, but only the nodes
+ * at the new bottom level of the tree need to sample the model. If the state is not in the previous tree, the previous tree is discarded.
+ * When tree reuse is on, the nodes of the previous tree are kept regardless of {@link #setForgetPreviousPlanResults(boolean)}.
+ * <p>
  * 
  * 
  * 1. Kearns, Michael, Yishay Mansour, and Andrew Y. Ng. "A sparse sampling algorithm for near-optimal planning in large Markov decision processes." 
@@ -71,7 +87,7 @@ import java.util.Map;
  * @author James MacGlashan
  *
  */
-public class SparseSampling extends MDPSolver implements QProvider, Planner {
+public class SparseSampling extends MDPSolver implements QProvider, AnytimePlanner {
 
 	/**
 	 * The height of the tree
@@ -92,6 +108,21 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 	 * Whether previous planning results should be forgetten or reused; default is reused (false).
 	 */
 	protected boolean forgetPreviousPlanResults = false;
+
+	/**
+	 * Whether the subtree of the next root is retained between planning calls; default is false.
+	 */
+	protected boolean reuseTree = false;
+
+	/**
+	 * The root state of the most recent planning call when reusing the tree
+	 */
+	protected HashableState lastRoot = null;
+
+	/**
+	 * The number of state nodes retained by the most recent planning call
+	 */
+	protected int numRetainedNodes = 0;
 	
 	/**
 	 * The state value used for leaf nodes; default is zero.
@@ -122,11 +153,26 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 	 */
 	protected int numUpdates = 0;
 
+	/**
+	 * The value of {@link #numUpdates} at the start of the current planning call
+	 */
+	protected int planningStartUpdates = 0;
+
 	/**
 	 * The operator used for back ups.
 	 */
 	protected DPOperator operator = new BellmanOperator();
 
+	/**
+	 * The budget that limits each planning call; null for no budget
+	 */
+	protected PlanningBudget planningBudget = null;
+
+	/**
+	 * The statistics of the most recent planning call
+	 */
+	protected PlanningStatistics planningStatistics = new PlanningStatistics();
+
 	
 	
 	/**
@@ -253,6 +299,35 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 		}
 	}
 	
+	/**
+	 * Sets whether the subtree of a state in the previous tree is re-rooted and reused, rather than rebuilt, when planning from that state.
+	 * The default is false.
+	 * @param reuseTree whether the tree should be reused
+	 */
+	public void toggleTreeReuse(boolean reuseTree){
+		this.reuseTree = reuseTree;
+		this.lastRoot = null;
+	}
+
+
+	/**
+	 * Returns whether the subtree of a state in the previous tree is re-rooted and reused, rather than rebuilt, when planning from that state.
+	 * @return true if the tree is reused; false otherwise
+	 */
+	public boolean isReusingTree(){
+		return this.reuseTree;
+	}
+
+
+	/**
+	 * Returns the number of state nodes of the previous tree that were retained by the most recent planning call.
+	 * @return the number of retained state nodes
+	 */
+	public int getNumberOfRetainedNodes(){
+		return this.numRetainedNodes;
+	}
+
+
 	/**
 	 * Sets the {@link ValueFunction} object to use for settting the value of leaf nodes.
 	 * @param vinit the {@link ValueFunction} object to use for settting the value of leaf nodes.
@@ -304,6 +379,22 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 	}
 
 
+	@Override
+	public void setPlanningBudget(PlanningBudget budget) {
+		this.planningBudget = budget;
+	}
+
+	@Override
+	public PlanningBudget getPlanningBudget() {
+		return this.planningBudget;
+	}
+
+	@Override
+	public PlanningStatistics getLastPlanningStatistics() {
+		return this.planningStatistics;
+	}
+
+
 	/**
 	 * Plans from the input state and then returns a {@link burlap.behavior.policy.GreedyQPolicy} that greedily
 	 * selects the action with the highest Q-value and breaks ties uniformly randomly.
@@ -323,14 +414,28 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 		}
 		
 		DPrint.cl(this.debugCode, "Beginning Planning.");
+		if(this.reuseTree){
+			this.reRootTree(sh);
+			this.lastRoot = sh;
+		}
 		int oldUpdates = this.numUpdates;
+		this.planningStatistics.start();
+		this.planningStartUpdates = this.numUpdates;
 		
-		StateNode sn = this.getStateNode(initialState, this.h);
-		rootLevelQValues.put(sh, sn.estimateQs());
+		if(this.planningBudget == null){
+			StateNode sn = this.getStateNode(initialState, this.h);
+			rootLevelQValues.put(sh, sn.estimateQs());
+			this.planningStatistics.setIterations(1);
+		}
+		else{
+			rootLevelQValues.put(sh, this.iterativeDeepeningQs(initialState));
+		}
+		this.planningStatistics.setNodesExpanded(this.numUpdates - oldUpdates);
+		this.planningStatistics.finish();
 		
 		DPrint.cl(this.debugCode, "Finished Planning with " + (this.numUpdates - oldUpdates) + " value esitmates; for a cumulative total of: " + this.numUpdates);
 		
-		if(this.forgetPreviousPlanResults){
+		if(this.forgetPreviousPlanResults && !this.reuseTree){
 			this.nodesByHeight.clear();
 		}
 
@@ -344,6 +449,8 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 		this.nodesByHeight.clear();
 		this.rootLevelQValues.clear();
 		this.numUpdates = 0;
+		this.lastRoot = null;
+		this.numRetainedNodes = 0;
 	}
 	
 	
@@ -395,6 +502,97 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 	}
 	
 	
+	/**
+	 * Estimates the Q-values of a state for increasing heights, up to the height of the tree, until the planning budget is exhausted.
+	 * @param s the state
+	 * @return the Q-values for the highest height that was completed within the budget
+	 */
+	protected List<QValue> iterativeDeepeningQs(State s){
+		List<QValue> qs = this.getStateNode(s, 0).estimateQs();
+		for(int height = 1; height <= this.h; height++){
+			try{
+				qs = this.getStateNode(s, height).estimateQs();
+				this.planningStatistics.addIterations(1);
+			} catch(PlanningBudgetExhaustedException e){
+				DPrint.cl(this.debugCode, "Planning budget exhausted at height " + height);
+				break;
+			}
+		}
+		return qs;
+	}
+
+
+	/**
+	 * Re-roots the previous tree at the node of the given state at height H-1, moving every node of its subtree up one height, and
+	 * discards all other nodes. If there is no such node, all nodes are discarded.
+	 * @param sh the state at which to re-root the tree
+	 * @return true if the tree was re-rooted; false otherwise
+	 */
+	protected boolean reRootTree(HashableState sh){
+
+		this.numRetainedNodes = 0;
+		StateNode oldRoot = this.lastRoot == null ? null : this.nodesByHeight.get(new HashedHeightState(sh, this.h-1));
+		if(oldRoot == null){
+			this.nodesByHeight.clear();
+			return false;
+		}
+
+		//create the moved nodes
+		Map<StateNode, StateNode> moved = new HashMap<StateNode, StateNode>();
+		List<StateNode> open = new ArrayList<StateNode>();
+		moved.put(oldRoot, this.createStateNode(oldRoot.sh, oldRoot.height+1));
+		open.add(oldRoot);
+		for(int i = 0; i < open.size(); i++){
+			StateNode node = open.get(i);
+			if(node.transitions == null){
+				continue;
+			}
+			for(List<NodeTransition> nts : node.transitions.values()){
+				for(NodeTransition nt : nts){
+					if(!moved.containsKey(nt.child)){
+						moved.put(nt.child, this.createStateNode(nt.child.sh, nt.child.height+1));
+						open.add(nt.child);
+					}
+				}
+			}
+		}
+
+		//copy their transitions and index them
+		Map<HashedHeightState, StateNode> retained = new HashMap<HashedHeightState, StateNode>(moved.size()*2);
+		for(StateNode node : open){
+			StateNode movedNode = moved.get(node);
+			if(node.transitions != null){
+				movedNode.transitions = new HashMap<Action, List<NodeTransition>>(node.transitions.size());
+				for(Map.Entry<Action, List<NodeTransition>> e : node.transitions.entrySet()){
+					List<NodeTransition> nts = new ArrayList<NodeTransition>(e.getValue().size());
+					for(NodeTransition nt : e.getValue()){
+						nts.add(new NodeTransition(nt.p, nt.r, nt.k, moved.get(nt.child)));
+					}
+					movedNode.transitions.put(e.getKey(), nts);
+				}
+			}
+			retained.put(new HashedHeightState(movedNode.sh, movedNode.height), movedNode);
+		}
+
+		this.nodesByHeight = retained;
+		this.numRetainedNodes = retained.size();
+		DPrint.cl(this.debugCode, "Retained " + this.numRetainedNodes + " state nodes from the previous tree.");
+
+		return true;
+	}
+
+
+	/**
+	 * Throws a {@link PlanningBudgetExhaustedException} if the planning budget is exhausted.
+	 */
+	protected void checkPlanningBudget(){
+		this.planningStatistics.setNodesExpanded(this.numUpdates - this.planningStartUpdates);
+		if(this.planningStatistics.checkBudget(this.planningBudget)){
+			throw new PlanningBudgetExhaustedException();
+		}
+	}
+
+
 	/**
 	 * Returns the value of C for a node at the given height (height from a leaf node).
 	 * @param height the height from a leaf node.
@@ -426,7 +624,7 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 		HashedHeightState hhs = new HashedHeightState(sh, height);
 		StateNode sn = this.nodesByHeight.get(hhs);
 		if(sn == null){
-			sn = new StateNode(sh, height);
+			sn = this.createStateNode(sh, height);
 			this.nodesByHeight.put(hhs, sn);
 		}
 		
@@ -434,6 +632,25 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 	}
 	
 	
+	/**
+	 * Creates a new state node for the given state at the given height; it is not indexed.
+	 * @param sh the hashed state
+	 * @param height the height (distance from leaf node) of the node.
+	 * @return the new state node
+	 */
+	protected StateNode createStateNode(HashableState sh, int height){
+		return new StateNode(sh, height);
+	}
+
+
+	/**
+	 * Records that a state node value was estimated.
+	 */
+	protected void incrementValueEstimates(){
+		this.numUpdates++;
+	}
+	
+	
 	/**
 	 * A class for state nodes. Includes the state, a value estimate, whether the node has been closed and methods for estimating the Q and V values.
 	 * @author James MacGlashan
@@ -457,9 +674,14 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 		double v;
 		
 		/**
-		 * Whether this node has been closed.
+		 * Whether this node has been closed. Volatile so that a closed node's value is visible to other threads in {@link ParallelSparseSampling}.
 		 */
-		boolean closed = false;
+		volatile boolean closed = false;
+
+		/**
+		 * The transitions of each action from this node; only recorded when the tree is reused.
+		 */
+		Map<Action, List<NodeTransition>> transitions;
 		
 		
 		/**
@@ -511,7 +733,15 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 			
 			//generate C samples
 			int c = SparseSampling.this.getCAtHeight(this.height);
+			List<NodeTransition> nts = this.recordedTransitions(ga);
 			for(int i = 0; i < c; i++){
+
+				//reuse samples recorded by a previous tree
+				if(nts != null && i < nts.size()){
+					NodeTransition nt = nts.get(i);
+					sum += nt.r + Math.pow(SparseSampling.this.gamma, nt.k)*nt.child.estimateV();
+					continue;
+				}
 				
 				//execute
 				EnvironmentOutcome eo = model.sample(sh.s(), ga);
@@ -527,6 +757,9 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 				double r = eo.r;
 				
 				StateNode nsn = SparseSampling.this.getStateNode(ns, this.height-k);
+				if(nts != null){
+					nts.add(new NodeTransition(1., r, k, nsn));
+				}
 				
 				sum += r + Math.pow(SparseSampling.this.gamma, k)*nsn.estimateV();
 			}
@@ -546,10 +779,24 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 		protected double exactQValue(Action ga){
 			
 			double sum = 0.;
-			List<TransitionProb> tps = ((FullModel)model).transitions(sh.s(), ga);
 			
 			if(!(ga instanceof Option)){
-				
+
+				List<NodeTransition> nts = this.recordedTransitions(ga);
+				if(nts != null && !nts.isEmpty()){
+					for(NodeTransition nt : nts){
+						sum += nt.p * (nt.r + SparseSampling.this.gamma * nt.child.estimateV());
+					}
+					return sum;
+				}
+
+				List<TransitionProb> tps = ((FullModel)model).transitions(sh.s(), ga);
+				if(nts != null){
+					//record all transitions before estimating any values so that an abandoned tree leaves a complete list
+					for(TransitionProb tp : tps){
+						nts.add(new NodeTransition(tp.p, tp.eo.r, 1, SparseSampling.this.getStateNode(tp.eo.op, this.height-1)));
+					}
+				}
 				for(TransitionProb tp : tps){
 					
 					double r = tp.eo.r;
@@ -570,6 +817,27 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 		
 		
 		
+		/**
+		 * Returns the recorded transitions of an action from this node, creating the list if needed, or null if the tree is not reused.
+		 * @param ga the action
+		 * @return the recorded transitions of the action, or null if the tree is not reused
+		 */
+		protected List<NodeTransition> recordedTransitions(Action ga){
+			if(!SparseSampling.this.reuseTree){
+				return null;
+			}
+			if(this.transitions == null){
+				this.transitions = new HashMap<Action, List<NodeTransition>>();
+			}
+			List<NodeTransition> nts = this.transitions.get(ga);
+			if(nts == null){
+				nts = new ArrayList<NodeTransition>();
+				this.transitions.put(ga, nts);
+			}
+			return nts;
+		}
+		
+		
 		/**
 		 * Returns the estimated Q-value if this node is closed, or estimates it and closes it otherwise.
 		 * @return the estimated Q-value for this node.
@@ -584,6 +852,10 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 				this.closed = true;
 				return this.v;
 			}
+
+			if(SparseSampling.this.planningBudget != null){
+				SparseSampling.this.checkPlanningBudget();
+			}
 			
 			
 			List<QValue> Qs = this.estimateQs();
@@ -591,7 +863,7 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 			for(int i = 0; i < Qs.size(); i++){
 				qs[i] = Qs.get(i).q;
 			}
-			SparseSampling.this.numUpdates++;
+			SparseSampling.this.incrementValueEstimates();
 			this.v = operator.apply(qs);
 			this.closed = true;
 			return this.v;
@@ -600,6 +872,54 @@ public class SparseSampling extends MDPSolver implements QProvider, Planner {
 	}
 	
 	
+	/**
+	 * A transition from a state node that is recorded when the tree is reused.
+	 */
+	protected static class NodeTransition{
+
+		/**
+		 * The probability of the transition; only used for the exact value function
+		 */
+		double p;
+
+		/**
+		 * The reward of the transition
+		 */
+		double r;
+
+		/**
+		 * The number of steps of the transition
+		 */
+		int k;
+
+		/**
+		 * The successor state node
+		 */
+		StateNode child;
+
+		public NodeTransition(double p, double r, int k, StateNode child){
+			this.p = p;
+			this.r = r;
+			this.k = k;
+			this.child = child;
+		}
+	}
+	
+	
+	/**
+	 * Thrown to abandon the tree under construction when the planning budget is exhausted.
+	 */
+	protected static class PlanningBudgetExhaustedException extends RuntimeException{
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+	
+	
 	/**
 	 * Tuple for a state and its height in a tree that can be hashed for quick retrieval.
 	 * @author James MacGlashan
@@ -0,0 +1,235 @@
+package burlap.behavior.singleagent.planning.stochastic.valueiteration;
+
+import burlap.behavior.singleagent.planning.stochastic.CompiledTransitionTable;
+import burlap.debugtools.DPrint;
+import burlap.mdp.singleagent.SADomain;
+import burlap.statehashing.HashableStateFactory;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * A multi-threaded version of {@link ValueIteration}. Like {@link ValueIteration}, it first finds all reachable states from
+ * the source state and then performs sweeps over them until the maximum change in the value function is smaller than
+ * a threshold or a maximum number of iterations is reached. The reachable states are compiled into a
+ * {@link CompiledTransitionTable} (regardless of the {@link #toggleCompiledTransitions(boolean)} setting) and split
+ * into one contiguous partition per thread; each sweep updates the partitions concurrently in a {@link ForkJoinPool}
+ * and the convergence test uses the maximum of the per-partition value changes.
+ * <p>
+ * Two sweep modes are supported (see {@link SweepMode}):
+ * <p>
+ * JACOBI performs synchronous sweeps with two value buffers: every state's new value is computed from the values of the previous sweep.
+ * <p>
+ * GAUSS_SEIDEL (the default) performs asynchronous, in-place sweeps within each partition, while the values of states in other
+ * partitions are read from the previous sweep. With a single thread, this produces exactly the same value function as {@link ValueIteration}.
+ * <p>
+ * In both modes, the result of planning is deterministic for a given number of threads, regardless of thread scheduling.
+ * <p>
+ * This implementation is compatible with options.
+ */
+public class ParallelValueIteration extends ValueIteration {
+
+
+	/**
+	 * The sweep mode to use.
+	 * <p>
+	 * JACOBI computes each new state value from the values of the previous sweep, using a second value buffer.
+	 * <p>
+	 * GAUSS_SEIDEL updates values in place within each partition, reading the values of other partitions from the previous sweep.
+	 */
+	public static enum SweepMode{
+		JACOBI, GAUSS_SEIDEL
+	}
+
+
+	/**
+	 * The number of threads, and partitions of the state space, used for each sweep
+	 */
+	protected int numThreads;
+
+
+	/**
+	 * The sweep mode to use
+	 */
+	protected SweepMode sweepMode = SweepMode.GAUSS_SEIDEL;
+
+
+	/**
+	 * Initializes using one thread for each available processor.
+	 * @param domain the domain in which to plan
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factor to use
+	 * @param maxDelta when the maximum change in the value function is smaller than this value, VI will terminate.
+	 * @param maxIterations when the number of VI iterations exceeds this value, VI will terminate.
+	 */
+	public ParallelValueIteration(SADomain domain, double gamma, HashableStateFactory hashingFactory, double maxDelta, int maxIterations){
+		this(domain, gamma, hashingFactory, maxDelta, maxIterations, Runtime.getRuntime().availableProcessors());
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param domain the domain in which to plan
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factor to use
+	 * @param maxDelta when the maximum change in the value function is smaller than this value, VI will terminate.
+	 * @param maxIterations when the number of VI iterations exceeds this value, VI will terminate.
+	 * @param numThreads the number of threads, and partitions of the state space, to use for each sweep
+	 */
+	public ParallelValueIteration(SADomain domain, double gamma, HashableStateFactory hashingFactory, double maxDelta, int maxIterations, int numThreads){
+		super(domain, gamma, hashingFactory, maxDelta, maxIterations);
+		this.setNumThreads(numThreads);
+	}
+
+
+	/**
+	 * Returns the number of threads, and partitions of the state space, used for each sweep.
+	 * @return the number of threads used for each sweep
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+
+	/**
+	 * Sets the number of threads, and partitions of the state space, used for each sweep. Because states are
+	 * partitioned by thread, the computed value function (though not its quality) may differ slightly with the number of threads,
+	 * but is deterministic for a given number of threads.
+	 * @param numThreads the number of threads to use for each sweep
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1){
+			throw new RuntimeException("Parallel value iteration requires at least one thread; " + numThreads + " were requested.");
+		}
+		this.numThreads = numThreads;
+	}
+
+
+	/**
+	 * Returns the sweep mode used.
+	 * @return the sweep mode used.
+	 */
+	public SweepMode getSweepMode() {
+		return sweepMode;
+	}
+
+
+	/**
+	 * Sets the sweep mode to use. The default is {@link SweepMode#GAUSS_SEIDEL}.
+	 * @param sweepMode the sweep mode to use.
+	 */
+	public void setSweepMode(SweepMode sweepMode) {
+		this.sweepMode = sweepMode;
+	}
+
+
+	@Override
+	public void runVI() {
+
+		if(!this.foundReachableStates){
+			throw new RuntimeException("Cannot run VI until the reachable states have been found. Use the planFromState or performReachabilityFrom method at least once before calling runVI.");
+		}
+
+		CompiledTransitionTable ct = this.getCompiledTransitions();
+		double [] v = this.compiledValues(ct);
+		double [] vPrev = v.clone();
+
+		int nParts = Math.max(1, Math.min(this.numThreads, ct.numSourceStates()));
+		int [] partitions = new int[nParts+1];
+		for(int p = 0; p <= nParts; p++){
+			partitions[p] = (int)((long)ct.numSourceStates() * p / nParts);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(this.numThreads);
+		int i;
+		try{
+			for(i = 0; i < this.maxIterations; i++){
+
+				double delta;
+				if(this.sweepMode == SweepMode.JACOBI){
+					delta = pool.invoke(new SweepTask(ct, vPrev, v, partitions, 0, nParts));
+					double [] tmp = vPrev;
+					vPrev = v;
+					v = tmp;
+				}
+				else{
+					delta = pool.invoke(new SweepTask(ct, v, vPrev, partitions, 0, nParts));
+					System.arraycopy(v, 0, vPrev, 0, ct.numSourceStates());
+				}
+
+				if(delta < this.maxDelta){
+					break; //approximated well enough; stop iterating
+				}
+
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		//after a Jacobi sweep, the latest values are in vPrev; after a Gauss-Seidel sweep, both buffers are the same
+		this.storeCompiledValues(ct, vPrev);
+
+		DPrint.cl(this.debugCode, "Passes: " + i);
+
+		this.hasRunVI = true;
+
+	}
+
+
+	/**
+	 * A {@link RecursiveTask} that sweeps a range of partitions by recursively splitting it, and returns the
+	 * maximum value change over all partitions in the range.
+	 */
+	protected class SweepTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		protected CompiledTransitionTable ct;
+		protected double [] v;
+		protected double [] vOther;
+		protected int [] partitions;
+		protected int begin;
+		protected int end;
+
+
+		/**
+		 * Initializes.
+		 * @param ct the compiled transition dynamics
+		 * @param v for Gauss-Seidel sweeps, the values updated in place; for Jacobi sweeps, the values of the previous sweep
+		 * @param vOther for Gauss-Seidel sweeps, the values of the previous sweep; for Jacobi sweeps, the values to which the new values are written
+		 * @param partitions the state id offsets of the partitions
+		 * @param begin the first partition to sweep
+		 * @param end the partition after the last partition to sweep
+		 */
+		public SweepTask(CompiledTransitionTable ct, double[] v, double[] vOther, int[] partitions, int begin, int end) {
+			this.ct = ct;
+			this.v = v;
+			this.vOther = vOther;
+			this.partitions = partitions;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		protected Double compute() {
+			if(this.end - this.begin == 1){
+				int sBegin = this.partitions[this.begin];
+				int sEnd = this.partitions[this.end];
+				if(sweepMode == SweepMode.JACOBI){
+					return this.ct.jacobiSweep(this.v, this.vOther, sBegin, sEnd, operator);
+				}
+				return this.ct.partitionedSweep(this.v, this.vOther, sBegin, sEnd, operator);
+			}
+
+			int mid = (this.begin + this.end) / 2;
+			SweepTask left = new SweepTask(this.ct, this.v, this.vOther, this.partitions, this.begin, mid);
+			SweepTask right = new SweepTask(this.ct, this.v, this.vOther, this.partitions, mid, this.end);
+			left.fork();
+			double rightDelta = right.compute();
+			double leftDelta = left.join();
+			return Math.max(leftDelta, rightDelta);
+		}
+	}
+
+}
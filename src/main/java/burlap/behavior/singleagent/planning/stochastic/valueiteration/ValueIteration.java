@@ -2,6 +2,7 @@ package burlap.behavior.singleagent.planning.stochastic.valueiteration;
 
 import burlap.behavior.policy.GreedyQPolicy;
 import burlap.behavior.singleagent.planning.Planner;
+import burlap.behavior.singleagent.planning.stochastic.CompiledTransitionTable;
 import burlap.behavior.singleagent.planning.stochastic.DynamicProgramming;
 import burlap.debugtools.DPrint;
 import burlap.mdp.core.action.Action;
@@ -27,6 +28,9 @@ import java.util.Set;
  * that VI does not pass over non-reachable states.
  * 
  * This implementation is compatible with options.
+ * <p>
+ * For large state spaces, sweeps can be performed on a compiled, integer-indexed representation of the reachable
+ * transition dynamics instead of querying the model on every sweep by calling {@link #toggleCompiledTransitions(boolean)}.
  * 
  * 
  * @author James MacGlashan
@@ -86,6 +90,7 @@ public class ValueIteration extends DynamicProgramming implements Planner {
 	 */
 	public void recomputeReachableStates(){
 		this.foundReachableStates = false;
+		this.compiledTransitions = null;
 	}
 	
 	
@@ -133,6 +138,11 @@ public class ValueIteration extends DynamicProgramming implements Planner {
 			throw new RuntimeException("Cannot run VI until the reachable states have been found. Use the planFromState or performReachabilityFrom method at least once before calling runVI.");
 		}
 		
+		if(this.useCompiledTransitions){
+			this.runCompiledVI();
+			return;
+		}
+		
 		Set <HashableState> states = valueFunction.keySet();
 		
 		int i;
@@ -160,6 +170,36 @@ public class ValueIteration extends DynamicProgramming implements Planner {
 	}
 	
 	
+	/**
+	 * Runs VI on the {@link burlap.behavior.singleagent.planning.stochastic.CompiledTransitionTable} of the reachable states
+	 * until the specified termination conditions are met and then stores the resulting values in the value function.
+	 * Sweeps are performed in the same state order as {@link #runVI()} without compiled transitions, so both produce the same value function.
+	 */
+	protected void runCompiledVI(){
+
+		CompiledTransitionTable ct = this.getCompiledTransitions();
+		double [] v = this.compiledValues(ct);
+
+		int i;
+		for(i = 0; i < this.maxIterations; i++){
+
+			double delta = ct.bellmanSweep(v, this.operator);
+
+			if(delta < this.maxDelta){
+				break; //approximated well enough; stop iterating
+			}
+
+		}
+
+		this.storeCompiledValues(ct, v);
+
+		DPrint.cl(this.debugCode, "Passes: " + i);
+
+		this.hasRunVI = true;
+
+	}
+	
+	
 	/**
 	 * This method will find all reachable states that will be used by the {@link #runVI()} method and will cache all the transition dynamics.
 	 * This method will not do anything if all reachable states from the input state have been discovered from previous calls to this method.
@@ -220,6 +260,7 @@ public class ValueIteration extends DynamicProgramming implements Planner {
 		
 		this.foundReachableStates = true;
 		this.hasRunVI = false;
+		this.compiledTransitions = null;
 		
 		return true;
 		
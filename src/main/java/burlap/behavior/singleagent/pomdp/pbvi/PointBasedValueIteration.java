@@ -0,0 +1,770 @@
+package burlap.behavior.singleagent.pomdp.pbvi;
+
+import burlap.behavior.policy.GreedyQPolicy;
+import burlap.behavior.singleagent.MDPSolver;
+import burlap.behavior.singleagent.auxiliary.StateEnumerator;
+import burlap.behavior.singleagent.planning.Planner;
+import burlap.behavior.valuefunction.QProvider;
+import burlap.behavior.valuefunction.QValue;
+import burlap.debugtools.DPrint;
+import burlap.debugtools.RandomFactory;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.state.State;
+import burlap.mdp.singleagent.model.FullModel;
+import burlap.mdp.singleagent.model.TransitionProb;
+import burlap.mdp.singleagent.pomdp.PODomain;
+import burlap.mdp.singleagent.pomdp.beliefstate.TabularBeliefState;
+import burlap.mdp.singleagent.pomdp.observations.DiscreteObservationFunction;
+import burlap.mdp.singleagent.pomdp.observations.ObservationFunction;
+import burlap.statehashing.ReflectiveHashableStateFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A point-based value iteration (PBVI) [1] solver for POMDPs with {@link TabularBeliefState} beliefs. The value function is represented
+ * by a set of alpha vectors over the MDP states, each associated with an action, and the value of a belief is the maximum dot product of
+ * the belief with an alpha vector. Each iteration performs a point-based backup of every point in a finite set of belief points, which
+ * produces one alpha vector per point. The belief points are collected, as in Perseus [2], by random walks from the initial belief
+ * with uniformly random actions and observations sampled from the model.
+ * <p>
+ * Before planning, the domain's {@link FullModel} and {@link DiscreteObservationFunction} are compiled into primitive arrays over the states
+ * enumerated by the domain's {@link StateEnumerator}: the transitions of each action and state, the expected reward of each action and state,
+ * and the probability of each observation after each action in each state. Alpha vectors and belief points are stored as double arrays indexed
+ * by state identifier, so backups are loops over arrays. The backups of the belief points in an iteration are independent, and can be
+ * split across threads with {@link #setNumThreads(int)}. Transitions to terminal states contribute their reward, but no future value.
+ * <p>
+ * This class is a {@link QProvider} whose Q-value for a belief and action is the one step lookahead of the alpha vector value function,
+ * so the {@link GreedyQPolicy} returned by {@link #planFromState(State)} can be followed by a {@link burlap.behavior.singleagent.pomdp.BeliefPolicyAgent}.
+ * The actions are those applicable in the first enumerated state, and are assumed to be applicable in all states.
+ * <p>
+ * 1. Pineau, Joelle, Geoff Gordon, and Sebastian Thrun. "Point-based value iteration: An anytime algorithm for POMDPs." IJCAI. Vol. 3. 2003.
+ * <p>
+ * 2. Spaan, Matthijs TJ, and Nikos Vlassis. "Perseus: Randomized point-based value iteration for POMDPs." Journal of Artificial Intelligence Research 24 (2005): 195-220.
+ */
+public class PointBasedValueIteration extends MDPSolver implements Planner, QProvider {
+
+	/**
+	 * The number of belief points collected when planning from a belief without belief points
+	 */
+	protected int numBeliefPoints;
+
+	/**
+	 * The maximum number of steps of a belief collection random walk before it restarts from the initial belief
+	 */
+	protected int maxWalkLength = 20;
+
+	/**
+	 * The maximum number of backup iterations
+	 */
+	protected int maxIterations;
+
+	/**
+	 * When the maximum change in the value of a belief point in an iteration is no greater than this value, planning terminates
+	 */
+	protected double maxDelta;
+
+	/**
+	 * The number of threads across which the backups of an iteration are split
+	 */
+	protected int numThreads = 1;
+
+	/**
+	 * Whether the model has been compiled
+	 */
+	protected boolean compiled = false;
+
+	/**
+	 * The actions
+	 */
+	protected List<Action> actions;
+
+	/**
+	 * The observations
+	 */
+	protected List<State> observations;
+
+	/**
+	 * The number of states
+	 */
+	protected int numStates;
+
+	/**
+	 * The successor state identifiers of each action and state
+	 */
+	protected int [][][] nextStates;
+
+	/**
+	 * The probabilities of the successor states of each action and state
+	 */
+	protected double [][][] nextProbs;
+
+	/**
+	 * Whether each transition of each action and state is to a terminal state, in which case it contributes no future value
+	 */
+	protected boolean [][][] nextTerminal;
+
+	/**
+	 * The expected reward of each action and state
+	 */
+	protected double [][] rewards;
+
+	/**
+	 * The probability of each observation in each state after each action, indexed by action, observation and state
+	 */
+	protected double [][][] observationProbs;
+
+	/**
+	 * The belief points, indexed by state identifier
+	 */
+	protected List<double[]> beliefPoints = new ArrayList<double[]>();
+
+	/**
+	 * The alpha vectors of the value function
+	 */
+	protected List<AlphaVector> alphaVectors = new ArrayList<AlphaVector>();
+
+
+	/**
+	 * Initializes.
+	 * @param domain the POMDP domain, which must provide a {@link StateEnumerator} and a {@link DiscreteObservationFunction}, and whose model must be a {@link FullModel}
+	 * @param discount the discount factor, which must be less than 1
+	 * @param numBeliefPoints the number of belief points collected when planning from a belief without belief points
+	 * @param maxIterations the maximum number of backup iterations
+	 * @param maxDelta when the maximum change in the value of a belief point in an iteration is no greater than this value, planning terminates
+	 */
+	public PointBasedValueIteration(PODomain domain, double discount, int numBeliefPoints, int maxIterations, double maxDelta) {
+		if(discount >= 1.){
+			throw new RuntimeException("PointBasedValueIteration requires a discount factor less than 1; received " + discount);
+		}
+		this.solverInit(domain, discount, new ReflectiveHashableStateFactory());
+		this.numBeliefPoints = numBeliefPoints;
+		this.maxIterations = maxIterations;
+		this.maxDelta = maxDelta;
+	}
+
+	public int getNumBeliefPoints() {
+		return numBeliefPoints;
+	}
+
+	public void setNumBeliefPoints(int numBeliefPoints) {
+		this.numBeliefPoints = numBeliefPoints;
+	}
+
+	public int getMaxWalkLength() {
+		return maxWalkLength;
+	}
+
+	/**
+	 * Sets the maximum number of steps of a belief collection random walk before it restarts from the initial belief. The default is 20.
+	 * @param maxWalkLength the maximum number of steps of a belief collection random walk
+	 */
+	public void setMaxWalkLength(int maxWalkLength) {
+		this.maxWalkLength = maxWalkLength;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public double getMaxDelta() {
+		return maxDelta;
+	}
+
+	public void setMaxDelta(double maxDelta) {
+		this.maxDelta = maxDelta;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the number of threads across which the backups of the belief points in an iteration are split. The default is 1.
+	 * @param numThreads the number of threads
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Returns the alpha vectors of the value function.
+	 * @return the alpha vectors of the value function
+	 */
+	public List<AlphaVector> getAlphaVectors() {
+		return alphaVectors;
+	}
+
+	/**
+	 * Returns the belief points, as belief arrays indexed by state identifier.
+	 * @return the belief points
+	 */
+	public List<double[]> getBeliefPoints() {
+		return beliefPoints;
+	}
+
+
+	/**
+	 * Adds a belief point.
+	 * @param b the belief point
+	 */
+	public void addBeliefPoint(TabularBeliefState b){
+		this.compileModel();
+		this.beliefPoints.add(this.beliefArray(b));
+	}
+
+
+	/**
+	 * Collects belief points with random walks from an initial belief, in which actions are selected uniformly randomly and the
+	 * state, successor state and observation are sampled from the model. A walk restarts from the initial belief after
+	 * {@link #getMaxWalkLength()} steps or a transition to a terminal state. Beliefs already in the set of belief points are not added again.
+	 * @param initialBelief the initial belief
+	 * @param numPoints the number of belief points to add
+	 */
+	public void collectBeliefPoints(TabularBeliefState initialBelief, int numPoints){
+
+		this.compileModel();
+		Random rand = RandomFactory.getMapped(0);
+
+		double [] initial = this.beliefArray(initialBelief);
+		if(!this.containsBeliefPoint(initial)){
+			this.beliefPoints.add(initial);
+			numPoints--;
+		}
+
+		double [] b = initial;
+		int steps = 0;
+		int attempts = 0;
+		int maxAttempts = 100 * Math.max(1, numPoints) * Math.max(1, this.maxWalkLength);
+		while(numPoints > 0 && attempts < maxAttempts){
+			attempts++;
+			if(steps >= this.maxWalkLength){
+				b = initial;
+				steps = 0;
+			}
+
+			int a = rand.nextInt(this.actions.size());
+			int s = sample(b, rand.nextDouble());
+			double [] probs = this.nextProbs[a][s];
+			int k = sample(probs, rand.nextDouble());
+			if(k == -1 || this.nextTerminal[a][s][k]){
+				b = initial;
+				steps = 0;
+				continue;
+			}
+			int sp = this.nextStates[a][s][k];
+			double [] ocolumn = new double[this.observations.size()];
+			for(int o = 0; o < ocolumn.length; o++){
+				ocolumn[o] = this.observationProbs[a][o][sp];
+			}
+			int o = sample(ocolumn, rand.nextDouble());
+			double [] next = this.successorMass(b, a, o);
+			double norm = 0.;
+			for(double m : next){
+				norm += m;
+			}
+			if(o == -1 || norm <= 0.){
+				b = initial;
+				steps = 0;
+				continue;
+			}
+			for(int i = 0; i < next.length; i++){
+				next[i] /= norm;
+			}
+
+			b = next;
+			steps++;
+			if(!this.containsBeliefPoint(b)){
+				this.beliefPoints.add(b);
+				numPoints--;
+			}
+		}
+
+	}
+
+
+	/**
+	 * Collects belief points from the initial belief, if there are none, and runs point-based backups until the maximum change in the value of a belief
+	 * point is no greater than {@link #getMaxDelta()} or {@link #getMaxIterations()} iterations are performed.
+	 * @param initialState the initial belief, which must be a {@link TabularBeliefState}
+	 * @return a {@link GreedyQPolicy} over the one step lookahead Q-values of the value function
+	 */
+	@Override
+	public GreedyQPolicy planFromState(State initialState) {
+
+		if(!(initialState instanceof TabularBeliefState)){
+			throw new RuntimeException("PointBasedValueIteration requires a TabularBeliefState initial belief; received a " + initialState.getClass().getName());
+		}
+
+		this.compileModel();
+		if(this.beliefPoints.isEmpty()){
+			this.collectBeliefPoints((TabularBeliefState)initialState, this.numBeliefPoints);
+		}
+		if(this.alphaVectors.isEmpty()){
+			this.alphaVectors.add(this.lowerBoundAlphaVector());
+		}
+
+		ForkJoinPool pool = this.numThreads > 1 ? new ForkJoinPool(this.numThreads) : null;
+		try{
+			for(int i = 0; i < this.maxIterations; i++){
+				double delta = this.runIteration(pool);
+				DPrint.cl(this.debugCode, "Finished PBVI iteration " + i + " with " + this.alphaVectors.size() + " alpha vectors; max belief value change: " + delta);
+				if(delta <= this.maxDelta){
+					break;
+				}
+			}
+		} finally{
+			if(pool != null){
+				pool.shutdown();
+			}
+		}
+
+		return new GreedyQPolicy(this);
+	}
+
+
+	/**
+	 * Backs up every belief point with the current alpha vectors and replaces them with the distinct resulting alpha vectors.
+	 * @param pool the pool across which the backups are split; null to back up sequentially
+	 * @return the maximum change in the value of a belief point
+	 */
+	public double runIteration(ForkJoinPool pool){
+
+		final List<AlphaVector> current = this.alphaVectors;
+		final AlphaVector [] backups = new AlphaVector[this.beliefPoints.size()];
+		if(pool == null){
+			for(int i = 0; i < backups.length; i++){
+				backups[i] = this.backup(this.beliefPoints.get(i), current);
+			}
+		}
+		else{
+			int numShards = Math.min(this.numThreads, backups.length);
+			final int shardSize = (backups.length + numShards - 1) / numShards;
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numShards);
+			for(int t = 0; t < numShards; t++){
+				final int start = t*shardSize;
+				tasks.add(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						for(int i = start; i < Math.min(backups.length, start+shardSize); i++){
+							backups[i] = backup(beliefPoints.get(i), current);
+						}
+						return null;
+					}
+				});
+			}
+			try{
+				for(Future<Object> result : pool.invokeAll(tasks)){
+					result.get();
+				}
+			} catch(InterruptedException e){
+				throw new RuntimeException(e);
+			} catch(ExecutionException e){
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		List<AlphaVector> next = new ArrayList<AlphaVector>(backups.length);
+		double delta = 0.;
+		for(int i = 0; i < backups.length; i++){
+			double [] b = this.beliefPoints.get(i);
+			delta = Math.max(delta, Math.abs(backups[i].dot(b) - value(current, b)));
+			boolean duplicate = false;
+			for(AlphaVector alpha : next){
+				if(alpha.action == backups[i].action && Arrays.equals(alpha.values, backups[i].values)){
+					duplicate = true;
+					break;
+				}
+			}
+			if(!duplicate){
+				next.add(backups[i]);
+			}
+		}
+		this.alphaVectors = next;
+
+		return delta;
+	}
+
+
+	/**
+	 * Returns the point-based backup of a belief: the alpha vector of the action whose one step lookahead value of the belief is largest,
+	 * where the successor beliefs of each observation are valued by their best alpha vector.
+	 * @param b the belief
+	 * @param alphas the alpha vectors of the value function
+	 * @return the backed up alpha vector
+	 */
+	protected AlphaVector backup(double [] b, List<AlphaVector> alphas){
+
+		AlphaVector best = null;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for(int a = 0; a < this.actions.size(); a++){
+			double [] values = this.rewards[a].clone();
+			for(int o = 0; o < this.observations.size(); o++){
+				double [] mass = this.successorMass(b, a, o);
+				AlphaVector alpha = this.bestAlphaVector(alphas, mass);
+				if(alpha == null){
+					continue;
+				}
+				//gamma sum_s' T(s, a, s') O(o | s', a) alpha(s') for every s
+				double [] oprobs = this.observationProbs[a][o];
+				for(int s = 0; s < this.numStates; s++){
+					int [] ns = this.nextStates[a][s];
+					double [] ps = this.nextProbs[a][s];
+					boolean [] terminal = this.nextTerminal[a][s];
+					double sum = 0.;
+					for(int k = 0; k < ns.length; k++){
+						if(!terminal[k]){
+							sum += ps[k] * oprobs[ns[k]] * alpha.values[ns[k]];
+						}
+					}
+					values[s] += this.gamma * sum;
+				}
+			}
+			AlphaVector candidate = new AlphaVector(values, this.actions.get(a));
+			double v = candidate.dot(b);
+			if(v > bestValue){
+				bestValue = v;
+				best = candidate;
+			}
+		}
+
+		return best;
+	}
+
+
+	@Override
+	public List<QValue> qValues(State s) {
+		double [] b = this.beliefArray(this.tabularBelief(s));
+		List<QValue> qs = new ArrayList<QValue>(this.actions.size());
+		for(int a = 0; a < this.actions.size(); a++){
+			qs.add(new QValue(s, this.actions.get(a), this.lookahead(b, a)));
+		}
+		return qs;
+	}
+
+	@Override
+	public double qValue(State s, Action a) {
+		double [] b = this.beliefArray(this.tabularBelief(s));
+		int ind = this.actions.indexOf(a);
+		if(ind == -1){
+			throw new RuntimeException("PointBasedValueIteration has no action " + a);
+		}
+		return this.lookahead(b, ind);
+	}
+
+	/**
+	 * Returns the value of a belief, which is its maximum dot product with an alpha vector.
+	 * @param s the belief, which must be a {@link TabularBeliefState}
+	 * @return the value of the belief
+	 */
+	@Override
+	public double value(State s) {
+		return value(this.alphaVectors, this.beliefArray(this.tabularBelief(s)));
+	}
+
+	@Override
+	public void resetSolver() {
+		this.beliefPoints.clear();
+		this.alphaVectors.clear();
+		this.compiled = false;
+	}
+
+
+	/**
+	 * Returns the one step lookahead value of a belief and action.
+	 * @param b the belief
+	 * @param a the action index
+	 * @return the one step lookahead value
+	 */
+	protected double lookahead(double [] b, int a){
+		double q = 0.;
+		for(int s = 0; s < this.numStates; s++){
+			q += b[s] * this.rewards[a][s];
+		}
+		for(int o = 0; o < this.observations.size(); o++){
+			double [] mass = this.successorMass(b, a, o);
+			AlphaVector alpha = this.bestAlphaVector(this.alphaVectors, mass);
+			if(alpha != null){
+				q += this.gamma * alpha.dot(mass);
+			}
+		}
+		return q;
+	}
+
+
+	/**
+	 * Returns the unnormalized successor belief of a belief, action and observation, sum_s b(s) T(s, a, s') O(o | s', a), excluding
+	 * transitions to terminal states.
+	 * @param b the belief
+	 * @param a the action index
+	 * @param o the observation index
+	 * @return the unnormalized successor belief
+	 */
+	protected double [] successorMass(double [] b, int a, int o){
+		double [] mass = new double[this.numStates];
+		for(int s = 0; s < this.numStates; s++){
+			if(b[s] == 0.){
+				continue;
+			}
+			int [] ns = this.nextStates[a][s];
+			double [] ps = this.nextProbs[a][s];
+			boolean [] terminal = this.nextTerminal[a][s];
+			for(int k = 0; k < ns.length; k++){
+				if(!terminal[k]){
+					mass[ns[k]] += b[s] * ps[k];
+				}
+			}
+		}
+		double [] oprobs = this.observationProbs[a][o];
+		for(int s = 0; s < this.numStates; s++){
+			mass[s] *= oprobs[s];
+		}
+		return mass;
+	}
+
+
+	/**
+	 * Returns the alpha vector with the largest dot product with a vector.
+	 * @param alphas the alpha vectors
+	 * @param v the vector
+	 * @return the alpha vector with the largest dot product; null if the vector is all zero
+	 */
+	protected AlphaVector bestAlphaVector(List<AlphaVector> alphas, double [] v){
+		boolean zero = true;
+		for(double m : v){
+			if(m != 0.){
+				zero = false;
+				break;
+			}
+		}
+		if(zero){
+			return null;
+		}
+		AlphaVector best = null;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for(AlphaVector alpha : alphas){
+			double val = alpha.dot(v);
+			if(val > bestValue){
+				bestValue = val;
+				best = alpha;
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	 * Returns the maximum dot product of a belief with an alpha vector.
+	 * @param alphas the alpha vectors
+	 * @param b the belief
+	 * @return the maximum dot product of the belief with an alpha vector
+	 */
+	protected static double value(List<AlphaVector> alphas, double [] b){
+		double v = Double.NEGATIVE_INFINITY;
+		for(AlphaVector alpha : alphas){
+			v = Math.max(v, alpha.dot(b));
+		}
+		return v;
+	}
+
+
+	/**
+	 * Returns the alpha vector whose value is a lower bound on the value of any belief: the minimum expected reward of any action and state,
+	 * received forever, in every state. Requires a discount factor less than 1.
+	 * @return the lower bound alpha vector
+	 */
+	protected AlphaVector lowerBoundAlphaVector(){
+		if(this.gamma >= 1.){
+			throw new RuntimeException("PointBasedValueIteration requires a discount factor less than 1; the discount factor is " + this.gamma);
+		}
+		double minR = Double.POSITIVE_INFINITY;
+		for(double [] ra : this.rewards){
+			for(double r : ra){
+				minR = Math.min(minR, r);
+			}
+		}
+		double [] values = new double[this.numStates];
+		Arrays.fill(values, minR / (1. - this.gamma));
+		return new AlphaVector(values, this.actions.get(0));
+	}
+
+
+	/**
+	 * Compiles the transitions, expected rewards and observation probabilities of the enumerated states into arrays,
+	 * if they have not been compiled yet.
+	 */
+	protected void compileModel(){
+
+		if(this.compiled){
+			return;
+		}
+
+		PODomain podomain = (PODomain)this.domain;
+		if(!podomain.providesStateEnumerator()){
+			throw new RuntimeException("PointBasedValueIteration requires a PODomain that provides a StateEnumerator.");
+		}
+		ObservationFunction of = podomain.getObservationFunction();
+		if(!(of instanceof DiscreteObservationFunction)){
+			throw new RuntimeException("PointBasedValueIteration requires a DiscreteObservationFunction.");
+		}
+		StateEnumerator senum = podomain.getStateEnumerator();
+		FullModel fmodel = (FullModel)this.model;
+
+		this.actions = this.applicableActions(senum.getStateForEnumerationId(0));
+		this.observations = ((DiscreteObservationFunction)of).allObservations();
+
+		//transitions of each state, which may enumerate new states
+		List<List<List<TransitionProb>>> transitions = new ArrayList<List<List<TransitionProb>>>(this.actions.size());
+		for(int a = 0; a < this.actions.size(); a++){
+			transitions.add(new ArrayList<List<TransitionProb>>());
+		}
+		for(int s = 0; s < senum.numStatesEnumerated(); s++){
+			State state = senum.getStateForEnumerationId(s);
+			for(int a = 0; a < this.actions.size(); a++){
+				List<TransitionProb> tps = fmodel.transitions(state, this.actions.get(a));
+				for(TransitionProb tp : tps){
+					senum.getEnumeratedID(tp.eo.op);
+				}
+				transitions.get(a).add(tps);
+			}
+		}
+
+		this.numStates = senum.numStatesEnumerated();
+		this.nextStates = new int[this.actions.size()][this.numStates][];
+		this.nextProbs = new double[this.actions.size()][this.numStates][];
+		this.nextTerminal = new boolean[this.actions.size()][this.numStates][];
+		this.rewards = new double[this.actions.size()][this.numStates];
+		this.observationProbs = new double[this.actions.size()][this.observations.size()][this.numStates];
+		for(int a = 0; a < this.actions.size(); a++){
+			Action action = this.actions.get(a);
+			for(int s = 0; s < this.numStates; s++){
+				List<TransitionProb> tps = transitions.get(a).get(s);
+				this.nextStates[a][s] = new int[tps.size()];
+				this.nextProbs[a][s] = new double[tps.size()];
+				this.nextTerminal[a][s] = new boolean[tps.size()];
+				for(int k = 0; k < tps.size(); k++){
+					TransitionProb tp = tps.get(k);
+					this.nextStates[a][s][k] = senum.getEnumeratedID(tp.eo.op);
+					this.nextProbs[a][s][k] = tp.p;
+					this.nextTerminal[a][s][k] = tp.eo.terminated;
+					this.rewards[a][s] += tp.p * tp.eo.r;
+				}
+			}
+			for(int o = 0; o < this.observations.size(); o++){
+				State observation = this.observations.get(o);
+				for(int s = 0; s < this.numStates; s++){
+					this.observationProbs[a][o][s] = of.probability(observation, senum.getStateForEnumerationId(s), action);
+				}
+			}
+		}
+
+		this.compiled = true;
+	}
+
+
+	protected TabularBeliefState tabularBelief(State s){
+		if(!(s instanceof TabularBeliefState)){
+			throw new RuntimeException("PointBasedValueIteration requires TabularBeliefState beliefs; received a " + s.getClass().getName());
+		}
+		this.compileModel();
+		return (TabularBeliefState)s;
+	}
+
+
+	/**
+	 * Returns the belief array of a belief with the number of compiled states.
+	 * @param b the belief
+	 * @return the belief array
+	 */
+	protected double [] beliefArray(TabularBeliefState b){
+		double [] src = b.getBeliefArray();
+		if(src.length > this.numStates){
+			throw new RuntimeException("The belief has mass on states that were not enumerated when the POMDP model was compiled.");
+		}
+		return Arrays.copyOf(src, this.numStates);
+	}
+
+
+	protected boolean containsBeliefPoint(double [] b){
+		for(double [] p : this.beliefPoints){
+			if(Arrays.equals(p, b)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Samples an index of a non-negative weight vector in proportion to its weight.
+	 * @param weights the weights
+	 * @param u a uniform random value in [0, 1)
+	 * @return the sampled index; -1 if all weights are zero
+	 */
+	protected static int sample(double [] weights, double u){
+		double total = 0.;
+		for(double w : weights){
+			total += w;
+		}
+		double target = u * total;
+		double sum = 0.;
+		int last = -1;
+		for(int i = 0; i < weights.length; i++){
+			if(weights[i] != 0.){
+				sum += weights[i];
+				last = i;
+				if(target < sum){
+					return i;
+				}
+			}
+		}
+		return last;
+	}
+
+
+	/**
+	 * An alpha vector: the values of each state under a conditional plan that starts with an action.
+	 */
+	public static class AlphaVector{
+
+		/**
+		 * The value of each state, indexed by state identifier
+		 */
+		public double [] values;
+
+		/**
+		 * The first action of the plan
+		 */
+		public Action action;
+
+		public AlphaVector(double [] values, Action action) {
+			this.values = values;
+			this.action = action;
+		}
+
+		/**
+		 * Returns the dot product of this alpha vector with a vector over the states.
+		 * @param b the vector over the states
+		 * @return the dot product
+		 */
+		public double dot(double [] b){
+			double v = 0.;
+			for(int i = 0; i < this.values.length; i++){
+				v += this.values[i] * b[i];
+			}
+			return v;
+		}
+
+	}
+
+}
@@ -15,10 +15,14 @@ import burlap.mdp.singleagent.model.RewardFunction;
 import burlap.mdp.singleagent.pomdp.PODomain;
 import burlap.mdp.singleagent.pomdp.beliefstate.BeliefState;
 import burlap.mdp.singleagent.pomdp.beliefstate.EnumerableBeliefState;
+import burlap.mdp.singleagent.pomdp.beliefstate.TabularBeliefState;
 import burlap.statehashing.HashableStateFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -26,6 +30,11 @@ import java.util.List;
  * as though it would obtain perfect knowledge of the state in the next time step. It works by solving the underling
  * fully observable MDP, and then setting the Q-value for belief states to be the expected fully observable Q-value. Therefore,
  * planning is only as hard as MDP planning. This implementation can take different sources for the MDP QFunction.
+ * <p>
+ * For {@link TabularBeliefState} beliefs, the MDP Q-values of each action are cached in an array indexed by the
+ * {@link StateEnumerator} identifiers of the states, so the Q-value of a belief is a dot product with its belief array. The cache is
+ * cleared by {@link #forceMDPPlanningFromAllStates()}, {@link #planFromState(State)} and {@link #resetSolver()}; if the MDP
+ * {@link QProvider} source is changed in any other way, call {@link #clearQCache()}.
  */
 public class QMDP extends MDPSolver implements Planner, QProvider {
 
@@ -34,6 +43,11 @@ public class QMDP extends MDPSolver implements Planner, QProvider {
 	 */
 	protected QProvider mdpQSource;
 
+	/**
+	 * The cached MDP Q-values of each action, indexed by state identifier; NaN for states not yet cached
+	 */
+	protected Map<Action, double[]> qCache = new HashMap<Action, double[]>();
+
 
 
 	/**
@@ -88,6 +102,15 @@ public class QMDP extends MDPSolver implements Planner, QProvider {
 			State s = senum.getStateForEnumerationId(i);
 			planner.planFromState(s);
 		}
+		this.clearQCache();
+	}
+
+
+	/**
+	 * Clears the cached MDP Q-values used for {@link TabularBeliefState} beliefs.
+	 */
+	public void clearQCache(){
+		this.qCache.clear();
 	}
 	
 	@Override
@@ -103,6 +126,13 @@ public class QMDP extends MDPSolver implements Planner, QProvider {
 		List<Action> gas = this.applicableActions(bs.sample());
 		List<QValue> result = new ArrayList<QValue>(gas.size());
 
+		if(bs instanceof TabularBeliefState){
+			for(Action ga : gas){
+				result.add(new QValue(s, ga, this.qForTabularBelief((TabularBeliefState)bs, ga)));
+			}
+			return result;
+		}
+
 		List<EnumerableBeliefState.StateBelief> beliefs = ((EnumerableBeliefState)bs).nonZeroBeliefs();
 
 		for(Action ga : gas){
@@ -138,6 +168,10 @@ public class QMDP extends MDPSolver implements Planner, QProvider {
 	 * @return the expected Q-value of the underlying hidden MDP by marginalizing over of the states in the belief state.
 	 */
 	public double qForBelief(EnumerableBeliefState bs, Action ga){
+
+		if(bs instanceof TabularBeliefState){
+			return this.qForTabularBelief((TabularBeliefState)bs, ga);
+		}
 		
 		List<EnumerableBeliefState.StateBelief> beliefs = bs.nonZeroBeliefs();
 		return this.qForBeliefList(beliefs, ga);
@@ -159,6 +193,34 @@ public class QMDP extends MDPSolver implements Planner, QProvider {
 		return q;
 	}
 
+	/**
+	 * Computes the expected Q-value of the underlying hidden MDP for a {@link TabularBeliefState} from its belief array and the cached
+	 * MDP Q-values of the action.
+	 * @param bs the belief state
+	 * @param ga the action whose Q-value is to be computed
+	 * @return the expected Q-value of the underlying hidden MDP by marginalizing over of the states in the belief state.
+	 */
+	protected double qForTabularBelief(TabularBeliefState bs, Action ga){
+		double [] b = bs.getBeliefArray();
+		double [] qs = this.qCache.get(ga);
+		if(qs == null || qs.length < b.length){
+			int cached = qs == null ? 0 : qs.length;
+			qs = qs == null ? new double[b.length] : Arrays.copyOf(qs, b.length);
+			Arrays.fill(qs, cached, qs.length, Double.NaN);
+			this.qCache.put(ga, qs);
+		}
+		double q = 0.;
+		for(int i = 0; i < b.length; i++){
+			if(b[i] != 0.){
+				if(Double.isNaN(qs[i])){
+					qs[i] = this.mdpQSource.qValue(bs.stateForId(i), ga);
+				}
+				q += b[i] * qs[i];
+			}
+		}
+		return q;
+	}
+
 	@Override
 	public Policy planFromState(State initialState) {
 		this.forceMDPPlanningFromAllStates();
@@ -168,6 +230,7 @@ public class QMDP extends MDPSolver implements Planner, QProvider {
 	@Override
 	public void resetSolver() {
 		((Planner)this.mdpQSource).resetSolver();
+		this.clearQCache();
 	}
 
 
@@ -6,7 +6,8 @@ import burlap.behavior.stochasticgames.PolicyFromJointPolicy;
 import burlap.behavior.stochasticgames.madynamicprogramming.*;
 import burlap.behavior.stochasticgames.madynamicprogramming.AgentQSourceMap.HashMapAgentQSourceMap;
 import burlap.behavior.stochasticgames.madynamicprogramming.AgentQSourceMap.MAQLControlledQSourceMap;
-import burlap.behavior.stochasticgames.madynamicprogramming.QSourceForSingleAgent.HashBackedQSource;
+import burlap.behavior.stochasticgames.madynamicprogramming.JointActionQSource.JointQValues;
+import burlap.behavior.stochasticgames.madynamicprogramming.QSourceForSingleAgent.ArrayBackedQSource;
 import burlap.behavior.stochasticgames.madynamicprogramming.policies.EGreedyMaxWellfare;
 import burlap.behavior.valuefunction.ConstantValueFunction;
 import burlap.behavior.valuefunction.QFunction;
@@ -14,6 +15,7 @@ import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
 import burlap.mdp.stochasticgames.SGDomain;
 import burlap.mdp.stochasticgames.JointAction;
+import burlap.mdp.stochasticgames.JointActionIndexer;
 import burlap.mdp.stochasticgames.agent.SGAgent;
 import burlap.mdp.stochasticgames.agent.SGAgentBase;
 import burlap.mdp.stochasticgames.agent.SGAgentType;
@@ -46,6 +48,12 @@ import java.util.Map;
  * The learning policy and its underlining joint policy will automatically be told that this agent is its target agent, the agent definitions
  * in the world, and that this agent is the Q-source provider of the joint policy {@link MAQSourcePolicy}. If the set joint policy
  * is not an instance of {@link MAQSourcePolicy}, then an exception will be thrown.
+ * <p>
+ * By default, Q-values are stored in {@link ArrayBackedQSource} objects, whose joint actions of a state are those that the
+ * {@link JointActionIndexer} of the world's agent definitions enumerates for it. Unlike the {@link QSourceForSingleAgent.HashBackedQSource}
+ * objects used previously, which added any observed joint action lazily, observing a joint action that is not enumerated for the state
+ * throws a {@link RuntimeException}. Subclasses can keep the previous behavior by assigning {@link QSourceForSingleAgent.HashBackedQSource}
+ * objects to {@link #myQSource} and the {@link #qSourceMap}.
  * 
  * <p>
  * Acknowledgements: Esha Gosh, John Meehan, Michalis Michaelidis for code on which this was based.
@@ -114,9 +122,21 @@ public class MultiAgentQLearning extends SGAgentBase implements MultiAgentQSourc
 	protected double									nextQValue = 0.;
 	
 	/**
-	 * Which Q-value object needs to be updated
+	 * Which Q-value object needs to be updated, when this agent's Q-value source is not an {@link ArrayBackedQSource}. If the source is a
+	 * {@link MutableQSource}, the Q-value is set with {@link MutableQSource#setQValue(State, JointAction, double)}; otherwise the q field of
+	 * this object is modified, which requires the source to return its stored objects.
 	 */
 	protected JAQValue									qToUpdate = null;
+
+	/**
+	 * The stored joint action Q-values that need to be updated, when this agent's Q-value source is an {@link ArrayBackedQSource}
+	 */
+	protected double []									qRowToUpdate = null;
+
+	/**
+	 * The joint action id of the Q-value in {@link #qRowToUpdate} that needs to be updated
+	 */
+	protected int										qIndexToUpdate = -1;
 	
 	/**
 	 * The total number of learning steps performed by this agent.
@@ -124,11 +144,16 @@ public class MultiAgentQLearning extends SGAgentBase implements MultiAgentQSourc
 	protected int													totalNumberOfSteps = 0;
 
 	protected int agentNum;
+
+	/**
+	 * The joint action indexer of the agents in the world, used to index this agent's Q-values when its source is an {@link ArrayBackedQSource}
+	 */
+	protected JointActionIndexer indexer;
 	
 	
 	
 	/**
-	 * Initializes this Q-learning agent. This agent's Q-source will use a {@link HashBackedQSource} q-source and the learning policy is defaulted
+	 * Initializes this Q-learning agent. This agent's Q-source will use an {@link ArrayBackedQSource} q-source and the learning policy is defaulted
 	 * to an epsilon = 0.1 maximum wellfare ({@link EGreedyMaxWellfare}) derived policy. If queryOtherAgentsForTheirQValues is set to true, then this agent will
 	 * only store its own Q-values and will use the other agent's stored Q-values to determine theirs.
 	 * @param d the domain in which to perform learing
@@ -150,14 +175,14 @@ public class MultiAgentQLearning extends SGAgentBase implements MultiAgentQSourc
 		this.backupOperator = backupOperator;
 		this.queryOtherAgentsQSource = queryOtherAgentsForTheirQValues;
 		
-		this.myQSource = new QSourceForSingleAgent.HashBackedQSource(this.hashingFactory, this.qInit);
+		this.myQSource = new QSourceForSingleAgent.ArrayBackedQSource(this.hashingFactory, this.qInit);
 		
 		this.learningPolicy = new PolicyFromJointPolicy(new EGreedyMaxWellfare(this, 0.1));
 	}
 	
 	
 	/**
-	 * Initializes this Q-learning agent. This agent's Q-source will use a {@link HashBackedQSource} q-source and the learning policy is defaulted
+	 * Initializes this Q-learning agent. This agent's Q-source will use an {@link ArrayBackedQSource} q-source and the learning policy is defaulted
 	 * to an epsilon = 0.1 maximum wellfare ({@link EGreedyMaxWellfare}) derived policy. If queryOtherAgentsForTheirQValues is set to true, then this agent will
 	 * only store its own Q-values and will use the other agent's stored Q-values to determine theirs.
 	 * @param d the domain in which to perform learing
@@ -179,7 +204,7 @@ public class MultiAgentQLearning extends SGAgentBase implements MultiAgentQSourc
 		this.backupOperator = backupOperator;
 		this.queryOtherAgentsQSource = queryOtherAgentsForTheirQValues;
 		
-		this.myQSource = new QSourceForSingleAgent.HashBackedQSource(this.hashingFactory, this.qInit);
+		this.myQSource = new QSourceForSingleAgent.ArrayBackedQSource(this.hashingFactory, this.qInit);
 		
 		this.learningPolicy = new PolicyFromJointPolicy(new EGreedyMaxWellfare(this, 0.1));
 	}
@@ -216,6 +241,12 @@ public class MultiAgentQLearning extends SGAgentBase implements MultiAgentQSourc
 		this.agentNum = agentNum;
 		this.world = w;
 		this.learningPolicy.setActingAgent(agentNum);
+		if(this.indexer == null || !this.indexer.indexes(w.getAgentDefinitions())){
+			this.indexer = new JointActionIndexer(w.getAgentDefinitions());
+		}
+		if(this.myQSource instanceof ArrayBackedQSource && ((ArrayBackedQSource)this.myQSource).getIndexer() == null){
+			((ArrayBackedQSource)this.myQSource).setIndexer(this.indexer);
+		}
 		if(this.qSourceMap == null){
 			if(this.queryOtherAgentsQSource){
 				this.qSourceMap = new MAQLControlledQSourceMap(this.world.getRegisteredAgents());
@@ -225,7 +256,7 @@ public class MultiAgentQLearning extends SGAgentBase implements MultiAgentQSourc
 				int aId = 0;
 				for(SGAgent a : w.getRegisteredAgents()){
 					if(a != this){
-						qSourceMapping.put(aId, new QSourceForSingleAgent.HashBackedQSource(this.hashingFactory, this.qInit));
+						qSourceMapping.put(aId, new QSourceForSingleAgent.ArrayBackedQSource(this.hashingFactory, this.qInit, this.indexer));
 					}
 					else{
 						qSourceMapping.put(aId, this.myQSource);
@@ -262,14 +293,28 @@ public class MultiAgentQLearning extends SGAgentBase implements MultiAgentQSourc
 		}
 		
 		this.needsToUpdateQValue = true;
-		this.qToUpdate = this.getMyQSource().getQValueFor(s, jointAction);
+		double curQ;
+		if(this.myQSource instanceof ArrayBackedQSource){
+			JointQValues qs = ((ArrayBackedQSource)this.myQSource).jointActionQValues(s, this.indexer);
+			int id = qs.space.jointActionId(jointAction);
+			if(id == -1){
+				throw new RuntimeException("Joint action " + jointAction + " is not applicable in the observed state.");
+			}
+			this.qRowToUpdate = qs.q;
+			this.qIndexToUpdate = id;
+			curQ = qs.q[id];
+		}
+		else{
+			this.qToUpdate = this.myQSource.getQValueFor(s, jointAction);
+			curQ = this.qToUpdate.q;
+		}
 		
 		double backUpValue = 0.;
 		if(!isTerminal){
 			backUpValue = this.backupOperator.performBackup(sprime, this.agentNum, this.world.getAgentDefinitions(), this.qSourceMap);
 		}
 		
-		this.nextQValue = qToUpdate.q + this.learningRate.pollLearningRate(this.totalNumberOfSteps, s, jointAction) * (r + (this.discount * backUpValue) - this.qToUpdate.q);
+		this.nextQValue = curQ + this.learningRate.pollLearningRate(this.totalNumberOfSteps, s, jointAction) * (r + (this.discount * backUpValue) - curQ);
 		
 		this.totalNumberOfSteps++;
 
@@ -287,8 +332,20 @@ public class MultiAgentQLearning extends SGAgentBase implements MultiAgentQSourc
 	 */
 	protected void updateLatestQValue(){
 		if(needsToUpdateQValue){
-			this.qToUpdate.q = nextQValue;
-			this.qToUpdate = null;
+			if(this.qRowToUpdate != null){
+				this.qRowToUpdate[this.qIndexToUpdate] = nextQValue;
+				this.qRowToUpdate = null;
+				this.qIndexToUpdate = -1;
+			}
+			else{
+				if(this.myQSource instanceof MutableQSource){
+					((MutableQSource)this.myQSource).setQValue(this.qToUpdate.s, this.qToUpdate.ja, nextQValue);
+				}
+				else{
+					this.qToUpdate.q = nextQValue;
+				}
+				this.qToUpdate = null;
+			}
 			this.needsToUpdateQValue = false;
 		}
 	}
@@ -21,10 +21,16 @@ import burlap.mdp.stochasticgames.world.World;
 import burlap.statehashing.HashableState;
 import burlap.statehashing.HashableStateFactory;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A Tabular Q-learning [1] algorithm for stochastic games formalisms. This algorithm ignores the actions of other agents and treats the outcomes
@@ -38,16 +44,23 @@ import java.util.Map;
 public class SGNaiveQLAgent extends SGAgentBase implements QProvider {
 
 	/**
-	 * The tabular map from (hashed) states to the list of Q-values for each action in those states
+	 * The tabular map from (hashed) states to the actions and Q-values of those states
 	 */	
+	protected Map<HashableState, StateQTable>							qTable;
+
+	/**
+	 * A read-only view of {@link #qTable} from (hashed) states to the list of stored Q-values for each action in those states. The
+	 * {@link QValue} objects in the lists are the stored Q-values, so modifying their q fields modifies the stored Q-values.
+	 * @deprecated the Q-values are stored in {@link #qTable}; use {@link #stateQTable(State)} or {@link #storedQ(State, Action)} instead.
+	 */
+	@Deprecated
 	protected Map<HashableState, List<QValue>>							qMap;
-	
+
 	/**
-	 * A map from hashed states to the internal state representation for the states stored in the q-table. 
-	 * This is useful since two identical states may have different object instance name identifiers
-	 * that can affect the parameters in GroundedActions.
-	 * 
+	 * A read-only view of {@link #qTable} from hashed states to the internal state representation for the states stored in the q-table.
+	 * @deprecated the state representations are stored in {@link #qTable}; use {@link #stateQTable(State)} instead.
 	 */
+	@Deprecated
 	protected Map <HashableState, State>								stateRepresentations;
 	
 	/**
@@ -103,8 +116,7 @@ public class SGNaiveQLAgent extends SGAgentBase implements QProvider {
 		this.hashFactory = hashFactory;
 		this.qInit = new ConstantValueFunction(0.);
 		
-		this.qMap = new HashMap<HashableState, List<QValue>>();
-		stateRepresentations = new HashMap<HashableState, State>();
+		this.initQTable();
 		this.policy = new EpsilonGreedy(this, 0.1);
 		
 		this.storedMapAbstraction = new ShallowIdentityStateMapping();
@@ -126,8 +138,7 @@ public class SGNaiveQLAgent extends SGAgentBase implements QProvider {
 		this.hashFactory = hashFactory;
 		this.qInit = new ConstantValueFunction(defaultQ);
 		
-		this.qMap = new HashMap<HashableState, List<QValue>>();
-		stateRepresentations = new HashMap<HashableState, State>();
+		this.initQTable();
 		this.policy = new EpsilonGreedy(this, 0.1);
 		
 		this.storedMapAbstraction = new ShallowIdentityStateMapping();
@@ -148,8 +159,7 @@ public class SGNaiveQLAgent extends SGAgentBase implements QProvider {
 		this.hashFactory = hashFactory;
 		this.qInit = qInitizalizer;
 		
-		this.qMap = new HashMap<HashableState, List<QValue>>();
-		stateRepresentations = new HashMap<HashableState, State>();
+		this.initQTable();
 		this.policy = new EpsilonGreedy(this, 0.1);
 		
 		this.storedMapAbstraction = new ShallowIdentityStateMapping();
@@ -237,10 +247,10 @@ public class SGNaiveQLAgent extends SGAgentBase implements QProvider {
 	 * @return maximum numeric Q-value for a given state
 	 */
 	protected double getMaxQValue(State s){
-		List<QValue> qs = this.qValues(s);
+		StateQTable table = this.stateQTable(s);
 		double maxQ = Double.NEGATIVE_INFINITY;
-		for(QValue q : qs){
-			maxQ = Math.max(maxQ, q.q);
+		for(int i = 0; i < table.size; i++){
+			maxQ = Math.max(maxQ, table.entries[i].q);
 		}
 		return maxQ;
 	}
@@ -257,51 +267,86 @@ public class SGNaiveQLAgent extends SGAgentBase implements QProvider {
 	}
 
 
+	/**
+	 * Creates an empty {@link #qTable} and the deprecated {@link #qMap} and {@link #stateRepresentations} views of it.
+	 */
+	@SuppressWarnings("deprecation")
+	protected void initQTable(){
+		this.qTable = new HashMap<HashableState, StateQTable>();
+		this.qMap = new QTableView<List<QValue>>() {
+			@Override
+			protected List<QValue> value(StateQTable table) {
+				return Collections.unmodifiableList(Arrays.asList(table.entries).subList(0, table.size));
+			}
+		};
+		this.stateRepresentations = new QTableView<State>() {
+			@Override
+			protected State value(StateQTable table) {
+				return table.s;
+			}
+		};
+	}
 
-	@Override
-	public List<QValue> qValues(State s) {
 
-		List<Action> gsas = ActionUtils.allApplicableActionsForTypes(this.agentType.actions, s);
-		
+	/**
+	 * Returns the Q-table entry of a state, creating it with the initial Q-values of all of this agent's applicable actions in the state
+	 * if the state has not been visited before.
+	 * @param s the state
+	 * @return the Q-table entry of the state
+	 */
+	protected StateQTable stateQTable(State s){
 		HashableState shq = this.stateHash(s);
-		
-		State storedRep = stateRepresentations.get(shq);
-		if(storedRep == null){
-			//no existing entry so we can create it
-			stateRepresentations.put(shq, shq.s());
-			List <QValue> entries = new ArrayList<QValue>();
+		StateQTable table = this.qTable.get(shq);
+		if(table == null){
+			List<Action> gsas = ActionUtils.allApplicableActionsForTypes(this.agentType.actions, s);
+			table = new StateQTable(shq.s(), gsas.size());
 			for(Action gsa : gsas){
-				QValue q = new QValue(shq.s(), gsa, this.qInit.qValue(shq.s(), gsa));
-				entries.add(q);
+				table.add(new QValue(shq.s(), gsa, this.qInit.qValue(shq.s(), gsa)));
 			}
-			qMap.put(shq, entries);
-			return entries;
-			
+			this.qTable.put(shq, table);
 		}
+		return table;
+	}
+
+
+	/**
+	 * Returns the stored Q-value of an action in the Q-table entry of a state, adding the action with its initial Q-value if it is not in the entry.
+	 * Modifying the q field of the returned object modifies the stored Q-value.
+	 * @param table the Q-table entry of the state
+	 * @param a the action
+	 * @return the stored Q-value of the action
+	 */
+	protected QValue storedQ(StateQTable table, Action a){
+		int ind = table.actionIndex(a);
+		if(ind == -1){
+			ind = table.add(new QValue(table.s, a, this.qInit.qValue(table.s, a)));
+		}
+		return table.entries[ind];
+	}
+
+
+	/**
+	 * Returns the stored Q-value of a state and action, creating it if it has not been stored before. Modifying the q field of the returned
+	 * object modifies the stored Q-value.
+	 * @param s the state
+	 * @param a the action
+	 * @return the stored Q-value of the state and action
+	 */
+	protected QValue storedQ(State s, Action a){
+		return this.storedQ(this.stateQTable(s), a);
+	}
+
+
+
+	@Override
+	public List<QValue> qValues(State s) {
+
+		List<Action> gsas = ActionUtils.allApplicableActionsForTypes(this.agentType.actions, s);
+		StateQTable table = this.stateQTable(s);
 		
-		//otherwise an entry exists and we need to do the matching
-		
-		List <QValue> entries = qMap.get(shq);
 		List <QValue> returnedEntries = new ArrayList<QValue>(gsas.size());
-		for(Action gsa :gsas){
-		;
-			//find matching action in entry list
-			boolean foundMatch = false;
-			for(QValue qe : entries){
-				if(qe.a.equals(gsa)){
-					returnedEntries.add(qe);
-					foundMatch = true;
-					break;
-				}
-			}
-			
-			if(!foundMatch){
-				QValue qe = new QValue(shq.s(), gsa, this.qInit.qValue(shq.s(), gsa));
-				entries.add(qe);
-				returnedEntries.add(qe);
-			}
-			
-			
+		for(Action gsa : gsas){
+			returnedEntries.add(this.storedQ(table, gsa));
 		}
 		
 		if(returnedEntries.isEmpty()){
@@ -321,44 +366,130 @@ public class SGNaiveQLAgent extends SGAgentBase implements QProvider {
 
 	@Override
 	public double qValue(State s, Action a) {
-		
 		return this.storedQ(s, a).q;
-		
 	}
 
-	protected QValue storedQ(State s, Action a){
 
-		Action gsa = a;
 
-		HashableState shq = this.stateHash(s);
+	/**
+	 * The Q-table entry of a state: the stored representation of the state, which is useful since two identical states may have different object
+	 * instance name identifiers that can affect the parameters in actions, and the Q-value of each action stored for the state.
+	 */
+	protected static class StateQTable {
+
+		/**
+		 * The stored representation of the state
+		 */
+		public State s;
+
+		/**
+		 * The stored Q-value of each action; the first {@link #size} entries are used
+		 */
+		public QValue [] entries;
+
+		/**
+		 * The number of stored actions
+		 */
+		public int size;
 
-		State storedRep = stateRepresentations.get(shq);
-		if(storedRep == null){
-			//no existing entry so we can create it
-			stateRepresentations.put(shq, shq.s());
-			QValue q = new QValue(storedRep, gsa, this.qInit.qValue(shq.s(), gsa));
-			List <QValue> entries = new ArrayList<QValue>();
-			entries.add(q);
-			qMap.put(shq, entries);
-			return q;
+
+		public StateQTable(State s, int capacity) {
+			this.s = s;
+			this.entries = new QValue[Math.max(1, capacity)];
 		}
 
 
-		List <QValue> entries = qMap.get(shq);
-		for(QValue qe : entries){
-			if(qe.a.equals(gsa)){
-				return qe;
+		/**
+		 * Returns the index of an action.
+		 * @param a the action
+		 * @return the index of the action, or -1 if it is not stored
+		 */
+		public int actionIndex(Action a){
+			for(int i = 0; i < this.size; i++){
+				if(this.entries[i].a.equals(a)){
+					return i;
+				}
 			}
+			return -1;
 		}
 
-		//if we got here then there are no entries for this action
-		QValue qe = new QValue(shq.s(), gsa, this.qInit.qValue(shq.s(), gsa));
-		entries.add(qe);
 
-		return qe;
+		/**
+		 * Adds the Q-value of an action.
+		 * @param q the Q-value of the action
+		 * @return the index of the added action
+		 */
+		public int add(QValue q){
+			if(this.size == this.entries.length){
+				this.entries = Arrays.copyOf(this.entries, this.size*2);
+			}
+			this.entries[this.size] = q;
+			return this.size++;
+		}
 
 	}
-	
-	
+
+
+	/**
+	 * A read-only {@link Map} view of {@link #qTable} that maps each hashed state to a value derived from its Q-table entry.
+	 * @param <V> the type of the derived value
+	 */
+	protected abstract class QTableView<V> extends AbstractMap<HashableState, V> {
+
+		/**
+		 * Returns the value of a Q-table entry.
+		 * @param table the Q-table entry
+		 * @return the value of the entry
+		 */
+		protected abstract V value(StateQTable table);
+
+		@Override
+		public V get(Object key) {
+			StateQTable table = qTable.get(key);
+			return table != null ? this.value(table) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return qTable.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return qTable.size();
+		}
+
+		@Override
+		public Set<Entry<HashableState, V>> entrySet() {
+			return new AbstractSet<Entry<HashableState, V>>() {
+				@Override
+				public Iterator<Entry<HashableState, V>> iterator() {
+					final Iterator<Entry<HashableState, StateQTable>> it = qTable.entrySet().iterator();
+					return new Iterator<Entry<HashableState, V>>() {
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Entry<HashableState, V> next() {
+							Entry<HashableState, StateQTable> e = it.next();
+							return new SimpleImmutableEntry<HashableState, V>(e.getKey(), value(e.getValue()));
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return qTable.size();
+				}
+			};
+		}
+	}
 
 }
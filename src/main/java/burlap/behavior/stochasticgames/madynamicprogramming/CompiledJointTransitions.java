@@ -0,0 +1,310 @@
+package burlap.behavior.stochasticgames.madynamicprogramming;
+
+import burlap.mdp.core.StateTransitionProb;
+import burlap.mdp.core.TerminalFunction;
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.JointActionIndexer;
+import burlap.mdp.stochasticgames.JointActionIndexer.JointActionSpace;
+import burlap.mdp.stochasticgames.model.FullJointModel;
+import burlap.mdp.stochasticgames.model.JointRewardFunction;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A compiled, index-based representation of the joint transition dynamics and joint rewards of a finite set of (reachable) states of a
+ * stochastic game. Each state is assigned an integer id and the joint actions of its {@link JointActionSpace} are compiled, in joint action id order, into
+ * compressed sparse row (CSR) style primitive arrays: the joint action slots of state <code>i</code> are in the range
+ * [<code>jointActionOffsets[i]</code>, <code>jointActionOffsets[i+1]</code>) and the transitions of slot <code>j</code> are in the range
+ * [<code>transitionOffsets[j]</code>, <code>transitionOffsets[j+1]</code>) of the successor and probability arrays. The joint reward of
+ * transition <code>t</code> for agent <code>a</code> is stored at <code>rewards[t*numAgents + a]</code>.
+ * <p>
+ * Terminal states have joint action slots without transitions, so all of their joint action Q-values are 0, as in
+ * {@link MADynamicProgramming}. The joint action Q-values of a state can be computed from a <code>double[]</code> of an agent's state values indexed
+ * by state id without querying the model or the joint reward function.
+ * <p>
+ * The table is a snapshot of the model: if the model, joint reward function or set of states change, a new table must be compiled.
+ */
+public class CompiledJointTransitions {
+
+	/**
+	 * The hashed states indexed by their id
+	 */
+	protected HashableState [] states;
+
+	/**
+	 * The id of each compiled hashed state
+	 */
+	protected Map<HashableState, Integer> stateIds;
+
+	/**
+	 * The id of each compiled state instance, so that the compiled states can be looked up without hashing
+	 */
+	protected Map<State, Integer> instanceIds;
+
+	/**
+	 * The number of agents
+	 */
+	protected int numAgents;
+
+	/**
+	 * The joint actions of each state
+	 */
+	protected JointActionSpace [] spaces;
+
+	/**
+	 * The offset of each state's first joint action slot; has length numStates+1
+	 */
+	protected int [] jointActionOffsets;
+
+	/**
+	 * The offset of each joint action slot's first transition; has length numSlots+1
+	 */
+	protected int [] transitionOffsets;
+
+	/**
+	 * The successor state id of each transition
+	 */
+	protected int [] successors;
+
+	/**
+	 * The probability of each transition
+	 */
+	protected double [] probs;
+
+	/**
+	 * The joint reward of each transition, with the reward of agent <code>a</code> for transition <code>t</code> at <code>t*numAgents + a</code>
+	 */
+	protected double [] rewards;
+
+
+	/**
+	 * Compiles the joint transitions and rewards of a set of states. The set must be closed under the model's transitions.
+	 * @param states the states to compile
+	 * @param hashingFactory the hashing factory used to identify successor states
+	 * @param indexer the {@link JointActionIndexer} of the agents
+	 * @param model the joint model
+	 * @param jointRewardFunction the joint reward function
+	 * @param terminalFunction the terminal function
+	 */
+	public CompiledJointTransitions(Collection<HashableState> states, HashableStateFactory hashingFactory, JointActionIndexer indexer,
+									FullJointModel model, JointRewardFunction jointRewardFunction, TerminalFunction terminalFunction){
+
+		int n = states.size();
+		this.numAgents = indexer.numAgents();
+		this.states = states.toArray(new HashableState[n]);
+		this.stateIds = new HashMap<HashableState, Integer>(n);
+		this.instanceIds = new IdentityHashMap<State, Integer>(n);
+		for(int i = 0; i < n; i++){
+			this.stateIds.put(this.states[i], i);
+			this.instanceIds.put(this.states[i].s(), i);
+		}
+
+		this.spaces = new JointActionSpace[n];
+		this.jointActionOffsets = new int[n+1];
+		int numSlots = 0;
+		for(int i = 0; i < n; i++){
+			this.spaces[i] = indexer.jointActionSpace(this.states[i].s());
+			this.jointActionOffsets[i] = numSlots;
+			numSlots += this.spaces[i].numJointActions();
+		}
+		this.jointActionOffsets[n] = numSlots;
+
+		//count transitions first so that they can be stored in exactly sized arrays
+		List<List<StateTransitionProb>> slotTransitions = new ArrayList<List<StateTransitionProb>>(numSlots);
+		this.transitionOffsets = new int[numSlots+1];
+		int numTransitions = 0;
+		for(int i = 0; i < n; i++){
+			State s = this.states[i].s();
+			boolean terminal = terminalFunction.isTerminal(s);
+			for(int ja = 0; ja < this.spaces[i].numJointActions(); ja++){
+				int slot = this.jointActionOffsets[i] + ja;
+				this.transitionOffsets[slot] = numTransitions;
+				List<StateTransitionProb> tps = null;
+				if(!terminal){
+					tps = model.stateTransitions(s, this.spaces[i].jointAction(ja));
+					numTransitions += tps.size();
+				}
+				slotTransitions.add(tps);
+			}
+		}
+		this.transitionOffsets[numSlots] = numTransitions;
+
+		this.successors = new int[numTransitions];
+		this.probs = new double[numTransitions];
+		this.rewards = new double[numTransitions*this.numAgents];
+		for(int i = 0; i < n; i++){
+			State s = this.states[i].s();
+			for(int ja = 0; ja < this.spaces[i].numJointActions(); ja++){
+				int slot = this.jointActionOffsets[i] + ja;
+				List<StateTransitionProb> tps = slotTransitions.get(slot);
+				if(tps == null){
+					continue;
+				}
+				int t = this.transitionOffsets[slot];
+				for(StateTransitionProb tp : tps){
+					Integer next = this.stateIds.get(hashingFactory.hashState(tp.s));
+					if(next == null){
+						throw new RuntimeException("Cannot compile the joint transitions because a successor state was not in the set of compiled states.");
+					}
+					this.successors[t] = next;
+					this.probs[t] = tp.p;
+					double [] jr = jointRewardFunction.reward(s, this.spaces[i].jointAction(ja), tp.s);
+					System.arraycopy(jr, 0, this.rewards, t*this.numAgents, this.numAgents);
+					t++;
+				}
+			}
+		}
+
+	}
+
+
+	/**
+	 * Returns the number of compiled states.
+	 * @return the number of compiled states
+	 */
+	public int numStates(){
+		return this.states.length;
+	}
+
+
+	/**
+	 * Returns the number of agents.
+	 * @return the number of agents
+	 */
+	public int numAgents(){
+		return this.numAgents;
+	}
+
+
+	/**
+	 * Returns the hashed state with the given id.
+	 * @param id the state id
+	 * @return the hashed state
+	 */
+	public HashableState state(int id){
+		return this.states[id];
+	}
+
+
+	/**
+	 * Returns the id of a hashed state.
+	 * @param sh the hashed state
+	 * @return the id of the state, or -1 if it was not compiled
+	 */
+	public int stateId(HashableState sh){
+		Integer id = this.stateIds.get(sh);
+		return id != null ? id : -1;
+	}
+
+
+	/**
+	 * Returns the id of a state. Compiled state instances are looked up without hashing; other states are hashed with the given factory.
+	 * @param s the state
+	 * @param hashingFactory the hashing factory with which the table was compiled
+	 * @return the id of the state, or -1 if it was not compiled
+	 */
+	public int stateId(State s, HashableStateFactory hashingFactory){
+		Integer id = this.instanceIds.get(s);
+		if(id != null){
+			return id;
+		}
+		return this.stateId(hashingFactory.hashState(s));
+	}
+
+
+	/**
+	 * Returns the joint actions of a state.
+	 * @param id the state id
+	 * @return the {@link JointActionSpace} of the state
+	 */
+	public JointActionSpace jointActionSpace(int id){
+		return this.spaces[id];
+	}
+
+
+	/**
+	 * Returns whether this table was compiled from the given set of states.
+	 * @param states the set of states
+	 * @return true if this table was compiled from the given set of states; false otherwise
+	 */
+	public boolean compiledFrom(Collection<HashableState> states){
+		if(states.size() != this.states.length){
+			return false;
+		}
+		for(HashableState sh : states){
+			if(!this.stateIds.containsKey(sh)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Computes the Q-value of an agent for a joint action in a state from the agent's state values, where the values of states in
+	 * [begin, end) are read from <code>v</code> and the values of all other states from <code>vOther</code>.
+	 * @param id the state id
+	 * @param jointActionId the joint action id
+	 * @param agent the agent
+	 * @param discount the discount factor
+	 * @param v the agent's values of the states in [begin, end)
+	 * @param vOther the agent's values of all other states
+	 * @param begin the first state whose value is read from <code>v</code>
+	 * @param end one past the last state whose value is read from <code>v</code>
+	 * @return the Q-value
+	 */
+	public double qValue(int id, int jointActionId, int agent, double discount, double [] v, double [] vOther, int begin, int end){
+		int slot = this.jointActionOffsets[id] + jointActionId;
+		double sumQ = 0.;
+		for(int t = this.transitionOffsets[slot]; t < this.transitionOffsets[slot+1]; t++){
+			int next = this.successors[t];
+			double vprime = next >= begin && next < end ? v[next] : vOther[next];
+			sumQ += this.probs[t] * (this.rewards[t*this.numAgents + agent] + discount*vprime);
+		}
+		return sumQ;
+	}
+
+
+	/**
+	 * Computes the Q-value of an agent for a joint action in a state from a map of the agent's state values.
+	 * @param id the state id
+	 * @param jointActionId the joint action id
+	 * @param agent the agent
+	 * @param discount the discount factor
+	 * @param values the agent's state values
+	 * @return the Q-value
+	 */
+	public double qValue(int id, int jointActionId, int agent, double discount, StateValues values){
+		int slot = this.jointActionOffsets[id] + jointActionId;
+		double sumQ = 0.;
+		for(int t = this.transitionOffsets[slot]; t < this.transitionOffsets[slot+1]; t++){
+			double vprime = values.value(this.states[this.successors[t]]);
+			sumQ += this.probs[t] * (this.rewards[t*this.numAgents + agent] + discount*vprime);
+		}
+		return sumQ;
+	}
+
+
+	/**
+	 * A source of an agent's state values.
+	 */
+	public interface StateValues {
+
+		/**
+		 * Returns the value of a state.
+		 * @param sh the hashed state
+		 * @return the value of the state
+		 */
+		double value(HashableState sh);
+
+	}
+
+}
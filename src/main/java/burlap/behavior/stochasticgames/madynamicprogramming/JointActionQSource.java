@@ -0,0 +1,78 @@
+package burlap.behavior.stochasticgames.madynamicprogramming;
+
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.JointActionIndexer;
+import burlap.mdp.stochasticgames.JointActionIndexer.JointActionSpace;
+
+
+/**
+ * A {@link QSourceForSingleAgent} that can return the Q-values of all joint actions of a state as a primitive array indexed by the
+ * joint action ids of a {@link JointActionIndexer}, which lets backup operators read the Q-values of a state without creating
+ * {@link burlap.mdp.stochasticgames.JointAction} or {@link JAQValue} objects. Use {@link Helper#jointActionQValues(QSourceForSingleAgent, State, JointActionIndexer)}
+ * to get the same array from any {@link QSourceForSingleAgent}.
+ */
+public interface JointActionQSource extends QSourceForSingleAgent {
+
+	/**
+	 * Returns the Q-values of all joint actions of a state.
+	 * @param s the state
+	 * @param indexer the {@link JointActionIndexer} that defines the joint action ids of states not seen before
+	 * @return the Q-values of all joint actions of the state
+	 */
+	JointQValues jointActionQValues(State s, JointActionIndexer indexer);
+
+
+
+	/**
+	 * The Q-values of the joint actions of a state, indexed by joint action id. For sources that store their Q-values in these arrays,
+	 * modifying them modifies the stored Q-values.
+	 */
+	class JointQValues {
+
+		/**
+		 * The joint actions of the state
+		 */
+		public JointActionSpace space;
+
+		/**
+		 * The Q-value of each joint action, indexed by joint action id
+		 */
+		public double [] q;
+
+		public JointQValues(JointActionSpace space, double[] q) {
+			this.space = space;
+			this.q = q;
+		}
+
+	}
+
+
+	class Helper {
+
+		private Helper() {
+		}
+
+		/**
+		 * Returns the Q-values of all joint actions of a state from any {@link QSourceForSingleAgent}. If it is not a {@link JointActionQSource},
+		 * the Q-value of each joint action is queried with {@link QSourceForSingleAgent#getQValueFor(State, burlap.mdp.stochasticgames.JointAction)}
+		 * and the returned array is a copy.
+		 * @param qSource the Q-value source
+		 * @param s the state
+		 * @param indexer the {@link JointActionIndexer} defining the joint action ids
+		 * @return the Q-values of all joint actions of the state
+		 */
+		public static JointQValues jointActionQValues(QSourceForSingleAgent qSource, State s, JointActionIndexer indexer){
+			if(qSource instanceof JointActionQSource){
+				return ((JointActionQSource)qSource).jointActionQValues(s, indexer);
+			}
+			JointActionSpace space = indexer.jointActionSpace(s);
+			double [] q = new double[space.numJointActions()];
+			for(int i = 0; i < q.length; i++){
+				q[i] = qSource.getQValueFor(s, space.jointAction(i)).q;
+			}
+			return new JointQValues(space, q);
+		}
+
+	}
+
+}
@@ -6,6 +6,8 @@ import burlap.mdp.core.StateTransitionProb;
 import burlap.mdp.core.TerminalFunction;
 import burlap.mdp.core.state.State;
 import burlap.mdp.stochasticgames.JointAction;
+import burlap.mdp.stochasticgames.JointActionIndexer;
+import burlap.mdp.stochasticgames.JointActionIndexer.JointActionSpace;
 import burlap.mdp.stochasticgames.SGDomain;
 import burlap.mdp.stochasticgames.agent.SGAgentType;
 import burlap.mdp.stochasticgames.model.FullJointModel;
@@ -87,6 +89,12 @@ public abstract class MADynamicProgramming implements MultiAgentQSourceProvider{
 	protected HashMapAgentQSourceMap		qSources;
 	
 	
+	/**
+	 * The compiled joint transitions and rewards of the planned states, used by the Q-value sources when they are set; null otherwise.
+	 */
+	protected CompiledJointTransitions		compiledTransitions;
+	
+	
 	/**
 	 * Whether planning has begun or not.
 	 */
@@ -237,11 +245,12 @@ public abstract class MADynamicProgramming implements MultiAgentQSourceProvider{
 	
 	/**
 	 * A {@link QSourceForSingleAgent} implementation which stores a value function for an agent and produces Joint action Q-values
-	 * by marginalizing over the transition dynamics the reward and discounted next state value.
+	 * by marginalizing over the transition dynamics the reward and discounted next state value. If the {@link MADynamicProgramming} instance
+	 * has {@link CompiledJointTransitions} for a queried state, the transition dynamics and rewards are read from them instead of the model.
 	 * @author James MacGlashan
 	 *
 	 */
-	protected class BackupBasedQSource implements QSourceForSingleAgent{
+	protected class BackupBasedQSource implements JointActionQSource, CompiledJointTransitions.StateValues{
 
 		/**
 		 * The agent for which this value function is assigned.
@@ -265,7 +274,14 @@ public abstract class MADynamicProgramming implements MultiAgentQSourceProvider{
 		@Override
 		public JAQValue getQValueFor(State s, JointAction ja) {
 			
-			
+			CompiledJointTransitions ct = MADynamicProgramming.this.compiledTransitions;
+			if(ct != null){
+				int id = ct.stateId(s, MADynamicProgramming.this.hashingFactory);
+				int jaId = id != -1 ? ct.jointActionSpace(id).jointActionId(ja) : -1;
+				if(jaId != -1){
+					return new JAQValue(s, ja, ct.qValue(id, jaId, this.agentNum, MADynamicProgramming.this.discount, this));
+				}
+			}
 			
 			JointActionTransitions jat = new JointActionTransitions(s, ja);
 			double sumQ = 0.;
@@ -294,6 +310,28 @@ public abstract class MADynamicProgramming implements MultiAgentQSourceProvider{
 			
 			return q;
 		}
+
+		@Override
+		public JointQValues jointActionQValues(State s, JointActionIndexer indexer) {
+			CompiledJointTransitions ct = MADynamicProgramming.this.compiledTransitions;
+			if(ct != null && indexer.indexes(MADynamicProgramming.this.agentDefinitions)){
+				int id = ct.stateId(s, MADynamicProgramming.this.hashingFactory);
+				if(id != -1){
+					JointActionSpace space = ct.jointActionSpace(id);
+					double [] q = new double[space.numJointActions()];
+					for(int i = 0; i < q.length; i++){
+						q[i] = ct.qValue(id, i, this.agentNum, MADynamicProgramming.this.discount, this);
+					}
+					return new JointQValues(space, q);
+				}
+			}
+			JointActionSpace space = indexer.jointActionSpace(s);
+			double [] q = new double[space.numJointActions()];
+			for(int i = 0; i < q.length; i++){
+				q[i] = this.getQValueFor(s, space.jointAction(i)).q;
+			}
+			return new JointQValues(space, q);
+		}
 		
 		
 		/**
@@ -316,6 +354,12 @@ public abstract class MADynamicProgramming implements MultiAgentQSourceProvider{
 		}
 		
 		
+		@Override
+		public double value(HashableState sh) {
+			return this.getValue(sh);
+		}
+		
+		
 		/**
 		 * Sets the value of the state in this objects value function map.
 		 * @param sh the hashed state for which the value is to be set
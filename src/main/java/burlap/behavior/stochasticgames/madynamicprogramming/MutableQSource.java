@@ -0,0 +1,22 @@
+package burlap.behavior.stochasticgames.madynamicprogramming;
+
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.JointAction;
+
+
+/**
+ * A {@link QSourceForSingleAgent} whose stored Q-values can be set. Not every source returns its stored {@link JAQValue} objects from
+ * {@link QSourceForSingleAgent#getQValueFor(State, JointAction)}, so code that updates Q-values should set them with
+ * {@link #setQValue(State, JointAction, double)} rather than modify the q field of a returned {@link JAQValue}.
+ */
+public interface MutableQSource extends QSourceForSingleAgent {
+
+	/**
+	 * Sets the stored Q-value of a state and joint action.
+	 * @param s the state
+	 * @param ja the joint action
+	 * @param q the Q-value
+	 */
+	void setQValue(State s, JointAction ja, double q);
+
+}
@@ -5,6 +5,8 @@ import burlap.mdp.core.state.State;
 import burlap.statehashing.HashableState;
 import burlap.statehashing.HashableStateFactory;
 import burlap.mdp.stochasticgames.JointAction;
+import burlap.mdp.stochasticgames.JointActionIndexer;
+import burlap.mdp.stochasticgames.JointActionIndexer.JointActionSpace;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -12,9 +14,11 @@ import java.util.Map;
 
 
 /**
- * And interface for objects that can store and retrive Q-value objects for a specific agent and state and joint action query. The 
- * {@link JAQValue} returned can have their q datamember directly modified to modify the Q-values stored and retreived in this object.
- * A hash-backed implementation is also provided in this interface definition.
+ * And interface for objects that can store and retrive Q-value objects for a specific agent and state and joint action query. Whether
+ * modifying the q datamember of a returned {@link JAQValue} modifies the Q-values stored in this object depends on the implementation:
+ * {@link HashBackedQSource} returns its stored objects, while {@link ArrayBackedQSource} returns copies. Sources whose Q-values can be set
+ * implement {@link MutableQSource}; modifying returned {@link JAQValue} objects is deprecated in favor of {@link MutableQSource#setQValue(State, JointAction, double)}.
+ * A hash-backed and an array-backed implementation are also provided in this interface definition.
  * @author James MacGlashan
  *
  */
@@ -22,8 +26,8 @@ public interface QSourceForSingleAgent {
 
 	
 	/**
-	 * Returns a Q-value (represented with a {@link JAQValue} object) stored for the given state and joint action. Modification to the returned object
-	 * will directly modify the stored value that will be returned in subsequent calls to this method.
+	 * Returns a Q-value (represented with a {@link JAQValue} object) stored for the given state and joint action. Whether modification to the returned
+	 * object modifies the stored value depends on the implementation; use {@link MutableQSource#setQValue(State, JointAction, double)} to set it.
 	 * @param s the Q-value's associated state
 	 * @param ja the Q-value's associated joint aciton
 	 * @return a {@link JAQValue} for the given state and joint action.
@@ -39,7 +43,7 @@ public interface QSourceForSingleAgent {
 	 * @author James MacGlashan
 	 *
 	 */
-	class HashBackedQSource implements QSourceForSingleAgent{
+	class HashBackedQSource implements MutableQSource{
 
 		protected HashMap<HashableState, Map<JointAction, JAQValue>>	qValues;
 		protected HashableStateFactory hashingFactory;
@@ -75,6 +79,18 @@ public interface QSourceForSingleAgent {
 			
 			return q;
 		}
+
+
+		/**
+		 * Sets the stored Q-value of a state and joint action by modifying its stored {@link JAQValue}.
+		 * @param s the state
+		 * @param ja the joint action
+		 * @param q the Q-value
+		 */
+		@Override
+		public void setQValue(State s, JointAction ja, double q) {
+			this.getQValueFor(s, ja).q = q;
+		}
 		
 		
 		/**
@@ -98,4 +114,127 @@ public interface QSourceForSingleAgent {
 		
 	}
 	
+	
+	
+	/**
+	 * An implementation of the {@link QSourceForSingleAgent} interface that stores the Q-values of each state in a primitive array indexed by
+	 * the joint action ids of a {@link JointActionIndexer}, in a map from hashed states. The joint actions of a state are enumerated,
+	 * and its Q-values initialized with a {@link QFunction}, the first time the state is queried.
+	 * <p>
+	 * The arrays returned by {@link #jointActionQValues(State, JointActionIndexer)} are the stored Q-values, so modifying them modifies
+	 * the stored Q-values. In contrast, the {@link JAQValue} returned by {@link #getQValueFor(State, JointAction)} is a copy, unlike that of
+	 * {@link HashBackedQSource}; use {@link #setQValue(State, JointAction, double)} to modify a single Q-value.
+	 * <p>
+	 * Also unlike {@link HashBackedQSource}, which adds any queried joint action to a state lazily, the joint actions of a state are fixed
+	 * to those the {@link JointActionIndexer} enumerates for it the first time it is queried; querying or setting the Q-value of any other
+	 * joint action throws a {@link RuntimeException}.
+	 */
+	class ArrayBackedQSource implements JointActionQSource, MutableQSource{
+
+		protected HashMap<HashableState, JointQValues> qValues;
+		protected HashableStateFactory hashingFactory;
+		protected QFunction qInit;
+		protected JointActionIndexer indexer;
+
+
+		/**
+		 * Initializes with a given state hashing factory and value function initialization for Q-values. The {@link JointActionIndexer}
+		 * is set by the first call to {@link #jointActionQValues(State, JointActionIndexer)} or with {@link #setIndexer(JointActionIndexer)}.
+		 * @param hashingFactory the state hashing factory used to index states
+		 * @param qInit the value function initialization to use for previously unqueried states
+		 */
+		public ArrayBackedQSource(HashableStateFactory hashingFactory, QFunction qInit){
+			this(hashingFactory, qInit, null);
+		}
+
+
+		/**
+		 * Initializes.
+		 * @param hashingFactory the state hashing factory used to index states
+		 * @param qInit the value function initialization to use for previously unqueried states
+		 * @param indexer the {@link JointActionIndexer} defining the joint action ids
+		 */
+		public ArrayBackedQSource(HashableStateFactory hashingFactory, QFunction qInit, JointActionIndexer indexer){
+			this.qValues = new HashMap<HashableState, JointQValues>();
+			this.hashingFactory = hashingFactory;
+			this.qInit = qInit;
+			this.indexer = indexer;
+		}
+
+
+		public JointActionIndexer getIndexer() {
+			return indexer;
+		}
+
+		public void setIndexer(JointActionIndexer indexer) {
+			this.indexer = indexer;
+		}
+
+
+		@Override
+		public JointQValues jointActionQValues(State s, JointActionIndexer indexer) {
+			if(this.indexer == null){
+				this.indexer = indexer;
+			}
+			HashableState sh = this.hashingFactory.hashState(s);
+			JointQValues stored = this.qValues.get(sh);
+			if(stored == null){
+				JointActionSpace space = this.indexer.jointActionSpace(sh.s());
+				double [] q = new double[space.numJointActions()];
+				for(int i = 0; i < q.length; i++){
+					q[i] = this.qInit.qValue(sh.s(), space.jointAction(i));
+				}
+				stored = new JointQValues(space, q);
+				this.qValues.put(sh, stored);
+			}
+			return stored;
+		}
+
+
+		/**
+		 * Returns a copy of the stored Q-value of a state and joint action; modifying it does not modify the stored Q-value.
+		 * @param s the state
+		 * @param ja the joint action
+		 * @return a copy of the stored Q-value
+		 * @throws RuntimeException if the joint action is not one of the joint actions of the state
+		 */
+		@Override
+		public JAQValue getQValueFor(State s, JointAction ja) {
+			JointQValues qs = this.storedQValues(s);
+			return new JAQValue(s, ja, qs.q[this.jointActionId(qs, ja)]);
+		}
+
+
+		/**
+		 * Sets the stored Q-value of a state and joint action.
+		 * @param s the state
+		 * @param ja the joint action
+		 * @param q the Q-value
+		 * @throws RuntimeException if the joint action is not one of the joint actions of the state
+		 */
+		@Override
+		public void setQValue(State s, JointAction ja, double q){
+			JointQValues qs = this.storedQValues(s);
+			qs.q[this.jointActionId(qs, ja)] = q;
+		}
+
+
+		protected JointQValues storedQValues(State s){
+			if(this.indexer == null){
+				throw new RuntimeException("The ArrayBackedQSource cannot index joint actions until its JointActionIndexer is set.");
+			}
+			return this.jointActionQValues(s, this.indexer);
+		}
+
+
+		protected int jointActionId(JointQValues qs, JointAction ja){
+			int id = qs.space.jointActionId(ja);
+			if(id == -1){
+				throw new RuntimeException("Joint action " + ja + " is not applicable in the queried state.");
+			}
+			return id;
+		}
+
+	}
+	
 }
@@ -0,0 +1,46 @@
+package burlap.behavior.stochasticgames.madynamicprogramming;
+
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.agent.SGAgentType;
+
+import java.util.List;
+
+
+/**
+ * An {@link SGBackupOperator} whose backup solves an optimization problem (e.g., a linear program for an equilibrium) that can be warm started from
+ * the solution of a previous backup of the same state and agent. Planners that back up the same states repeatedly, such as
+ * {@link burlap.behavior.stochasticgames.madynamicprogramming.dpplanners.ParallelMAValueIteration}, store the solution of each state and agent
+ * and pass it to its next backup. How the previous solution is used depends on the operator: {@link burlap.behavior.stochasticgames.madynamicprogramming.backupOperators.MinMaxQ}
+ * warm starts from its supports, while {@link burlap.behavior.stochasticgames.madynamicprogramming.backupOperators.CorrelatedQ} only reuses it
+ * when the problem is unchanged.
+ */
+public interface WarmStartSGBackupOperator extends SGBackupOperator {
+
+	/**
+	 * Performs the backup of a state for an agent, warm started from the solution of a previous backup.
+	 * @param s the state
+	 * @param forAgent the agent for which the backup is performed
+	 * @param agentDefinitions the agent definitions
+	 * @param qSourceMap the Q-value sources of the agents
+	 * @param previous the solution returned by the previous backup of the state for the agent, or null if there is none
+	 * @return the backed up value and the solution from which the next backup can be warm started
+	 */
+	WarmStartBackup performBackup(State s, int forAgent, List<SGAgentType> agentDefinitions, AgentQSourceMap qSourceMap, Object previous);
+
+
+	/**
+	 * The result of a warm started backup: the backed up value and the operator specific solution from which the next backup of the state can be warm started.
+	 */
+	class WarmStartBackup {
+
+		public double value;
+		public Object solution;
+
+		public WarmStartBackup(double value, Object solution) {
+			this.value = value;
+			this.solution = solution;
+		}
+
+	}
+
+}
@@ -1,14 +1,11 @@
 package burlap.behavior.stochasticgames.madynamicprogramming.backupOperators;
 
 import burlap.behavior.stochasticgames.madynamicprogramming.AgentQSourceMap;
-import burlap.behavior.stochasticgames.madynamicprogramming.QSourceForSingleAgent;
-import burlap.behavior.stochasticgames.madynamicprogramming.SGBackupOperator;
+import burlap.behavior.stochasticgames.madynamicprogramming.JointActionQSource.JointQValues;
+import burlap.behavior.stochasticgames.madynamicprogramming.WarmStartSGBackupOperator;
 import burlap.behavior.stochasticgames.solvers.GeneralBimatrixSolverTools;
 import burlap.behavior.stochasticgames.solvers.MinMaxSolver;
-import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
-import burlap.mdp.core.action.ActionUtils;
-import burlap.mdp.stochasticgames.JointAction;
 import burlap.mdp.stochasticgames.agent.SGAgentType;
 
 import java.util.List;
@@ -17,39 +14,42 @@ import java.util.List;
 /**
  * The CoCoQ backup operator for sequential stochastic games [1].
  * <p>
+ * As a {@link WarmStartSGBackupOperator}, the minmax strategies of a backup are warm started from those of the previous backup with
+ * {@link MinMaxSolver#getMinMaxSolution(double[][], MinMaxSolver.MinMaxSolution)}.
+ * <p>
  * 1. Sodomka, Eric, et al. "Coco-Q: Learning in Stochastic Games with Side Payments." Proceedings of the 30th International Conference on Machine Learning (ICML-13). 2013.
  * @author Esha Gosh, John Meehan, Michalis Michaelidis, and James MacGlashan
  *
  */
-public class CoCoQ implements SGBackupOperator {
+public class CoCoQ extends JointActionBackupOperator implements WarmStartSGBackupOperator {
 
 
 	@Override
 	public double performBackup(State s, int forAgent, List<SGAgentType> agentDefinitions, AgentQSourceMap qSourceMap) {
+		return this.performBackup(s, forAgent, agentDefinitions, qSourceMap, null).value;
+	}
+
+	@Override
+	public WarmStartBackup performBackup(State s, int forAgent, List<SGAgentType> agentDefinitions, AgentQSourceMap qSourceMap, Object previous) {
 		if(agentDefinitions.size() != 2){
 			throw new RuntimeException("CoCoQ only defined for two agents.");
 		}
 
 		int otherAgent = forAgent == 0 ? 1 : 0;
-		QSourceForSingleAgent forAgentQSource = qSourceMap.agentQSource(forAgent);
-		QSourceForSingleAgent otherAgentQSource = qSourceMap.agentQSource(otherAgent);
-
-		List<Action> forAgentGSAs = ActionUtils.allApplicableActionsForTypes(agentDefinitions.get(forAgent).actions, s);
-		List<Action> otherAgentGSAs = ActionUtils.allApplicableActionsForTypes(agentDefinitions.get(otherAgent).actions, s);
+		JointQValues forAgentQs = this.jointActionQValues(s, forAgent, agentDefinitions, qSourceMap);
+		JointQValues otherAgentQs = this.jointActionQValues(s, otherAgent, agentDefinitions, qSourceMap);
 
+		double [][] q1s = payoffMatrix(forAgentQs, forAgent, otherAgent);
+		double [][] q2s = payoffMatrix(otherAgentQs, forAgent, otherAgent);
 
-		double [][] minMaxPayout = new double[forAgentGSAs.size()][otherAgentGSAs.size()];
+		double [][] minMaxPayout = new double[q1s.length][q1s.length > 0 ? q1s[0].length : 0];
 
 		double maxmax = Double.NEGATIVE_INFINITY;
 
-		for(int i = 0; i < forAgentGSAs.size(); i++){
-			for(int j = 0; j < otherAgentGSAs.size(); j++){
-				JointAction ja = new JointAction();
-				ja.setAction(forAgent, forAgentGSAs.get(i));
-				ja.setAction(otherAgent, otherAgentGSAs.get(j));
-
-				double q1 = forAgentQSource.getQValueFor(s, ja).q;
-				double q2 = otherAgentQSource.getQValueFor(s, ja).q;
+		for(int i = 0; i < minMaxPayout.length; i++){
+			for(int j = 0; j < minMaxPayout[i].length; j++){
+				double q1 = q1s[i][j];
+				double q2 = q2s[i][j];
 
 				minMaxPayout[i][j] = (q1-q2)/2.;
 
@@ -60,15 +60,16 @@ public class CoCoQ implements SGBackupOperator {
 			}
 		}
 
-		double [] forAgentStrat = MinMaxSolver.getRowPlayersStrategy(minMaxPayout);
-		double [] otherAgentStrat = MinMaxSolver.getColPlayersStrategy(GeneralBimatrixSolverTools.getNegatedMatrix(minMaxPayout));
+		MinMaxSolver.MinMaxSolution solution = MinMaxSolver.getMinMaxSolution(minMaxPayout, (MinMaxSolver.MinMaxSolution)previous);
+		double [] forAgentStrat = solution.rowStrategy;
+		double [] otherAgentStrat = solution.colStrategy;
 
 		double minmaxQ = GeneralBimatrixSolverTools.expectedPayoffs(minMaxPayout, GeneralBimatrixSolverTools.getNegatedMatrix(minMaxPayout), forAgentStrat, otherAgentStrat)[0];
 
 		double cocoQ = (maxmax/2.)+minmaxQ;
 
 
-		return cocoQ;
+		return new WarmStartBackup(cocoQ, solution);
 
 	}
 }
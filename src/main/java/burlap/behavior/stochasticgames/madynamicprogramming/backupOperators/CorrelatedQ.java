@@ -1,17 +1,15 @@
 package burlap.behavior.stochasticgames.madynamicprogramming.backupOperators;
 
 import burlap.behavior.stochasticgames.madynamicprogramming.AgentQSourceMap;
-import burlap.behavior.stochasticgames.madynamicprogramming.QSourceForSingleAgent;
-import burlap.behavior.stochasticgames.madynamicprogramming.SGBackupOperator;
+import burlap.behavior.stochasticgames.madynamicprogramming.JointActionQSource.JointQValues;
+import burlap.behavior.stochasticgames.madynamicprogramming.WarmStartSGBackupOperator;
 import burlap.behavior.stochasticgames.solvers.CorrelatedEquilibriumSolver;
 import burlap.behavior.stochasticgames.solvers.CorrelatedEquilibriumSolver.CorrelatedEquilibriumObjective;
 import burlap.behavior.stochasticgames.solvers.GeneralBimatrixSolverTools;
-import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
-import burlap.mdp.core.action.ActionUtils;
-import burlap.mdp.stochasticgames.JointAction;
 import burlap.mdp.stochasticgames.agent.SGAgentType;
 
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -19,11 +17,16 @@ import java.util.List;
  * A correlated Q backup operator [1] for using in stochastic game multi-agent Q-learning or dynamic programming.
  * 
  * <p>
+ * The correlated equilibrium linear program is not warm started, because the solver does not expose its basis. Instead, as a
+ * {@link WarmStartSGBackupOperator}, a backup memoizes the correlated equilibrium of the previous backup of the state together with its payoff
+ * matrices, and reuses it without solving the linear program only if the payoff matrices are exactly equal, which is the case for states whose
+ * successors' values have stopped changing. Any change to the payoffs, however small, solves the linear program from scratch.
+ * <p>
  * 1. Greenwald, Amy, Keith Hall, and Roberto Serrano. "Correlated Q-learning." ICML. Vol. 3. 2003.
  * @author James MacGlashan
  *
  */
-public class CorrelatedQ implements SGBackupOperator {
+public class CorrelatedQ extends JointActionBackupOperator implements WarmStartSGBackupOperator {
 
 	/**
 	 * The correlated equilibrium objective to be solved.
@@ -42,42 +45,61 @@ public class CorrelatedQ implements SGBackupOperator {
 
 	@Override
 	public double performBackup(State s, int forAgent, List<SGAgentType> agentDefinitions, AgentQSourceMap qSourceMap) {
+		return this.performBackup(s, forAgent, agentDefinitions, qSourceMap, null).value;
+	}
+
+	@Override
+	public WarmStartBackup performBackup(State s, int forAgent, List<SGAgentType> agentDefinitions, AgentQSourceMap qSourceMap, Object previous) {
 
 		if(agentDefinitions.size() != 2){
 			throw new RuntimeException("CoCoQ only defined for two agents.");
 		}
 
 		int otherAgent = forAgent == 0 ? 1 : 0;
-		QSourceForSingleAgent forAgentQSource = qSourceMap.agentQSource(forAgent);
-		QSourceForSingleAgent otherAgentQSource = qSourceMap.agentQSource(otherAgent);
+		JointQValues forAgentQs = this.jointActionQValues(s, forAgent, agentDefinitions, qSourceMap);
+		JointQValues otherAgentQs = this.jointActionQValues(s, otherAgent, agentDefinitions, qSourceMap);
+
+		double [][] forPlayerPaoyff = payoffMatrix(forAgentQs, forAgent, otherAgent);
+		double [][] otherPlayerPaoyff = payoffMatrix(otherAgentQs, forAgent, otherAgent);
 
-		List<Action> forAgentGSAs = ActionUtils.allApplicableActionsForTypes(agentDefinitions.get(forAgent).actions, s);
-		List<Action> otherAgentGSAs = ActionUtils.allApplicableActionsForTypes(agentDefinitions.get(otherAgent).actions, s);
+		MemoizedCorrelatedEQ memo = (MemoizedCorrelatedEQ)previous;
+		if(memo == null || !memo.solves(forPlayerPaoyff, otherPlayerPaoyff)){
+			double [][] jointActionProbs = CorrelatedEquilibriumSolver.getCorrelatedEQJointStrategy(this.objectiveType, forPlayerPaoyff, otherPlayerPaoyff);
+			memo = new MemoizedCorrelatedEQ(forPlayerPaoyff, otherPlayerPaoyff, jointActionProbs);
+		}
+		double [] expectedValue = GeneralBimatrixSolverTools.expectedPayoffs(forPlayerPaoyff, otherPlayerPaoyff, memo.jointActionProbs);
 
-		double [][] forPlayerPaoyff = new double[forAgentGSAs.size()][otherAgentGSAs.size()];
-		double [][] otherPlayerPaoyff = new double[forAgentGSAs.size()][otherAgentGSAs.size()];
 
+		return new WarmStartBackup(expectedValue[0], memo);
 
-		for(int i = 0; i < forAgentGSAs.size(); i++){
-			for(int j = 0; j < otherAgentGSAs.size(); j++){
-				JointAction ja = new JointAction();
-				ja.setAction(forAgent, forAgentGSAs.get(i));
-				ja.setAction(otherAgent, otherAgentGSAs.get(j));
+	}
 
-				double q1 = forAgentQSource.getQValueFor(s, ja).q;
-				double q2 = otherAgentQSource.getQValueFor(s, ja).q;
 
-				forPlayerPaoyff[i][j] = q1;
-				otherPlayerPaoyff[i][j] = q2;
 
-			}
-		}
+	/**
+	 * A memoized correlated equilibrium and the payoff matrices for which it was solved.
+	 */
+	protected static class MemoizedCorrelatedEQ {
 
-		double [][] jointActionProbs = CorrelatedEquilibriumSolver.getCorrelatedEQJointStrategy(this.objectiveType, forPlayerPaoyff, otherPlayerPaoyff);
-		double [] expectedValue = GeneralBimatrixSolverTools.expectedPayoffs(forPlayerPaoyff, otherPlayerPaoyff, jointActionProbs);
+		public double [][] forPlayerPayoff;
+		public double [][] otherPlayerPayoff;
+		public double [][] jointActionProbs;
 
+		public MemoizedCorrelatedEQ(double[][] forPlayerPayoff, double[][] otherPlayerPayoff, double[][] jointActionProbs) {
+			this.forPlayerPayoff = forPlayerPayoff;
+			this.otherPlayerPayoff = otherPlayerPayoff;
+			this.jointActionProbs = jointActionProbs;
+		}
 
-		return expectedValue[0];
+		/**
+		 * Returns whether this equilibrium was solved for exactly the given payoff matrices.
+		 * @param forPlayerPayoff the payoffs of the agent for which the backup is performed
+		 * @param otherPlayerPayoff the payoffs of the other agent
+		 * @return true if the payoff matrices are equal to those of this equilibrium; false otherwise
+		 */
+		public boolean solves(double [][] forPlayerPayoff, double [][] otherPlayerPayoff){
+			return Arrays.deepEquals(this.forPlayerPayoff, forPlayerPayoff) && Arrays.deepEquals(this.otherPlayerPayoff, otherPlayerPayoff);
+		}
 
 	}
 
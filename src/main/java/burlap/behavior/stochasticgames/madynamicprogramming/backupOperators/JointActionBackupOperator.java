@@ -0,0 +1,79 @@
+package burlap.behavior.stochasticgames.madynamicprogramming.backupOperators;
+
+import burlap.behavior.stochasticgames.madynamicprogramming.AgentQSourceMap;
+import burlap.behavior.stochasticgames.madynamicprogramming.JointActionQSource;
+import burlap.behavior.stochasticgames.madynamicprogramming.JointActionQSource.JointQValues;
+import burlap.behavior.stochasticgames.madynamicprogramming.SGBackupOperator;
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.JointActionIndexer;
+import burlap.mdp.stochasticgames.agent.SGAgentType;
+
+import java.util.List;
+
+
+/**
+ * A base class for {@link SGBackupOperator}s that read the Q-values of a state as primitive arrays of joint action Q-values
+ * (see {@link JointActionQSource}) rather than querying a {@link burlap.behavior.stochasticgames.madynamicprogramming.JAQValue} for each joint action.
+ * The {@link JointActionIndexer} of the agent definitions is kept until the operator is used with different agent definitions.
+ */
+public abstract class JointActionBackupOperator implements SGBackupOperator {
+
+	/**
+	 * The joint action indexer of the last agent definitions backed up. It is volatile because planners such as
+	 * {@link burlap.behavior.stochasticgames.madynamicprogramming.dpplanners.ParallelMAValueIteration} back up states with the same operator
+	 * from multiple threads, so an indexer created by one thread must be fully visible to the others.
+	 */
+	protected volatile JointActionIndexer indexer;
+
+
+	/**
+	 * Returns the {@link JointActionIndexer} of the given agent definitions.
+	 * @param agentDefinitions the agent definitions
+	 * @return the {@link JointActionIndexer} of the agent definitions
+	 */
+	protected JointActionIndexer indexer(List<SGAgentType> agentDefinitions){
+		JointActionIndexer indexer = this.indexer;
+		if(indexer == null || !indexer.indexes(agentDefinitions)){
+			indexer = new JointActionIndexer(agentDefinitions);
+			this.indexer = indexer;
+		}
+		return indexer;
+	}
+
+
+	/**
+	 * Returns the joint action Q-values of an agent in a state.
+	 * @param s the state
+	 * @param agent the agent
+	 * @param agentDefinitions the agent definitions
+	 * @param qSourceMap the Q-value sources of the agents
+	 * @return the joint action Q-values of the agent
+	 */
+	protected JointQValues jointActionQValues(State s, int agent, List<SGAgentType> agentDefinitions, AgentQSourceMap qSourceMap){
+		return JointActionQSource.Helper.jointActionQValues(qSourceMap.agentQSource(agent), s, this.indexer(agentDefinitions));
+	}
+
+
+	/**
+	 * Returns the two player payoff matrix of joint action Q-values, with the actions of the row agent along the rows and those of the
+	 * column agent along the columns.
+	 * @param qs the joint action Q-values
+	 * @param rowAgent the row agent
+	 * @param colAgent the column agent
+	 * @return the payoff matrix
+	 */
+	protected static double [][] payoffMatrix(JointQValues qs, int rowAgent, int colAgent){
+		int nRows = qs.space.numActions(rowAgent);
+		int nCols = qs.space.numActions(colAgent);
+		int rowStride = qs.space.stride(rowAgent);
+		int colStride = qs.space.stride(colAgent);
+		double [][] payoff = new double[nRows][nCols];
+		for(int i = 0; i < nRows; i++){
+			for(int j = 0; j < nCols; j++){
+				payoff[i][j] = qs.q[i*rowStride + j*colStride];
+			}
+		}
+		return payoff;
+	}
+
+}
@@ -0,0 +1,370 @@
+package burlap.behavior.stochasticgames.madynamicprogramming.dpplanners;
+
+import burlap.behavior.stochasticgames.madynamicprogramming.AgentQSourceMap.HashMapAgentQSourceMap;
+import burlap.behavior.stochasticgames.madynamicprogramming.CompiledJointTransitions;
+import burlap.behavior.stochasticgames.madynamicprogramming.JAQValue;
+import burlap.behavior.stochasticgames.madynamicprogramming.JointActionQSource;
+import burlap.behavior.stochasticgames.madynamicprogramming.QSourceForSingleAgent;
+import burlap.behavior.stochasticgames.madynamicprogramming.SGBackupOperator;
+import burlap.behavior.stochasticgames.madynamicprogramming.WarmStartSGBackupOperator;
+import burlap.behavior.stochasticgames.madynamicprogramming.WarmStartSGBackupOperator.WarmStartBackup;
+import burlap.behavior.valuefunction.ConstantValueFunction;
+import burlap.behavior.valuefunction.ValueFunction;
+import burlap.debugtools.DPrint;
+import burlap.mdp.core.TerminalFunction;
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.JointAction;
+import burlap.mdp.stochasticgames.JointActionIndexer;
+import burlap.mdp.stochasticgames.JointActionIndexer.JointActionSpace;
+import burlap.mdp.stochasticgames.SGDomain;
+import burlap.mdp.stochasticgames.agent.SGAgentType;
+import burlap.mdp.stochasticgames.model.FullJointModel;
+import burlap.mdp.stochasticgames.model.JointRewardFunction;
+import burlap.statehashing.HashableStateFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * A multi-threaded version of {@link MAValueIteration}. Like {@link MAValueIteration}, it first finds all states reachable from the
+ * input state and then performs sweeps over them until the maximum change in any agent's value function is smaller than a threshold or a
+ * maximum number of iterations is reached.
+ * <p>
+ * The joint transitions and joint rewards of the reachable states are compiled once into {@link CompiledJointTransitions}, which are reused
+ * until new states are found, and the value function of each agent is kept in an array indexed by state id while VI runs. The states are split into one
+ * contiguous partition per thread; each sweep backs up the partitions concurrently in a {@link ForkJoinPool}, updating the values of a partition
+ * in place while reading the values of other partitions from the previous sweep, so the result is deterministic for a given number of threads.
+ * With a single thread, sweeps are performed in the same order as {@link MAValueIteration}.
+ * <p>
+ * If the backup operator is a {@link WarmStartSGBackupOperator}, the backup of each state and agent is warm started from the solution of its
+ * backup in the previous sweep (see {@link #toggleWarmStartBackups(boolean)}). After planning, the Q-value sources read the joint transitions
+ * and rewards of the planned states from the compiled table.
+ */
+public class ParallelMAValueIteration extends MAValueIteration {
+
+	/**
+	 * The number of threads, and partitions of the state space, used for each sweep
+	 */
+	protected int numThreads;
+
+	/**
+	 * Whether backups are warm started from the previous sweep's solution when the backup operator supports it
+	 */
+	protected boolean warmStartBackups = true;
+
+	/**
+	 * The solution of the last backup of each agent and state id, from which the next backup is warm started
+	 */
+	protected Object [][] warmStarts;
+
+
+	/**
+	 * Initializes.
+	 * @param domain the domain in which to perform planing
+	 * @param jointRewardFunction the joint reward function
+	 * @param terminalFunction the terminal state function
+	 * @param discount the discount
+	 * @param hashingFactory the hashing factory to use for storing states
+	 * @param qInit the default Q-value to initialize all values to
+	 * @param backupOperator the backup operator that defines the solution concept being solved
+	 * @param maxDelta the threshold that causes VI to terminate when the max Q-value change is less than it
+	 * @param maxIterations the maximum number of iterations allowed
+	 * @param numThreads the number of threads, and partitions of the state space, to use for each sweep
+	 */
+	public ParallelMAValueIteration(SGDomain domain, JointRewardFunction jointRewardFunction, TerminalFunction terminalFunction,
+									double discount, HashableStateFactory hashingFactory, double qInit, SGBackupOperator backupOperator, double maxDelta, int maxIterations, int numThreads){
+		this(domain, null, jointRewardFunction, terminalFunction, discount, hashingFactory, new ConstantValueFunction(qInit), backupOperator, maxDelta, maxIterations, numThreads);
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param domain the domain in which to perform planing
+	 * @param agentDefinitions the agents involved in the planning problem
+	 * @param jointRewardFunction the joint reward function
+	 * @param terminalFunction the terminal state function
+	 * @param discount the discount
+	 * @param hashingFactory the hashing factory to use for storing states
+	 * @param vInit the state value initialization function to use.
+	 * @param backupOperator the backup operator that defines the solution concept being solved
+	 * @param maxDelta the threshold that causes VI to terminate when the max Q-value change is less than it
+	 * @param maxIterations the maximum number of iterations allowed
+	 * @param numThreads the number of threads, and partitions of the state space, to use for each sweep
+	 */
+	public ParallelMAValueIteration(SGDomain domain, List<SGAgentType> agentDefinitions, JointRewardFunction jointRewardFunction, TerminalFunction terminalFunction,
+									double discount, HashableStateFactory hashingFactory, ValueFunction vInit, SGBackupOperator backupOperator, double maxDelta, int maxIterations, int numThreads){
+		super(domain, agentDefinitions, jointRewardFunction, terminalFunction, discount, hashingFactory, vInit, backupOperator, maxDelta, maxIterations);
+		this.setNumThreads(numThreads);
+	}
+
+
+	/**
+	 * Returns the number of threads, and partitions of the state space, used for each sweep.
+	 * @return the number of threads used for each sweep
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+
+	/**
+	 * Sets the number of threads, and partitions of the state space, used for each sweep. Because states are partitioned by thread,
+	 * the computed value functions may differ slightly with the number of threads, but are deterministic for a given number of threads.
+	 * @param numThreads the number of threads to use for each sweep
+	 */
+	public void setNumThreads(int numThreads) {
+		if(numThreads < 1){
+			throw new RuntimeException("Parallel value iteration requires at least one thread; " + numThreads + " were requested.");
+		}
+		this.numThreads = numThreads;
+	}
+
+
+	/**
+	 * Sets whether the backup of each state and agent is warm started from the solution of its backup in the previous sweep when the backup operator
+	 * is a {@link WarmStartSGBackupOperator}. The default is true.
+	 * @param warmStartBackups whether backups are warm started
+	 */
+	public void toggleWarmStartBackups(boolean warmStartBackups){
+		this.warmStartBackups = warmStartBackups;
+	}
+
+
+	@Override
+	public boolean performStateReachabilityFrom(State s) {
+		boolean foundNewStates = super.performStateReachabilityFrom(s);
+		if(foundNewStates){
+			this.compiledTransitions = null;
+			this.warmStarts = null;
+		}
+		return foundNewStates;
+	}
+
+
+	@Override
+	public void runVI() {
+
+		if(this.states.isEmpty()){
+			throw new RuntimeException("No states to iterate over. Note that state reacability needs to be performed before runVI() can be called. Consider using planFromState(State s) method instead or using the performStateReachabilityFrom(State s) method first.");
+		}
+
+		CompiledJointTransitions ct = this.compiledJointTransitions();
+		int n = ct.numStates();
+		int nAgents = this.agentDefinitions.size();
+
+		double [][] v = new double[nAgents][n];
+		double [][] vPrev = new double[nAgents][];
+		for(int a = 0; a < nAgents; a++){
+			BackupBasedQSource qsource = (BackupBasedQSource)this.qSources.agentQSource(a);
+			for(int i = 0; i < n; i++){
+				v[a][i] = qsource.getValue(ct.state(i));
+			}
+			vPrev[a] = v[a].clone();
+		}
+
+		if(this.warmStarts == null){
+			this.warmStarts = new Object[nAgents][n];
+		}
+
+		int nParts = Math.max(1, Math.min(this.numThreads, n));
+		int [] partitions = new int[nParts+1];
+		for(int p = 0; p <= nParts; p++){
+			partitions[p] = (int)((long)n * p / nParts);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(this.numThreads);
+		int i;
+		try{
+			for(i = 0; i < this.maxIterations; i++){
+
+				double maxChange = pool.invoke(new SweepTask(ct, v, vPrev, partitions, 0, nParts));
+				for(int a = 0; a < nAgents; a++){
+					System.arraycopy(v[a], 0, vPrev[a], 0, n);
+				}
+
+				DPrint.cl(this.debugCode, "Finished pass: " + i + " with max change: " + maxChange);
+
+				if(maxChange < this.maxDelta){
+					break;
+				}
+
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		for(int a = 0; a < nAgents; a++){
+			BackupBasedQSource qsource = (BackupBasedQSource)this.qSources.agentQSource(a);
+			for(int s = 0; s < n; s++){
+				qsource.setValue(ct.state(s), v[a][s]);
+			}
+		}
+
+		DPrint.cl(this.debugCode, "Performed " + i + " passes.");
+
+	}
+
+
+	/**
+	 * Returns the compiled joint transitions of the reachable states, compiling them if the reachable states have changed since they were last compiled.
+	 * @return the compiled joint transitions
+	 */
+	protected CompiledJointTransitions compiledJointTransitions(){
+		if(this.compiledTransitions == null || !this.compiledTransitions.compiledFrom(this.states)){
+			this.compiledTransitions = new CompiledJointTransitions(this.states, this.hashingFactory, new JointActionIndexer(this.agentDefinitions),
+					(FullJointModel)this.jointModel, this.jointRewardFunction, this.terminalFunction);
+			this.warmStarts = null;
+		}
+		return this.compiledTransitions;
+	}
+
+
+	/**
+	 * A {@link RecursiveTask} that sweeps a range of partitions by recursively splitting it, and returns the
+	 * maximum value change of any agent over all partitions in the range.
+	 */
+	protected class SweepTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		protected CompiledJointTransitions ct;
+		protected double [][] v;
+		protected double [][] vPrev;
+		protected int [] partitions;
+		protected int begin;
+		protected int end;
+
+
+		/**
+		 * Initializes.
+		 * @param ct the compiled joint transitions
+		 * @param v the values of each agent, updated in place
+		 * @param vPrev the values of each agent after the previous sweep
+		 * @param partitions the state id offsets of the partitions
+		 * @param begin the first partition to sweep
+		 * @param end the partition after the last partition to sweep
+		 */
+		public SweepTask(CompiledJointTransitions ct, double[][] v, double[][] vPrev, int[] partitions, int begin, int end) {
+			this.ct = ct;
+			this.v = v;
+			this.vPrev = vPrev;
+			this.partitions = partitions;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		protected Double compute() {
+			if(this.end - this.begin == 1){
+				return this.sweep(this.partitions[this.begin], this.partitions[this.end]);
+			}
+
+			int mid = (this.begin + this.end) / 2;
+			SweepTask left = new SweepTask(this.ct, this.v, this.vPrev, this.partitions, this.begin, mid);
+			SweepTask right = new SweepTask(this.ct, this.v, this.vPrev, this.partitions, mid, this.end);
+			left.fork();
+			double rightDelta = right.compute();
+			double leftDelta = left.join();
+			return Math.max(leftDelta, rightDelta);
+		}
+
+
+		/**
+		 * Backs up the value functions of all agents in the states of a partition.
+		 * @param sBegin the first state id of the partition
+		 * @param sEnd one past the last state id of the partition
+		 * @return the maximum value change
+		 */
+		protected double sweep(int sBegin, int sEnd){
+
+			Map<Integer, QSourceForSingleAgent> sources = new HashMap<Integer, QSourceForSingleAgent>(this.v.length);
+			for(int a = 0; a < this.v.length; a++){
+				sources.put(a, new PartitionQSource(this.ct, a, this.v[a], this.vPrev[a], sBegin, sEnd));
+			}
+			HashMapAgentQSourceMap qSourceMap = new HashMapAgentQSourceMap(sources);
+
+			WarmStartSGBackupOperator warmStartOperator = warmStartBackups && backupOperator instanceof WarmStartSGBackupOperator ?
+					(WarmStartSGBackupOperator)backupOperator : null;
+
+			double maxChange = Double.NEGATIVE_INFINITY;
+			for(int s = sBegin; s < sEnd; s++){
+				State state = this.ct.state(s).s();
+				for(int a = 0; a < this.v.length; a++){
+					double newVal;
+					if(warmStartOperator != null){
+						WarmStartBackup backup = warmStartOperator.performBackup(state, a, agentDefinitions, qSourceMap, warmStarts[a][s]);
+						warmStarts[a][s] = backup.solution;
+						newVal = backup.value;
+					}
+					else{
+						newVal = backupOperator.performBackup(state, a, agentDefinitions, qSourceMap);
+					}
+					maxChange = Math.max(maxChange, Math.abs(newVal - this.v[a][s]));
+					this.v[a][s] = newVal;
+				}
+			}
+			return maxChange;
+		}
+
+	}
+
+
+	/**
+	 * A {@link JointActionQSource} for an agent during a sweep of a partition, which computes the Q-values of the compiled states from
+	 * the agent's current values of the states in the partition and its previous sweep values of all other states.
+	 */
+	protected class PartitionQSource implements JointActionQSource {
+
+		protected CompiledJointTransitions ct;
+		protected int agent;
+		protected double [] v;
+		protected double [] vPrev;
+		protected int begin;
+		protected int end;
+
+
+		public PartitionQSource(CompiledJointTransitions ct, int agent, double[] v, double[] vPrev, int begin, int end) {
+			this.ct = ct;
+			this.agent = agent;
+			this.v = v;
+			this.vPrev = vPrev;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		public JointQValues jointActionQValues(State s, JointActionIndexer indexer) {
+			int id = this.stateId(s);
+			JointActionSpace space = this.ct.jointActionSpace(id);
+			double [] q = new double[space.numJointActions()];
+			for(int i = 0; i < q.length; i++){
+				q[i] = this.ct.qValue(id, i, this.agent, discount, this.v, this.vPrev, this.begin, this.end);
+			}
+			return new JointQValues(space, q);
+		}
+
+		@Override
+		public JAQValue getQValueFor(State s, JointAction ja) {
+			int id = this.stateId(s);
+			int jaId = this.ct.jointActionSpace(id).jointActionId(ja);
+			if(jaId == -1){
+				throw new RuntimeException("Joint action " + ja + " is not applicable in the queried state.");
+			}
+			return new JAQValue(s, ja, this.ct.qValue(id, jaId, this.agent, discount, this.v, this.vPrev, this.begin, this.end));
+		}
+
+		protected int stateId(State s){
+			int id = this.ct.stateId(s, hashingFactory);
+			if(id == -1){
+				throw new RuntimeException("Cannot compute the Q-values of a state that was not found during state reachability.");
+			}
+			return id;
+		}
+
+	}
+
+}
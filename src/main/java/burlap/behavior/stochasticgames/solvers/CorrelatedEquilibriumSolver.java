@@ -2,8 +2,6 @@ package burlap.behavior.stochasticgames.solvers;
 
 import scpsolver.constraints.LinearBiggerThanEqualsConstraint;
 import scpsolver.constraints.LinearEqualsConstraint;
-import scpsolver.lpsolver.LinearProgramSolver;
-import scpsolver.lpsolver.SolverFactory;
 import scpsolver.problems.LinearProgram;
 
 /**
@@ -286,8 +284,7 @@ public class CorrelatedEquilibriumSolver {
 		int nn = nRows*nCols;
 		
 		lp.setMinProblem(false); 
-		LinearProgramSolver solver = SolverFactory.newDefault(); 
-		double[] sol = solver.solve(lp);
+		double[] sol = GeneralBimatrixSolverTools.solveLinearProgram(lp);
 		
 		double [][] jointActionProbs = new double[nRows][nCols];
 		for(int i = 0; i < nn; i++){
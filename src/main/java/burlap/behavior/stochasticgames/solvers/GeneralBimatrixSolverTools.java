@@ -1,5 +1,9 @@
 package burlap.behavior.stochasticgames.solvers;
 
+import scpsolver.lpsolver.LinearProgramSolver;
+import scpsolver.lpsolver.SolverFactory;
+import scpsolver.problems.LinearProgram;
+
 
 /**
  * A class holding static methods for performing common operations on bimatrix games.
@@ -11,6 +15,55 @@ public class GeneralBimatrixSolverTools {
     private GeneralBimatrixSolverTools() {
         // do nothing
     }
+
+
+	/**
+	 * The lock on which the solver factory is called, because it shares one service loader, and the solver instances it creates, between callers
+	 */
+	private static final Object FACTORY_LOCK = new Object();
+
+
+	/**
+	 * The linear program solver of each thread. A solver instance keeps the native problem it is solving in a field, so it cannot be shared
+	 * between threads, but the native library solves separate problems concurrently.
+	 */
+	private static final ThreadLocal<LinearProgramSolver> SOLVERS = new ThreadLocal<LinearProgramSolver>(){
+		@Override
+		protected LinearProgramSolver initialValue() {
+			return newSolver();
+		}
+	};
+
+
+	/**
+	 * Solves a linear program with the default solver. Each calling thread uses its own solver instance, so this method can be called from
+	 * multiple threads and linear programs are solved concurrently.
+	 * @param lp the linear program
+	 * @return the solution
+	 */
+	public static double [] solveLinearProgram(LinearProgram lp){
+		return SOLVERS.get().solve(lp);
+	}
+
+
+	/**
+	 * Creates a new instance of the default solver. The first call loads the native solver library through the solver factory.
+	 * @return a new instance of the default solver
+	 */
+	private static LinearProgramSolver newSolver(){
+		LinearProgramSolver factorySolver;
+		synchronized(FACTORY_LOCK){
+			factorySolver = SolverFactory.newDefault();
+		}
+		if(factorySolver == null){
+			throw new RuntimeException("No linear program solver could be loaded.");
+		}
+		try{
+			return factorySolver.getClass().newInstance();
+		} catch(Exception e){
+			throw new RuntimeException("Could not create an instance of the linear program solver " + factorySolver.getClass().getName(), e);
+		}
+	}
 	
 	
 	/**
@@ -1,8 +1,6 @@
 package burlap.behavior.stochasticgames.solvers;
 
 import scpsolver.constraints.LinearBiggerThanEqualsConstraint;
-import scpsolver.lpsolver.LinearProgramSolver;
-import scpsolver.lpsolver.SolverFactory;
 import scpsolver.problems.LinearProgram;
 
 public class MinMaxSolver {
@@ -56,8 +54,7 @@ public class MinMaxSolver {
 		
 		//solve it
 		lp.setMinProblem(true);
-		LinearProgramSolver solver = SolverFactory.newDefault(); 
-		double[] sol = solver.solve(lp);
+		double[] sol = GeneralBimatrixSolverTools.solveLinearProgram(lp);
 		
 		//convert LP solution into probability vector.
 		double z = 0.;
@@ -79,4 +76,214 @@ public class MinMaxSolver {
 	
 	
 	
+
+	/**
+	 * Computes the minmax strategies of both players of the zero-sum game defined by the given row player payoff matrix, warm started from the
+	 * solution of a previous, similar game (e.g., the same state on the previous sweep of value iteration). If the previous solution's supports
+	 * have the same size, the strategies that make each player indifferent among the other player's support actions are solved for directly. If the
+	 * resulting strategies are non-negative and form an equilibrium of the whole game, which is the case whenever the optimal supports have not changed,
+	 * they are returned without solving a linear program. Otherwise, both strategies are computed with
+	 * {@link #getRowPlayersStrategy(double[][])} and {@link #getColPlayersStrategy(double[][])}.
+	 * <p>
+	 * If the game has more than one equilibrium, the warm started solution may be a different equilibrium than the linear program would find;
+	 * its value for the zero-sum game is the same.
+	 * @param rowPayoff the payoffs of the row player; the payoffs of the column player are their negation
+	 * @param previous the solution from which to warm start, or null
+	 * @return the minmax strategies of both players
+	 */
+	public static MinMaxSolution getMinMaxSolution(double [][] rowPayoff, MinMaxSolution previous){
+		if(previous != null && previous.rowStrategy.length == rowPayoff.length && previous.colStrategy.length == rowPayoff[0].length){
+			MinMaxSolution warm = solveOnSupports(rowPayoff, previous.rowSupport(), previous.colSupport());
+			if(warm != null){
+				return warm;
+			}
+		}
+		double [] rowStrategy = getRowPlayersStrategy(rowPayoff);
+		double [] colStrategy = getColPlayersStrategy(GeneralBimatrixSolverTools.getNegatedMatrix(rowPayoff));
+		return new MinMaxSolution(rowStrategy, colStrategy);
+	}
+
+
+	/**
+	 * Solves for the strategies with the given supports that make each player indifferent among the other player's support actions and
+	 * returns them if they are an equilibrium of the game.
+	 * @param a the payoffs of the row player
+	 * @param rowSupport the actions of the row player's support
+	 * @param colSupport the actions of the column player's support
+	 * @return the equilibrium strategies, or null if the supports do not define an equilibrium
+	 */
+	protected static MinMaxSolution solveOnSupports(double [][] a, int [] rowSupport, int [] colSupport){
+
+		int k = rowSupport.length;
+		if(k == 0 || k != colSupport.length){
+			return null;
+		}
+
+		//column strategy: each row support action has value v; the probabilities sum to 1
+		double [][] ym = new double[k+1][k+1];
+		double [][] xm = new double[k+1][k+1];
+		for(int r = 0; r < k; r++){
+			for(int c = 0; c < k; c++){
+				ym[r][c] = a[rowSupport[r]][colSupport[c]];
+				xm[c][r] = a[rowSupport[r]][colSupport[c]];
+			}
+			ym[r][k] = -1.;
+			xm[r][k] = -1.;
+			ym[k][r] = 1.;
+			xm[k][r] = 1.;
+		}
+		double [] b = new double[k+1];
+		b[k] = 1.;
+
+		double [] ySol = solveLinearSystem(ym, b.clone());
+		double [] xSol = ySol != null ? solveLinearSystem(xm, b.clone()) : null;
+		if(xSol == null){
+			return null;
+		}
+
+		double scale = 1.;
+		for(double [] row : a){
+			for(double d : row){
+				scale = Math.max(scale, Math.abs(d));
+			}
+		}
+		double tol = SOLUTION_TOLERANCE * scale;
+
+		double [] x = new double[a.length];
+		double [] y = new double[a[0].length];
+		for(int i = 0; i < k; i++){
+			if(xSol[i] < -SOLUTION_TOLERANCE || ySol[i] < -SOLUTION_TOLERANCE){
+				return null;
+			}
+			x[rowSupport[i]] = Math.max(0., xSol[i]);
+			y[colSupport[i]] = Math.max(0., ySol[i]);
+		}
+		double v = xSol[k];
+
+		//neither player can improve on v by deviating to any action
+		for(int j = 0; j < y.length; j++){
+			double payoff = 0.;
+			for(int i = 0; i < x.length; i++){
+				payoff += x[i] * a[i][j];
+			}
+			if(payoff < v - tol){
+				return null;
+			}
+		}
+		for(int i = 0; i < x.length; i++){
+			double payoff = GeneralBimatrixSolverTools.dot(a[i], y);
+			if(payoff > v + tol){
+				return null;
+			}
+		}
+
+		return new MinMaxSolution(x, y);
+	}
+
+
+	/**
+	 * Solves a square linear system with Gaussian elimination with partial pivoting. Both arguments are overwritten.
+	 * @param m the coefficient matrix
+	 * @param b the right hand side
+	 * @return the solution, or null if the system is singular
+	 */
+	protected static double [] solveLinearSystem(double [][] m, double [] b){
+		int n = b.length;
+		for(int c = 0; c < n; c++){
+			int pivot = c;
+			for(int r = c+1; r < n; r++){
+				if(Math.abs(m[r][c]) > Math.abs(m[pivot][c])){
+					pivot = r;
+				}
+			}
+			if(Math.abs(m[pivot][c]) < 1e-12){
+				return null;
+			}
+			double [] tmpRow = m[c];
+			m[c] = m[pivot];
+			m[pivot] = tmpRow;
+			double tmp = b[c];
+			b[c] = b[pivot];
+			b[pivot] = tmp;
+			for(int r = c+1; r < n; r++){
+				double f = m[r][c] / m[c][c];
+				if(f != 0.){
+					for(int cc = c; cc < n; cc++){
+						m[r][cc] -= f * m[c][cc];
+					}
+					b[r] -= f * b[c];
+				}
+			}
+		}
+		double [] sol = new double[n];
+		for(int r = n-1; r >= 0; r--){
+			double sum = b[r];
+			for(int c = r+1; c < n; c++){
+				sum -= m[r][c] * sol[c];
+			}
+			sol[r] = sum / m[r][r];
+		}
+		return sol;
+	}
+
+
+	/**
+	 * The probability above which an action is considered part of a strategy's support
+	 */
+	public static final double SUPPORT_THRESHOLD = 1e-7;
+
+	/**
+	 * The relative tolerance used when checking whether warm started strategies are an equilibrium
+	 */
+	public static final double SOLUTION_TOLERANCE = 1e-9;
+
+
+	/**
+	 * The minmax strategies of the row and column players of a zero-sum game.
+	 */
+	public static class MinMaxSolution {
+
+		public double [] rowStrategy;
+		public double [] colStrategy;
+
+		public MinMaxSolution(double[] rowStrategy, double[] colStrategy) {
+			this.rowStrategy = rowStrategy;
+			this.colStrategy = colStrategy;
+		}
+
+		/**
+		 * Returns the row player actions with probability above {@link #SUPPORT_THRESHOLD}.
+		 * @return the row player's support
+		 */
+		public int [] rowSupport(){
+			return support(this.rowStrategy);
+		}
+
+		/**
+		 * Returns the column player actions with probability above {@link #SUPPORT_THRESHOLD}.
+		 * @return the column player's support
+		 */
+		public int [] colSupport(){
+			return support(this.colStrategy);
+		}
+
+		protected static int [] support(double [] strategy){
+			int n = 0;
+			for(double p : strategy){
+				if(p > SUPPORT_THRESHOLD){
+					n++;
+				}
+			}
+			int [] support = new int[n];
+			n = 0;
+			for(int i = 0; i < strategy.length; i++){
+				if(strategy[i] > SUPPORT_THRESHOLD){
+					support[n++] = i;
+				}
+			}
+			return support;
+		}
+
+	}
+	
 }
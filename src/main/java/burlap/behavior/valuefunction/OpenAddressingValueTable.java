@@ -0,0 +1,316 @@
+package burlap.behavior.valuefunction;
+
+import burlap.datastructures.HashMixing;
+import burlap.statehashing.HashableState;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link ValueTable} implemented as an open-addressing hash table with linear probing that stores values in a
+ * primitive <code>double[]</code>, so that storing a value never allocates. The hash code of each stored state is cached
+ * alongside it, so that probing can reject non-matching states and the table can be resized without recomputing
+ * any state hash codes.
+ * <p>
+ * Stored states cannot be removed individually; use {@link #clear()} to remove all of them. Like those of a {@link java.util.HashMap},
+ * the iterators of the {@link #keySet()} and {@link #entrySet()} are fail-fast: if a state is added to or the table is cleared during
+ * iteration by anything other than the iterator, the iterator throws a {@link ConcurrentModificationException}.
+ */
+public class OpenAddressingValueTable extends AbstractMap<HashableState, Double> implements ValueTable {
+
+	/**
+	 * The default initial capacity
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The maximum fraction of occupied slots before the table is resized
+	 */
+	protected static final double LOAD_FACTOR = 0.5;
+
+
+	/**
+	 * The stored states; null for empty slots
+	 */
+	protected HashableState [] keys;
+
+	/**
+	 * The (mixed) hash code of the state in each slot
+	 */
+	protected int [] hashes;
+
+	/**
+	 * The value of the state in each slot
+	 */
+	protected double [] values;
+
+	/**
+	 * The number of stored states
+	 */
+	protected int size = 0;
+
+	/**
+	 * The number of stored states at which the table will be resized
+	 */
+	protected int threshold;
+
+	/**
+	 * The number of structural modifications (insertions of new states and clears), used to make iterators fail-fast
+	 */
+	protected int modCount = 0;
+
+
+	/**
+	 * Initializes with a default initial capacity.
+	 */
+	public OpenAddressingValueTable() {
+		this(DEFAULT_CAPACITY);
+	}
+
+
+	/**
+	 * Initializes with enough capacity to store the given number of states without resizing.
+	 * @param expectedSize the number of states the table is expected to store
+	 */
+	public OpenAddressingValueTable(int expectedSize) {
+		int capacity = 16;
+		while(capacity * LOAD_FACTOR < expectedSize){
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+	}
+
+
+	@Override
+	public double getValue(HashableState sh, double absentValue) {
+		int slot = this.slot(sh, HashMixing.mix(sh.hashCode()));
+		return slot >= 0 ? this.values[slot] : absentValue;
+	}
+
+	@Override
+	public void putValue(HashableState sh, double v) {
+		int h = HashMixing.mix(sh.hashCode());
+		int slot = this.slot(sh, h);
+		if(slot >= 0){
+			this.values[slot] = v;
+			return;
+		}
+		slot = -(slot + 1);
+		this.keys[slot] = sh;
+		this.hashes[slot] = h;
+		this.values[slot] = v;
+		this.size++;
+		this.modCount++;
+		if(this.size > this.threshold){
+			this.rehash(this.keys.length << 1);
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof HashableState && this.slot((HashableState)key, HashMixing.mix(key.hashCode())) >= 0;
+	}
+
+	@Override
+	public Double get(Object key) {
+		if(!(key instanceof HashableState)){
+			return null;
+		}
+		int slot = this.slot((HashableState)key, HashMixing.mix(key.hashCode()));
+		return slot >= 0 ? this.values[slot] : null;
+	}
+
+	@Override
+	public Double put(HashableState sh, Double v) {
+		Double previous = this.get(sh);
+		this.putValue(sh, v);
+		return previous;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(this.keys, null);
+		this.size = 0;
+		this.modCount++;
+	}
+
+	@Override
+	public Set<HashableState> keySet() {
+		return new KeySet();
+	}
+
+	@Override
+	public Set<Entry<HashableState, Double>> entrySet() {
+		return new EntrySet();
+	}
+
+
+	/**
+	 * Returns the slot storing the given state, or -(insertionSlot + 1) if it is not stored.
+	 * @param sh the hashed state
+	 * @param h the mixed hash code of the state
+	 * @return the slot storing the state, or -(insertionSlot + 1) if it is not stored.
+	 */
+	protected int slot(HashableState sh, int h){
+		int mask = this.keys.length - 1;
+		int i = h & mask;
+		HashableState k;
+		while((k = this.keys[i]) != null){
+			if(this.hashes[i] == h && (k == sh || k.equals(sh))){
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -(i + 1);
+	}
+
+
+	/**
+	 * Allocates empty storage with the given capacity.
+	 * @param capacity the number of slots; must be a power of 2
+	 */
+	protected void allocate(int capacity){
+		this.keys = new HashableState[capacity];
+		this.hashes = new int[capacity];
+		this.values = new double[capacity];
+		this.threshold = (int)(capacity * LOAD_FACTOR);
+	}
+
+
+	/**
+	 * Moves all stored states into new storage with the given capacity.
+	 * @param capacity the new number of slots; must be a power of 2
+	 */
+	protected void rehash(int capacity){
+		HashableState [] oldKeys = this.keys;
+		int [] oldHashes = this.hashes;
+		double [] oldValues = this.values;
+		this.allocate(capacity);
+		int mask = capacity - 1;
+		for(int j = 0; j < oldKeys.length; j++){
+			if(oldKeys[j] == null){
+				continue;
+			}
+			int i = oldHashes[j] & mask;
+			while(this.keys[i] != null){
+				i = (i + 1) & mask;
+			}
+			this.keys[i] = oldKeys[j];
+			this.hashes[i] = oldHashes[j];
+			this.values[i] = oldValues[j];
+		}
+	}
+
+
+	/**
+	 * A fail-fast iterator over the occupied slots.
+	 */
+	protected abstract class SlotIterator<T> implements Iterator<T> {
+
+		protected int next = this.advance(0);
+		protected int expectedModCount = modCount;
+
+		protected int advance(int from){
+			while(from < keys.length && keys[from] == null){
+				from++;
+			}
+			return from;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next < keys.length;
+		}
+
+		/**
+		 * Returns the next occupied slot.
+		 * @return the next occupied slot
+		 */
+		protected int nextSlot(){
+			if(modCount != this.expectedModCount){
+				throw new ConcurrentModificationException();
+			}
+			if(this.next >= keys.length){
+				throw new NoSuchElementException();
+			}
+			int slot = this.next;
+			this.next = this.advance(this.next + 1);
+			return slot;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("States cannot be removed from an OpenAddressingValueTable.");
+		}
+	}
+
+
+	/**
+	 * A {@link Set} view of the stored states.
+	 */
+	protected class KeySet extends AbstractSet<HashableState> {
+
+		@Override
+		public Iterator<HashableState> iterator() {
+			return new SlotIterator<HashableState>() {
+				@Override
+				public HashableState next() {
+					return keys[this.nextSlot()];
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+
+	/**
+	 * A {@link Set} view of the stored states and their values. Setting the value of an entry stores it in the table.
+	 */
+	protected class EntrySet extends AbstractSet<Entry<HashableState, Double>> {
+
+		@Override
+		public Iterator<Entry<HashableState, Double>> iterator() {
+			return new SlotIterator<Entry<HashableState, Double>>() {
+				@Override
+				public Entry<HashableState, Double> next() {
+					final int slot = this.nextSlot();
+					final HashableState sh = keys[slot];
+					return new SimpleEntry<HashableState, Double>(sh, values[slot]){
+						private static final long serialVersionUID = 1L;
+
+						@Override
+						public Double setValue(Double value) {
+							putValue(sh, value);
+							return super.setValue(value);
+						}
+					};
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package burlap.behavior.valuefunction;
+
+import burlap.statehashing.HashableState;
+
+import java.util.Map;
+
+/**
+ * A {@link Map} from {@link HashableState} to value that can also be read and written with primitive doubles, so that implementations
+ * that store values as primitives, such as {@link OpenAddressingValueTable}, do not box a {@link Double} on every write. Tabular planning
+ * algorithms, such as {@link burlap.behavior.singleagent.planning.stochastic.DynamicProgramming}, store their value function estimates in a
+ * {@link Map} and use the primitive methods when the map is a {@link ValueTable}.
+ * <p>
+ * Implementations are not required to be thread safe, but storing the value of a state that is already in the table must not
+ * invalidate iteration over the {@link #keySet()}.
+ */
+public interface ValueTable extends Map<HashableState, Double> {
+
+	/**
+	 * Returns the value stored for the given state, or the given absent value if no value is stored for it.
+	 * @param sh the hashed state
+	 * @param absentValue the value to return if no value is stored for the state
+	 * @return the value stored for the state, or absentValue if no value is stored.
+	 */
+	double getValue(HashableState sh, double absentValue);
+
+	/**
+	 * Stores the value for the given state, replacing any previously stored value.
+	 * @param sh the hashed state
+	 * @param v the value to store
+	 */
+	void putValue(HashableState sh, double v);
+
+}
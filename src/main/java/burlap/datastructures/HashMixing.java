@@ -0,0 +1,42 @@
+package burlap.datastructures;
+
+/**
+ * Bit mixing functions (the MurmurHash3 finalizers) for the hash codes used by open-addressing tables and hashed features. Hash tables that
+ * probe linearly, or that take the low bits of a hash code as an index, are sensitive to clustered hash codes, and mixing spreads their bits
+ * across the whole word.
+ */
+public class HashMixing {
+
+	private HashMixing(){
+
+	}
+
+	/**
+	 * Spreads the bits of a 32-bit hash code.
+	 * @param h the hash code
+	 * @return the mixed hash code
+	 */
+	public static int mix(int h){
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Spreads the bits of a 64-bit value.
+	 * @param h the value
+	 * @return the mixed value
+	 */
+	public static long mix(long h){
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -0,0 +1,147 @@
+package burlap.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * A fixed capacity array-backed sum tree over the non-negative weights of the indices 0, ..., capacity-1. Setting a weight and finding the index
+ * at which a prefix sum of the weights is reached both take O(lg(n)) time, which makes this tree useful for sampling indices in proportion to
+ * their weights, such as with {@link #sample(double)}. Unlike {@link StochasticTree}, elements are identified by their index rather than hashed,
+ * and the tree is stored in primitive arrays, so updating weights does not allocate. The tree also maintains the minimum weight of the indices that
+ * have been set.
+ */
+public class SumTree {
+
+	/**
+	 * The number of leaves
+	 */
+	protected int capacity;
+
+	/**
+	 * The sums of the weights of each subtree; node 1 is the root, the children of node i are 2i and 2i+1, and leaf j is node capacity+j.
+	 */
+	protected double [] sums;
+
+	/**
+	 * The minimums of the set weights of each subtree, with the same layout as {@link #sums}
+	 */
+	protected double [] mins;
+
+
+	/**
+	 * Initializes a tree in which no weight is set.
+	 * @param capacity the number of indices
+	 */
+	public SumTree(int capacity){
+		if(capacity < 1){
+			throw new RuntimeException("SumTree requires a capacity > 0; was " + capacity);
+		}
+		int leaves = 1;
+		while(leaves < capacity){
+			leaves *= 2;
+		}
+		this.capacity = leaves;
+		this.sums = new double[2*leaves];
+		this.mins = new double[2*leaves];
+		this.clear();
+	}
+
+
+	/**
+	 * Returns the number of indices whose weights may be set.
+	 * @return the number of indices whose weights may be set
+	 */
+	public int capacity(){
+		return this.capacity;
+	}
+
+
+	/**
+	 * Sets the weight of an index.
+	 * @param i the index
+	 * @param w the non-negative weight
+	 */
+	public void set(int i, double w){
+		if(w < 0.){
+			throw new RuntimeException("SumTree weights must be non-negative; was " + w);
+		}
+		int node = this.capacity + i;
+		this.sums[node] = w;
+		this.mins[node] = w;
+		node /= 2;
+		while(node > 0){
+			this.sums[node] = this.sums[2*node] + this.sums[2*node+1];
+			this.mins[node] = Math.min(this.mins[2*node], this.mins[2*node+1]);
+			node /= 2;
+		}
+	}
+
+
+	/**
+	 * Returns the weight of an index; 0 if it is not set.
+	 * @param i the index
+	 * @return the weight of the index
+	 */
+	public double get(int i){
+		return this.sums[this.capacity + i];
+	}
+
+
+	/**
+	 * Returns the sum of all weights.
+	 * @return the sum of all weights
+	 */
+	public double total(){
+		return this.sums[1];
+	}
+
+
+	/**
+	 * Returns the minimum weight of the indices that have been set since the last {@link #clear()}.
+	 * @return the minimum set weight; {@link Double#POSITIVE_INFINITY} if no weight is set
+	 */
+	public double min(){
+		return this.mins[1];
+	}
+
+
+	/**
+	 * Returns the index i such that the sum of the weights of the indices before i is at most the given value and the sum including i exceeds it.
+	 * Values outside [0, {@link #total()}) are clamped to the first or last index with a positive weight.
+	 * @param value the prefix sum value
+	 * @return the index at which the prefix sum reaches the value
+	 */
+	public int find(double value){
+		int node = 1;
+		while(node < this.capacity){
+			int left = 2*node;
+			if((value < this.sums[left] && this.sums[left] > 0.) || this.sums[left+1] <= 0.){
+				node = left;
+			}
+			else{
+				value -= this.sums[left];
+				node = left+1;
+			}
+		}
+		return node - this.capacity;
+	}
+
+
+	/**
+	 * Samples an index in proportion to its weight.
+	 * @param u a uniform random value in [0, 1)
+	 * @return the sampled index
+	 */
+	public int sample(double u){
+		return this.find(u * this.total());
+	}
+
+
+	/**
+	 * Unsets the weights of all indices.
+	 */
+	public void clear(){
+		Arrays.fill(this.sums, 0.);
+		Arrays.fill(this.mins, Double.POSITIVE_INFINITY);
+	}
+
+}
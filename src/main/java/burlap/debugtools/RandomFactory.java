@@ -14,6 +14,11 @@ import java.util.*;
  * To synchronize, just seed either a mapped random generator or the default in the
  * main method and use the get method to retrieve the random object for all other
  * classes. To break the fixed sequence, just construct it without a seed
+ * <p>
+ * A thread may also use its own factory instead of the shared one (see {@link #setThreadFactory(RandomFactory)}), which lets
+ * code that runs concurrently, such as parallel experiment trials, get independent and reproducible random generators
+ * from the same static methods. A factory constructed with a base seed (see {@link #RandomFactory(long)}) creates every
+ * generator that was not explicitly seeded with a seed derived from the base seed and the generator's id.
  * 
  * 
  * @author James MacGlashan
@@ -22,6 +27,11 @@ import java.util.*;
 public class RandomFactory {
 
 	private static RandomFactory factory = new RandomFactory();
+
+	/**
+	 * The factory used by each thread instead of the shared factory, if any
+	 */
+	private static ThreadLocal<RandomFactory> threadFactory = new ThreadLocal<RandomFactory>();
 	
 	/**
 	 * A default random number generator
@@ -37,6 +47,11 @@ public class RandomFactory {
 	 * The set of random number generators that have been constructed for different String codes
 	 */
 	Map <String, Random> stringMapped;
+
+	/**
+	 * The seed from which the seeds of generators that are not explicitly seeded are derived; null if they are unseeded
+	 */
+	Long baseSeed;
 	
 	
 	/**
@@ -67,7 +82,7 @@ public class RandomFactory {
 	 * @return the default random number generator.
 	 */
 	public static Random getDefault(){
-		return factory.ingetDefault();
+		return factory().ingetDefault();
 	}
 	
 	/**
@@ -76,7 +91,7 @@ public class RandomFactory {
 	 * @return the default random number generator
 	 */
 	public static Random seedDefault(long seed){
-		return factory.inseedDefault(seed);
+		return factory().inseedDefault(seed);
 	}
 	
 	
@@ -86,7 +101,7 @@ public class RandomFactory {
 	 * @return the default random generator
 	 */
 	public static Random getOrSeedDefault(long seed){
-		return factory.ingetOrSeedDefault(seed);
+		return factory().ingetOrSeedDefault(seed);
 	}
 	
 	/**
@@ -95,7 +110,7 @@ public class RandomFactory {
 	 * @return the random generator
 	 */
 	public static Random getMapped(int id){
-		return factory.ingetMapped(id);
+		return factory().ingetMapped(id);
 	}
 	
 	
@@ -106,7 +121,7 @@ public class RandomFactory {
 	 * @return the random generator
 	 */
 	public static Random seedMapped(int id, long seed){
-		return factory.inseedMapped(id, seed);
+		return factory().inseedMapped(id, seed);
 	}
 	
 	
@@ -117,7 +132,7 @@ public class RandomFactory {
 	 * @return the random generator
 	 */
 	public static Random getOrSeedMapped(int id, long seed){
-		return factory.ingetOrSeedMapped(id, seed);
+		return factory().ingetOrSeedMapped(id, seed);
 	}
 	
 	
@@ -128,7 +143,7 @@ public class RandomFactory {
 	 * @return the random generator
 	 */
 	public static Random getMapped(String id){
-		return factory.ingetMapped(id);
+		return factory().ingetMapped(id);
 	}
 	
 	
@@ -139,7 +154,7 @@ public class RandomFactory {
 	 * @return the random generator
 	 */
 	public static Random seedMapped(String id, long seed){
-		return factory.inseedMapped(id, seed);
+		return factory().inseedMapped(id, seed);
 	}
 	
 	
@@ -150,7 +165,7 @@ public class RandomFactory {
 	 * @return the random generator
 	 */
 	public static Random getOrSeedMapped(String id, long seed){
-		return factory.ingetOrSeedMapped(id, seed);
+		return factory().ingetOrSeedMapped(id, seed);
 	}
 	
 	
@@ -163,6 +178,41 @@ public class RandomFactory {
 	
 	
 	
+	/**
+	 * Sets the factory that the static methods of this class use in the calling thread, instead of the shared factory.
+	 * @param threadFactory the factory to use in the calling thread; null to use the shared factory again
+	 */
+	public static void setThreadFactory(RandomFactory threadFactory){
+		if(threadFactory == null){
+			RandomFactory.threadFactory.remove();
+		}
+		else{
+			RandomFactory.threadFactory.set(threadFactory);
+		}
+	}
+
+
+	/**
+	 * Returns the factory that the static methods of this class use in the calling thread, if it was set with {@link #setThreadFactory(RandomFactory)}.
+	 * @return the factory of the calling thread, or null if the calling thread uses the shared factory
+	 */
+	public static RandomFactory getThreadFactory(){
+		return threadFactory.get();
+	}
+
+
+	/**
+	 * Returns the factory that the static methods of this class use in the calling thread.
+	 * @return the factory of the calling thread if it has one; the shared factory otherwise
+	 */
+	protected static RandomFactory factory(){
+		RandomFactory f = threadFactory.get();
+		return f != null ? f : factory;
+	}
+
+
+
+
 	/**
 	 * Initializes the map structures
 	 */
@@ -171,6 +221,67 @@ public class RandomFactory {
 		intMapped = new HashMap<Integer, Random>();
 		stringMapped = new HashMap<String, Random>();
 	}
+
+
+	/**
+	 * Initializes the map structures with a base seed. Generators that are not explicitly seeded are created with a seed derived from
+	 * the base seed and their id, so two factories with the same base seed produce the same random sequences.
+	 * @param baseSeed the seed from which the seeds of generators are derived
+	 */
+	public RandomFactory(long baseSeed){
+		this();
+		this.baseSeed = baseSeed;
+	}
+
+
+	/**
+	 * Creates a generator for a generator id that has not been explicitly seeded.
+	 * @param idHash the hash code of the generator id
+	 * @param kind 0 for the default generator, 1 for int ids and 2 for String ids
+	 * @return a new random generator; unseeded if this factory has no base seed
+	 */
+	protected Random newRandom(int idHash, int kind){
+		if(baseSeed == null){
+			return new Random();
+		}
+		return new Random(derivedSeed(idHash, kind));
+	}
+
+
+	/**
+	 * Returns the seed of a generator derived from the base seed and the generator id.
+	 * @param idHash the hash code of the generator id
+	 * @param kind 0 for the default generator, 1 for int ids and 2 for String ids
+	 * @return the seed of the generator
+	 */
+	protected long derivedSeed(int idHash, int kind){
+		long h = baseSeed * 0x9e3779b97f4a7c15L + (((long)kind << 32) | (idHash & 0xffffffffL));
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+
+	/**
+	 * Sets the base seed of this factory and reseeds every generator it has already created, including explicitly seeded ones,
+	 * as if it had been created by a new factory with that base seed. The generators are reseeded in place, so callers
+	 * that hold them see the new sequences and no generators are allocated; this lets a thread reuse one factory for many
+	 * short tasks that each need their own reproducible random sequences.
+	 * @param baseSeed the seed from which the seeds of generators are derived
+	 */
+	public void reseed(long baseSeed){
+		this.baseSeed = baseSeed;
+		if(defaultRandom_ != null){
+			defaultRandom_.setSeed(derivedSeed(0, 0));
+		}
+		for(Map.Entry<Integer, Random> e : intMapped.entrySet()){
+			e.getValue().setSeed(derivedSeed(e.getKey(), 1));
+		}
+		for(Map.Entry<String, Random> e : stringMapped.entrySet()){
+			e.getValue().setSeed(derivedSeed(e.getKey().hashCode(), 2));
+		}
+	}
 	
 	
 	/**
@@ -179,7 +290,7 @@ public class RandomFactory {
 	 */
 	public Random ingetDefault(){
 		if(defaultRandom_ == null){
-			defaultRandom_ = new Random();
+			defaultRandom_ = newRandom(0, 0);
 		}
 		return defaultRandom_;
 	}
@@ -221,7 +332,7 @@ public class RandomFactory {
 			return r;
 		}
 		else{
-			r = new Random();
+			r = newRandom(id, 1);
 			intMapped.put(id, r);
 		}
 		return r;
@@ -267,12 +378,12 @@ public class RandomFactory {
 	 * @return the random generator
 	 */
 	public Random ingetMapped(String id){
-		Random r = intMapped.get(id);
+		Random r = stringMapped.get(id);
 		if(r != null){
 			return r;
 		}
 		else{
-			r = new Random();
+			r = newRandom(id.hashCode(), 2);
 			stringMapped.put(id, r);
 		}
 		return r;
@@ -674,6 +674,8 @@ public class GridWorldDomain implements DomainGenerator {
 			s = s.copy();
 
 			double [] directionProbs = transitionDynamics[actionInd(a.actionName())];
+			//a thread with its own random factory, such as a parallel planning task, uses its own generator instead of the shared one
+			Random rand = RandomFactory.getThreadFactory() != null ? RandomFactory.getMapped(0) : this.rand;
 			double roll = rand.nextDouble();
 			double curSum = 0.;
 			int dir = 0;
@@ -0,0 +1,16 @@
+package burlap.mdp.singleagent.environment;
+
+/**
+ * A factory for generating new {@link Environment} instances. This is useful when independent copies of an environment
+ * are needed, such as when {@link burlap.behavior.singleagent.auxiliary.performance.LearningAlgorithmExperimenter}
+ * runs trials in parallel.
+ */
+public interface EnvironmentFactory {
+
+	/**
+	 * Generates a new {@link Environment} instance.
+	 * @return a new {@link Environment} instance.
+	 */
+	Environment generateEnvironment();
+
+}
@@ -11,9 +11,10 @@ import burlap.statehashing.HashableState;
 import java.util.*;
 
 /**
- * A class for storing a sparse tabular representation of the belief state. That is, each MDP state is assigned a unique
- * identifier using a {@link burlap.behavior.singleagent.auxiliary.StateEnumerator} and this class uses a {@link java.util.Map}
- * to associated the probability mass with each state. MDP states that have zero mass are not stored in the map.
+ * A class for storing a tabular representation of the belief state. That is, each MDP state is assigned a unique
+ * identifier using a {@link burlap.behavior.singleagent.auxiliary.StateEnumerator} and this class stores the probability mass of
+ * each state in a primitive array indexed by its identifier, along with the number of states with non-zero mass. The array grows as states are
+ * enumerated, and can be accessed directly with {@link #getBeliefArray()} for fast belief computations, such as those of {@link TabularBeliefUpdate}.
  * <p>
  * If using a BeliefMDP solver with a {@link TabularBeliefState},
  * it is recommended that you use the {@link burlap.statehashing.ReflectiveHashableStateFactory}, since {@link TabularBeliefState}
@@ -28,9 +29,15 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 	protected StateEnumerator stateEnumerator;
 
 	/**
-	 * The belief vector, stored sparsely with a {@link java.util.Map}.
+	 * The belief vector, indexed by state identifier. Its length may be less than the number of enumerated states, in which case the
+	 * remaining states have zero mass.
 	 */
-	protected Map<Integer, Double> beliefValues = new HashMap<Integer, Double>();
+	protected double [] beliefs = new double[0];
+
+	/**
+	 * The number of states with non-zero mass
+	 */
+	protected int numNonZero = 0;
 
 
 	/**
@@ -50,10 +57,8 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 	 */
 	public TabularBeliefState(TabularBeliefState srcBeliefState){
 		this(srcBeliefState.domain, srcBeliefState.stateEnumerator);
-		this.beliefValues = new HashMap<Integer, Double>(srcBeliefState.beliefValues.size());
-		for(Map.Entry<Integer, Double> e : srcBeliefState.beliefValues.entrySet()){
-			this.beliefValues.put(e.getKey(), e.getValue());
-		}
+		this.beliefs = srcBeliefState.beliefs.clone();
+		this.numNonZero = srcBeliefState.numNonZero;
 	}
 
 
@@ -87,12 +92,66 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 		this.stateEnumerator = stateEnumerator;
 	}
 
+	/**
+	 * Returns a map from the identifier of each state with non-zero mass to its mass. The map is a live view of the belief array: it reflects later
+	 * changes to this belief state, and putting, removing or setting values in it sets the mass of the corresponding states, as with
+	 * {@link #setBelief(int, double)}. Setting a mass to zero removes the state from the map.
+	 * @return a map from the identifier of each state with non-zero mass to its mass
+	 */
 	public Map<Integer, Double> getBeliefValues() {
-		return beliefValues;
+		return new BeliefValuesView();
 	}
 
+	/**
+	 * Sets the mass of each state in the map to its value and the mass of all other states to zero. The values are copied, so later
+	 * changes to the map do not affect this belief state.
+	 * @param beliefValues a map from state identifiers to their mass
+	 */
 	public void setBeliefValues(Map<Integer, Double> beliefValues) {
-		this.beliefValues = beliefValues;
+		this.zeroOutBeliefVector();
+		for(Map.Entry<Integer, Double> e : beliefValues.entrySet()){
+			this.setBelief(e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * Returns the belief array of this belief state, indexed by state identifier, without copying it. Its length may be less than the number of
+	 * enumerated states, in which case the remaining states have zero mass. The array should not be modified; use {@link #setBeliefArray(double[])} instead.
+	 * @return the belief array of this belief state
+	 */
+	public double [] getBeliefArray() {
+		return beliefs;
+	}
+
+	/**
+	 * Sets the belief array of this belief state, indexed by state identifier, to a copy of the given array. Its length may be less than the number of
+	 * enumerated states, in which case the remaining states have zero mass.
+	 * @param beliefs the belief array
+	 */
+	public void setBeliefArray(double [] beliefs) {
+		this.adoptBeliefArray(beliefs.clone());
+	}
+
+	/**
+	 * Sets the belief array of this belief state without copying it, for belief computations that create a new array that no other object references.
+	 * @param beliefs the belief array, which must not be modified afterwards by the caller
+	 */
+	protected void adoptBeliefArray(double [] beliefs) {
+		this.beliefs = beliefs;
+		this.numNonZero = 0;
+		for(double b : beliefs){
+			if(b != 0.){
+				this.numNonZero++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of states with non-zero mass.
+	 * @return the number of states with non-zero mass
+	 */
+	public int numNonZeroBeliefs(){
+		return this.numNonZero;
 	}
 
 	public PODomain getDomain() {
@@ -115,22 +174,20 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 	 * @return the value of the belief vector for the provided index.
 	 */
 	public double belief(int stateId){
-
-		Double b = this.beliefValues.get(stateId);
-		if(b == null){
+		if(stateId < 0 || stateId >= this.beliefs.length){
 			return 0.;
 		}
-		return b;
+		return this.beliefs[stateId];
 	}
 
 	@Override
 	public State sample() {
 		double sumProb = 0.;
 		double r = RandomFactory.getMapped(0).nextDouble();
-		for(Map.Entry<Integer, Double> e : this.beliefValues.entrySet()){
-			sumProb += e.getValue();
-			if(r < sumProb){
-				return this.stateEnumerator.getStateForEnumerationId(e.getKey());
+		for(int i = 0; i < this.beliefs.length; i++){
+			sumProb += this.beliefs[i];
+			if(this.beliefs[i] != 0. && r < sumProb){
+				return this.stateEnumerator.getStateForEnumerationId(i);
 			}
 		}
 
@@ -140,10 +197,11 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 
 	@Override
 	public List<StateBelief> nonZeroBeliefs(){
-		List<StateBelief> result = new LinkedList<StateBelief>();
-		for(Map.Entry<Integer, Double> e : this.beliefValues.entrySet()){
-			StateBelief sb = new StateBelief(this.stateForId(e.getKey()), e.getValue());
-			result.add(sb);
+		List<StateBelief> result = new ArrayList<StateBelief>(this.numNonZero);
+		for(int i = 0; i < this.beliefs.length; i++){
+			if(this.beliefs[i] != 0.){
+				result.add(new StateBelief(this.stateForId(i), this.beliefs[i]));
+			}
 		}
 		return result;
 	}
@@ -193,12 +251,19 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 			throw new RuntimeException("Error; cannot set belief value for state id " + stateId + "; belief vector is of dimension " + this.numStates());
 		}
 
-		if(b != 0){
-			this.beliefValues.put(stateId, b);
+		if(stateId >= this.beliefs.length){
+			if(b == 0){
+				return;
+			}
+			this.beliefs = Arrays.copyOf(this.beliefs, Math.max(stateId+1, this.numStates()));
 		}
-		else{
-			this.beliefValues.remove(stateId);
+		if(this.beliefs[stateId] != 0.){
+			this.numNonZero--;
 		}
+		if(b != 0){
+			this.numNonZero++;
+		}
+		this.beliefs[stateId] = b;
 	}
 
 
@@ -249,7 +314,8 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 	 * Sets this belief state to have zero probability mass for all underlying MDP states.
 	 */
 	public void zeroOutBeliefVector(){
-		this.beliefValues.clear();
+		Arrays.fill(this.beliefs, 0.);
+		this.numNonZero = 0;
 	}
 
 
@@ -355,7 +421,15 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 
 	@Override
 	public int hashCode() {
-		return beliefValues.hashCode();
+		//the hash code of the map of non-zero beliefs
+		int h = 0;
+		for(int i = 0; i < this.beliefs.length; i++){
+			if(this.beliefs[i] != 0.){
+				long bits = Double.doubleToLongBits(this.beliefs[i]);
+				h += i ^ (int)(bits ^ (bits >>> 32));
+			}
+		}
+		return h;
 	}
 
 	@Override
@@ -370,13 +444,16 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 		}
 
 		TabularBeliefState otb = (TabularBeliefState)obj;
-		if(this.beliefValues.size() == otb.beliefValues.size()) {
-			for(Map.Entry<Integer, Double> e : this.beliefValues.entrySet()) {
-				Double otherVal = otb.beliefValues.get(e.getKey());
-				if(otherVal == null){
+		if(this.numNonZero == otb.numNonZero) {
+			for(int i = 0; i < this.beliefs.length; i++) {
+				if(this.beliefs[i] == 0.){
+					continue;
+				}
+				double otherVal = otb.belief(i);
+				if(otherVal == 0.){
 					return false;
 				}
-				if(Math.abs(otherVal - e.getValue()) > 1e-10){
+				if(Math.abs(otherVal - this.beliefs[i]) > 1e-10){
 					return false;
 				}
 			}
@@ -390,6 +467,129 @@ public class TabularBeliefState implements BeliefState, EnumerableBeliefState, D
 
 	@Override
 	public String toString() {
-		return this.beliefValues.toString();
+		return this.getBeliefValues().toString();
+	}
+
+
+	/**
+	 * A live map view of the non-zero entries of the belief array, whose modifications set the mass of states.
+	 */
+	protected class BeliefValuesView extends AbstractMap<Integer, Double>{
+
+		@Override
+		public Set<Entry<Integer, Double>> entrySet() {
+			return new AbstractSet<Entry<Integer, Double>>() {
+				@Override
+				public Iterator<Entry<Integer, Double>> iterator() {
+					return new Iterator<Entry<Integer, Double>>() {
+						int next = nextNonZero(0);
+						int last = -1;
+
+						@Override
+						public boolean hasNext() {
+							return next != -1;
+						}
+
+						@Override
+						public Entry<Integer, Double> next() {
+							if(next == -1){
+								throw new NoSuchElementException();
+							}
+							last = next;
+							next = nextNonZero(next+1);
+							return new BeliefEntry(last);
+						}
+
+						@Override
+						public void remove() {
+							if(last == -1){
+								throw new IllegalStateException();
+							}
+							setBelief(last, 0.);
+							last = -1;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return numNonZero;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return numNonZero;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof Integer && belief((Integer)key) != 0.;
+		}
+
+		@Override
+		public Double get(Object key) {
+			if(!(key instanceof Integer)){
+				return null;
+			}
+			double b = belief((Integer)key);
+			return b != 0. ? b : null;
+		}
+
+		@Override
+		public Double put(Integer key, Double value) {
+			Double old = this.get(key);
+			setBelief(key, value);
+			return old;
+		}
+
+		@Override
+		public Double remove(Object key) {
+			Double old = this.get(key);
+			if(old != null){
+				setBelief((Integer)key, 0.);
+			}
+			return old;
+		}
+
+		@Override
+		public void clear() {
+			zeroOutBeliefVector();
+		}
+
+		/**
+		 * Returns the first state identifier at or after the given one with non-zero mass.
+		 * @param from the first state identifier to check
+		 * @return the state identifier; -1 if there is none
+		 */
+		protected int nextNonZero(int from){
+			for(int i = from; i < beliefs.length; i++){
+				if(beliefs[i] != 0.){
+					return i;
+				}
+			}
+			return -1;
+		}
+
+	}
+
+
+	/**
+	 * An entry of a {@link BeliefValuesView}, whose value is set with {@link #setBelief(int, double)}.
+	 */
+	protected class BeliefEntry extends AbstractMap.SimpleEntry<Integer, Double>{
+
+		private static final long serialVersionUID = 1L;
+
+		public BeliefEntry(int stateId) {
+			super(stateId, belief(stateId));
+		}
+
+		@Override
+		public Double setValue(Double value) {
+			setBelief(this.getKey(), value);
+			return super.setValue(value);
+		}
 	}
 }
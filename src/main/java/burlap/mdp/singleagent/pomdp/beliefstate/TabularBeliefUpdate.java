@@ -1,20 +1,47 @@
 package burlap.mdp.singleagent.pomdp.beliefstate;
 
 import burlap.behavior.singleagent.auxiliary.StateEnumerator;
-import burlap.datastructures.HashedAggregator;
 import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
 import burlap.mdp.singleagent.model.FullModel;
 import burlap.mdp.singleagent.model.TransitionProb;
 import burlap.mdp.singleagent.pomdp.PODomain;
 import burlap.mdp.singleagent.pomdp.observations.ObservationFunction;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+import burlap.statehashing.simple.SimpleHashableStateFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * A {@link BeliefUpdate} that operates on {@link TabularBeliefState} instances. Computation is exhaustive and
  * performs the exact Bayesian update.
+ * <p>
+ * The transition and observation models are compiled into primitive arrays indexed by the {@link StateEnumerator} identifiers as they
+ * are needed, so each update is a loop over the belief array of the {@link TabularBeliefState}. The transitions of a state and action are
+ * queried from the {@link FullModel} and their successor states enumerated only the first time the state has non-zero mass in an update with the action,
+ * and the probability of an observation in every state is computed with the {@link ObservationFunction} only the first time the observation is
+ * received after the action; observations are identified with a {@link HashableStateFactory}. The compiled model assumes that the
+ * domain's transition and observation models do not change; if they do, call {@link #clearCompiledModel()}.
+ * <p>
+ * The compiled model is never evicted: it grows with the number of enumerated states that receive mass and, for the observation model,
+ * with the number of distinct (action, observation) pairs received, each of which stores one probability per enumerated state.
+ * For domains with large or continuous observation spaces, call {@link #clearCompiledModel()} periodically to bound its memory.
+ * <p>
+ * The propagation of the belief through the transitions can be split across threads by source states with {@link #setNumThreads(int)}.
+ * The threads belong to a pool that is created the first time it is needed and kept for later updates; its threads are daemon threads,
+ * and {@link #shutdown()} releases them.
+ * <p>
+ * Instances are not thread-safe, because updates compile the model into unsynchronized caches; use a separate instance for each
+ * thread that updates beliefs.
  * @author James MacGlashan.
  */
 public class TabularBeliefUpdate implements BeliefUpdate{
@@ -22,6 +49,31 @@ public class TabularBeliefUpdate implements BeliefUpdate{
 	protected PODomain domain;
 	protected StateEnumerator stateEnumerator;
 
+	/**
+	 * The hashing factory used to identify observations in the compiled observation model
+	 */
+	protected HashableStateFactory observationHashingFactory = new SimpleHashableStateFactory();
+
+	/**
+	 * The compiled transitions of each action, indexed by the identifier of the source state; null for states not yet compiled
+	 */
+	protected Map<Action, CompiledTransitions[]> transitions = new HashMap<Action, CompiledTransitions[]>();
+
+	/**
+	 * The compiled probability of each observation after each action, indexed by state identifier
+	 */
+	protected Map<Action, Map<HashableState, double[]>> observations = new HashMap<Action, Map<HashableState, double[]>>();
+
+	/**
+	 * The number of threads across which belief propagation is split
+	 */
+	protected int numThreads = 1;
+
+	/**
+	 * The pool for parallel belief propagation; created when first needed
+	 */
+	protected ForkJoinPool pool;
+
 	public TabularBeliefUpdate(PODomain domain) {
 		this.domain = domain;
 		this.stateEnumerator = domain.getStateEnumerator();
@@ -38,6 +90,7 @@ public class TabularBeliefUpdate implements BeliefUpdate{
 
 	public void setDomain(PODomain domain) {
 		this.domain = domain;
+		this.clearCompiledModel();
 	}
 
 	public StateEnumerator getStateEnumerator() {
@@ -46,48 +99,285 @@ public class TabularBeliefUpdate implements BeliefUpdate{
 
 	public void setStateEnumerator(StateEnumerator stateEnumerator) {
 		this.stateEnumerator = stateEnumerator;
+		this.clearCompiledModel();
+	}
+
+	public HashableStateFactory getObservationHashingFactory() {
+		return observationHashingFactory;
+	}
+
+	/**
+	 * Sets the hashing factory used to identify observations in the compiled observation model. The default is a {@link SimpleHashableStateFactory}.
+	 * @param observationHashingFactory the hashing factory used to identify observations
+	 */
+	public void setObservationHashingFactory(HashableStateFactory observationHashingFactory) {
+		this.observationHashingFactory = observationHashingFactory;
+		this.observations.clear();
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the number of threads across which the propagation of the belief through the transitions is split. Each thread accumulates
+	 * the propagated mass of a shard of the source states into its own array. The default is 1.
+	 * @param numThreads the number of threads
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+		if(this.pool != null && this.pool.getParallelism() != this.numThreads){
+			this.shutdown();
+		}
+	}
+
+	/**
+	 * Shuts down the pool of the threads used for parallel belief propagation, if one was created. The pool is created again
+	 * if a later update needs it.
+	 */
+	public void shutdown(){
+		if(this.pool != null){
+			this.pool.shutdown();
+			this.pool = null;
+		}
+	}
+
+	/**
+	 * Discards the compiled transition and observation models, which are compiled again as they are needed.
+	 */
+	public void clearCompiledModel(){
+		this.transitions.clear();
+		this.observations.clear();
 	}
 
 	@Override
 	public BeliefState update(BeliefState belief, State observation, Action a) {
 
 		TabularBeliefState b = (TabularBeliefState)belief;
+		final double [] bv = b.getBeliefArray();
 
-		FullModel model = (FullModel)this.domain.getModel();
-		ObservationFunction of = this.domain.getObservationFunction();
-		HashedAggregator<Integer> probs = new HashedAggregator<Integer>(0., 2);
-		for(Map.Entry<Integer, Double> bs : b.getBeliefValues().entrySet()){
-			List<TransitionProb> tps = model.transitions(this.stateEnumerator.getStateForEnumerationId(bs.getKey()), a);
-			for(TransitionProb tp : tps){
-				double prodProb = tp.p * bs.getValue();
-				int nsid = this.stateEnumerator.getEnumeratedID(tp.eo.op);
-				probs.add(nsid, prodProb);
+		//compile the transitions of the states with mass, which enumerates their successors
+		final CompiledTransitions [] rows = this.compiledTransitions(a, bv.length);
+		for(int i = 0; i < bv.length; i++){
+			if(bv[i] != 0. && rows[i] == null){
+				rows[i] = this.compileTransitions(a, i);
 			}
 		}
+		final int n = this.stateEnumerator.numStatesEnumerated();
 
-		TabularBeliefState nbs = new TabularBeliefState(domain, stateEnumerator);
+		double [] next;
+		int numShards = Math.min(this.numThreads, b.numNonZeroBeliefs());
+		if(numShards <= 1){
+			next = new double[n];
+			propagate(bv, rows, 0, bv.length, next);
+		}
+		else{
+			next = this.propagateInParallel(bv, rows, n, numShards);
+		}
+
+		double [] obs = this.observationProbabilities(a, observation, n);
 		double norm = 0.;
-		for(Map.Entry<Integer, Double> e : probs.entrySet()){
-			State ns = this.stateEnumerator.getStateForEnumerationId(e.getKey());
-			double ofp = of.probability(observation, ns, a);
-			double nval = ofp*e.getValue();
-			nbs.setBelief(e.getKey(), nval);
-			norm += nval;
+		for(int i = 0; i < n; i++){
+			if(next[i] != 0.){
+				next[i] *= obs[i];
+				norm += next[i];
+			}
 		}
 
 		if(norm == 0){
 			throw new RuntimeException("Cannot get updated belief state, because probabilities summed to 0");
 		}
 
+		for(int i = 0; i < n; i++){
+			next[i] /= norm;
+		}
 
+		TabularBeliefState nbs = new TabularBeliefState(domain, stateEnumerator);
+		nbs.adoptBeliefArray(next);
 
-		for(Map.Entry<Integer, Double> e : probs.entrySet()){
-			double p = nbs.belief(e.getKey()) / norm;
-			if(p > 0) {
-				nbs.setBelief(e.getKey(), p);
+		return nbs;
+	}
+
+
+	/**
+	 * Adds the mass that a range of source states propagate through their transitions to an array.
+	 * @param bv the belief array
+	 * @param rows the compiled transitions of the source states
+	 * @param start the first source state
+	 * @param end one past the last source state
+	 * @param next the array to which the propagated mass is added
+	 */
+	protected static void propagate(double [] bv, CompiledTransitions [] rows, int start, int end, double [] next){
+		for(int i = start; i < end; i++){
+			double m = bv[i];
+			if(m == 0.){
+				continue;
+			}
+			CompiledTransitions row = rows[i];
+			for(int j = 0; j < row.next.length; j++){
+				next[row.next[j]] += row.p[j] * m;
 			}
 		}
+	}
 
-		return nbs;
+
+	/**
+	 * Propagates the mass of the source states through their transitions in shards with equal numbers of states with mass on the pool threads
+	 * and sums the propagated mass of the shards.
+	 * @param bv the belief array
+	 * @param rows the compiled transitions of the source states
+	 * @param n the number of states
+	 * @param numShards the number of shards
+	 * @return the propagated mass
+	 */
+	protected double [] propagateInParallel(final double [] bv, final CompiledTransitions [] rows, final int n, int numShards){
+
+		//shard boundaries with equal numbers of states with mass
+		int numNonZero = 0;
+		for(double m : bv){
+			if(m != 0.){
+				numNonZero++;
+			}
+		}
+		int [] bounds = new int[numShards+1];
+		int count = 0;
+		int shard = 1;
+		for(int i = 0; i < bv.length && shard < numShards; i++){
+			if(bv[i] != 0.){
+				count++;
+				if(count == (long)numNonZero * shard / numShards){
+					bounds[shard] = i+1;
+					shard++;
+				}
+			}
+		}
+		bounds[numShards] = bv.length;
+
+		final double [][] partials = new double[numShards][];
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numShards);
+		for(int s = 0; s < numShards; s++){
+			final int id = s;
+			final int start = bounds[s];
+			final int end = bounds[s+1];
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					partials[id] = new double[n];
+					propagate(bv, rows, start, end, partials[id]);
+					return null;
+				}
+			});
+		}
+
+		if(this.pool == null){
+			this.pool = new ForkJoinPool(this.numThreads);
+		}
+		try{
+			for(Future<Object> result : this.pool.invokeAll(tasks)){
+				result.get();
+			}
+		} catch(InterruptedException e){
+			throw new RuntimeException(e);
+		} catch(ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		}
+
+		double [] next = partials[0];
+		for(int s = 1; s < numShards; s++){
+			double [] partial = partials[s];
+			for(int i = 0; i < n; i++){
+				next[i] += partial[i];
+			}
+		}
+		return next;
+	}
+
+
+	/**
+	 * Returns the compiled transitions of an action, grown to at least the given number of source states.
+	 * @param a the action
+	 * @param n the number of source states
+	 * @return the compiled transitions of the action, indexed by source state identifier
+	 */
+	protected CompiledTransitions [] compiledTransitions(Action a, int n){
+		CompiledTransitions [] rows = this.transitions.get(a);
+		if(rows == null || rows.length < n){
+			rows = rows == null ? new CompiledTransitions[n] : Arrays.copyOf(rows, n);
+			this.transitions.put(a, rows);
+		}
+		return rows;
+	}
+
+
+	/**
+	 * Queries the transitions of a state and action from the domain's model and enumerates their successor states.
+	 * @param a the action
+	 * @param stateId the identifier of the source state
+	 * @return the compiled transitions
+	 */
+	protected CompiledTransitions compileTransitions(Action a, int stateId){
+		FullModel model = (FullModel)this.domain.getModel();
+		List<TransitionProb> tps = model.transitions(this.stateEnumerator.getStateForEnumerationId(stateId), a);
+		CompiledTransitions row = new CompiledTransitions(tps.size());
+		for(int j = 0; j < tps.size(); j++){
+			TransitionProb tp = tps.get(j);
+			row.next[j] = this.stateEnumerator.getEnumeratedID(tp.eo.op);
+			row.p[j] = tp.p;
+		}
+		return row;
 	}
+
+
+	/**
+	 * Returns the probability of an observation after an action in every state, computing it for the states for which it has not been computed yet.
+	 * @param a the action
+	 * @param observation the observation
+	 * @param n the number of states
+	 * @return the observation probability of each state, indexed by state identifier
+	 */
+	protected double [] observationProbabilities(Action a, State observation, int n){
+		Map<HashableState, double[]> actionObservations = this.observations.get(a);
+		if(actionObservations == null){
+			actionObservations = new HashMap<HashableState, double[]>();
+			this.observations.put(a, actionObservations);
+		}
+		HashableState oh = this.observationHashingFactory.hashState(observation);
+		double [] probs = actionObservations.get(oh);
+		int computed = 0;
+		if(probs == null){
+			probs = new double[n];
+		}
+		else if(probs.length < n){
+			computed = probs.length;
+			probs = Arrays.copyOf(probs, n);
+		}
+		else{
+			return probs;
+		}
+
+		ObservationFunction of = this.domain.getObservationFunction();
+		for(int i = computed; i < n; i++){
+			probs[i] = of.probability(observation, this.stateEnumerator.getStateForEnumerationId(i), a);
+		}
+		actionObservations.put(oh, probs);
+
+		return probs;
+	}
+
+
+	/**
+	 * The transitions of a source state and action, as parallel arrays of successor state identifiers and probabilities.
+	 */
+	protected static class CompiledTransitions{
+
+		public int [] next;
+		public double [] p;
+
+		public CompiledTransitions(int n){
+			this.next = new int[n];
+			this.p = new double[n];
+		}
+
+	}
+
 }
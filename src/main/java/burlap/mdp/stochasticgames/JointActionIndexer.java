@@ -0,0 +1,229 @@
+package burlap.mdp.stochasticgames;
+
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.action.ActionUtils;
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.agent.SGAgentType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Assigns integer ids to the joint actions of a state, so that joint action values can be stored in primitive arrays. The applicable actions of
+ * each agent in a state, as defined by its {@link SGAgentType}, are enumerated into a {@link JointActionSpace} in which a joint action is a
+ * mixed-radix number: the digit of each agent is the index of its action among its applicable actions, and the last agent's digit is the least
+ * significant. Joint action ids therefore follow the same order as {@link JointAction#getAllJointActionsFromTypes(State, List)}.
+ */
+public class JointActionIndexer {
+
+	/**
+	 * The agent types whose joint actions are indexed, in player order
+	 */
+	protected List<SGAgentType> agentTypes;
+
+
+	/**
+	 * Initializes.
+	 * @param agentTypes the agent types whose joint actions are indexed, in player order
+	 */
+	public JointActionIndexer(List<SGAgentType> agentTypes) {
+		this.agentTypes = new ArrayList<SGAgentType>(agentTypes);
+	}
+
+
+	public List<SGAgentType> getAgentTypes() {
+		return agentTypes;
+	}
+
+
+	/**
+	 * Returns the number of agents whose joint actions are indexed.
+	 * @return the number of agents whose joint actions are indexed
+	 */
+	public int numAgents(){
+		return this.agentTypes.size();
+	}
+
+
+	/**
+	 * Returns whether this indexer indexes the joint actions of the given agent types.
+	 * @param agentTypes the agent types, in player order
+	 * @return true if this indexer indexes the joint actions of the given agent types; false otherwise
+	 */
+	public boolean indexes(List<SGAgentType> agentTypes){
+		return this.agentTypes == agentTypes || this.agentTypes.equals(agentTypes);
+	}
+
+
+	/**
+	 * Enumerates the applicable actions of each agent in the given state into a {@link JointActionSpace}.
+	 * @param s the state
+	 * @return the {@link JointActionSpace} of the state
+	 */
+	public JointActionSpace jointActionSpace(State s){
+		List<List<Action>> agentActions = new ArrayList<List<Action>>(this.agentTypes.size());
+		for(SGAgentType type : this.agentTypes){
+			agentActions.add(ActionUtils.allApplicableActionsForTypes(type.actions, s));
+		}
+		return new JointActionSpace(agentActions);
+	}
+
+
+
+	/**
+	 * The joint actions of a state, identified by mixed-radix ids over the applicable actions of each agent.
+	 */
+	public static class JointActionSpace {
+
+		/**
+		 * The applicable actions of each agent
+		 */
+		protected Action [][] agentActions;
+
+		/**
+		 * The id stride of each agent's action index
+		 */
+		protected int [] strides;
+
+		/**
+		 * The number of joint actions
+		 */
+		protected int numJointActions;
+
+
+		/**
+		 * Initializes.
+		 * @param agentActions the applicable actions of each agent, in player order
+		 */
+		public JointActionSpace(List<List<Action>> agentActions) {
+			int n = agentActions.size();
+			this.agentActions = new Action[n][];
+			this.strides = new int[n];
+			int stride = 1;
+			for(int i = n-1; i >= 0; i--){
+				this.agentActions[i] = agentActions.get(i).toArray(new Action[agentActions.get(i).size()]);
+				this.strides[i] = stride;
+				stride *= this.agentActions[i].length;
+			}
+			this.numJointActions = stride;
+		}
+
+
+		public int numAgents(){
+			return this.agentActions.length;
+		}
+
+
+		public int numJointActions(){
+			return this.numJointActions;
+		}
+
+
+		/**
+		 * Returns the number of applicable actions of an agent.
+		 * @param agent the agent
+		 * @return the number of applicable actions of the agent
+		 */
+		public int numActions(int agent){
+			return this.agentActions[agent].length;
+		}
+
+
+		/**
+		 * Returns an applicable action of an agent.
+		 * @param agent the agent
+		 * @param i the index of the action among the agent's applicable actions
+		 * @return the action
+		 */
+		public Action action(int agent, int i){
+			return this.agentActions[agent][i];
+		}
+
+
+		/**
+		 * Returns the index of an action among the applicable actions of an agent.
+		 * @param agent the agent
+		 * @param a the action
+		 * @return the index of the action, or -1 if it is not applicable
+		 */
+		public int actionIndex(int agent, Action a){
+			Action [] actions = this.agentActions[agent];
+			for(int i = 0; i < actions.length; i++){
+				if(actions[i].equals(a)){
+					return i;
+				}
+			}
+			return -1;
+		}
+
+
+		/**
+		 * Returns the amount by which a joint action id changes when the index of an agent's action increases by one.
+		 * @param agent the agent
+		 * @return the id stride of the agent
+		 */
+		public int stride(int agent){
+			return this.strides[agent];
+		}
+
+
+		/**
+		 * Returns the id of the joint action made of the given action indices.
+		 * @param actionIndices the index of each agent's action among its applicable actions
+		 * @return the joint action id
+		 */
+		public int jointActionId(int [] actionIndices){
+			int id = 0;
+			for(int i = 0; i < actionIndices.length; i++){
+				id += actionIndices[i] * this.strides[i];
+			}
+			return id;
+		}
+
+
+		/**
+		 * Returns the id of the given joint action.
+		 * @param ja the joint action
+		 * @return the joint action id, or -1 if an agent's action is not applicable
+		 */
+		public int jointActionId(JointAction ja){
+			int id = 0;
+			for(int i = 0; i < this.agentActions.length; i++){
+				int ind = this.actionIndex(i, ja.action(i));
+				if(ind == -1){
+					return -1;
+				}
+				id += ind * this.strides[i];
+			}
+			return id;
+		}
+
+
+		/**
+		 * Returns the index of an agent's action in the joint action with the given id.
+		 * @param jointActionId the joint action id
+		 * @param agent the agent
+		 * @return the index of the agent's action among its applicable actions
+		 */
+		public int agentActionIndex(int jointActionId, int agent){
+			return (jointActionId / this.strides[agent]) % this.agentActions[agent].length;
+		}
+
+
+		/**
+		 * Creates the {@link JointAction} with the given id.
+		 * @param jointActionId the joint action id
+		 * @return the {@link JointAction}
+		 */
+		public JointAction jointAction(int jointActionId){
+			JointAction ja = new JointAction();
+			for(int i = 0; i < this.agentActions.length; i++){
+				ja.addAction(this.agentActions[i][this.agentActionIndex(jointActionId, i)]);
+			}
+			return ja;
+		}
+
+	}
+
+}
@@ -1,6 +1,14 @@
 package burlap.statehashing;
 
+import burlap.mdp.core.oo.state.OOState;
+import burlap.mdp.core.oo.state.ObjectInstance;
 import burlap.mdp.core.state.State;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author James MacGlashan.
@@ -12,6 +20,39 @@ public abstract class WrappedHashableState implements HashableState {
 	 */
 	protected State s;
 
+	/**
+	 * Whether the hash code and fingerprint are cached after they are first computed. Caching is only safe if the
+	 * wrapped {@link State} is never modified after this object is created.
+	 */
+	protected boolean cacheHashCode = false;
+
+	/**
+	 * Whether the cached hash code and fingerprint have been computed
+	 */
+	protected volatile boolean hashCodeComputed = false;
+
+	/**
+	 * The cached hash code
+	 */
+	protected int hashCode;
+
+	/**
+	 * The cached 64-bit fingerprint
+	 */
+	protected long fingerprint;
+
+
+	/**
+	 * The initial value of a 64-bit state fingerprint
+	 */
+	protected static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+
+	/**
+	 * The multiplier used to combine values into a 64-bit state fingerprint
+	 */
+	protected static final long FINGERPRINT_MULTIPLIER = 0x100000001b3L;
+
+
 	public WrappedHashableState() {
 	}
 
@@ -19,6 +60,16 @@ public abstract class WrappedHashableState implements HashableState {
 		this.s = s;
 	}
 
+	/**
+	 * Initializes.
+	 * @param s the {@link State} to hash, which must never be modified if cacheHashCode is true
+	 * @param cacheHashCode whether the hash code and fingerprint are cached after they are first computed
+	 */
+	public WrappedHashableState(State s, boolean cacheHashCode) {
+		this.s = s;
+		this.cacheHashCode = cacheHashCode;
+	}
+
 	@Override
 	public State s() {
 		return s;
@@ -26,10 +77,160 @@ public abstract class WrappedHashableState implements HashableState {
 
 
 	@Override
-	public abstract int hashCode();
+	public int hashCode() {
+		if(this.cacheHashCode){
+			this.computeCachedHashes();
+			return this.hashCode;
+		}
+		return computeHashCode(this.s);
+	}
+
+	/**
+	 * Returns a 64-bit fingerprint of the state. Like the hash code, equal states always have equal fingerprints, but
+	 * the fingerprint is far less likely to collide for different states. When two instances of the same class both cache their
+	 * hash codes, {@link #equals(Object)} first compares their fingerprints and only performs the full state
+	 * comparison if they match.
+	 * @return a 64-bit fingerprint of the state
+	 */
+	public long fingerprint() {
+		if(this.cacheHashCode){
+			this.computeCachedHashes();
+			return this.fingerprint;
+		}
+		return computeFingerprint(this.s);
+	}
 
 	@Override
-	public abstract boolean equals(Object obj);
+	public boolean equals(Object obj) {
+		if(obj == this){
+			return true;
+		}
+		if(!(obj instanceof HashableState)){
+			return false;
+		}
+		if(this.cacheHashCode && obj.getClass() == this.getClass()){
+			WrappedHashableState o = (WrappedHashableState)obj;
+			if(o.cacheHashCode && this.fingerprint() != o.fingerprint()){
+				return false;
+			}
+		}
+		return statesEqual(this.s, ((HashableState)obj).s());
+	}
+
+	/**
+	 * Computes and caches the hash code and fingerprint if they have not been computed yet.
+	 */
+	protected void computeCachedHashes(){
+		if(!this.hashCodeComputed){
+			this.hashCode = computeHashCode(this.s);
+			this.fingerprint = computeFingerprint(this.s);
+			this.hashCodeComputed = true;
+		}
+	}
+
+	/**
+	 * Computes the hash code for the input state.
+	 * @param s the input state for which a hash code is to be computed
+	 * @return the hash code
+	 */
+	protected abstract int computeHashCode(State s);
+
+	/**
+	 * Computes the 64-bit fingerprint for the input state. The fingerprint combines the hash codes of the individual
+	 * state variable values, as computed by {@link #appendHashCodeForValue(HashCodeBuilder, Object, Object)}, so subclasses
+	 * that change how values are hashed automatically produce consistent fingerprints. States that are equal according to
+	 * {@link #statesEqual(State, State)} must have the same fingerprint.
+	 * @param s the input state for which a fingerprint is to be computed
+	 * @return the fingerprint
+	 */
+	protected final long computeFingerprint(State s){
+		if(s instanceof OOState){
+			return computeOOFingerprint((OOState)s);
+		}
+		return computeFlatFingerprint(s);
+	}
+
+	protected long computeOOFingerprint(OOState s){
+		List<ObjectInstance> objects = s.objects();
+		long [] fingerprints = new long[objects.size()];
+		int n = 0;
+		for(ObjectInstance o : objects){
+			if(!this.hashesObject(o)){
+				continue;
+			}
+			fingerprints[n] = this.computeObjectFingerprint(o);
+			n++;
+		}
+		return combineUnordered(fingerprints, n);
+	}
+
+	/**
+	 * Computes the fingerprint of a single object of an {@link OOState}, which combines the object's values with its class name.
+	 * Subclasses that distinguish objects by their name should add it here.
+	 * @param o the {@link ObjectInstance}
+	 * @return the fingerprint of the object
+	 */
+	protected long computeObjectFingerprint(ObjectInstance o){
+		return this.computeFlatFingerprint(o) + 31*(long)o.className().hashCode();
+	}
+
+	protected long computeFlatFingerprint(State s){
+		long fp = FINGERPRINT_SEED;
+		List<Object> keys = s.variableKeys();
+		for(Object key : keys){
+			HashCodeBuilder hashCodeBuilder = new HashCodeBuilder(17, 37);
+			this.appendHashCodeForValue(hashCodeBuilder, key, s.get(key));
+			fp = (fp ^ hashCodeBuilder.toHashCode()) * FINGERPRINT_MULTIPLIER;
+		}
+		return fp;
+	}
+
+	protected void appendHashCodeForValue(HashCodeBuilder hashCodeBuilder, Object key, Object value){
+		hashCodeBuilder.append(value);
+	}
+
+	/**
+	 * Returns whether the given object contributes to the hash code and fingerprint of an {@link OOState}, which is
+	 * the case unless its class is one of the {@link #maskedObjectClasses()}.
+	 * @param o the {@link ObjectInstance}
+	 * @return true if the object contributes to the hash code and fingerprint; false otherwise.
+	 */
+	protected final boolean hashesObject(ObjectInstance o){
+		return !this.maskedObjectClasses().contains(o.className());
+	}
+
+	/**
+	 * Returns the names of the object classes whose objects are ignored when hashing an {@link OOState}. No classes are masked
+	 * by default; masking subclasses return the classes of their configuration.
+	 * @return the masked object class names
+	 */
+	protected Set<String> maskedObjectClasses(){
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Returns true if the two input states are equal.
+	 * @param s1 a {@link State}
+	 * @param s2 another {@link State} with which to compare
+	 * @return true if s1 equals s2, false otherwise.
+	 */
+	protected abstract boolean statesEqual(State s1, State s2);
+
+	/**
+	 * Combines the first n fingerprints of the given array into a single fingerprint that is invariant to their order.
+	 * The array is sorted in place.
+	 * @param fingerprints the fingerprints to combine
+	 * @param n the number of fingerprints in the array to use
+	 * @return the combined fingerprint
+	 */
+	protected static long combineUnordered(long [] fingerprints, int n){
+		Arrays.sort(fingerprints, 0, n);
+		long fp = FINGERPRINT_SEED;
+		for(int i = 0; i < n; i++){
+			fp = (fp ^ fingerprints[i]) * FINGERPRINT_MULTIPLIER;
+		}
+		return fp;
+	}
 
 
 	/**
@@ -46,5 +247,6 @@ public abstract class WrappedHashableState implements HashableState {
 	 */
 	public void setS(State s) {
 		this.s = s;
+		this.hashCodeComputed = false;
 	}
 }
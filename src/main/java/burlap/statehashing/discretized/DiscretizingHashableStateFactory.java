@@ -23,7 +23,8 @@ import burlap.statehashing.simple.SimpleHashableStateFactory;
  * using the {@link #setDefaultFloorDiscretizingMultiple(double)} method.
  * <p>
  * This class extends {@link SimpleHashableStateFactory}, which means it can be toggled to
- * to be object identifier independent or dependent for {@link burlap.mdp.core.oo.state.OOState}s.
+ * to be object identifier independent or dependent for {@link burlap.mdp.core.oo.state.OOState}s and can be set
+ * to produce {@link burlap.statehashing.HashableState} instances that cache their hash code.
  *
  * @author James MacGlashan.
  */
@@ -85,8 +86,8 @@ public class DiscretizingHashableStateFactory extends SimpleHashableStateFactory
 		}
 
 		if(identifierIndependent){
-			return new IIDiscHashableState(s, config);
+			return new IIDiscHashableState(s, config, cacheHashCodes);
 		}
-		return new IDDiscHashableState(s, config);
+		return new IDDiscHashableState(s, config, cacheHashCodes);
 	}
 }
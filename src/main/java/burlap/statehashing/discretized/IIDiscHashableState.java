@@ -23,6 +23,17 @@ public class IIDiscHashableState extends IISimpleHashableState {
 		this.config = config;
 	}
 
+	/**
+	 * Initializes.
+	 * @param s the {@link State} to hash, which must never be modified if cacheHashCode is true
+	 * @param config the hashing configuration
+	 * @param cacheHashCode whether the hash code and fingerprint are cached after they are first computed
+	 */
+	public IIDiscHashableState(State s, DiscConfig config, boolean cacheHashCode) {
+		super(s, cacheHashCode);
+		this.config = config;
+	}
+
 	@Override
 	protected void appendHashCodeForValue(HashCodeBuilder hashCodeBuilder, Object key, Object value) {
 
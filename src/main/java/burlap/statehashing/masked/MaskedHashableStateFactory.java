@@ -141,8 +141,8 @@ public class MaskedHashableStateFactory extends SimpleHashableStateFactory {
 		}
 
 		if(identifierIndependent){
-			return new IIMaskedHashableState(s, config);
+			return new IIMaskedHashableState(s, config, cacheHashCodes);
 		}
-		return new IDMaskedHashableState(s, config);
+		return new IDMaskedHashableState(s, config, cacheHashCodes);
 	}
 }
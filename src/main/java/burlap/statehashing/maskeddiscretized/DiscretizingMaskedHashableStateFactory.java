@@ -103,8 +103,8 @@ public class DiscretizingMaskedHashableStateFactory extends SimpleHashableStateF
 		}
 
 		if(identifierIndependent){
-			return new IIDiscMaskedHashableState(s, config);
+			return new IIDiscMaskedHashableState(s, config, cacheHashCodes);
 		}
-		return new IDDiscMaskedHashableState(s, config);
+		return new IDDiscMaskedHashableState(s, config, cacheHashCodes);
 	}
 }
@@ -28,6 +28,22 @@ public class IIDiscMaskedHashableState extends IISimpleHashableState {
 		this.config = config;
 	}
 
+	/**
+	 * Initializes.
+	 * @param s the {@link State} to hash, which must never be modified if cacheHashCode is true
+	 * @param config the hashing configuration
+	 * @param cacheHashCode whether the hash code and fingerprint are cached after they are first computed
+	 */
+	public IIDiscMaskedHashableState(State s, DiscMaskedConfig config, boolean cacheHashCode) {
+		super(s, cacheHashCode);
+		this.config = config;
+	}
+
+	@Override
+	protected Set<String> maskedObjectClasses() {
+		return config.maskedObjectClasses;
+	}
+
 	@Override
 	protected int computeOOHashCode(OOState s) {
 		List<Integer> hashCodes = new ArrayList<Integer>(s.numObjects());
@@ -0,0 +1,100 @@
+package burlap.statehashing.packed;
+
+import burlap.mdp.core.state.State;
+import burlap.statehashing.HashableState;
+
+import java.util.Arrays;
+
+/**
+ * A {@link HashableState} produced by a {@link PackedHashableStateFactory} that stores a canonical packed
+ * <code>long[]</code> encoding of a {@link State}. Its hash code is computed once from the packed key when it is
+ * created, and equality is a comparison of the packed keys, so neither operation touches the source {@link State}.
+ * <p>
+ * If the producing factory does not retain states (see {@link PackedHashableStateFactory#setRetainStates(boolean)}), the source
+ * {@link State} is not stored and {@link #s()} decodes a new {@link State} from the packed key on every call.
+ * <p>
+ * Packed keys are only comparable between states produced by the same {@link PackedHashableStateFactory} instance.
+ */
+public class PackedHashableState implements HashableState {
+
+	/**
+	 * The factory that produced this object, which is used to decode the packed key
+	 */
+	protected PackedHashableStateFactory factory;
+
+	/**
+	 * The packed encoding of the state
+	 */
+	protected long [] key;
+
+	/**
+	 * The hash code of the packed key
+	 */
+	protected int hashCode;
+
+	/**
+	 * The source state; null if it is not retained
+	 */
+	protected State s;
+
+
+	/**
+	 * Initializes.
+	 * @param factory the factory that produced the packed key
+	 * @param key the packed encoding of the state
+	 * @param s the source state, or null if it should not be retained
+	 */
+	public PackedHashableState(PackedHashableStateFactory factory, long[] key, State s) {
+		this.factory = factory;
+		this.key = key;
+		this.hashCode = Arrays.hashCode(key);
+		this.s = s;
+	}
+
+
+	@Override
+	public State s() {
+		if(this.s != null){
+			return this.s;
+		}
+		return this.factory.decode(this.key);
+	}
+
+
+	/**
+	 * Returns the packed encoding of the state. The returned array must not be modified.
+	 * @return the packed encoding of the state.
+	 */
+	public long[] key() {
+		return key;
+	}
+
+
+	/**
+	 * Returns whether the source state is stored by this object, rather than decoded from the packed key.
+	 * @return true if the source state is stored; false otherwise.
+	 */
+	public boolean retainsState(){
+		return this.s != null;
+	}
+
+
+	@Override
+	public int hashCode() {
+		return this.hashCode;
+	}
+
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj){
+			return true;
+		}
+		if(!(obj instanceof PackedHashableState)){
+			return false;
+		}
+		PackedHashableState o = (PackedHashableState)obj;
+		return this.hashCode == o.hashCode && this.factory == o.factory && Arrays.equals(this.key, o.key);
+	}
+
+}
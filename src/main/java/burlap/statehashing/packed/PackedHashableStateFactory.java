@@ -0,0 +1,981 @@
+package burlap.statehashing.packed;
+
+import burlap.mdp.core.oo.state.MutableOOState;
+import burlap.mdp.core.oo.state.OOState;
+import burlap.mdp.core.oo.state.OOStateUtilities;
+import burlap.mdp.core.oo.state.OOVariableKey;
+import burlap.mdp.core.oo.state.ObjectInstance;
+import burlap.mdp.core.state.MutableState;
+import burlap.mdp.core.state.State;
+import burlap.mdp.core.state.vardomain.StateDomain;
+import burlap.mdp.core.state.vardomain.VariableDomain;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link HashableStateFactory} that encodes each {@link State} into a canonical packed <code>long[]</code> key and
+ * produces {@link PackedHashableState} objects, whose hash code is computed once from the key and whose equality
+ * checks are array comparisons. Two states are equal under this factory exactly when they would be equal under a
+ * {@link burlap.statehashing.simple.SimpleHashableStateFactory} with the same identifier independence setting.
+ * <p>
+ * The first time a state of a given Java class (or, for {@link OOState}s, an object of a given OO-MDP class) is hashed, the factory
+ * records a layout for it: its variable keys and, for each variable, the type of its value and how many bits it needs.
+ * Booleans use one bit and other primitive wrapper values use their natural width. The width of an integer-valued variable
+ * (byte, short, int or long) can be reduced by specifying its {@link VariableDomain}, either with {@link #variableDomain(Object, VariableDomain)}
+ * or by having the state (or object) implement {@link StateDomain}; the variable then uses only as many bits as the span of its domain requires.
+ * Any other value (strings, enums, arrays, etc.) is interned to a 32-bit id that is equal for values that are {@link Object#equals(Object)}
+ * (or, for arrays, that have equal contents). Object names of identifier dependent {@link OOState}s are interned in the same way.
+ * <p>
+ * For {@link OOState}s, each object is encoded separately and the object encodings are sorted so that the key does not depend
+ * on the order of objects. If the factory is object identifier independent (the default), object names are not encoded.
+ * <p>
+ * Because the layout is recorded once, all states of the same Java class (and all objects of the same OO-MDP class) must have the same
+ * variable keys, and the value of each variable must always be of the same type. A state with different variable keys, a value of a different type,
+ * or an integer value outside of its declared domain, will result in a runtime exception.
+ * <p>
+ * Packed keys refer to interned values only by their id, so interned values can never be released while the factory is in use.
+ * To keep a factory that is fed an unbounded number of distinct interned values (e.g., continuous values held in arrays) from
+ * growing without bound, the number of interned values is limited (see {@link #setMaxInternedValues(int)}); interning more
+ * values results in a runtime exception. Such variables should be discretized or given a primitive type instead.
+ * <p>
+ * By default, the produced {@link PackedHashableState}s also retain the source {@link State}. If retaining states is disabled
+ * (see {@link #setRetainStates(boolean)}), only the packed key is stored, which can greatly reduce the memory used by large tabular
+ * value functions, and {@link HashableState#s()} decodes a new state from the key: the state is copied from the first hashed state of the same class
+ * and its variables are set with {@link MutableState#set(Object, Object)} (and, for {@link OOState}s, objects are renamed, added and removed with
+ * the {@link MutableOOState} methods). States that do not implement {@link MutableState} (or {@link MutableOOState}) are always retained.
+ * Decoded interned values (e.g., arrays) are shared between decoded states and must not be modified.
+ * <p>
+ * Packed keys are only comparable between states hashed by the same factory instance.
+ */
+public class PackedHashableStateFactory implements HashableStateFactory {
+
+	protected static final int KIND_BOOLEAN = 0;
+	protected static final int KIND_BYTE = 1;
+	protected static final int KIND_SHORT = 2;
+	protected static final int KIND_INT = 3;
+	protected static final int KIND_LONG = 4;
+	protected static final int KIND_CHAR = 5;
+	protected static final int KIND_FLOAT = 6;
+	protected static final int KIND_DOUBLE = 7;
+	protected static final int KIND_INTERNED = 8;
+
+	/**
+	 * The number of bits used for layout ids and interned value ids
+	 */
+	protected static final int ID_BITS = 32;
+
+	/**
+	 * The default maximum number of interned values
+	 */
+	public static final int DEFAULT_MAX_INTERNED_VALUES = 1 << 24;
+
+	/**
+	 * The interned key used for null values
+	 */
+	protected static final Object NULL_VALUE = new Object();
+
+
+	/**
+	 * Whether state evaluations of OO-MDPs are object identifier independent (the names of objects don't matter). By
+	 * default it is independent.
+	 */
+	protected boolean identifierIndependent = true;
+
+	/**
+	 * Whether the produced {@link PackedHashableState}s retain their source {@link State}. By default they do.
+	 */
+	protected boolean retainStates = true;
+
+	/**
+	 * The maximum number of values that may be interned
+	 */
+	protected int maxInternedValues = DEFAULT_MAX_INTERNED_VALUES;
+
+	/**
+	 * Variable domains specified for variable keys; for {@link OOState}s, the keys are object-level variable keys.
+	 */
+	protected Map<Object, VariableDomain> domains = new HashMap<Object, VariableDomain>();
+
+
+	/**
+	 * The layouts of flat and {@link OOState} classes
+	 */
+	protected Map<Class<?>, Layout> stateLayouts = new ConcurrentHashMap<Class<?>, Layout>();
+
+	/**
+	 * The layouts of OO-MDP object classes, indexed by class name
+	 */
+	protected Map<String, Layout> objectLayouts = new ConcurrentHashMap<String, Layout>();
+
+	/**
+	 * All layouts, indexed by their id
+	 */
+	protected List<Layout> layouts = new ArrayList<Layout>();
+
+	/**
+	 * The ids of interned values
+	 */
+	protected Map<Object, Integer> internIds = new ConcurrentHashMap<Object, Integer>();
+
+	/**
+	 * The interned values, indexed by their id
+	 */
+	protected List<Object> internedValues = new ArrayList<Object>();
+
+
+	/**
+	 * Default constructor: object identifier independent and states are retained.
+	 */
+	public PackedHashableStateFactory() {
+	}
+
+
+	/**
+	 * Initializes with states being retained.
+	 * @param identifierIndependent if true then state evaluations for {@link OOState}s are object identifier independent; if false then dependent.
+	 */
+	public PackedHashableStateFactory(boolean identifierIndependent) {
+		this.identifierIndependent = identifierIndependent;
+	}
+
+
+	/**
+	 * Initializes.
+	 * @param identifierIndependent if true then state evaluations for {@link OOState}s are object identifier independent; if false then dependent.
+	 * @param retainStates if true then the produced {@link PackedHashableState}s retain their source state; if false then only the packed key is stored.
+	 */
+	public PackedHashableStateFactory(boolean identifierIndependent, boolean retainStates) {
+		this.identifierIndependent = identifierIndependent;
+		this.retainStates = retainStates;
+	}
+
+
+	public boolean objectIdentifierIndependent() {
+		return this.identifierIndependent;
+	}
+
+
+	/**
+	 * Returns whether the produced {@link PackedHashableState}s retain their source state.
+	 * @return true if source states are retained; false if only the packed key is stored.
+	 */
+	public boolean retainsStates() {
+		return retainStates;
+	}
+
+
+	/**
+	 * Sets whether the produced {@link PackedHashableState}s retain their source state. If false, only the packed key is stored
+	 * and {@link HashableState#s()} decodes a new state from it.
+	 * @param retainStates if true then source states are retained; if false then only the packed key is stored.
+	 */
+	public void setRetainStates(boolean retainStates) {
+		this.retainStates = retainStates;
+	}
+
+
+	/**
+	 * Returns the maximum number of values that may be interned.
+	 * @return the maximum number of interned values
+	 */
+	public int getMaxInternedValues() {
+		return maxInternedValues;
+	}
+
+
+	/**
+	 * Sets the maximum number of values that may be interned. Hashing a state that would intern more values results in a runtime exception.
+	 * @param maxInternedValues the maximum number of interned values
+	 */
+	public void setMaxInternedValues(int maxInternedValues) {
+		if(maxInternedValues < 1){
+			throw new RuntimeException("The maximum number of interned values must be at least 1; was " + maxInternedValues);
+		}
+		this.maxInternedValues = maxInternedValues;
+	}
+
+
+	/**
+	 * Specifies the domain of an integer-valued variable, so that it is packed with only as many bits as the span of the domain
+	 * requires. For {@link OOState}s, the key is an object-level variable key and the domain applies to the variable of all objects.
+	 * A specified domain takes precedence over any domain provided by a state implementing {@link StateDomain}. Domains must be
+	 * specified before the first state with the variable is hashed.
+	 * @param key the variable key
+	 * @param domain the domain of the variable
+	 * @return this object, to support method chaining
+	 */
+	public PackedHashableStateFactory variableDomain(Object key, VariableDomain domain){
+		this.domains.put(key, domain);
+		return this;
+	}
+
+
+	@Override
+	public HashableState hashState(State s) {
+		if(s instanceof PackedHashableState && ((PackedHashableState)s).factory == this){
+			return (HashableState)s;
+		}
+
+		if(s instanceof OOState){
+			return this.hashOOState((OOState)s);
+		}
+
+		Layout layout = this.stateLayout(s);
+		KeyWriter w = new KeyWriter(ID_BITS + layout.totalBits);
+		w.write(layout.id, ID_BITS);
+		this.writeVariables(w, layout, s);
+
+		return new PackedHashableState(this, w.words, this.retainStates || layout.prototype == null ? s : null);
+	}
+
+
+	/**
+	 * Encodes an {@link OOState}. The key starts with a word holding the state layout id and the number of objects, followed by the sorted,
+	 * word-aligned encoding of each object, which starts with its layout id and (if identifier dependent) its interned name.
+	 * @param s the state to encode
+	 * @return the {@link PackedHashableState} of the state
+	 */
+	protected HashableState hashOOState(OOState s){
+
+		Layout layout = this.stateLayout(s);
+
+		List<ObjectInstance> objects = s.objects();
+		long [][] obKeys = new long[objects.size()][];
+		int nWords = 1;
+		for(int i = 0; i < obKeys.length; i++){
+			ObjectInstance ob = objects.get(i);
+			Layout obLayout = this.objectLayout(ob);
+			KeyWriter w = new KeyWriter(ID_BITS + (this.identifierIndependent ? 0 : ID_BITS) + obLayout.totalBits);
+			w.write(obLayout.id, ID_BITS);
+			if(!this.identifierIndependent){
+				w.write(this.intern(ob.name()), ID_BITS);
+			}
+			this.writeVariables(w, obLayout, ob);
+			obKeys[i] = w.words;
+			nWords += w.words.length;
+		}
+
+		Arrays.sort(obKeys, KEY_ORDER);
+
+		long [] key = new long[nWords];
+		key[0] = ((long)obKeys.length << ID_BITS) | layout.id;
+		int pos = 1;
+		for(long [] obKey : obKeys){
+			System.arraycopy(obKey, 0, key, pos, obKey.length);
+			pos += obKey.length;
+		}
+
+		return new PackedHashableState(this, key, this.retainStates || layout.prototype == null ? s : null);
+	}
+
+
+	/**
+	 * Decodes a new {@link State} from a packed key produced by this factory for a state that was not retained.
+	 * @param key the packed key
+	 * @return a new {@link State} for the packed key
+	 */
+	public State decode(long [] key){
+		int layoutId = (int)key[0];
+		Layout layout = this.layout(layoutId);
+		if(layout.prototype == null){
+			throw new RuntimeException("Cannot decode a packed state of " + layout.sourceClass.getName() + " because it is not mutable.");
+		}
+
+		if(layout.prototype instanceof OOState){
+			return this.decodeOOState(layout, key);
+		}
+
+		MutableState ns = (MutableState)layout.prototype.copy();
+		KeyReader r = new KeyReader(key, 0);
+		r.read(ID_BITS);
+		for(int i = 0; i < layout.keys.length; i++){
+			ns.set(layout.keys[i], this.readValue(r, layout, i));
+		}
+		return ns;
+	}
+
+
+	/**
+	 * Decodes a new {@link OOState} from a packed key by reusing the objects of a copy of the layout's prototype state
+	 * that have the same class (and, if possible, name), adding any missing objects and removing any unused ones.
+	 * @param layout the layout of the state class
+	 * @param key the packed key
+	 * @return a new {@link OOState} for the packed key
+	 */
+	protected State decodeOOState(Layout layout, long [] key){
+
+		MutableOOState ns = (MutableOOState)layout.prototype.copy();
+
+		int n = (int)(key[0] >>> ID_BITS);
+		Layout [] obLayouts = new Layout[n];
+		String [] names = new String[n];
+		Object [][] values = new Object[n][];
+		Set<String> decodedNames = new HashSet<String>(n);
+		int pos = 1;
+		for(int i = 0; i < n; i++){
+			KeyReader r = new KeyReader(key, pos);
+			Layout obLayout = this.layout((int)r.read(ID_BITS));
+			obLayouts[i] = obLayout;
+			if(!this.identifierIndependent){
+				names[i] = (String)this.internedValue((int)r.read(ID_BITS));
+				decodedNames.add(names[i]);
+			}
+			values[i] = new Object[obLayout.keys.length];
+			for(int j = 0; j < values[i].length; j++){
+				values[i][j] = this.readValue(r, obLayout, j);
+			}
+			pos += (ID_BITS + (this.identifierIndependent ? 0 : ID_BITS) + obLayout.totalBits + 63) >>> 6;
+		}
+
+		Map<String, List<ObjectInstance>> unused = OOStateUtilities.objectsByClass(ns);
+		boolean [] placed = new boolean[n];
+
+		//when identifier dependent, first reuse objects with the same class and name
+		if(!this.identifierIndependent){
+			for(int i = 0; i < n; i++){
+				ObjectInstance ob = ns.object(names[i]);
+				if(ob != null && ob.className().equals(obLayouts[i].className)){
+					unused.get(ob.className()).remove(ob);
+					placed[i] = true;
+					this.setObjectValues(ns, obLayouts[i], names[i], values[i]);
+				}
+			}
+		}
+
+		for(int i = 0; i < n; i++){
+			if(placed[i]){
+				continue;
+			}
+			Layout obLayout = obLayouts[i];
+			List<ObjectInstance> candidates = unused.get(obLayout.className);
+			String name = names[i];
+			if(candidates != null && !candidates.isEmpty()){
+				ObjectInstance ob = candidates.remove(candidates.size()-1);
+				if(name == null){
+					name = ob.name();
+				}
+				else{
+					this.removeConflict(ns, unused, name);
+					ns.renameObject(ob.name(), name);
+				}
+			}
+			else{
+				if(name == null){
+					name = this.unusedName(ns, decodedNames, obLayout.className);
+				}
+				else{
+					this.removeConflict(ns, unused, name);
+				}
+				ns.addObject(((ObjectInstance)obLayout.prototype).copyWithName(name));
+			}
+			this.setObjectValues(ns, obLayout, name, values[i]);
+		}
+
+		for(List<ObjectInstance> obs : unused.values()){
+			for(ObjectInstance ob : obs){
+				ns.removeObject(ob.name());
+			}
+		}
+
+		return ns;
+	}
+
+
+	/**
+	 * Removes from a state being decoded an unused object that has a name that a decoded object needs.
+	 * @param ns the state being decoded
+	 * @param unused the unused objects of the state, organized by class
+	 * @param name the needed object name
+	 */
+	protected void removeConflict(MutableOOState ns, Map<String, List<ObjectInstance>> unused, String name){
+		ObjectInstance ob = ns.object(name);
+		if(ob != null){
+			unused.get(ob.className()).remove(ob);
+			ns.removeObject(name);
+		}
+	}
+
+
+	/**
+	 * Returns an object name for an object of the given class that is not used in the state or by another decoded object.
+	 * @param ns the state being decoded
+	 * @param decodedNames the names of decoded objects
+	 * @param className the object class name
+	 * @return an unused object name
+	 */
+	protected String unusedName(MutableOOState ns, Set<String> decodedNames, String className){
+		for(int i = 0; ; i++){
+			String name = className + i;
+			if(ns.object(name) == null && !decodedNames.contains(name)){
+				decodedNames.add(name);
+				return name;
+			}
+		}
+	}
+
+
+	/**
+	 * Sets the variable values of an object in a state being decoded.
+	 * @param ns the state being decoded
+	 * @param obLayout the layout of the object
+	 * @param name the name of the object
+	 * @param values the decoded variable values
+	 */
+	protected void setObjectValues(MutableOOState ns, Layout obLayout, String name, Object [] values){
+		for(int j = 0; j < values.length; j++){
+			ns.set(new OOVariableKey(name, obLayout.keys[j]), values[j]);
+		}
+	}
+
+
+	/**
+	 * Returns the layout for a flat state or an {@link OOState}, creating it if this is the first state of its Java class.
+	 * @param s the state
+	 * @return the layout of the state's class
+	 */
+	protected Layout stateLayout(State s){
+		Layout layout = this.stateLayouts.get(s.getClass());
+		if(layout == null){
+			synchronized(this){
+				layout = this.stateLayouts.get(s.getClass());
+				if(layout == null){
+					layout = this.createLayout(s, null);
+					this.stateLayouts.put(s.getClass(), layout);
+				}
+			}
+		}
+		return layout;
+	}
+
+
+	/**
+	 * Returns the layout for an OO-MDP object, creating it if this is the first object of its class.
+	 * @param ob the object
+	 * @return the layout of the object's class
+	 */
+	protected Layout objectLayout(ObjectInstance ob){
+		Layout layout = this.objectLayouts.get(ob.className());
+		if(layout == null){
+			synchronized(this){
+				layout = this.objectLayouts.get(ob.className());
+				if(layout == null){
+					layout = this.createLayout(ob, ob.className());
+					this.objectLayouts.put(ob.className(), layout);
+				}
+			}
+		}
+		return layout;
+	}
+
+
+	/**
+	 * Creates and registers the layout for the class of the given state or object. Must be called while synchronized on this factory.
+	 * @param s the state or object
+	 * @param className the OO-MDP class name if the state is an object; null otherwise
+	 * @return the new layout
+	 */
+	protected Layout createLayout(State s, String className){
+
+		Layout layout = new Layout();
+		layout.id = this.layouts.size();
+		layout.sourceClass = s.getClass();
+		layout.className = className;
+
+		if(className != null){
+			layout.prototype = s;
+		}
+		else if(s instanceof OOState ? s instanceof MutableOOState : s instanceof MutableState){
+			layout.prototype = s.copy();
+		}
+
+		List<Object> keys = s instanceof OOState ? new ArrayList<Object>(0) : s.variableKeys();
+		int n = keys.size();
+		layout.keys = keys.toArray();
+		layout.keySet = new HashSet<Object>(keys);
+		layout.kinds = new int[n];
+		layout.types = new Class<?>[n];
+		layout.bits = new int[n];
+		layout.lowers = new long[n];
+		layout.uppers = new long[n];
+		layout.bounded = new boolean[n];
+
+		for(int i = 0; i < n; i++){
+			Object v = s.get(layout.keys[i]);
+			int kind = kind(v);
+			layout.kinds[i] = kind;
+			layout.types[i] = kind == KIND_INTERNED ? null : v.getClass();
+			layout.bits[i] = naturalBits(kind);
+
+			if(kind >= KIND_BYTE && kind <= KIND_LONG){
+				VariableDomain d = this.domains.get(layout.keys[i]);
+				if(d == null && s instanceof StateDomain){
+					d = ((StateDomain)s).domain(layout.keys[i]);
+				}
+				if(d != null){
+					long lower = (long)Math.floor(d.lower);
+					long upper = (long)Math.ceil(d.upper);
+					if(upper < lower){
+						throw new RuntimeException("The domain of variable " + layout.keys[i] + " is empty: [" + d.lower + ", " + d.upper + "]");
+					}
+					int bits = 64 - Long.numberOfLeadingZeros(upper - lower);
+					if(bits < layout.bits[i]){
+						layout.bits[i] = bits;
+						layout.lowers[i] = lower;
+						layout.uppers[i] = upper;
+						layout.bounded[i] = true;
+					}
+				}
+			}
+
+			layout.totalBits += layout.bits[i];
+		}
+
+		this.layouts.add(layout);
+
+		return layout;
+	}
+
+
+	/**
+	 * Returns the layout with the given id.
+	 * @param id the layout id
+	 * @return the layout with the given id
+	 */
+	protected Layout layout(int id){
+		synchronized(this){
+			return this.layouts.get(id);
+		}
+	}
+
+
+	/**
+	 * Writes the values of all variables of a state or object.
+	 * @param w the key writer
+	 * @param layout the layout of the state or object
+	 * @param s the state or object
+	 */
+	protected void writeVariables(KeyWriter w, Layout layout, State s){
+		this.checkVariableKeys(layout, s);
+		for(int i = 0; i < layout.keys.length; i++){
+			Object v = s.get(layout.keys[i]);
+			int kind = layout.kinds[i];
+			if(kind == KIND_INTERNED){
+				w.write(this.intern(v), ID_BITS);
+				continue;
+			}
+			if(v == null || v.getClass() != layout.types[i]){
+				throw new RuntimeException("Cannot pack the value of variable " + layout.keys[i] + " of " + s.getClass().getName() + " because its type " +
+						(v == null ? "null" : v.getClass().getName()) + " differs from the type " + layout.types[i].getName() + " of the first hashed state.");
+			}
+
+			long x;
+			switch(kind){
+				case KIND_BOOLEAN:
+					x = (Boolean)v ? 1 : 0;
+					break;
+				case KIND_CHAR:
+					x = (Character)v;
+					break;
+				case KIND_FLOAT:
+					x = Float.floatToIntBits((Float)v);
+					break;
+				case KIND_DOUBLE:
+					x = Double.doubleToLongBits((Double)v);
+					break;
+				default:
+					x = ((Number)v).longValue();
+					if(layout.bounded[i]){
+						if(x < layout.lowers[i] || x > layout.uppers[i]){
+							throw new RuntimeException("Cannot pack the value " + x + " of variable " + layout.keys[i] + " because it is outside of its domain [" +
+									layout.lowers[i] + ", " + layout.uppers[i] + "]");
+						}
+						x -= layout.lowers[i];
+					}
+			}
+			w.write(x, layout.bits[i]);
+		}
+	}
+
+
+	/**
+	 * Throws a runtime exception if a state or object does not have the same variable keys as its layout, since its key would
+	 * otherwise only encode the layout's variables.
+	 * @param layout the layout of the state or object
+	 * @param s the state or object
+	 */
+	protected void checkVariableKeys(Layout layout, State s){
+		List<Object> keys = s.variableKeys();
+		if(keys.size() == layout.keys.length){
+			boolean sameOrder = true;
+			for(int i = 0; i < layout.keys.length; i++){
+				if(!layout.keys[i].equals(keys.get(i))){
+					sameOrder = false;
+					break;
+				}
+			}
+			if(sameOrder || layout.keySet.equals(new HashSet<Object>(keys))){
+				return;
+			}
+		}
+		throw new RuntimeException("Cannot pack " + s.getClass().getName() + " because its variable keys " + keys +
+				" differ from the keys " + Arrays.toString(layout.keys) + " of the first hashed state.");
+	}
+
+
+	/**
+	 * Reads the value of a variable.
+	 * @param r the key reader
+	 * @param layout the layout of the state or object
+	 * @param i the index of the variable in the layout
+	 * @return the value of the variable
+	 */
+	protected Object readValue(KeyReader r, Layout layout, int i){
+		long x = r.read(layout.bits[i]);
+		if(layout.bounded[i]){
+			x += layout.lowers[i];
+		}
+		switch(layout.kinds[i]){
+			case KIND_BOOLEAN:
+				return x != 0;
+			case KIND_BYTE:
+				return (byte)x;
+			case KIND_SHORT:
+				return (short)x;
+			case KIND_INT:
+				return (int)x;
+			case KIND_LONG:
+				return x;
+			case KIND_CHAR:
+				return (char)x;
+			case KIND_FLOAT:
+				return Float.intBitsToFloat((int)x);
+			case KIND_DOUBLE:
+				return Double.longBitsToDouble(x);
+			default:
+				Object v = this.internedValue((int)x);
+				return v != null && v.getClass().isArray() ? copyArray(v) : v;
+		}
+	}
+
+
+	/**
+	 * Returns the interned id of a value, interning it if it has not been seen before.
+	 * @param v the value
+	 * @return the interned id of the value
+	 */
+	protected int intern(Object v){
+		Object k = v == null ? NULL_VALUE : (v.getClass().isArray() ? new ArrayValue(v) : v);
+		Integer id = this.internIds.get(k);
+		if(id == null){
+			synchronized(this){
+				id = this.internIds.get(k);
+				if(id == null){
+					//arrays are copied so that later changes to the caller's array do not change the interned value or its key
+					if(this.internedValues.size() >= this.maxInternedValues){
+						throw new RuntimeException("Cannot intern more than " + this.maxInternedValues + " distinct values; see PackedHashableStateFactory.setMaxInternedValues");
+					}
+					if(k instanceof ArrayValue){
+						v = copyArray(v);
+						k = new ArrayValue(v);
+					}
+					id = this.internedValues.size();
+					this.internedValues.add(v);
+					this.internIds.put(k, id);
+				}
+			}
+		}
+		return id;
+	}
+
+
+	/**
+	 * Returns the interned value with the given id.
+	 * @param id the interned id
+	 * @return the interned value
+	 */
+	protected Object internedValue(int id){
+		synchronized(this){
+			return this.internedValues.get(id);
+		}
+	}
+
+
+	/**
+	 * Returns the kind of a value.
+	 * @param v the value
+	 * @return the kind of the value
+	 */
+	protected static int kind(Object v){
+		if(v instanceof Boolean){
+			return KIND_BOOLEAN;
+		}
+		else if(v instanceof Byte){
+			return KIND_BYTE;
+		}
+		else if(v instanceof Short){
+			return KIND_SHORT;
+		}
+		else if(v instanceof Integer){
+			return KIND_INT;
+		}
+		else if(v instanceof Long){
+			return KIND_LONG;
+		}
+		else if(v instanceof Character){
+			return KIND_CHAR;
+		}
+		else if(v instanceof Float){
+			return KIND_FLOAT;
+		}
+		else if(v instanceof Double){
+			return KIND_DOUBLE;
+		}
+		return KIND_INTERNED;
+	}
+
+
+	/**
+	 * Returns the number of bits used for a kind of value without a domain.
+	 * @param kind the kind of value
+	 * @return the number of bits used
+	 */
+	protected static int naturalBits(int kind){
+		switch(kind){
+			case KIND_BOOLEAN:
+				return 1;
+			case KIND_BYTE:
+				return 8;
+			case KIND_SHORT:
+			case KIND_CHAR:
+				return 16;
+			case KIND_LONG:
+			case KIND_DOUBLE:
+				return 64;
+			default:
+				return 32;
+		}
+	}
+
+
+	/**
+	 * Orders packed object keys lexicographically.
+	 */
+	protected static final Comparator<long[]> KEY_ORDER = new Comparator<long[]>() {
+		@Override
+		public int compare(long[] a, long[] b) {
+			int n = Math.min(a.length, b.length);
+			for(int i = 0; i < n; i++){
+				if(a[i] != b[i]){
+					return a[i] < b[i] ? -1 : 1;
+				}
+			}
+			return a.length - b.length;
+		}
+	};
+
+
+	/**
+	 * The packing layout of a state class or OO-MDP object class.
+	 */
+	protected static class Layout {
+
+		/**
+		 * The id of the layout, which is written at the start of keys
+		 */
+		public int id;
+
+		/**
+		 * The Java class of the first state or object with this layout
+		 */
+		public Class<?> sourceClass;
+
+		/**
+		 * The OO-MDP class name for object layouts; null for state layouts
+		 */
+		public String className;
+
+		/**
+		 * The state from which decoded states (or objects) are copied; null if states of this layout cannot be decoded
+		 */
+		public State prototype;
+
+		/**
+		 * The variable keys
+		 */
+		public Object [] keys;
+
+		/**
+		 * The variable keys as a set, used to check states whose keys are in a different order
+		 */
+		public Set<Object> keySet;
+
+		/**
+		 * The kind of value of each variable
+		 */
+		public int [] kinds;
+
+		/**
+		 * The Java class of the value of each variable; null for interned values
+		 */
+		public Class<?> [] types;
+
+		/**
+		 * The number of bits used for each variable
+		 */
+		public int [] bits;
+
+		/**
+		 * The lower bound of the domain of each bounded variable
+		 */
+		public long [] lowers;
+
+		/**
+		 * The upper bound of the domain of each bounded variable
+		 */
+		public long [] uppers;
+
+		/**
+		 * Whether each variable is packed relative to its domain
+		 */
+		public boolean [] bounded;
+
+		/**
+		 * The total number of bits used for all variables
+		 */
+		public int totalBits;
+
+	}
+
+
+	/**
+	 * Writes fixed-width values into a <code>long[]</code> of exactly the needed size.
+	 */
+	protected static class KeyWriter {
+
+		public long [] words;
+		public int pos = 0;
+
+		public KeyWriter(int nBits) {
+			this.words = new long[(nBits + 63) >>> 6];
+		}
+
+		/**
+		 * Writes the lowest bits of a value.
+		 * @param v the value
+		 * @param nBits the number of bits to write, at most 64
+		 */
+		public void write(long v, int nBits){
+			if(nBits == 0){
+				return;
+			}
+			if(nBits < 64){
+				v &= (1L << nBits) - 1;
+			}
+			int w = this.pos >>> 6;
+			int o = this.pos & 63;
+			this.words[w] |= v << o;
+			if(o + nBits > 64){
+				this.words[w+1] |= v >>> (64 - o);
+			}
+			this.pos += nBits;
+		}
+	}
+
+
+	/**
+	 * Reads fixed-width values written by a {@link KeyWriter}.
+	 */
+	protected static class KeyReader {
+
+		public long [] words;
+		public int pos;
+
+		/**
+		 * Initializes.
+		 * @param words the packed key
+		 * @param wordOffset the word at which to start reading
+		 */
+		public KeyReader(long[] words, int wordOffset) {
+			this.words = words;
+			this.pos = wordOffset << 6;
+		}
+
+		/**
+		 * Reads the next value.
+		 * @param nBits the number of bits to read, at most 64
+		 * @return the value
+		 */
+		public long read(int nBits){
+			if(nBits == 0){
+				return 0;
+			}
+			int w = this.pos >>> 6;
+			int o = this.pos & 63;
+			long v = this.words[w] >>> o;
+			if(o + nBits > 64){
+				v |= this.words[w+1] << (64 - o);
+			}
+			if(nBits < 64){
+				v &= (1L << nBits) - 1;
+			}
+			this.pos += nBits;
+			return v;
+		}
+	}
+
+
+	/**
+	 * Returns a deep copy of an array; nested arrays are copied as well.
+	 * @param array the array to copy
+	 * @return the copy
+	 */
+	protected static Object copyArray(Object array){
+		int n = Array.getLength(array);
+		Object copy = Array.newInstance(array.getClass().getComponentType(), n);
+		if(array.getClass().getComponentType().isPrimitive()){
+			System.arraycopy(array, 0, copy, 0, n);
+		}
+		else{
+			for(int i = 0; i < n; i++){
+				Object e = Array.get(array, i);
+				Array.set(copy, i, e != null && e.getClass().isArray() ? copyArray(e) : e);
+			}
+		}
+		return copy;
+	}
+
+
+	/**
+	 * Wraps an array so that it is interned by its contents.
+	 */
+	protected static class ArrayValue {
+
+		public Object [] array;
+
+		public ArrayValue(Object array) {
+			this.array = new Object[]{array};
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.deepHashCode(this.array);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ArrayValue && Arrays.deepEquals(this.array, ((ArrayValue)obj).array);
+		}
+	}
+
+}
@@ -3,7 +3,6 @@ package burlap.statehashing.simple;
 import burlap.mdp.core.oo.state.OOState;
 import burlap.mdp.core.oo.state.ObjectInstance;
 import burlap.mdp.core.state.State;
-import burlap.statehashing.HashableState;
 import burlap.statehashing.WrappedHashableState;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
@@ -22,26 +21,15 @@ public class IDSimpleHashableState extends WrappedHashableState {
 		super(s);
 	}
 
-	@Override
-	public int hashCode() {
-		return computeHashCode(this.s);
-	}
-
-	@Override
-	public boolean equals(Object obj) {
-		if(obj == this){
-			return true;
-		}
-		if(!(obj instanceof HashableState)){
-			return false;
-		}
-		return statesEqual(this.s, ((HashableState)obj).s());
+	/**
+	 * Initializes.
+	 * @param s the {@link State} to hash, which must never be modified if cacheHashCode is true
+	 * @param cacheHashCode whether the hash code and fingerprint are cached after they are first computed
+	 */
+	public IDSimpleHashableState(State s, boolean cacheHashCode) {
+		super(s, cacheHashCode);
 	}
 
-
-
-
-
 	/**
 	 * Computes the hash code for the input state.
 	 * @param s the input state for which a hash code is to be computed
@@ -90,11 +78,11 @@ public class IDSimpleHashableState extends WrappedHashableState {
 		return hashCodeBuilder.toHashCode();
 	}
 
-	protected void appendHashCodeForValue(HashCodeBuilder hashCodeBuilder, Object key, Object value){
-		hashCodeBuilder.append(value);
+	@Override
+	protected long computeObjectFingerprint(ObjectInstance o){
+		return super.computeObjectFingerprint(o) + 31*31*(long)o.name().hashCode();
 	}
 
-
 	/**
 	 * Returns true if the two input states are equal. Equality respect this hashing factory's identifier independence
 	 * setting.
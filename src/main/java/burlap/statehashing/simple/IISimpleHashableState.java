@@ -4,7 +4,6 @@ import burlap.mdp.core.oo.state.OOState;
 import burlap.mdp.core.oo.state.OOStateUtilities;
 import burlap.mdp.core.oo.state.ObjectInstance;
 import burlap.mdp.core.state.State;
-import burlap.statehashing.HashableState;
 import burlap.statehashing.WrappedHashableState;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
@@ -22,23 +21,15 @@ public class IISimpleHashableState extends WrappedHashableState {
 		super(s);
 	}
 
-	@Override
-	public int hashCode() {
-		return computeHashCode(this.s);
-	}
-
-	@Override
-	public boolean equals(Object obj) {
-		if(obj == this){
-			return true;
-		}
-		if(!(obj instanceof HashableState)){
-			return false;
-		}
-		return statesEqual(this.s, ((HashableState)obj).s());
+	/**
+	 * Initializes.
+	 * @param s the {@link State} to hash, which must never be modified if cacheHashCode is true
+	 * @param cacheHashCode whether the hash code and fingerprint are cached after they are first computed
+	 */
+	public IISimpleHashableState(State s, boolean cacheHashCode) {
+		super(s, cacheHashCode);
 	}
 
-
 	/**
 	 * Computes the hash code for the input state.
 	 * @param s the input state for which a hash code is to be computed
@@ -86,11 +77,6 @@ public class IISimpleHashableState extends WrappedHashableState {
 		return hashCodeBuilder.toHashCode();
 	}
 
-	protected void appendHashCodeForValue(HashCodeBuilder hashCodeBuilder, Object key, Object value){
-		hashCodeBuilder.append(value);
-	}
-
-
 	/**
 	 * Returns true if the two input states are equal. Equality respect this hashing factory's identifier independence
 	 * setting.
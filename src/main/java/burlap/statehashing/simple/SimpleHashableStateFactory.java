@@ -18,6 +18,15 @@ import burlap.statehashing.HashableStateFactory;
  * (the names of objects don't affect the state identity). However, you may disable identifier independence
  * by using the constructor {@link #SimpleHashableStateFactory(boolean)}. If your domain is relational, it may be
  * important to be identifier *dependent* (that is, set the parameter in the constructor to false).
+ * <p>
+ * The factory can also be set to produce {@link burlap.statehashing.HashableState} objects that cache their hash code
+ * and a 64-bit fingerprint of the state the first time they are computed (see {@link #SimpleHashableStateFactory(boolean, boolean)}
+ * and {@link #setCacheHashCodes(boolean)}). Caching avoids re-walking the whole state on every hash table lookup, and
+ * the fingerprint lets equality checks between two caching instances reject different states without comparing
+ * them variable by variable. However, caching is only safe if states are immutable:
+ * a {@link State} must never be modified after it has been hashed, otherwise its cached hash code will be stale.
+ * States returned by a {@link burlap.mdp.singleagent.model.SampleModel} are new objects and are safe to cache,
+ * but states that you modify in place must be copied before they are hashed.
  * @author James MacGlashan.
  */
 public class SimpleHashableStateFactory implements HashableStateFactory {
@@ -29,6 +38,12 @@ public class SimpleHashableStateFactory implements HashableStateFactory {
 	protected boolean identifierIndependent = true;
 
 
+	/**
+	 * Whether the produced {@link burlap.statehashing.HashableState} objects cache their hash code and fingerprint. By default they do not.
+	 */
+	protected boolean cacheHashCodes = false;
+
+
 	/**
 	 * Default constructor: object identifier independent and no hash code caching.
 	 */
@@ -45,6 +60,17 @@ public class SimpleHashableStateFactory implements HashableStateFactory {
 	}
 
 
+	/**
+	 * Initializes.
+	 * @param identifierIndependent if true then state evaluations for {@link burlap.mdp.core.oo.state.OOState}s are object identifier independent; if false then dependent.
+	 * @param cacheHashCodes if true then the produced {@link burlap.statehashing.HashableState} objects cache their hash code and fingerprint, which requires that hashed states are never modified.
+	 */
+	public SimpleHashableStateFactory(boolean identifierIndependent, boolean cacheHashCodes){
+		this.identifierIndependent = identifierIndependent;
+		this.cacheHashCodes = cacheHashCodes;
+	}
+
+
 	@Override
 	public HashableState hashState(State s) {
 		if(s instanceof IISimpleHashableState || s instanceof IDSimpleHashableState){
@@ -52,9 +78,9 @@ public class SimpleHashableStateFactory implements HashableStateFactory {
 		}
 
 		if(identifierIndependent){
-			return new IISimpleHashableState(s);
+			return new IISimpleHashableState(s, cacheHashCodes);
 		}
-		return new IDSimpleHashableState(s);
+		return new IDSimpleHashableState(s, cacheHashCodes);
 	}
 
 
@@ -63,6 +89,25 @@ public class SimpleHashableStateFactory implements HashableStateFactory {
 	}
 
 
+	/**
+	 * Returns whether the produced {@link burlap.statehashing.HashableState} objects cache their hash code and fingerprint.
+	 * @return true if hash codes are cached; false otherwise.
+	 */
+	public boolean cachesHashCodes() {
+		return this.cacheHashCodes;
+	}
+
+
+	/**
+	 * Sets whether the produced {@link burlap.statehashing.HashableState} objects cache their hash code and fingerprint. Only
+	 * enable caching if hashed states are never modified afterwards.
+	 * @param cacheHashCodes if true then hash codes are cached; if false then they are recomputed on every call.
+	 */
+	public void setCacheHashCodes(boolean cacheHashCodes) {
+		this.cacheHashCodes = cacheHashCodes;
+	}
+
+
 
 
 
@@ -1,11 +1,14 @@
 package burlap.testing;
 
+import burlap.domain.singleagent.blockdude.state.BlockDudeState;
 import burlap.domain.singleagent.gridworld.GridWorldDomain;
 import burlap.domain.singleagent.gridworld.state.GridAgent;
 import burlap.domain.singleagent.gridworld.state.GridLocation;
 import burlap.domain.singleagent.gridworld.state.GridWorldState;
+import burlap.domain.stochasticgames.normalform.NFGameState;
 import burlap.mdp.core.action.Action;
 import burlap.mdp.core.state.State;
+import burlap.mdp.core.state.vardomain.VariableDomain;
 import burlap.mdp.core.action.ActionType;
 import burlap.mdp.core.action.ActionUtils;
 import burlap.mdp.singleagent.SADomain;
@@ -13,8 +16,13 @@ import burlap.mdp.singleagent.model.FullModel;
 import burlap.mdp.singleagent.model.TransitionProb;
 import burlap.statehashing.HashableState;
 import burlap.statehashing.HashableStateFactory;
+import burlap.statehashing.masked.MaskedHashableStateFactory;
+import burlap.statehashing.packed.PackedHashableState;
+import burlap.statehashing.packed.PackedHashableStateFactory;
+import burlap.statehashing.simple.IISimpleHashableState;
 import burlap.statehashing.simple.SimpleHashableStateFactory;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -80,6 +88,116 @@ public class TestHashing {
 
 
 	
+	@Test
+	public void testCachedHashFactory() {
+		SADomain domain = (SADomain)this.gridWorldTest.getDomain();
+		State startState = this.gridWorldTest.generateState();
+		SimpleHashableStateFactory factory = new SimpleHashableStateFactory(true, true);
+		Set<HashableState> hashedStates = this.getReachableHashedStates(startState, domain, factory);
+		Assert.assertEquals(104, hashedStates.size());
+
+		HashableStateFactory uncached = new SimpleHashableStateFactory();
+		for (HashableState state : hashedStates) {
+			HashableState renamedHashed = factory.hashState(this.renameObjects((GridWorldState)state.s().copy()));
+			HashableState uncachedHashed = uncached.hashState(state.s());
+			Assert.assertEquals(state.hashCode(), uncachedHashed.hashCode());
+			Assert.assertEquals(state.hashCode(), renamedHashed.hashCode());
+			Assert.assertEquals(((IISimpleHashableState)state).fingerprint(), ((IISimpleHashableState)renamedHashed).fingerprint());
+			Assert.assertEquals(((IISimpleHashableState)state).fingerprint(), ((IISimpleHashableState)uncachedHashed).fingerprint());
+			Assert.assertTrue(hashedStates.contains(renamedHashed));
+		}
+
+		MaskedHashableStateFactory maskedFactory = new MaskedHashableStateFactory(true, false, GridWorldDomain.CLASS_LOCATION);
+		maskedFactory.setCacheHashCodes(true);
+		GridWorldState moved = (GridWorldState)startState.copy();
+		moved.touchLocation(0).x = 5;
+		HashableState h1 = maskedFactory.hashState(startState);
+		HashableState h2 = maskedFactory.hashState(moved);
+		Assert.assertEquals(h1, h2);
+		Assert.assertEquals(((IISimpleHashableState)h1).fingerprint(), ((IISimpleHashableState)h2).fingerprint());
+		Assert.assertNotEquals(factory.hashState(startState), factory.hashState(moved));
+	}
+
+	@Test
+	public void testPackedHashFactory() {
+		SADomain domain = (SADomain)this.gridWorldTest.getDomain();
+		State startState = this.gridWorldTest.generateState();
+		HashableStateFactory simple = new SimpleHashableStateFactory();
+		Set<HashableState> simpleStates = this.getReachableHashedStates(startState, domain, simple);
+
+		for(int i = 0; i < 4; i++){
+			boolean identifierIndependent = i % 2 == 0;
+			PackedHashableStateFactory factory = new PackedHashableStateFactory(identifierIndependent, i < 2);
+			Set<HashableState> hashedStates = this.getReachableHashedStates(startState, domain, factory);
+			Assert.assertEquals(104, hashedStates.size());
+
+			Set<HashableState> renamedStates = new HashSet<HashableState>();
+			for (HashableState state : hashedStates) {
+				State source = state.s();
+				Assert.assertEquals(state, factory.hashState(source));
+				Assert.assertTrue(simpleStates.contains(simple.hashState(source)));
+				renamedStates.add(factory.hashState(this.renameObjects((GridWorldState)source.copy())));
+			}
+			hashedStates.addAll(renamedStates);
+			Assert.assertEquals(identifierIndependent ? 104 : 208, hashedStates.size());
+		}
+
+		PackedHashableStateFactory unbounded = new PackedHashableStateFactory();
+		PackedHashableStateFactory bounded = new PackedHashableStateFactory(true, false)
+				.variableDomain(GridWorldDomain.VAR_X, new VariableDomain(0, 10))
+				.variableDomain(GridWorldDomain.VAR_Y, new VariableDomain(0, 10))
+				.variableDomain(GridWorldDomain.VAR_TYPE, new VariableDomain(0, 4));
+		PackedHashableState h1 = (PackedHashableState)unbounded.hashState(startState);
+		PackedHashableState h2 = (PackedHashableState)bounded.hashState(startState);
+		Assert.assertEquals(5, h1.key().length);
+		Assert.assertEquals(3, h2.key().length);
+		Assert.assertFalse(h2.retainsState());
+		Assert.assertEquals(simple.hashState(startState), simple.hashState(h2.s()));
+		Assert.assertEquals(h2, bounded.hashState(h2.s()));
+	}
+
+	@Test
+	public void testPackedHashFactoryArrayValues() {
+		TestBlockDude blockDudeTest = new TestBlockDude();
+		blockDudeTest.setup();
+		BlockDudeState s = (BlockDudeState)blockDudeTest.generateState();
+		PackedHashableStateFactory factory = new PackedHashableStateFactory(true, false);
+		HashableState h = factory.hashState(s);
+
+		//changing the hashed state's map array after hashing changes neither the interned map nor its key
+		int [][] map = s.map.map;
+		int old = map[0][0];
+		map[0][0] = old + 1;
+		Assert.assertEquals(old, ((BlockDudeState)h.s()).map.map[0][0]);
+		Assert.assertNotEquals(h, factory.hashState(s));
+		map[0][0] = old;
+		Assert.assertEquals(h, factory.hashState(s));
+	}
+
+	@Test
+	public void testPackedHashFactoryLimits() {
+		PackedHashableStateFactory factory = new PackedHashableStateFactory();
+		HashableState h = factory.hashState(new NFGameState(new String[]{"a", "b"}));
+
+		//a state of the same class with an extra variable must not be packed with the first state's layout
+		try{
+			factory.hashState(new NFGameState(new String[]{"a", "b", "c"}));
+			Assert.fail("Expected a state with different variable keys to be rejected");
+		}catch(RuntimeException e){
+			//expected
+		}
+		Assert.assertEquals(h, factory.hashState(new NFGameState(new String[]{"a", "b"})));
+
+		factory.setMaxInternedValues(3);
+		factory.hashState(new NFGameState(new String[]{"a", "c"}));
+		try{
+			factory.hashState(new NFGameState(new String[]{"a", "d"}));
+			Assert.fail("Expected the interned value limit to be enforced");
+		}catch(RuntimeException e){
+			//expected
+		}
+	}
+
 	@Test
 	public void testSimpleHashFactoryLargeState() {
 		HashableStateFactory factory = new SimpleHashableStateFactory();
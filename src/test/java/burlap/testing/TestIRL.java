@@ -0,0 +1,272 @@
+package burlap.testing;
+
+import burlap.behavior.functionapproximation.FunctionGradient;
+import burlap.behavior.functionapproximation.dense.DenseStateFeatures;
+import burlap.behavior.policy.Policy;
+import burlap.behavior.policy.RandomPolicy;
+import burlap.behavior.singleagent.Episode;
+import burlap.behavior.singleagent.learnfromdemo.CustomRewardModel;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.MLIRL;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.MLIRLRequest;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.MultipleIntentionsMLIRL;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.MultipleIntentionsMLIRLRequest;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.commonrfs.LinearStateDifferentiableRF;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.differentiableplanners.DifferentiableVI;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.support.DifferentiableQFunction;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.support.DifferentiableRF;
+import burlap.behavior.singleagent.learnfromdemo.mlirl.support.QGradientPlannerFactory;
+import burlap.behavior.singleagent.planning.stochastic.CompiledTransitionTable;
+import burlap.behavior.valuefunction.QValue;
+import burlap.debugtools.RandomFactory;
+import burlap.domain.singleagent.gridworld.state.GridAgent;
+import burlap.domain.singleagent.gridworld.state.GridLocation;
+import burlap.domain.singleagent.gridworld.state.GridWorldState;
+import burlap.mdp.core.state.State;
+import burlap.mdp.singleagent.oo.OOSADomain;
+import burlap.statehashing.simple.SimpleHashableStateFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static burlap.behavior.policy.PolicyUtils.rollout;
+
+public class TestIRL {
+	TestPlanning planningTest;
+	OOSADomain domain;
+	SimpleHashableStateFactory hashingFactory;
+
+	@Before
+	public void setup() {
+		this.planningTest = new TestPlanning();
+		this.planningTest.setup();
+		this.domain = this.planningTest.domain;
+		this.hashingFactory = this.planningTest.hashingFactory;
+	}
+
+	@Test
+	public void testMLIRLLikelihood() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+
+		DenseStateFeatures features = new DenseStateFeatures() {
+			@Override
+			public double[] features(State s) {
+				GridAgent agent = ((GridWorldState)s).agent;
+				return new double[]{agent.x / 10., agent.y / 10., 1.};
+			}
+
+			@Override
+			public DenseStateFeatures copy() {
+				return this;
+			}
+		};
+		LinearStateDifferentiableRF rf = new LinearStateDifferentiableRF(features, 3);
+		rf.setParameter(0, 0.5);
+		rf.setParameter(1, -0.25);
+		rf.setParameter(2, -1.);
+
+		RandomFactory.seedMapped(0, 42);
+		Policy random = new RandomPolicy(this.domain);
+		List<Episode> episodes = new ArrayList<Episode>();
+		for(int i = 0; i < 4; i++){
+			episodes.add(rollout(random, initialState, this.domain.getModel(), 30));
+		}
+		episodes.add(episodes.get(0));
+
+		DifferentiableVI planner = new DifferentiableVI(this.domain, rf, 0.9, 2., this.hashingFactory, 0.001, 100);
+		MLIRLRequest request = new MLIRLRequest(this.domain, planner, episodes, rf);
+		request.setBoltzmannBeta(2.);
+		MLIRL irl = new MLIRL(request, 0.1, 0.01, 10);
+
+		//reference: evaluate every step of every trajectory independently
+		double expectedLikelihood = 0.;
+		double [] expectedGradient = new double[3];
+		for(Episode ea : episodes){
+			expectedLikelihood += irl.logLikelihoodOfTrajectory(ea, 1.);
+			for(int t = 0; t < ea.numTimeSteps()-1; t++){
+				planner.planFromState(ea.state(t));
+				FunctionGradient g = irl.logPolicyGrad(ea.state(t), ea.action(t));
+				for(int i = 0; i < 3; i++){
+					expectedGradient[i] += g.getPartialDerivative(i);
+				}
+			}
+		}
+
+		for(int numThreads = 1; numThreads <= 3; numThreads += 2){
+			irl.setNumThreads(numThreads);
+			Assert.assertEquals(expectedLikelihood, irl.logLikelihood(), TestPlanning.delta);
+			FunctionGradient gradient = irl.logLikelihoodGradient();
+			for(int i = 0; i < 3; i++){
+				Assert.assertEquals(expectedGradient[i], gradient.getPartialDerivative(i), TestPlanning.delta);
+			}
+		}
+
+		//gradient ascent on one pool of threads learns the same parameters as on a single thread
+		double [][] learned = new double[2][3];
+		for(int k = 0; k < 2; k++){
+			LinearStateDifferentiableRF learnedRF = new LinearStateDifferentiableRF(features, 3);
+			learnedRF.setParameter(0, 0.5);
+			learnedRF.setParameter(1, -0.25);
+			learnedRF.setParameter(2, -1.);
+			DifferentiableVI learnedPlanner = new DifferentiableVI(this.domain, learnedRF, 0.9, 2., this.hashingFactory, 0.001, 100);
+			MLIRLRequest learnedRequest = new MLIRLRequest(this.domain, learnedPlanner, episodes, learnedRF);
+			learnedRequest.setBoltzmannBeta(2.);
+			MLIRL learner = new MLIRL(learnedRequest, 0.1, 0.01, 3);
+			learner.toggleDebugPrinting(false);
+			learner.setNumThreads(k == 0 ? 1 : 3);
+			learner.performIRL();
+			for(int i = 0; i < 3; i++){
+				learned[k][i] = learnedRF.getParameter(i);
+			}
+		}
+		for(int i = 0; i < 3; i++){
+			Assert.assertEquals(learned[0][i], learned[1][i], TestPlanning.delta);
+		}
+
+		try{
+			irl.setNumThreads(0);
+			Assert.fail("MLIRL should require at least one thread");
+		} catch(RuntimeException e){
+			//expected
+		}
+	}
+
+	@Test
+	public void testCompiledDifferentiableVI() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+
+		DenseStateFeatures features = new DenseStateFeatures() {
+			@Override
+			public double[] features(State s) {
+				GridAgent agent = ((GridWorldState)s).agent;
+				return new double[]{agent.x / 10., agent.y / 10., agent.x == 10 && agent.y == 10 ? 1. : 0.};
+			}
+
+			@Override
+			public DenseStateFeatures copy() {
+				return this;
+			}
+		};
+		LinearStateDifferentiableRF rf = new LinearStateDifferentiableRF(features, 3);
+		rf.setParameter(0, -0.5);
+		rf.setParameter(1, -0.25);
+		rf.setParameter(2, 1.);
+
+		DifferentiableVI [] planners = new DifferentiableVI[3];
+		for(int i = 0; i < planners.length; i++){
+			planners[i] = new DifferentiableVI(this.domain, rf, 0.9, 2., this.hashingFactory, 1e-10, 1000);
+			planners[i].setModel(new CustomRewardModel(this.domain.getModel(), rf));
+		}
+		planners[1].toggleCompiledTransitions(true);
+		planners[2].toggleCompiledTransitions(true);
+		planners[2].setNumThreads(3);
+
+		CompiledTransitionTable compiled = null;
+		for(int round = 0; round < 2; round++){
+			if(round == 1){
+				//change the reward function parameters the way MLIRL does; the compiled planners reuse their transition dynamics
+				compiled = planners[1].getCompiledTransitions();
+				rf.setParameter(0, 0.25);
+				for(DifferentiableVI planner : planners){
+					planner.resetSolver();
+					planner.setModel(new CustomRewardModel(this.domain.getModel(), rf));
+				}
+			}
+			for(DifferentiableVI planner : planners){
+				planner.planFromState(initialState);
+			}
+			if(round == 1){
+				Assert.assertSame(compiled, planners[1].getCompiledTransitions());
+			}
+
+			for(State s : planners[0].getAllStates()){
+				for(int i = 1; i < planners.length; i++){
+					Assert.assertEquals(planners[0].value(s), planners[i].value(s), 1e-6);
+					for(int k = 0; k < 3; k++){
+						Assert.assertEquals(planners[0].valueGradient(s).getPartialDerivative(k), planners[i].valueGradient(s).getPartialDerivative(k), 1e-5);
+					}
+					for(QValue q : planners[0].qValues(s)){
+						Assert.assertEquals(q.q, planners[i].qValue(s, q.a), 1e-6);
+						for(int k = 0; k < 3; k++){
+							Assert.assertEquals(planners[0].qGradient(s, q.a).getPartialDerivative(k), planners[i].qGradient(s, q.a).getPartialDerivative(k), 1e-5);
+						}
+					}
+				}
+			}
+		}
+
+		try{
+			planners[2].setNumThreads(0);
+			Assert.fail("Differentiable VI accepted zero threads");
+		} catch(RuntimeException e){
+			//expected
+		}
+	}
+
+	@Test
+	public void testParallelMultipleIntentionsMLIRL() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+
+		DenseStateFeatures features = new DenseStateFeatures() {
+			@Override
+			public double[] features(State s) {
+				GridAgent agent = ((GridWorldState)s).agent;
+				return new double[]{agent.x / 10., agent.y / 10.};
+			}
+
+			@Override
+			public DenseStateFeatures copy() {
+				return this;
+			}
+		};
+
+		RandomFactory.seedMapped(0, 7);
+		Policy random = new RandomPolicy(this.domain);
+		List<Episode> episodes = new ArrayList<Episode>();
+		for(int i = 0; i < 4; i++){
+			episodes.add(rollout(random, initialState, this.domain.getModel(), 15));
+		}
+
+		QGradientPlannerFactory plannerFactory = new QGradientPlannerFactory() {
+			@Override
+			public DifferentiableQFunction generateDifferentiablePlannerForRequest(MLIRLRequest request) {
+				DifferentiableVI planner = new DifferentiableVI(request.getDomain(), request.getRf(), request.getGamma(),
+						request.getBoltzmannBeta(), hashingFactory, 0.01, 500);
+				planner.toggleCompiledTransitions(true);
+				return planner;
+			}
+		};
+
+		MultipleIntentionsMLIRL [] irls = new MultipleIntentionsMLIRL[2];
+		for(int i = 0; i < irls.length; i++){
+			MultipleIntentionsMLIRLRequest request = new MultipleIntentionsMLIRLRequest(this.domain, plannerFactory, episodes, new LinearStateDifferentiableRF(features, 2), 3);
+			RandomFactory.seedMapped(0, 11);
+			irls[i] = new MultipleIntentionsMLIRL(request, 2, 0.1, 0.01, 3);
+			irls[i].toggleDebugPrinting(false);
+		}
+		irls[1].setNumThreads(3);
+		irls[1].getClusterMLIRLs().get(0).setNumThreads(2);
+
+		for(MultipleIntentionsMLIRL irl : irls){
+			irl.performIRL();
+		}
+
+		for(int c = 0; c < 3; c++){
+			Assert.assertEquals(irls[0].getClusterPriors()[c], irls[1].getClusterPriors()[c], TestPlanning.delta);
+			DifferentiableRF rf0 = irls[0].getClusterRFs().get(c);
+			DifferentiableRF rf1 = irls[1].getClusterRFs().get(c);
+			for(int k = 0; k < 2; k++){
+				Assert.assertEquals(rf0.getParameter(k), rf1.getParameter(k), TestPlanning.delta);
+			}
+		}
+
+		try{
+			irls[1].setNumThreads(0);
+			Assert.fail("Multiple intentions MLIRL accepted zero threads");
+		} catch(RuntimeException e){
+			//expected
+		}
+	}
+}
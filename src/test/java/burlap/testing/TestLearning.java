@@ -0,0 +1,747 @@
+package burlap.testing;
+
+import burlap.behavior.functionapproximation.DifferentiableStateActionValue;
+import burlap.behavior.functionapproximation.dense.DenseCrossProductFeatures;
+import burlap.behavior.functionapproximation.dense.DenseStateActionFeatures;
+import burlap.behavior.functionapproximation.dense.DenseStateActionLinearVFA;
+import burlap.behavior.functionapproximation.dense.NumericVariableFeatures;
+import burlap.behavior.functionapproximation.sparse.ArrayLinearVFA;
+import burlap.behavior.functionapproximation.sparse.StateFeature;
+import burlap.behavior.functionapproximation.sparse.tilecoding.HashedTileCodingFeatures;
+import burlap.behavior.functionapproximation.sparse.tilecoding.TileCodingFeatures;
+import burlap.behavior.functionapproximation.sparse.tilecoding.TileMapping;
+import burlap.behavior.functionapproximation.sparse.tilecoding.TilingArrangement;
+import burlap.behavior.policy.GreedyQPolicy;
+import burlap.behavior.policy.Policy;
+import burlap.behavior.policy.RandomPolicy;
+import burlap.behavior.singleagent.Episode;
+import burlap.behavior.singleagent.auxiliary.performance.LearningAlgorithmExperimenter;
+import burlap.behavior.singleagent.auxiliary.performance.PerformancePlotter;
+import burlap.behavior.singleagent.learning.LearningAgent;
+import burlap.behavior.singleagent.learning.LearningAgentFactory;
+import burlap.behavior.singleagent.learning.experiencereplay.FixedSizeMemory;
+import burlap.behavior.singleagent.learning.experiencereplay.PrioritizedReplayMemory;
+import burlap.behavior.singleagent.learning.lspi.IncrementalLSTDQ;
+import burlap.behavior.singleagent.learning.lspi.LSPI;
+import burlap.behavior.singleagent.learning.lspi.SARSData;
+import burlap.behavior.singleagent.learning.lspi.SARSFeatureStore;
+import burlap.behavior.singleagent.learning.tdmethods.ConcurrentQLearning;
+import burlap.behavior.singleagent.learning.tdmethods.FlatQTable;
+import burlap.behavior.singleagent.learning.tdmethods.QLearning;
+import burlap.behavior.singleagent.learning.tdmethods.SarsaLam;
+import burlap.behavior.singleagent.learning.tdmethods.vfa.BatchedGradientDescentQLearning;
+import burlap.behavior.singleagent.learning.tdmethods.vfa.GradientDescentQLearning;
+import burlap.behavior.singleagent.learning.tdmethods.vfa.GradientDescentSarsaLam;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
+import burlap.behavior.valuefunction.QValue;
+import burlap.datastructures.SumTree;
+import burlap.debugtools.DPrint;
+import burlap.debugtools.RandomFactory;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.domain.singleagent.gridworld.state.GridAgent;
+import burlap.domain.singleagent.gridworld.state.GridLocation;
+import burlap.domain.singleagent.gridworld.state.GridWorldState;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.action.SimpleAction;
+import burlap.mdp.core.state.State;
+import burlap.mdp.singleagent.environment.Environment;
+import burlap.mdp.singleagent.environment.EnvironmentFactory;
+import burlap.mdp.singleagent.environment.EnvironmentOutcome;
+import burlap.mdp.singleagent.environment.SimulatedEnvironment;
+import burlap.mdp.singleagent.oo.OOSADomain;
+import burlap.statehashing.simple.SimpleHashableStateFactory;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static burlap.behavior.policy.PolicyUtils.rollout;
+
+public class TestLearning {
+	TestPlanning planningTest;
+	OOSADomain domain;
+	SimpleHashableStateFactory hashingFactory;
+
+	@Before
+	public void setup() {
+		this.planningTest = new TestPlanning();
+		this.planningTest.setup();
+		this.domain = this.planningTest.domain;
+		this.hashingFactory = this.planningTest.hashingFactory;
+	}
+
+	@Test
+	public void testPrioritizedReplay() {
+		SumTree tree = new SumTree(5);
+		for(int i = 0; i < 5; i++){
+			tree.set(i, i+1);
+		}
+		Assert.assertEquals(15., tree.total(), TestPlanning.delta);
+		Assert.assertEquals(1., tree.min(), TestPlanning.delta);
+		Assert.assertEquals(0, tree.find(0.5));
+		Assert.assertEquals(1, tree.find(1.));
+		Assert.assertEquals(2, tree.find(5.5));
+		Assert.assertEquals(4, tree.find(14.99));
+
+		GridWorldState s = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		for(PrioritizedReplayMemory.Prioritization mode : PrioritizedReplayMemory.Prioritization.values()){
+			RandomFactory.seedMapped(0, 943);
+			PrioritizedReplayMemory memory = new PrioritizedReplayMemory(8, mode);
+			memory.setAlpha(1.);
+			for(int i = 0; i < 10; i++){
+				memory.addExperience(new EnvironmentOutcome(s, null, s, i, false));
+			}
+			Assert.assertEquals(8, memory.size());
+
+			//the experience with reward 9 gets a much larger TD error than the others
+			for(int k = 0; k < 20; k++){
+				List<EnvironmentOutcome> samples = memory.sampleExperiences(8);
+				double [] tdErrors = new double[samples.size()];
+				for(int i = 0; i < samples.size(); i++){
+					tdErrors[i] = samples.get(i).r == 9. ? -100. : 0.1;
+				}
+				memory.updatePriorities(tdErrors);
+			}
+
+			List<EnvironmentOutcome> samples = memory.sampleExperiences(1000);
+			double [] weights = memory.lastSampleWeights();
+			int count = 0;
+			for(int i = 0; i < samples.size(); i++){
+				Assert.assertTrue(weights[i] <= 1. + TestPlanning.delta);
+				if(samples.get(i).r == 9.){
+					count++;
+					Assert.assertTrue(weights[i] < 1.);
+				}
+			}
+			Assert.assertTrue(count > (mode == PrioritizedReplayMemory.Prioritization.PROPORTIONAL ? 900 : 300));
+		}
+
+		//gradient descent Q-learning reports its TD errors back to the memory
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		TileCodingFeatures tiles = new TileCodingFeatures(new NumericVariableFeatures("agent:x", "agent:y"));
+		tiles.addTilingsForAllDimensionsWithWidths(new double[]{2., 2.}, 4, TilingArrangement.RANDOM_JITTER);
+		GradientDescentQLearning agent = new GradientDescentQLearning(this.domain, 0.99, tiles.generateVFA(0.), 0.02);
+		PrioritizedReplayMemory memory = new PrioritizedReplayMemory(1000);
+		agent.setExperienceReplay(memory, 10);
+		for(int k = 0; k < 5; k++){
+			agent.runLearningEpisode(new SimulatedEnvironment(this.domain, initialState), 200);
+		}
+		boolean updated = false;
+		for(int i = 0; i < memory.size(); i++){
+			updated |= memory.priority(i) != 1.;
+		}
+		Assert.assertTrue(updated);
+	}
+
+	@Test
+	public void testBatchedQLearning() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		NumericVariableFeatures features = new NumericVariableFeatures("agent:x", "agent:y");
+		int numActions = this.domain.getActionTypes().size();
+
+		DenseStateActionLinearVFA vfa = new DenseStateActionLinearVFA(new DenseCrossProductFeatures(features, numActions), 0.);
+		BatchedGradientDescentQLearning batched = new BatchedGradientDescentQLearning(this.domain, 0.99, features, numActions, 0.001);
+		GradientDescentQLearning sequential = new GradientDescentQLearning(this.domain, 0.99, vfa, 0.001);
+
+		//both apply the same update to the same batches
+		Episode e = rollout(new RandomPolicy(this.domain), initialState, this.domain.getModel(), 200);
+		FixedSizeMemory memory = new FixedSizeMemory(200);
+		for(int t = 0; t < e.numTimeSteps()-1; t++){
+			memory.addExperience(new EnvironmentOutcome(e.state(t), e.action(t), e.state(t+1), e.reward(t+1), false));
+		}
+		for(int k = 0; k < 50; k++){
+			List<EnvironmentOutcome> batch = memory.sampleExperiences(16);
+			batched.updateQFunction(batch);
+			sequential.updateQFunction(batch);
+		}
+
+		for(int x = 0; x <= 10; x++){
+			for(int y = 0; y <= 10; y++){
+				State s = new GridWorldState(new GridAgent(x, y), new GridLocation(10, 10, 0, "loc0"));
+				for(Action a : this.domain.getActionTypes().get(0).allApplicableActions(s)){
+					Assert.assertEquals(sequential.qValue(s, a), batched.qValue(s, a), 1e-9);
+				}
+			}
+		}
+
+		//learning with replay and a target network
+		batched.resetSolver();
+		batched.setExperienceReplay(new FixedSizeMemory(1000), 32);
+		batched.useStaleTarget(50);
+		for(int k = 0; k < 5; k++){
+			batched.runLearningEpisode(new SimulatedEnvironment(this.domain, initialState), 200);
+		}
+		double v = batched.value(new GridWorldState(new GridAgent(5, 5), new GridLocation(10, 10, 0, "loc0")));
+		Assert.assertTrue(v < 0. && !Double.isInfinite(v));
+	}
+
+	@Test
+	public void testIncrementalLSTDQ() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		int numActions = this.domain.getActionTypes().size();
+		DenseCrossProductFeatures features = new DenseCrossProductFeatures(new NumericVariableFeatures("agent:x", "agent:y"), numActions);
+
+		SARSData data = new SARSData();
+		for(int k = 0; k < 2; k++){
+			Episode e = rollout(new RandomPolicy(this.domain), initialState, this.domain.getModel(), 100);
+			for(int t = 0; t < e.numTimeSteps()-1; t++){
+				data.add(e.state(t), e.action(t), e.reward(t+1), e.state(t+1));
+			}
+		}
+
+		//the Sherman-Morrison updates of the original LSTDQ for a fixed policy
+		Policy p = new RandomPolicy(this.domain);
+		List<double[]> nextFeatures = new ArrayList<double[]>();
+		int nf = features.features(initialState, p.action(initialState)).length;
+		SimpleMatrix bInv = SimpleMatrix.identity(nf).scale(100.);
+		SimpleMatrix bVec = new SimpleMatrix(nf, 1);
+		IncrementalLSTDQ lstdq = new IncrementalLSTDQ(0.99, 100.);
+		IncrementalLSTDQ parallel = new IncrementalLSTDQ(0.99, 100.);
+		parallel.setNumThreads(3);
+		IncrementalLSTDQ unkept = new IncrementalLSTDQ(0.99, 100.);
+		unkept.setKeepSampleFeatures(false);
+		final List<double[]> sampleFeatures = new ArrayList<double[]>();
+		for(SARSData.SARS sars : data.dataset){
+			double [] phi = features.features(sars.s, sars.a);
+			double [] phiPrime = features.features(sars.sp, p.action(sars.sp));
+			nextFeatures.add(phiPrime);
+			SimpleMatrix phiM = new SimpleMatrix(nf, 1, true, phi);
+			SimpleMatrix d = phiM.minus(new SimpleMatrix(nf, 1, true, phiPrime).scale(0.99));
+			double denominator = d.transpose().mult(bInv).mult(phiM).get(0) + 1;
+			bInv = bInv.minus(bInv.mult(phiM).mult(d.transpose()).mult(bInv).scale(1. / denominator));
+			bVec = bVec.plus(phiM.scale(sars.r));
+			lstdq.addSample(phi, sars.r);
+			parallel.addSample(phi, sars.r);
+			unkept.addSample(phi, sars.r);
+			sampleFeatures.add(phi);
+		}
+		SimpleMatrix expected = bInv.mult(bVec);
+		double [] w = lstdq.solve(nextFeatures);
+		double [] pw = parallel.solve(nextFeatures);
+
+		//without kept sample features, the caller provides them to solve
+		try{
+			unkept.solve(nextFeatures);
+			Assert.fail("solving without the sample features should fail when they are not kept");
+		} catch(RuntimeException e){
+			//expected
+		}
+		try{
+			unkept.setKeepSampleFeatures(true);
+			Assert.fail("keeping sample features should only be enabled without samples");
+		} catch(RuntimeException e){
+			//expected
+		}
+		final List<double[]> next = nextFeatures;
+		double [] uw = unkept.solve(new IncrementalLSTDQ.SampleFeatures() {
+			@Override
+			public int features(int sample, int[] ids, double[] values) {
+				double [] phi = sampleFeatures.get(sample);
+				int n = 0;
+				for(int i = 0; i < phi.length; i++){
+					if(phi[i] != 0.){
+						ids[n] = i;
+						values[n] = phi[i];
+						n++;
+					}
+				}
+				return n;
+			}
+		}, new IncrementalLSTDQ.NextFeatures() {
+			@Override
+			public int features(int sample, double[] buffer) {
+				double [] f = next.get(sample);
+				System.arraycopy(f, 0, buffer, 0, f.length);
+				return f.length;
+			}
+		}, nf);
+		for(int i = 0; i < nf; i++){
+			Assert.assertEquals(expected.get(i), w[i], 1e-6);
+			Assert.assertEquals(w[i], pw[i], 1e-9);
+			Assert.assertEquals(w[i], uw[i], 1e-9);
+		}
+
+		//appending samples to the dataset gives the same result as rebuilding the system from the whole dataset
+		SARSData growing = new SARSData();
+		SARSData firstHalf = new SARSData();
+		for(int i = 0; i < data.size() / 2; i++){
+			growing.add(data.get(i));
+			firstHalf.add(data.get(i));
+		}
+		LSPI incremental = new LSPI(this.domain, 0.99, features, growing);
+		LSPI rebuilt = new LSPI(this.domain, 0.99, features, firstHalf);
+		rebuilt.setNumLSTDQThreads(2);
+		for(int k = 0; k < 3; k++){
+			if(k == 1){
+				for(int i = data.size() / 2; i < data.size(); i++){
+					growing.add(data.get(i));
+				}
+				rebuilt.setDataset(data);
+			}
+			//greedy ties are broken randomly, so both use the same random sequence
+			RandomFactory.seedMapped(0, 943);
+			SimpleMatrix iw = incremental.LSTDQ();
+			RandomFactory.seedMapped(0, 943);
+			SimpleMatrix rw = rebuilt.LSTDQ();
+			Assert.assertEquals(0., iw.minus(rw).normF(), 1e-6);
+		}
+	}
+
+	@Test
+	public void testFeatureCache() throws IOException {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		int numActions = this.domain.getActionTypes().size();
+		DenseCrossProductFeatures features = new DenseCrossProductFeatures(new NumericVariableFeatures("agent:x", "agent:y"), numActions);
+
+		SARSData data = new SARSData();
+		for(int k = 0; k < 2; k++){
+			Episode e = rollout(new RandomPolicy(this.domain), initialState, this.domain.getModel(), 100);
+			for(int t = 0; t < e.numTimeSteps()-1; t++){
+				data.add(e.state(t), e.action(t), e.reward(t+1), e.state(t+1));
+			}
+		}
+
+		File directory = File.createTempFile("lspi", "cache");
+		directory.delete();
+		directory.mkdir();
+
+		//cached features, on the heap or memory-mapped, select the same greedy actions and weights as computing them
+		LSPI[] lspis = new LSPI[3];
+		for(int j = 0; j < lspis.length; j++){
+			SARSData half = new SARSData();
+			for(int i = 0; i < data.size() / 2; i++){
+				half.add(data.get(i));
+			}
+			lspis[j] = new LSPI(this.domain, 0.99, features, half);
+		}
+		lspis[1].toggleFeatureCaching(true);
+		lspis[2].toggleFeatureCaching(true);
+		lspis[2].setFeatureCacheDirectory(directory);
+		for(int k = 0; k < 3; k++){
+			SimpleMatrix [] ws = new SimpleMatrix[lspis.length];
+			for(int j = 0; j < lspis.length; j++){
+				if(k == 1){
+					for(int i = data.size() / 2; i < data.size(); i++){
+						lspis[j].getDataset().add(data.get(i));
+					}
+				}
+				RandomFactory.seedMapped(0, 943);
+				ws[j] = lspis[j].LSTDQ();
+			}
+			Assert.assertEquals(0., ws[0].minus(ws[1]).normF(), 1e-9);
+			Assert.assertEquals(0., ws[0].minus(ws[2]).normF(), 1e-9);
+		}
+		Assert.assertTrue(directory.list().length > 0);
+
+		//changing the identity scalar rebuilds the cache along with the system
+		for(LSPI lspi : lspis){
+			lspi.setIdentityScalar(50.);
+		}
+		Episode more = rollout(new RandomPolicy(this.domain), initialState, this.domain.getModel(), 100);
+		for(int k = 0; k < 2; k++){
+			SimpleMatrix [] ws = new SimpleMatrix[lspis.length];
+			for(int j = 0; j < lspis.length; j++){
+				if(k == 1){
+					for(int t = 0; t < more.numTimeSteps()-1; t++){
+						lspis[j].getDataset().add(more.state(t), more.action(t), more.reward(t+1), more.state(t+1));
+					}
+				}
+				RandomFactory.seedMapped(0, 943);
+				ws[j] = lspis[j].LSTDQ();
+			}
+			Assert.assertEquals(0., ws[0].minus(ws[1]).normF(), 1e-9);
+			Assert.assertEquals(0., ws[0].minus(ws[2]).normF(), 1e-9);
+		}
+
+		//disabling the cache makes the system keep its own copy of the sample features again
+		lspis[1].toggleFeatureCaching(false);
+		RandomFactory.seedMapped(0, 943);
+		SimpleMatrix uncached = lspis[1].LSTDQ();
+		RandomFactory.seedMapped(0, 943);
+		Assert.assertEquals(0., lspis[0].LSTDQ().minus(uncached).normF(), 1e-9);
+
+		lspis[2].resetSolver();
+		Assert.assertEquals(0, directory.list().length);
+		directory.delete();
+
+		//features that grow with every call widen the stored rows without changing them
+		DenseStateActionFeatures growing = new DenseStateActionFeatures() {
+			int n = 0;
+
+			@Override
+			public double[] features(State s, Action a) {
+				this.n++;
+				double [] phi = new double[this.n];
+				for(int i = 0; i < phi.length; i++){
+					phi[i] = this.n + i;
+				}
+				return phi;
+			}
+
+			@Override
+			public DenseStateActionFeatures copy() {
+				return this;
+			}
+		};
+		SARSFeatureStore store = new SARSFeatureStore(growing);
+		List<Action> next = Arrays.<Action>asList(new SimpleAction("north"));
+		for(int i = 0; i < 20; i++){
+			store.add(initialState, next.get(0), i, initialState, next);
+		}
+		Assert.assertEquals(40, store.numFeatures());
+		double [] buffer = new double[store.numFeatures()];
+		int [] ids = new int[store.numFeatures()];
+		double [] values = new double[store.numFeatures()];
+		for(int i = 0; i < store.size(); i++){
+			int n = 2*i + 1;
+			store.saFeatures(i, buffer);
+			for(int f = 0; f < buffer.length; f++){
+				Assert.assertEquals(f < n ? n + f : 0., buffer[f], 0.);
+			}
+			Assert.assertEquals(n, store.saNonZeroFeatures(i, ids, values));
+			for(int f = 0; f < n; f++){
+				Assert.assertEquals(f, ids[f]);
+				Assert.assertEquals(n + f, values[f], 0.);
+			}
+			store.nextFeatures(i, 0, buffer);
+			for(int f = 0; f < buffer.length; f++){
+				Assert.assertEquals(f < n+1 ? n + 1 + f : 0., buffer[f], 0.);
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentQLearning() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		ValueIteration vi = new ValueIteration(this.domain, 0.99, this.hashingFactory, 1e-6, 1000);
+		vi.planFromState(initialState);
+
+		//with a single environment, episodes run one after another in one worker thread, so the result does not depend on scheduling
+		RandomFactory.seedMapped(0, 943);
+		ConcurrentQLearning single = new ConcurrentQLearning(this.domain, 0.99, this.hashingFactory, 0., 0.1);
+		List<Environment> singleEnv = new ArrayList<Environment>();
+		singleEnv.add(new SimulatedEnvironment(this.domain, initialState));
+		single.runLearningEpisodes(singleEnv, 2000);
+		Episode e = rollout(new GreedyQPolicy(single), initialState, this.domain.getModel(), 200);
+		this.planningTest.evaluateEpisode(e, true);
+		for(int t = 0; t < e.numTimeSteps()-1; t++){
+			State s = e.state(t);
+			Assert.assertEquals(vi.value(s), single.value(s), 0.01);
+		}
+
+		ConcurrentQLearning cql = new ConcurrentQLearning(this.domain, 0.99, this.hashingFactory, 0., 0.1);
+		List<Environment> envs = new ArrayList<Environment>();
+		for(int i = 0; i < 4; i++){
+			envs.add(new SimulatedEnvironment(this.domain, initialState));
+		}
+		long steps = cql.runLearningEpisodes(envs, 2000);
+		steps += cql.runLearningEpisode(new SimulatedEnvironment(this.domain, initialState)).numTimeSteps() - 1;
+		Assert.assertEquals(steps, cql.getTotalNumberOfSteps());
+
+		//in this deterministic domain, every update target of the optimistically initialized Q-values is at least the optimal Q-value,
+		//so however the threads interleave, each Q-value stays between its optimal value and its initial value
+		for(State s : vi.getAllStates()){
+			for(QValue q : cql.qValues(s)){
+				Assert.assertTrue(q.q <= 0.);
+				Assert.assertTrue(q.q >= vi.qValue(s, q.a) - 1e-4);
+			}
+		}
+		Assert.assertTrue(cql.value(initialState) < 0.);
+
+		cql.resetSolver();
+		Assert.assertEquals(0, cql.getTotalNumberOfSteps());
+
+		try{
+			cql.runLearningEpisodes(new ArrayList<Environment>(), 1);
+			Assert.fail("Expected an empty environment list to be rejected");
+		}catch(RuntimeException ex){
+			//expected
+		}
+	}
+
+	@Test
+	public void testParallelExperimenter() {
+		final GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		final GridWorldDomain gw = this.planningTest.gw;
+		gw.setProbSucceedTransitionDynamics(0.8);
+		EnvironmentFactory envFactory = new EnvironmentFactory() {
+			@Override
+			public Environment generateEnvironment() {
+				//the domain is generated in the trial, so its transition dynamics use the trial's random generators
+				return new SimulatedEnvironment(gw.generateDomain(), initialState);
+			}
+		};
+		LearningAgentFactory agentFactory = new LearningAgentFactory() {
+			@Override
+			public String getAgentName() {
+				return "Q-learning";
+			}
+
+			@Override
+			public LearningAgent generateAgent() {
+				return new QLearning(domain, 0.99, hashingFactory, 0., 0.1);
+			}
+		};
+
+		//with a trial seed, the trials are the same whether they are run serially or in parallel
+		RecordingExperimenter serial = new RecordingExperimenter(envFactory, agentFactory);
+		serial.runRecordedTrials();
+		RecordingExperimenter parallel = new RecordingExperimenter(envFactory, agentFactory);
+		parallel.setNumThreads(3);
+		parallel.runRecordedTrials();
+		Assert.assertEquals(8, serial.recordings.size());
+		Assert.assertEquals(serial.recordings.size(), parallel.recordings.size());
+		for(int i = 0; i < serial.recordings.size(); i++){
+			Assert.assertEquals(serial.trials.get(i), parallel.trials.get(i));
+			PerformancePlotter.TrialRecording expected = serial.recordings.get(i);
+			PerformancePlotter.TrialRecording actual = parallel.recordings.get(i);
+			Assert.assertEquals(10, actual.numEpisodes());
+			Assert.assertEquals(expected.numSteps(), actual.numSteps());
+			for(int e = 0; e < expected.numEpisodes(); e++){
+				Assert.assertEquals(expected.episodeRewards(e), actual.episodeRewards(e));
+			}
+		}
+		//different trials are seeded differently
+		Assert.assertNotEquals(serial.recordings.get(0).numSteps(), serial.recordings.get(1).numSteps());
+
+		//trials restore the random factory of the thread that runs them
+		Assert.assertNull(RandomFactory.getThreadFactory());
+
+		//factories with the same base seed produce the same generators
+		RandomFactory a = new RandomFactory(42);
+		RandomFactory b = new RandomFactory(42);
+		RandomFactory.setThreadFactory(a);
+		long first = RandomFactory.getMapped(0).nextLong();
+		Assert.assertSame(a, RandomFactory.getThreadFactory());
+		RandomFactory.setThreadFactory(b);
+		Assert.assertEquals(first, RandomFactory.getMapped(0).nextLong());
+		RandomFactory.setThreadFactory(null);
+		Assert.assertNull(RandomFactory.getThreadFactory());
+
+		//reseeding a factory reseeds the generators it already created in place
+		RandomFactory c = new RandomFactory(7);
+		Random reused = c.ingetMapped(0);
+		reused.nextLong();
+		c.reseed(42);
+		Assert.assertSame(reused, c.ingetMapped(0));
+		Assert.assertEquals(first, reused.nextLong());
+	}
+
+	/**
+	 * Runs two agents for four episode-bound trials each, recording the trials in the order the experimenter adds them instead of plotting them.
+	 */
+	static class RecordingExperimenter extends LearningAlgorithmExperimenter {
+		List<PerformancePlotter.TrialRecording> recordings = new ArrayList<PerformancePlotter.TrialRecording>();
+		List<String> trials = new ArrayList<String>();
+
+		RecordingExperimenter(EnvironmentFactory envFactory, LearningAgentFactory agentFactory) {
+			super(envFactory, 4, 10, agentFactory, agentFactory);
+			this.toggleTrialLengthInterpretation(true);
+			this.setTrialSeed(42);
+			DPrint.toggleCode(this.debugCode, false);
+		}
+
+		@Override
+		protected void runRecordedTrials() {
+			super.runRecordedTrials();
+		}
+
+		@Override
+		protected void addRecordedTrial(int agentIndex, int trial, PerformancePlotter.TrialRecording recording) {
+			this.trials.add(agentIndex + ":" + trial);
+			this.recordings.add(recording);
+		}
+	}
+
+	@Test
+	public void testFlatQTable() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		this.planningTest.gw.setProbSucceedTransitionDynamics(0.8);
+
+		for(int i = 0; i < 2; i++){
+			QLearning [] agents = new QLearning[2];
+			for(int j = 0; j < 2; j++){
+				//the domain and policy share the seeded random generator, so both agents experience the same episodes
+				RandomFactory.seedMapped(0, 943);
+				OOSADomain stochasticDomain = this.planningTest.gw.generateDomain();
+				agents[j] = i == 0 ? new QLearning(stochasticDomain, 0.99, this.hashingFactory, 0., 0.1)
+						: new SarsaLam(stochasticDomain, 0.99, this.hashingFactory, 0., 0.1, 0.9);
+				agents[j].toggleFlatQTable(j == 1);
+				agents[j].initializeForPlanning(30);
+				agents[j].planFromState(initialState);
+			}
+
+			FlatQTable table = agents[1].getFlatQTable();
+			for(int id = 0; id < table.numStates(); id++){
+				State s = table.state(id).s();
+				List<QValue> expected = agents[0].qValues(s);
+				List<QValue> actual = agents[1].qValues(s);
+				Assert.assertEquals(expected.size(), actual.size());
+				for(int k = 0; k < expected.size(); k++){
+					Assert.assertEquals(expected.get(k).a, actual.get(k).a);
+					Assert.assertEquals(expected.get(k).q, actual.get(k).q, 0.);
+				}
+			}
+
+			//moving the learned Q-values between storage types keeps them
+			agents[0].toggleFlatQTable(true);
+			Assert.assertEquals(table.numStates(), agents[0].getFlatQTable().numStates());
+			agents[1].toggleFlatQTable(false);
+			for(int id = 0; id < table.numStates(); id++){
+				State s = table.state(id).s();
+				Assert.assertEquals(agents[0].value(s), agents[1].value(s), 0.);
+			}
+		}
+
+		//slots are found by action ordinal even when states list their actions in different orders
+		FlatQTable table = new FlatQTable();
+		Action north = new SimpleAction(GridWorldDomain.ACTION_NORTH);
+		Action south = new SimpleAction(GridWorldDomain.ACTION_SOUTH);
+		int first = table.addState(this.hashingFactory.hashState(initialState), Arrays.asList(north, south), new double[]{1., 2.});
+		int second = table.addState(this.hashingFactory.hashState(new GridWorldState(new GridAgent(1, 0), new GridLocation(10, 10, 0, "loc0"))),
+				Arrays.asList(south, north), new double[]{3., 4.});
+		Assert.assertEquals(1., table.q(table.slot(first, new SimpleAction(GridWorldDomain.ACTION_NORTH))), 0.);
+		Assert.assertEquals(2., table.q(table.slot(first, south)), 0.);
+		Assert.assertEquals(4., table.q(table.slot(second, north)), 0.);
+		Assert.assertEquals(3., table.q(table.slot(second, new SimpleAction(GridWorldDomain.ACTION_SOUTH))), 0.);
+		Assert.assertEquals(-1, table.slot(second, new SimpleAction(GridWorldDomain.ACTION_EAST)));
+	}
+
+	@Test
+	public void testArrayLinearVFA() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+
+		for(int i = 0; i < 2; i++){
+			DifferentiableStateActionValue [] vfas = new DifferentiableStateActionValue[2];
+			for(int j = 0; j < 2; j++){
+				RandomFactory.seedMapped(0, 943);
+				OOSADomain stochasticDomain = this.planningTest.gw.generateDomain();
+				TileCodingFeatures tiles = new TileCodingFeatures(new NumericVariableFeatures("agent:x", "agent:y"));
+				tiles.addTilingsForAllDimensionsWithWidths(new double[]{2., 2.}, 4, TilingArrangement.RANDOM_JITTER);
+				vfas[j] = j == 0 ? tiles.generateVFA(0.) : new ArrayLinearVFA(tiles, 0.);
+				GradientDescentSarsaLam agent = new GradientDescentSarsaLam(stochasticDomain, 0.99, vfas[j], 0.02, 0.5);
+				agent.setUseReplaceTraces(i == 1);
+				for(int k = 0; k < 20; k++){
+					agent.runLearningEpisode(new SimulatedEnvironment(stochasticDomain, initialState), 500);
+				}
+			}
+
+			Assert.assertEquals(vfas[0].numParameters(), vfas[1].numParameters());
+			for(int x = 0; x <= 10; x++){
+				for(int y = 0; y <= 10; y++){
+					State s = new GridWorldState(new GridAgent(x, y), new GridLocation(10, 10, 0, "loc0"));
+					for(Action a : this.domain.getActionTypes().get(0).allApplicableActions(s)){
+						Assert.assertEquals(vfas[0].evaluate(s, a), vfas[1].evaluate(s, a), 1e-9);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testHashedTileCoding() {
+		RandomFactory.seedMapped(0, 943);
+		TileCodingFeatures tiles = new TileCodingFeatures(new NumericVariableFeatures("agent:x", "agent:y"));
+		tiles.addTilingsForAllDimensionsWithWidths(new double[]{2., 2.}, 4, TilingArrangement.RANDOM_JITTER);
+		HashedTileCodingFeatures [] hashedTiles = new HashedTileCodingFeatures[3];
+		int [] memorySizes = new int[]{1024, 1024, 32};
+		for(int i = 0; i < 3; i++){
+			RandomFactory.seedMapped(0, 943);
+			hashedTiles[i] = new HashedTileCodingFeatures(new NumericVariableFeatures("agent:x", "agent:y"), memorySizes[i],
+					i == 1 ? TileMapping.HASH_ONLY : TileMapping.ASSIGN_THEN_HASH);
+			hashedTiles[i].addTilingsForAllDimensionsWithWidths(new double[]{2., 2.}, 4, TilingArrangement.RANDOM_JITTER);
+		}
+
+		//the map-based feature ids identify tiles, so they are used to compute the expected collisions independently
+		List<Map<Integer, Integer>> idsByTile = new ArrayList<Map<Integer, Integer>>();
+		List<Map<Integer, Integer>> tilesById = new ArrayList<Map<Integer, Integer>>();
+		int [] expectedCollisions = new int[3];
+		for(int i = 0; i < 3; i++){
+			idsByTile.add(new HashMap<Integer, Integer>());
+			tilesById.add(new HashMap<Integer, Integer>());
+		}
+
+		for(int x = 0; x <= 10; x++){
+			for(int y = 0; y <= 10; y++){
+				State s = new GridWorldState(new GridAgent(x, y), new GridLocation(10, 10, 0, "loc0"));
+				List<StateFeature> expected = tiles.features(s);
+				for(int i = 0; i < 3; i++){
+					List<StateFeature> actual = hashedTiles[i].features(s);
+					Assert.assertEquals(expected.size(), actual.size());
+					for(int k = 0; k < actual.size(); k++){
+						int tile = expected.get(k).id;
+						int id = actual.get(k).id;
+						Assert.assertTrue(id >= 0 && id < memorySizes[i]);
+
+						//the same tile always has the same feature id
+						Integer previousId = idsByTile.get(i).get(tile);
+						if(previousId != null){
+							Assert.assertEquals(previousId.intValue(), id);
+						}
+						idsByTile.get(i).put(tile, id);
+
+						if(i != 1 && tile < memorySizes[i]){
+							//until the memory is full, tiles are assigned ids in the same order as the map-based tile coding
+							Assert.assertEquals(tile, id);
+						}
+
+						Integer owner = tilesById.get(i).get(id);
+						if(owner == null){
+							tilesById.get(i).put(id, tile);
+						}
+						else if(owner != tile){
+							expectedCollisions[i]++;
+						}
+					}
+				}
+			}
+		}
+
+		for(int i = 0; i < 3; i++){
+			Assert.assertEquals(121 * 4, hashedTiles[i].numLookups());
+			Assert.assertEquals(expectedCollisions[i], hashedTiles[i].numCollisions());
+			Assert.assertEquals(tilesById.get(i).size(), hashedTiles[i].numUsedFeatures());
+		}
+
+		Assert.assertEquals(0, hashedTiles[0].numCollisions());
+		Assert.assertEquals(tiles.numFeatures(), hashedTiles[0].numUsedFeatures());
+
+		//once the memory is full, every lookup of a tile without an assigned id collides
+		Assert.assertTrue(tiles.numFeatures() > 32);
+		Assert.assertEquals(32, hashedTiles[2].numUsedFeatures());
+		int unassignedLookups = 0;
+		for(int x = 0; x <= 10; x++){
+			for(int y = 0; y <= 10; y++){
+				State s = new GridWorldState(new GridAgent(x, y), new GridLocation(10, 10, 0, "loc0"));
+				for(StateFeature sf : tiles.features(s)){
+					if(sf.id >= 32){
+						unassignedLookups++;
+					}
+				}
+			}
+		}
+		Assert.assertTrue(unassignedLookups > 0);
+		Assert.assertEquals(unassignedLookups, hashedTiles[2].numCollisions());
+		hashedTiles[2].resetStatistics();
+		Assert.assertEquals(0., hashedTiles[2].collisionRate(), 0.);
+
+		//the buffered features can be learned with by an array-backed linear VFA
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		ArrayLinearVFA vfa = new ArrayLinearVFA(hashedTiles[0], 0.);
+		GradientDescentSarsaLam agent = new GradientDescentSarsaLam(this.domain, 0.99, vfa, 0.02, 0.5);
+		for(int k = 0; k < 50; k++){
+			agent.runLearningEpisode(new SimulatedEnvironment(this.domain, initialState));
+		}
+		Assert.assertEquals(0, hashedTiles[0].numCollisions());
+		Assert.assertTrue(vfa.numParameters() <= 1024 * 4);
+	}
+}
@@ -0,0 +1,244 @@
+package burlap.testing;
+
+import burlap.behavior.policy.GreedyQPolicy;
+import burlap.behavior.singleagent.planning.PlanningBudget;
+import burlap.behavior.singleagent.planning.PlanningStatistics;
+import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.ParallelUCT;
+import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCT;
+import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCTActionNode;
+import burlap.behavior.singleagent.planning.stochastic.montecarlo.uct.UCTStateNode;
+import burlap.behavior.singleagent.planning.stochastic.rtdp.BoundedRTDP;
+import burlap.behavior.singleagent.planning.stochastic.sparsesampling.ParallelSparseSampling;
+import burlap.behavior.singleagent.planning.stochastic.sparsesampling.SparseSampling;
+import burlap.behavior.valuefunction.ConstantValueFunction;
+import burlap.behavior.valuefunction.QValue;
+import burlap.debugtools.RandomFactory;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.domain.singleagent.gridworld.state.GridAgent;
+import burlap.domain.singleagent.gridworld.state.GridLocation;
+import burlap.domain.singleagent.gridworld.state.GridWorldState;
+import burlap.mdp.core.action.SimpleAction;
+import burlap.mdp.core.state.State;
+import burlap.mdp.singleagent.oo.OOSADomain;
+import burlap.statehashing.simple.SimpleHashableStateFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static burlap.behavior.policy.PolicyUtils.rollout;
+
+public class TestOnlinePlanning {
+	TestPlanning planningTest;
+	OOSADomain domain;
+	SimpleHashableStateFactory hashingFactory;
+
+	@Before
+	public void setup() {
+		this.planningTest = new TestPlanning();
+		this.planningTest.setup();
+		this.domain = this.planningTest.domain;
+		this.hashingFactory = this.planningTest.hashingFactory;
+	}
+
+	@Test
+	public void testParallelUCT() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(1, 0, 0, "loc0"));
+
+		for(ParallelUCT.ParallelMode mode : ParallelUCT.ParallelMode.values()){
+			ParallelUCT uct = new ParallelUCT(this.domain, 0.99, this.hashingFactory, 10, 2000, 2, mode, 4);
+			uct.planFromState(initialState);
+			Assert.assertEquals(2000, uct.getRoot().n);
+
+			int visits = 0;
+			UCTActionNode best = null;
+			for(UCTActionNode an : uct.getRoot().actionNodes){
+				visits += an.n;
+				if(best == null || an.averageReturn() > best.averageReturn()){
+					best = an;
+				}
+			}
+			Assert.assertEquals(2000, visits);
+			Assert.assertEquals(GridWorldDomain.ACTION_EAST, best.action.actionName());
+			Assert.assertEquals(-1., best.averageReturn(), 0.);
+
+			try{
+				uct.toggleTreeReuse(true);
+				Assert.fail("ParallelUCT should not support tree reuse");
+			} catch(RuntimeException e){
+				//expected
+			}
+		}
+
+		//with a goal out of reach of the horizon, every rollout in the shared tree visits one connected node at each depth, so no visits
+		//may be lost when threads connect nodes for the same state and depth
+		GridWorldState farState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		for(int k = 0; k < 3; k++){
+			ParallelUCT uct = new ParallelUCT(this.domain, 0.99, this.hashingFactory, 8, 2000, 2, ParallelUCT.ParallelMode.TREE, 4);
+			uct.planFromState(farState);
+			int [] visitsByDepth = new int[8];
+			Set<UCTStateNode> seen = Collections.newSetFromMap(new IdentityHashMap<UCTStateNode, Boolean>());
+			LinkedList<UCTStateNode> open = new LinkedList<UCTStateNode>();
+			open.add(uct.getRoot());
+			seen.add(uct.getRoot());
+			while(!open.isEmpty()){
+				UCTStateNode node = open.poll();
+				if(node.depth < 8){
+					visitsByDepth[node.depth] += node.n;
+				}
+				for(UCTActionNode an : node.actionNodes){
+					for(UCTStateNode successor : an.getAllSuccessors()){
+						if(seen.add(successor)){
+							open.add(successor);
+						}
+					}
+				}
+			}
+			for(int d = 0; d < 8; d++){
+				Assert.assertEquals(2000, visitsByDepth[d]);
+			}
+		}
+	}
+
+	@Test
+	public void testAnytimePlanning() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+
+		//UCT with only a node budget
+		UCT uct = new UCT(this.domain, 0.99, this.hashingFactory, 30, -1, 2);
+		uct.setPlanningBudget(PlanningBudget.nodes(5000));
+		uct.planFromState(initialState);
+		PlanningStatistics stats = uct.getLastPlanningStatistics();
+		Assert.assertTrue(stats.wasBudgetExhausted());
+		Assert.assertTrue(stats.getNodesExpanded() >= 5000 && stats.getNodesExpanded() < 5000 + 31);
+		Assert.assertEquals(uct.getRoot().n, stats.getIterations());
+
+		//UCT with a time budget
+		uct.resetSolver();
+		uct.setPlanningBudget(PlanningBudget.time(50));
+		uct.planFromState(initialState);
+		stats = uct.getLastPlanningStatistics();
+		Assert.assertTrue(stats.wasBudgetExhausted());
+		//only the time limit can have stopped planning, and it is only checked between rollouts
+		Assert.assertTrue(stats.getElapsedNanos() >= 50000000L);
+		Assert.assertTrue(stats.getIterations() > 0);
+		Assert.assertEquals(uct.getRoot().n, stats.getIterations());
+		Assert.assertTrue(stats.getNodesExpanded() >= stats.getIterations());
+
+		//sparse sampling stops deepening when the budget is exhausted
+		SparseSampling ss = new SparseSampling(this.domain, 0.99, this.hashingFactory, 10, 1);
+		ss.setPlanningBudget(PlanningBudget.nodes(50));
+		ss.planFromState(initialState);
+		stats = ss.getLastPlanningStatistics();
+		Assert.assertTrue(stats.wasBudgetExhausted());
+		Assert.assertTrue(stats.getIterations() > 0 && stats.getIterations() < 10);
+		Assert.assertEquals(4, ss.qValues(initialState).size());
+
+		ss = new SparseSampling(this.domain, 0.99, this.hashingFactory, 3, 1);
+		ss.planFromState(initialState);
+		Assert.assertFalse(ss.getLastPlanningStatistics().wasBudgetExhausted());
+		Assert.assertEquals(1, ss.getLastPlanningStatistics().getIterations());
+
+		//bounded RTDP cuts rollouts short when the budget is exhausted
+		BoundedRTDP brtdp = new BoundedRTDP(this.domain, 0.99, this.hashingFactory,
+				new ConstantValueFunction(-100.), new ConstantValueFunction(0.), 0.01, -1);
+		brtdp.setPlanningBudget(PlanningBudget.nodes(10));
+		brtdp.planFromState(initialState);
+		stats = brtdp.getLastPlanningStatistics();
+		Assert.assertTrue(stats.wasBudgetExhausted());
+		Assert.assertEquals(10, stats.getNodesExpanded());
+		Assert.assertEquals(1, stats.getIterations());
+
+		brtdp.setPlanningBudget(null);
+		brtdp.planFromState(initialState);
+		Assert.assertFalse(brtdp.getLastPlanningStatistics().wasBudgetExhausted());
+		this.planningTest.evaluateEpisode(rollout(new GreedyQPolicy(brtdp), initialState, this.domain.getModel(), 100), true);
+	}
+
+	@Test
+	public void testTreeReuse() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		GridWorldState nextState = new GridWorldState(new GridAgent(1, 0), new GridLocation(10, 10, 0, "loc0"));
+
+		//UCT re-roots at the retained successor node
+		UCT uct = new UCT(this.domain, 0.99, this.hashingFactory, 10, 500, 2);
+		uct.toggleTreeReuse(true);
+		uct.planFromState(initialState);
+		UCTStateNode successor = null;
+		for(UCTActionNode an : uct.getRoot().actionNodes){
+			if(an.action.actionName().equals(GridWorldDomain.ACTION_EAST)){
+				successor = an.getAllSuccessors().get(0);
+			}
+		}
+		Assert.assertNotNull(successor);
+		Assert.assertTrue(successor.n > 0);
+		uct.qValues(nextState);
+		Assert.assertSame(successor, uct.getRoot());
+		Assert.assertEquals(0, successor.depth);
+		Assert.assertEquals(500, successor.n);
+
+		//sparse sampling with a retained subtree computes the same values in a deterministic domain
+		for(int c : new int[]{1, -1}){
+			SparseSampling reused = new SparseSampling(this.domain, 0.99, this.hashingFactory, 4, c);
+			reused.toggleTreeReuse(true);
+			SparseSampling rebuilt = new SparseSampling(this.domain, 0.99, this.hashingFactory, 4, c);
+			reused.planFromState(initialState);
+			reused.planFromState(nextState);
+			Assert.assertTrue(reused.getNumberOfRetainedNodes() > 0);
+			for(QValue q : rebuilt.qValues(nextState)){
+				Assert.assertEquals(q.q, reused.qValue(nextState, q.a), TestPlanning.delta);
+			}
+		}
+	}
+
+	@Test
+	public void testParallelSparseSampling() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(3, 0, 0, "loc0"));
+
+		//in a deterministic domain, the parallel tree has the same values as the sequential one
+		for(int c : new int[]{2, -1}){
+			SparseSampling ss = new SparseSampling(this.domain, 0.99, this.hashingFactory, 5, c);
+			ParallelSparseSampling pss = new ParallelSparseSampling(this.domain, 0.99, this.hashingFactory, 5, c, 4);
+			List<QValue> qs = ss.qValues(initialState);
+			Assert.assertEquals(qs.size(), pss.qValues(initialState).size());
+			for(QValue q : qs){
+				Assert.assertEquals(q.q, pss.qValue(initialState, q.a), TestPlanning.delta);
+			}
+			Assert.assertEquals(-2.9701, pss.value(initialState), TestPlanning.delta);
+		}
+
+		//the grid world model draws from the random factory of the sampling thread, when it has one
+		this.planningTest.gw.setProbSucceedTransitionDynamics(0.8);
+		OOSADomain stochasticDomain = this.planningTest.gw.generateDomain();
+		GridWorldState nearGoal = new GridWorldState(new GridAgent(0, 0), new GridLocation(1, 0, 0, "loc0"));
+		List<State> outcomes = new ArrayList<State>();
+		for(int k = 0; k < 2; k++){
+			RandomFactory.setThreadFactory(new RandomFactory(17));
+			for(int j = 0; j < 20; j++){
+				State ns = stochasticDomain.getModel().sample(nearGoal, new SimpleAction(GridWorldDomain.ACTION_EAST)).op;
+				if(k == 0){
+					outcomes.add(ns);
+				}
+				else{
+					Assert.assertEquals(this.hashingFactory.hashState(outcomes.get(j)), this.hashingFactory.hashState(ns));
+				}
+			}
+			RandomFactory.setThreadFactory(null);
+		}
+
+		//so the sample tasks use independent streams, and the sampled estimates are close to the exact values
+		SparseSampling exact = new SparseSampling(stochasticDomain, 0.99, this.hashingFactory, 2, -1);
+		ParallelSparseSampling sampled = new ParallelSparseSampling(stochasticDomain, 0.99, this.hashingFactory, 2, 50, 4);
+		sampled.setMinParallelHeight(1);
+		for(QValue q : exact.qValues(nearGoal)){
+			Assert.assertEquals(q.q, sampled.qValue(nearGoal, q.a), 0.3);
+		}
+		Assert.assertNull(RandomFactory.getThreadFactory());
+	}
+}
@@ -0,0 +1,134 @@
+package burlap.testing;
+
+import burlap.behavior.policy.Policy;
+import burlap.behavior.singleagent.Episode;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
+import burlap.behavior.singleagent.pomdp.BeliefPolicyAgent;
+import burlap.behavior.singleagent.pomdp.pbvi.PointBasedValueIteration;
+import burlap.behavior.singleagent.pomdp.qmdp.QMDP;
+import burlap.debugtools.RandomFactory;
+import burlap.domain.singleagent.pomdp.tiger.TigerDomain;
+import burlap.domain.singleagent.pomdp.tiger.TigerObservation;
+import burlap.domain.singleagent.pomdp.tiger.TigerState;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.action.SimpleAction;
+import burlap.mdp.singleagent.pomdp.PODomain;
+import burlap.mdp.singleagent.pomdp.SimulatedPOEnvironment;
+import burlap.mdp.singleagent.pomdp.beliefstate.BeliefState;
+import burlap.mdp.singleagent.pomdp.beliefstate.TabularBeliefState;
+import burlap.mdp.singleagent.pomdp.beliefstate.TabularBeliefUpdate;
+import burlap.statehashing.simple.SimpleHashableStateFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class TestPOMDP {
+
+	@Test
+	public void testTabularBeliefUpdate() {
+		PODomain tiger = (PODomain)new TigerDomain(false).generateDomain();
+		TabularBeliefUpdate updater = new TabularBeliefUpdate(tiger);
+		TabularBeliefUpdate parallel = new TabularBeliefUpdate(tiger);
+		parallel.setNumThreads(2);
+		Action listen = new SimpleAction(TigerDomain.ACTION_LISTEN);
+		Action openLeft = new SimpleAction(TigerDomain.ACTION_LEFT);
+		TabularBeliefState left = new TabularBeliefState(tiger);
+		left.setBelief(new TigerState(TigerDomain.VAL_LEFT), 1.);
+
+		//the exact Bayesian posteriors of the tiger being behind the left door
+		Action [] actions = new Action[]{listen, listen, listen, openLeft};
+		String [] heard = new String[]{TigerDomain.HEAR_LEFT, TigerDomain.HEAR_LEFT, TigerDomain.HEAR_RIGHT, TigerDomain.DOOR_RESET};
+		double [] expected = new double[]{0.85, 0.7225 / 0.745, 0.85, 0.5};
+		BeliefState b = TigerDomain.getInitialBeliefState(tiger);
+		BeliefState pb = TigerDomain.getInitialBeliefState(tiger);
+		for(int i = 0; i < actions.length; i++){
+			TigerObservation observation = new TigerObservation(heard[i]);
+			b = updater.update(b, observation, actions[i]);
+			pb = parallel.update(pb, observation, actions[i]);
+			Assert.assertEquals(expected[i], b.belief(new TigerState(TigerDomain.VAL_LEFT)), TestPlanning.delta);
+			Assert.assertEquals(1. - expected[i], b.belief(new TigerState(TigerDomain.VAL_RIGHT)), TestPlanning.delta);
+			Assert.assertEquals(b, pb);
+			Assert.assertEquals(b.hashCode(), pb.hashCode());
+			Assert.assertEquals(2, ((TabularBeliefState)b).numNonZeroBeliefs());
+			if(i == 1){
+				//the pool is created again by the next update
+				parallel.shutdown();
+			}
+		}
+		parallel.shutdown();
+		Assert.assertEquals(1, left.numNonZeroBeliefs());
+		Assert.assertEquals(1, left.nonZeroBeliefs().size());
+
+		//the belief values map writes through to the belief state, and set arrays are copied
+		int leftId = left.getStateEnumerator().getEnumeratedID(new TigerState(TigerDomain.VAL_LEFT));
+		int rightId = left.getStateEnumerator().getEnumeratedID(new TigerState(TigerDomain.VAL_RIGHT));
+		Map<Integer, Double> values = left.getBeliefValues();
+		values.put(rightId, 0.4);
+		values.put(leftId, 0.6);
+		Assert.assertEquals(0.4, left.belief(rightId), 0.);
+		Assert.assertEquals(2, left.numNonZeroBeliefs());
+		for(Map.Entry<Integer, Double> e : values.entrySet()){
+			e.setValue(0.5);
+		}
+		Assert.assertEquals(0.5, left.belief(leftId), 0.);
+		values.remove(rightId);
+		Assert.assertEquals(0., left.belief(rightId), 0.);
+		Assert.assertEquals(1, values.size());
+		double [] array = new double[]{0.25, 0.75};
+		left.setBeliefArray(array);
+		array[0] = 1.;
+		Assert.assertEquals(0.25, left.belief(0), 0.);
+		Assert.assertEquals(0.75, values.get(1), 0.);
+
+		//QMDP Q-values of tabular beliefs are the expected MDP Q-values
+		ValueIteration vi = new ValueIteration(tiger, 0.75, new SimpleHashableStateFactory(), 1e-6, 1000);
+		QMDP qmdp = new QMDP(tiger, vi);
+		qmdp.planFromState(new TigerState(TigerDomain.VAL_LEFT));
+		TabularBeliefState belief = (TabularBeliefState)b;
+		belief.setBelief(new TigerState(TigerDomain.VAL_LEFT), 0.3);
+		belief.setBelief(new TigerState(TigerDomain.VAL_RIGHT), 0.7);
+		for(Action a : new Action[]{listen, openLeft}){
+			double q = 0.3*vi.qValue(new TigerState(TigerDomain.VAL_LEFT), a) + 0.7*vi.qValue(new TigerState(TigerDomain.VAL_RIGHT), a);
+			Assert.assertEquals(q, qmdp.qValue(belief, a), TestPlanning.delta);
+		}
+		Assert.assertEquals(-0.3*100. + 0.7*10., qmdp.qValue(belief, openLeft) - 0.75*vi.value(new TigerState(TigerDomain.VAL_LEFT)), 1e-3);
+	}
+
+	@Test
+	public void testPointBasedValueIteration() {
+		PODomain tiger = (PODomain)new TigerDomain(false).generateDomain();
+		TabularBeliefState initial = TigerDomain.getInitialBeliefState(tiger);
+		Action listen = new SimpleAction(TigerDomain.ACTION_LISTEN);
+		Action openRight = new SimpleAction(TigerDomain.ACTION_RIGHT);
+
+		RandomFactory.seedMapped(0, 943);
+		PointBasedValueIteration pbvi = new PointBasedValueIteration(tiger, 0.95, 30, 500, 1e-6);
+		Policy p = pbvi.planFromState(initial);
+		RandomFactory.seedMapped(0, 943);
+		PointBasedValueIteration parallel = new PointBasedValueIteration(tiger, 0.95, 30, 500, 1e-6);
+		parallel.setNumThreads(2);
+		parallel.planFromState(initial);
+		Assert.assertEquals(pbvi.getBeliefPoints().size(), parallel.getBeliefPoints().size());
+		Assert.assertEquals(pbvi.value(initial), parallel.value(initial), 1e-9);
+
+		//listen when uncertain and open the door away from the tiger when confident
+		Assert.assertEquals(listen, p.action(initial));
+		TabularBeliefState confident = new TabularBeliefState(tiger);
+		confident.setBelief(new TigerState(TigerDomain.VAL_LEFT), 0.97);
+		confident.setBelief(new TigerState(TigerDomain.VAL_RIGHT), 0.03);
+		Assert.assertEquals(openRight, p.action(confident));
+
+		//QMDP assumes the state is revealed after one step, so it is an upper bound on the optimal value
+		ValueIteration vi = new ValueIteration(tiger, 0.95, new SimpleHashableStateFactory(), 1e-6, 1000);
+		QMDP qmdp = new QMDP(tiger, vi);
+		qmdp.planFromState(initial);
+		Assert.assertTrue(pbvi.value(initial) <= qmdp.value(initial));
+		Assert.assertTrue(pbvi.value(initial) > -100.);
+
+		BeliefPolicyAgent agent = new BeliefPolicyAgent(tiger, new SimulatedPOEnvironment(tiger, new TigerState(TigerDomain.VAL_LEFT)), p);
+		agent.setBeliefState(initial);
+		Episode e = agent.actUntilTerminalOrMaxSteps(10);
+		Assert.assertEquals(listen, e.action(0));
+	}
+}
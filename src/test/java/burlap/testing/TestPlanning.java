@@ -9,6 +9,11 @@ import burlap.behavior.singleagent.planning.deterministic.informed.Heuristic;
 import burlap.behavior.singleagent.planning.deterministic.informed.astar.AStar;
 import burlap.behavior.singleagent.planning.deterministic.uninformed.bfs.BFS;
 import burlap.behavior.singleagent.planning.deterministic.uninformed.dfs.DFS;
+import burlap.behavior.singleagent.planning.stochastic.DynamicProgramming;
+import burlap.behavior.singleagent.planning.stochastic.policyiteration.PolicyIteration;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.ParallelValueIteration;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
+import burlap.behavior.valuefunction.OpenAddressingValueTable;
 import burlap.domain.singleagent.gridworld.GridWorldDomain;
 import burlap.domain.singleagent.gridworld.state.GridAgent;
 import burlap.domain.singleagent.gridworld.state.GridLocation;
@@ -21,12 +26,16 @@ import burlap.mdp.core.oo.propositional.PropositionalFunction;
 import burlap.mdp.core.state.State;
 import burlap.mdp.singleagent.common.UniformCostRF;
 import burlap.mdp.singleagent.oo.OOSADomain;
+import burlap.statehashing.HashableState;
 import burlap.statehashing.simple.SimpleHashableStateFactory;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
 import static burlap.behavior.policy.PolicyUtils.rollout;
 import static burlap.domain.singleagent.gridworld.GridWorldDomain.PF_AT_LOCATION;
 
@@ -108,6 +117,111 @@ public class TestPlanning {
 		this.evaluateEpisode(analysis, true);
 	}
 	
+	@Test
+	public void testCompiledValueIteration() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		this.gw.setProbSucceedTransitionDynamics(0.8);
+		OOSADomain stochasticDomain = this.gw.generateDomain();
+
+		ValueIteration vi = new ValueIteration(stochasticDomain, 0.99, this.hashingFactory, 0.001, 100);
+		vi.planFromState(initialState);
+
+		ValueIteration compiledVI = new ValueIteration(stochasticDomain, 0.99, this.hashingFactory, 0.001, 100);
+		compiledVI.toggleCompiledTransitions(true);
+		Policy p = compiledVI.planFromState(initialState);
+
+		this.assertSameValues(vi, compiledVI);
+		this.evaluateEpisode(rollout(p, initialState, stochasticDomain.getModel()));
+	}
+
+	@Test
+	public void testCompiledPolicyIteration() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		this.gw.setProbSucceedTransitionDynamics(0.8);
+		OOSADomain stochasticDomain = this.gw.generateDomain();
+
+		PolicyIteration pi = new PolicyIteration(stochasticDomain, 0.99, this.hashingFactory, 0.001, 100, 100);
+		pi.planFromState(initialState);
+
+		PolicyIteration compiledPI = new PolicyIteration(stochasticDomain, 0.99, this.hashingFactory, 0.001, 100, 100);
+		compiledPI.toggleCompiledTransitions(true);
+		Policy p = compiledPI.planFromState(initialState);
+
+		Assert.assertEquals(pi.getTotalPolicyIterations(), compiledPI.getTotalPolicyIterations());
+		Assert.assertEquals(pi.getTotalValueIterations(), compiledPI.getTotalValueIterations());
+		this.assertSameValues(pi, compiledPI);
+		this.evaluateEpisode(rollout(p, initialState, stochasticDomain.getModel()));
+	}
+
+	@Test
+	public void testParallelValueIteration() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		this.gw.setProbSucceedTransitionDynamics(0.8);
+		OOSADomain stochasticDomain = this.gw.generateDomain();
+
+		ValueIteration vi = new ValueIteration(stochasticDomain, 0.99, this.hashingFactory, 1e-10, 10000);
+		vi.planFromState(initialState);
+
+		ParallelValueIteration singleThreadVI = new ParallelValueIteration(stochasticDomain, 0.99, this.hashingFactory, 1e-10, 10000, 1);
+		singleThreadVI.planFromState(initialState);
+		this.assertSameValues(vi, singleThreadVI, 0.);
+
+		for(ParallelValueIteration.SweepMode mode : ParallelValueIteration.SweepMode.values()){
+			ParallelValueIteration pvi = new ParallelValueIteration(stochasticDomain, 0.99, this.hashingFactory, 1e-10, 10000, 4);
+			pvi.setSweepMode(mode);
+			Policy p = pvi.planFromState(initialState);
+			this.assertSameValues(vi, pvi, 1e-6);
+			this.evaluateEpisode(rollout(p, initialState, stochasticDomain.getModel()));
+		}
+	}
+
+	@Test
+	public void testValueTables() {
+		GridWorldState initialState = new GridWorldState(new GridAgent(0, 0), new GridLocation(10, 10, 0, "loc0"));
+		this.gw.setProbSucceedTransitionDynamics(0.8);
+		OOSADomain stochasticDomain = this.gw.generateDomain();
+
+		ValueIteration vi = new ValueIteration(stochasticDomain, 0.99, this.hashingFactory, 1e-10, 10000);
+		vi.planFromState(initialState);
+
+		ValueIteration tableVI = new ValueIteration(stochasticDomain, 0.99, this.hashingFactory, 1e-10, 10000);
+		tableVI.setValueTable(new OpenAddressingValueTable());
+		tableVI.planFromState(initialState);
+		this.assertSameValues(vi, tableVI, 1e-6);
+
+		OpenAddressingValueTable table = new OpenAddressingValueTable(1);
+		table.put(this.hashingFactory.hashState(initialState), -1.);
+		vi.setValueTable(table);
+		Assert.assertEquals(104, table.size());
+		Assert.assertEquals(104, table.keySet().size());
+		this.assertSameValues(vi, tableVI, 1e-6);
+
+		//updating stored states during iteration is allowed, but adding states is detected like it is for a HashMap
+		for(HashableState sh : table.keySet()){
+			table.putValue(sh, 0.);
+		}
+		try{
+			for(HashableState sh : table.keySet()){
+				table.putValue(this.hashingFactory.hashState(new GridWorldState(new GridAgent(sh.hashCode(), -1), new GridLocation(10, 10, 0, "loc0"))), 0.);
+			}
+			Assert.fail("Adding a state during iteration was not detected");
+		} catch(ConcurrentModificationException e){
+			//expected
+		}
+	}
+
+	public void assertSameValues(DynamicProgramming expected, DynamicProgramming actual) {
+		this.assertSameValues(expected, actual, TestPlanning.delta);
+	}
+
+	public void assertSameValues(DynamicProgramming expected, DynamicProgramming actual, double tolerance) {
+		List<State> states = expected.getAllStates();
+		Assert.assertEquals(states.size(), actual.getAllStates().size());
+		for(State s : states){
+			Assert.assertEquals(expected.value(s), actual.value(s), tolerance);
+		}
+	}
+	
 	public void evaluateEpisode(Episode analysis) {
 		this.evaluateEpisode(analysis, false);
 	}
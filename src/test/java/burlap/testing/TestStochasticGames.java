@@ -0,0 +1,195 @@
+package burlap.testing;
+
+import burlap.behavior.stochasticgames.madynamicprogramming.AgentQSourceMap;
+import burlap.behavior.stochasticgames.madynamicprogramming.MADynamicProgramming;
+import burlap.behavior.stochasticgames.madynamicprogramming.MutableQSource;
+import burlap.behavior.stochasticgames.madynamicprogramming.QSourceForSingleAgent;
+import burlap.behavior.stochasticgames.madynamicprogramming.SGBackupOperator;
+import burlap.behavior.stochasticgames.madynamicprogramming.backupOperators.CoCoQ;
+import burlap.behavior.stochasticgames.madynamicprogramming.backupOperators.CorrelatedQ;
+import burlap.behavior.stochasticgames.madynamicprogramming.backupOperators.MaxQ;
+import burlap.behavior.stochasticgames.madynamicprogramming.backupOperators.MinMaxQ;
+import burlap.behavior.stochasticgames.madynamicprogramming.dpplanners.MAValueIteration;
+import burlap.behavior.stochasticgames.madynamicprogramming.dpplanners.ParallelMAValueIteration;
+import burlap.behavior.stochasticgames.solvers.CorrelatedEquilibriumSolver;
+import burlap.behavior.stochasticgames.solvers.MinMaxSolver;
+import burlap.behavior.valuefunction.ConstantValueFunction;
+import burlap.domain.stochasticgames.gridgame.GridGame;
+import burlap.domain.stochasticgames.normalform.NFGameState;
+import burlap.domain.stochasticgames.normalform.SingleStageNormalFormGame;
+import burlap.mdp.core.TerminalFunction;
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.JointAction;
+import burlap.mdp.stochasticgames.JointActionIndexer.JointActionSpace;
+import burlap.mdp.stochasticgames.JointActionIndexer;
+import burlap.mdp.stochasticgames.agent.SGAgentType;
+import burlap.mdp.stochasticgames.model.JointRewardFunction;
+import burlap.mdp.stochasticgames.oo.OOSGDomain;
+import burlap.statehashing.simple.SimpleHashableStateFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestStochasticGames {
+	SimpleHashableStateFactory hashingFactory;
+
+	@Before
+	public void setup() {
+		this.hashingFactory = new SimpleHashableStateFactory();
+	}
+
+	@Test
+	public void testJointActionBackupOperators() {
+		List<List<String>> actionSets = new ArrayList<List<String>>();
+		actionSets.add(Arrays.asList("a", "b", "c"));
+		actionSets.add(Arrays.asList("x", "y"));
+		SingleStageNormalFormGame game = new SingleStageNormalFormGame(actionSets);
+		List<SGAgentType> types = new ArrayList<SGAgentType>();
+		types.add(game.generateAgentType(0));
+		types.add(game.generateAgentType(1));
+		State s = new NFGameState(2);
+
+		//joint action ids follow the order of the enumerated joint actions
+		JointActionSpace space = new JointActionIndexer(types).jointActionSpace(s);
+		List<JointAction> jas = JointAction.getAllJointActionsFromTypes(s, types);
+		Assert.assertEquals(jas.size(), space.numJointActions());
+		for(int i = 0; i < jas.size(); i++){
+			Assert.assertEquals(jas.get(i), space.jointAction(i));
+			Assert.assertEquals(i, space.jointActionId(jas.get(i)));
+		}
+
+		//backups over array-backed Q-values match those over hash-backed Q-values
+		Random rand = new Random(5);
+		Map<Integer, QSourceForSingleAgent> hashSources = new HashMap<Integer, QSourceForSingleAgent>();
+		Map<Integer, QSourceForSingleAgent> arraySources = new HashMap<Integer, QSourceForSingleAgent>();
+		for(int i = 0; i < 2; i++){
+			QSourceForSingleAgent.HashBackedQSource hashSource = new QSourceForSingleAgent.HashBackedQSource(this.hashingFactory, new ConstantValueFunction());
+			QSourceForSingleAgent.ArrayBackedQSource arraySource = new QSourceForSingleAgent.ArrayBackedQSource(this.hashingFactory, new ConstantValueFunction(), new JointActionIndexer(types));
+			for(JointAction ja : jas){
+				double q = rand.nextDouble();
+				hashSource.getQValueFor(s, ja).q = q;
+				arraySource.setQValue(s, ja, q);
+				Assert.assertEquals(q, arraySource.getQValueFor(s, ja).q, TestPlanning.delta);
+			}
+			hashSources.put(i, hashSource);
+			arraySources.put(i, arraySource);
+		}
+
+		//array-backed sources return copies and fix the joint actions of a state; both kinds of source can be set as a MutableQSource
+		JointAction first = jas.get(0);
+		QSourceForSingleAgent.ArrayBackedQSource copySource = new QSourceForSingleAgent.ArrayBackedQSource(this.hashingFactory, new ConstantValueFunction(), new JointActionIndexer(types));
+		copySource.getQValueFor(s, first).q = 3.;
+		Assert.assertEquals(0., copySource.getQValueFor(s, first).q, TestPlanning.delta);
+		MutableQSource [] mutableSources = new MutableQSource[]{copySource, new QSourceForSingleAgent.HashBackedQSource(this.hashingFactory, new ConstantValueFunction())};
+		for(MutableQSource source : mutableSources){
+			source.setQValue(s, first, 2.);
+			Assert.assertEquals(2., source.getQValueFor(s, first).q, TestPlanning.delta);
+		}
+		try{
+			copySource.getQValueFor(s, new JointAction(Arrays.asList(first.action(1), first.action(0))));
+			Assert.fail("The array-backed source accepted a joint action that is not enumerated for the state");
+		} catch(RuntimeException e){
+			//expected
+		}
+		AgentQSourceMap hashMap = new AgentQSourceMap.HashMapAgentQSourceMap(hashSources);
+		AgentQSourceMap arrayMap = new AgentQSourceMap.HashMapAgentQSourceMap(arraySources);
+
+		SGBackupOperator [] operators = new SGBackupOperator[]{new MaxQ(), new MinMaxQ(), new CoCoQ(),
+				new CorrelatedQ(CorrelatedEquilibriumSolver.CorrelatedEquilibriumObjective.UTILITARIAN)};
+		for(SGBackupOperator op : operators){
+			for(int i = 0; i < 2; i++){
+				Assert.assertEquals(op.performBackup(s, i, types, hashMap), op.performBackup(s, i, types, arrayMap), TestPlanning.delta);
+			}
+		}
+	}
+
+	@Test
+	public void testParallelMAValueIteration() {
+		GridGame gg = new GridGame();
+		OOSGDomain sgDomain = gg.generateDomain();
+		State s = GridGame.getCorrdinationGameInitialState();
+		JointRewardFunction jr = new GridGame.GGJointRewardFunction(sgDomain, -1, 100, false);
+		TerminalFunction tf = new GridGame.GGTerminalFunction(sgDomain);
+		SGAgentType type = GridGame.getStandardGridGameAgentType(sgDomain);
+		List<SGAgentType> types = Arrays.asList(type, type);
+
+		SGBackupOperator [] operators = new SGBackupOperator[]{new MaxQ(), new CoCoQ()};
+		for(SGBackupOperator op : operators){
+
+			//with one thread, the sweeps are the same as those of sequential VI
+			MAValueIteration vi = new MAValueIteration(sgDomain, types, jr, tf, 0.95, this.hashingFactory, new ConstantValueFunction(0.), op, 1e-6, 20);
+			vi.planFromState(s);
+			ParallelMAValueIteration pvi = new ParallelMAValueIteration(sgDomain, types, jr, tf, 0.95, this.hashingFactory, new ConstantValueFunction(0.), op, 1e-6, 20, 1);
+			pvi.planFromState(s);
+			this.assertSameJointQValues(vi, pvi, s, types, 1e-6);
+
+			//converged values do not depend on the number of threads
+			ParallelMAValueIteration converged1 = new ParallelMAValueIteration(sgDomain, types, jr, tf, 0.95, this.hashingFactory, new ConstantValueFunction(0.), op, 1e-6, 500, 1);
+			converged1.planFromState(s);
+			ParallelMAValueIteration converged3 = new ParallelMAValueIteration(sgDomain, types, jr, tf, 0.95, this.hashingFactory, new ConstantValueFunction(0.), op, 1e-6, 500, 3);
+			converged3.planFromState(s);
+			this.assertSameJointQValues(converged1, converged3, s, types, 1e-3);
+		}
+	}
+
+	@Test
+	public void testConcurrentLinearPrograms() throws Exception {
+		Random rand = new Random(3);
+		final double [][][] games = new double[40][][];
+		double [][] expected = new double[games.length][];
+		for(int g = 0; g < games.length; g++){
+			games[g] = new double[4][4];
+			for(int i = 0; i < 4; i++){
+				for(int j = 0; j < 4; j++){
+					games[g][i][j] = rand.nextDouble() * 2. - 1.;
+				}
+			}
+			expected[g] = MinMaxSolver.getRowPlayersStrategy(games[g]);
+		}
+
+		//each thread solves every game with its own solver instance
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try{
+			List<Future<double [][]>> results = new ArrayList<Future<double [][]>>();
+			for(int t = 0; t < 4; t++){
+				results.add(pool.submit(new Callable<double [][]>() {
+					@Override
+					public double [][] call() throws Exception {
+						double [][] strategies = new double[games.length][];
+						for(int g = 0; g < games.length; g++){
+							strategies[g] = MinMaxSolver.getRowPlayersStrategy(games[g]);
+						}
+						return strategies;
+					}
+				}));
+			}
+			for(Future<double [][]> result : results){
+				double [][] strategies = result.get();
+				for(int g = 0; g < games.length; g++){
+					Assert.assertArrayEquals(expected[g], strategies[g], 1e-9);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void assertSameJointQValues(MADynamicProgramming expected, MADynamicProgramming actual, State s, List<SGAgentType> types, double tolerance) {
+		for(int i = 0; i < types.size(); i++){
+			for(JointAction ja : JointAction.getAllJointActionsFromTypes(s, types)){
+				Assert.assertEquals(expected.getQSources().agentQSource(i).getQValueFor(s, ja).q, actual.getQSources().agentQSource(i).getQValueFor(s, ja).q, tolerance);
+			}
+		}
+	}
+}
@@ -8,7 +8,12 @@ import org.junit.runners.Suite;
 	TestGridWorld.class,
 	TestPlanning.class,
 	TestBlockDude.class,
-	TestHashing.class
+	TestHashing.class,
+	TestOnlinePlanning.class,
+	TestLearning.class,
+	TestPOMDP.class,
+	TestIRL.class,
+	TestStochasticGames.class
 })
 public class TestSuite {
 